@@ -205,7 +205,7 @@ public class ExampleSceneLoader extends SceneLoader {
         // test loading collada object
         /*try {
             // this has heterogeneous faces
-            new ColladaLoaderTask(parent, Uri.parse("assets://assets/models/cowboy.dae"), this).execute();
+            getLoaderScheduler().submit(new ColladaLoaderTask(Uri.parse("assets://assets/models/cowboy.dae"), this));
 
         } catch (Exception ex) {
             Log.e("Example",ex.getMessage(),ex);
@@ -8,8 +8,12 @@ import android.widget.Toast;
 import org.andresoviedo.android_3d_model_engine.animation.Animator;
 import org.andresoviedo.android_3d_model_engine.collision.CollisionDetection;
 import org.andresoviedo.android_3d_model_engine.model.Camera;
+import org.andresoviedo.android_3d_model_engine.model.MeshClusters;
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.LoaderScheduler;
 import org.andresoviedo.android_3d_model_engine.services.LoaderTask;
+import org.andresoviedo.android_3d_model_engine.services.TextureAtlas;
+import org.andresoviedo.android_3d_model_engine.services.ModelCache;
 import org.andresoviedo.android_3d_model_engine.services.Object3DBuilder;
 import org.andresoviedo.android_3d_model_engine.services.collada.ColladaLoaderTask;
 import org.andresoviedo.android_3d_model_engine.services.gltf.GltfLoaderTask;
@@ -20,8 +24,8 @@ import org.andresoviedo.app.model3D.view.ModelRenderer;
 import org.andresoviedo.util.android.ContentUtils;
 import org.andresoviedo.util.io.IOUtils;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -39,6 +43,16 @@ public class SceneLoader implements LoaderTask.Callback {
      * 默认模型颜色：黄色
      */
     private static float[] DEFAULT_COLOR = {1.0f, 1.0f, 0, 1.0f};
+    /**
+     * Maximum size of the cache of built models
+     * 已构建模型缓存的最大大小
+     */
+    private static final long MODEL_CACHE_SIZE = 512 * 1024 * 1024;
+    /**
+     * Triangles of the coarsest level of detail of big meshes
+     * 大网格最粗细节级别的三角形数
+     */
+    private static final int MODEL_LOD_MIN_TRIANGLES = 5000;
     /**
      * Parent component
      * 父组件
@@ -139,6 +153,11 @@ public class SceneLoader implements LoaderTask.Callback {
      * 切换3d虚拟现实眼镜
      */
     private boolean isVRGlasses = false;
+    /**
+     * Skip the clusters of big meshes hidden behind other geometry
+     * 跳过被其他几何体遮挡的大网格簇
+     */
+    private boolean occlusionCulling = false;
     /**
      * Object selected by the user
      * 切换3d虚拟现实眼镜
@@ -169,9 +188,15 @@ public class SceneLoader implements LoaderTask.Callback {
      * 开始加载模型的时间（用于统计）
      */
     private long startTime;
+    /**
+     * Loads the models in background
+     * 在后台加载模型
+     */
+    private final LoaderScheduler loaderScheduler;
 
     public SceneLoader(ModelActivity main) {
         this.parent = main;
+        this.loaderScheduler = new LoaderScheduler(this::requestRender);
     }
 
     public void init() {
@@ -190,18 +215,44 @@ public class SceneLoader implements LoaderTask.Callback {
         Uri uri = parent.getParamUri();
         // 根据不同的文件后缀，使用不容的3D模型加载器
         Log.i("Object3DBuilder", "Loading model " + uri + ". async and parallel..");
+        ModelCache cache = new ModelCache(new File(parent.getCacheDir(), "models"), MODEL_CACHE_SIZE);
+        LoaderTask task = null;
         if (uri.toString().toLowerCase().endsWith(".obj") || parent.getParamType() == 0) {
-            new WavefrontLoaderTask(parent, uri, this).execute();
+            task = new WavefrontLoaderTask(uri, this);
         } else if (uri.toString().toLowerCase().endsWith(".stl") || parent.getParamType() == 1) {
             Log.i("Object3DBuilder", "Loading STL object from: " + uri);
-            new STLLoaderTask(parent, uri, this).execute();
+            task = new STLLoaderTask(uri, this);
         } else if (uri.toString().toLowerCase().endsWith(".dae") || parent.getParamType() == 2) {
             Log.i("Object3DBuilder", "Loading Collada object from: " + uri);
-            new ColladaLoaderTask(parent, uri, this).execute();
-        } else if (uri.toString().toLowerCase().endsWith(".gltf") || parent.getParamType() == 3) {
+            task = new ColladaLoaderTask(uri, this);
+        } else if (uri.toString().toLowerCase().endsWith(".gltf") || uri.toString().toLowerCase().endsWith(".glb")
+                || parent.getParamType() == 3) {
             Log.i("Object3DBuilder", "Loading GLtf object from: " + uri);
-            new GltfLoaderTask(parent, uri, this).execute();
+            task = new GltfLoaderTask(uri, this);
         }
+        if (task != null) {
+            makeToastText("Loading model...", Toast.LENGTH_SHORT);
+            loaderScheduler.submit(task.setCache(cache).setClusterSize(MeshClusters.DEFAULT_CLUSTER_SIZE)
+                    .setLevelsOfDetail(MODEL_LOD_MIN_TRIANGLES)
+                    .setTextureAtlas(TextureAtlas.DEFAULT_PAGE_SIZE));
+        }
+    }
+
+    /**
+     * Scheduler of the models being loaded. Results are delivered from {@link #onDrawFrame()}
+     * 正在加载的模型的调度器。结果在onDrawFrame()中交付
+     */
+    protected LoaderScheduler getLoaderScheduler() {
+        return loaderScheduler;
+    }
+
+    /**
+     * Cancel the models being loaded and stop the loader threads
+     * 取消正在加载的模型并停止加载线程
+     */
+    public void shutdown() {
+        loaderScheduler.shutdown();
+        animator.shutdown();
     }
 
     public boolean isDrawAxis() {
@@ -234,6 +285,10 @@ public class SceneLoader implements LoaderTask.Callback {
      */
     public void onDrawFrame() {
 
+        // add the models loaded since the last frame
+        // 添加自上一帧以来加载的模型
+        loaderScheduler.deliver();
+
         animateLight();
 
         // smooth camera transition
@@ -251,10 +306,7 @@ public class SceneLoader implements LoaderTask.Callback {
         }
 
         if (doAnimation) {
-            for (int i = 0; i < objects.size(); i++) {
-                Object3DData obj = objects.get(i);
-                animator.update(obj, isShowBindPose());
-            }
+            animator.update(objects, isShowBindPose());
         }
     }
 
@@ -457,33 +509,37 @@ public class SceneLoader implements LoaderTask.Callback {
         return isBlendingEnabled;
     }
 
+    public void toggleOcclusionCulling() {
+        this.occlusionCulling = !occlusionCulling;
+        makeToastText("Occlusion culling " + occlusionCulling, Toast.LENGTH_SHORT);
+    }
+
+    public boolean isOcclusionCulling() {
+        return occlusionCulling;
+    }
+
     @Override
     public void onStart() {
         ContentUtils.setThreadActivity(parent);
     }
 
     @Override
-    public void onLoadComplete(List<Object3DData> datas) {
-        // TODO: move texture load to LoaderTask
-        //TODO:将纹理加载移动到LoaderTask
-        for (Object3DData data : datas) {
-            if (data.getTextureData() == null && data.getTextureFile() != null) {
-                Log.i("LoaderTask", "Loading texture... " + data.getTextureFile());
-                try (InputStream stream = ContentUtils.getInputStream(data.getTextureFile())) {
-                    if (stream != null) {
-                        data.setTextureData(IOUtils.read(stream));
-                    }
-                } catch (IOException ex) {
-                    data.addError("Problem loading texture " + data.getTextureFile());
-                }
-            }
-        }
+    public void onProgress(Uri uri, int step) {
+        Log.i("SceneLoader", "Loading " + uri + ": step " + step);
+    }
 
+    @Override
+    public void onLoadComplete(List<Object3DData> datas) {
         // TODO: move error alert to LoaderTask
         // TODO: 将错误警报移至LoaderTask
         List<String> allErrors = new ArrayList<>();
+        List<Object3DData> current = getObjects();
         for (Object3DData data : datas) {
-            addObject(data);
+            // objects loaded progressively are already in the scene
+            // 逐步加载的对象已经在场景中
+            if (!current.contains(data)) {
+                addObject(data);
+            }
             allErrors.addAll(data.getErrors());
         }
         if (!allErrors.isEmpty()) {
@@ -491,14 +547,19 @@ public class SceneLoader implements LoaderTask.Callback {
         }
         final String elapsed = (SystemClock.uptimeMillis() - startTime) / 1000 + " secs";
         makeToastText("Build complete (" + elapsed + ")", Toast.LENGTH_LONG);
-        ContentUtils.setThreadActivity(null);
+    }
+
+    @Override
+    public void onLoadPartial(List<Object3DData> datas) {
+        for (Object3DData data : datas) {
+            addObject(data);
+        }
     }
 
     @Override
     public void onLoadError(Exception ex) {
         Log.e("SceneLoader", ex.getMessage(), ex);
         makeToastText("There was a problem building the model: " + ex.getMessage(), Toast.LENGTH_LONG);
-        ContentUtils.setThreadActivity(null);
     }
 
     public Object3DData getSelectedObject() {
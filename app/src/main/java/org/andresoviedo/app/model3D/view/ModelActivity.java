@@ -116,6 +116,13 @@ public class ModelActivity extends Activity {
         // }
     }
 
+    @Override
+    protected void onDestroy() {
+        // stop loading models nobody is going to see
+        scene.shutdown();
+        super.onDestroy();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
@@ -173,6 +180,9 @@ public class ModelActivity extends Activity {
             case R.id.model_toggle_blending:
                 scene.toggleBlending();
                 break;
+            case R.id.model_toggle_occlusion:
+                scene.toggleOcclusionCulling();
+                break;
             case R.id.model_toggle_immersive:
                 toggleImmersive();
                 break;
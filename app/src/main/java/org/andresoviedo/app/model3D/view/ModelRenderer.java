@@ -7,18 +7,27 @@ import android.util.Log;
 
 import org.andresoviedo.android_3d_model_engine.animation.Animator;
 import org.andresoviedo.android_3d_model_engine.drawer.DrawerFactory;
+import org.andresoviedo.android_3d_model_engine.drawer.InstanceBatch;
+import org.andresoviedo.android_3d_model_engine.drawer.RenderQueue;
+import org.andresoviedo.android_3d_model_engine.drawer.TextureManager;
 import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
 import org.andresoviedo.android_3d_model_engine.model.Camera;
+import org.andresoviedo.android_3d_model_engine.model.Frustum;
+import org.andresoviedo.android_3d_model_engine.model.LevelOfDetail;
+import org.andresoviedo.android_3d_model_engine.model.MaterialRange;
+import org.andresoviedo.android_3d_model_engine.model.MeshClusters;
 import org.andresoviedo.android_3d_model_engine.model.Object3D;
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
 import org.andresoviedo.android_3d_model_engine.services.Object3DBuilder;
 import org.andresoviedo.app.model3D.demo.SceneLoader;
-import org.andresoviedo.util.android.GLUtil;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.Map;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -54,6 +63,22 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
      * Drawer factory基于对象属性获得正确的渲染器/着色器
      */
     private DrawerFactory drawer;
+    /**
+     * Objects sharing the same mesh, drawn with a single instanced draw call
+     * 共享同一网格的对象，用一次实例化绘制调用绘制
+     */
+    private InstanceBatch instanceBatch;
+    // solids of the frame, drawn sorted by state and depth 帧中的实体，按状态和深度排序绘制
+    private RenderQueue renderQueue;
+    // queued objects whose changes are uploaded when they are drawn 已排队的对象，其更改在绘制时上传
+    private final List<Object3DData> changedObjects = new ArrayList<>();
+    // planes of the view being drawn, to skip the objects out of it
+    // 正在绘制的视图的平面，用于跳过视图之外的对象
+    private final Frustum frustum = new Frustum();
+    // the clustered meshes drawn in this view, for the occlusion test
+    // 此视图中绘制的簇网格，用于遮挡测试
+    private final List<Object3DData> clusteredObjects = new ArrayList<>();
+    private final float[] eyePosition = new float[3];
     /**
      * 3D Axis (to show if needed)
      * 3D轴（如果需要，显示）
@@ -63,9 +88,6 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
     // The wireframe associated shape (it should be made of lines only)
     // 与线框关联的形状（应仅由线构成）
     private Map<Object3DData, Object3DData> wireframes = new HashMap<>();
-    // The loaded textures
-    // 加载的纹理
-    private Map<Object, Integer> textures = new HashMap<>();
     // The corresponding opengl bounding boxes and drawer
     // 相应的opengl边界框和抽屉
     private Map<Object3DData, Object3DData> boundingBoxes = new HashMap<>();
@@ -73,6 +95,9 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
     // 相应的opengl边界框
     private Map<Object3DData, Object3DData> normals = new HashMap<>();
     private Map<Object3DData, Object3DData> skeleton = new HashMap<>();
+    // The objects drawn in the last frame, to release the GPU buffers of the removed ones
+    // 上一帧绘制的对象，用于释放已删除对象的GPU缓冲区
+    private List<Object3DData> lastObjects = Collections.emptyList();
 
     // 3D matrices to project our 3D world
     // 3D矩阵来投射我们的3D世界
@@ -124,6 +149,8 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
         // This component will draw the actual models using OpenGL
         //该组件将使用OpenGL绘制实际模型
         drawer = new DrawerFactory(modelSurfaceView.getContext());
+        instanceBatch = new InstanceBatch(drawer);
+        renderQueue = new RenderQueue(drawer);
     }
 
     public float getNear() {
@@ -154,6 +181,13 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
         // Enable not drawing out of view port
         // 启用“不从视图中绘制”端口
         GLES20.glEnable(GLES20.GL_SCISSOR_TEST);
+
+        // The context was (re)created, so the old buffer objects are gone
+        // 上下文已（重新）创建，旧的缓冲区对象已失效
+        drawer.getBufferManager().invalidate();
+        drawer.getGLState().reset();
+        drawer.getOcclusionCulling().invalidate();
+        drawer.getTextureManager().invalidate();
     }
 
     @Override
@@ -194,13 +228,17 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
                 return;
             }
 
+            // the textures drawn from now on are not evicted until the next frame
+            // 从现在起绘制的纹理在下一帧之前不会被淘汰
+            drawer.getTextureManager().beginFrame();
+
             if (scene.isBlendingEnabled()) {
                 // Enable blending for combining colors when there is transparency
                 // 当存在透明度时，启用混合以组合颜色
-                GLES20.glEnable(GLES20.GL_BLEND);
-                GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+                drawer.getGLState().setBlending(true);
+                drawer.getGLState().setBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
             } else {
-                GLES20.glDisable(GLES20.GL_BLEND);
+                drawer.getGLState().setBlending(false);
             }
 
             // animate scene
@@ -262,6 +300,14 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
 
             if (!scene.isStereoscopic()) {
                 this.onDrawFrame(viewMatrix, projectionMatrix, viewProjectionMatrix, lightPosInEyeSpace, null);
+                if (scene.isOcclusionCulling() && !clusteredObjects.isEmpty()) {
+                    // the queries test this view, so they are not used for the stereoscopic views
+                    // 查询测试的是此视图，所以立体视图不使用
+                    eyePosition[0] = camera.xPos;
+                    eyePosition[1] = camera.yPos;
+                    eyePosition[2] = camera.zPos;
+                    drawer.getOcclusionCulling().query(clusteredObjects, viewProjectionMatrix, eyePosition);
+                }
                 return;
             }
 
@@ -345,11 +391,25 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
         // draw all available objects
         // 绘制所有可用对象
         List<Object3DData> objects = scene.getObjects();
+        if (objects != lastObjects) {
+            releaseRemovedObjects(objects);
+        }
+        // every eye has its own frustum in stereoscopic mode
+        // 立体模式下每只眼睛都有自己的视锥体
+        frustum.set(viewProjectionMatrix);
+        clusteredObjects.clear();
+        renderQueue.begin(viewMatrix);
+        boolean blending = scene.isBlendingEnabled();
+        boolean occlusionCulling = scene.isOcclusionCulling() && !scene.isStereoscopic();
         for (int i = 0; i < objects.size(); i++) {
             Object3DData objData = null;
             try {
                 objData = objects.get(i);
 
+                if (!isInFrustum(objData)) {
+                    continue;
+                }
+
                 Object3D drawerObject = drawer.getDrawer(objData, scene.isDrawTextures(), scene.isDrawLighting(),
                         scene.isDoAnimation(), scene.isDrawColors());
 
@@ -363,6 +423,7 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
                 }
 
                 boolean changed = objData.isChanged();
+                boolean queued = false;
 
 //				if (objData instanceof AnimatedModel
 //						&& ((AnimatedModel) objData).getGltfAnimation() != null){
@@ -374,33 +435,29 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
 //					}
 //				}
 
-                //TODO: refactor code for loading more textures, consider delete textures map and add texture class
-                //TODO:重构加载更多纹理的代码，考虑删除纹理贴图并添加纹理类
-                Integer textureId = textures.get(objData.getTextureData());
-                Integer emissiveTextureId = textures.get(objData.getEmissiveTextureData());
-                if (textureId == null && objData.getTextureData() != null) {
-                    //Log.i("ModelRenderer","Loading texture '"+objData.getTextureFile()+"'...");
-                    ByteArrayInputStream textureIs = new ByteArrayInputStream(objData.getTextureData());
-                    ByteArrayInputStream emissiveTextureIs = null;
-                    if (emissiveTextureId == null && objData.getEmissiveTextureData() != null) {
-                        emissiveTextureIs = new ByteArrayInputStream(objData.getEmissiveTextureData());
-                    }
-                    int[] textureIds = GLUtil.loadTexture(textureIs, emissiveTextureIs);
-                    textureId = textureIds[0];
-                    emissiveTextureId = textureIds[1];
-                    textureIs.close();
-                    if (emissiveTextureIs != null) {
-                        emissiveTextureIs.close();
+                // textures are uploaded once and shared by the objects with the same images
+                // 纹理只上传一次，由图像相同的对象共享
+                TextureManager textureManager = drawer.getTextureManager();
+                int textureId = textureManager.get(objData, TextureManager.TEXTURE, objData.getTextureData(),
+                        objData.getTextureMinFilter());
+                objData.setEmissiveTextureHandle(textureManager.get(objData, TextureManager.EMISSIVE_TEXTURE,
+                        objData.getEmissiveTextureData(), objData.getEmissiveTextureMinFilter()));
+                List<MaterialRange> ranges = objData.getMaterialRanges();
+                if (ranges != null) {
+                    // the ranges without texture are drawn with the white placeholder, so only the colors are seen
+                    // 没有纹理的范围使用白色占位纹理绘制，只显示颜色
+                    for (int r = 0; r < ranges.size(); r++) {
+                        int slot = TextureManager.RANGE_TEXTURE + r;
+                        int handle = textureManager.get(objData, slot, ranges.get(r).getTextureData(),
+                                objData.getTextureMinFilter());
+                        ranges.get(r).setTextureHandle(handle != -1 ? handle : textureManager.getPlaceholder(slot));
                     }
-                    textures.put(objData.getTextureData(), textureId);
-                    textures.put(objData.getEmissiveTextureData(), emissiveTextureId);
-                    objData.setEmissiveTextureHandle(emissiveTextureId);
-                    //Log.i("GLUtil", "Loaded texture ok");
-                }
-                if (textureId == null) {
-                    textureId = -1;
                 }
 
+                // far away big meshes are drawn simplified
+                // 远处的大网格以简化形式绘制
+                Object3DData lodData = getLevelOfDetail(objData, projectionMatrix);
+
                 // draw points
                 // 绘制点
                 if (objData.getDrawMode() == GLES20.GL_POINTS) {
@@ -420,6 +477,7 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
                         Object3DData wireframe = wireframes.get(objData);
                         if (wireframe == null || changed) {
                             Log.i("ModelRenderer", "Generating wireframe model...");
+                            release(wireframe);
                             wireframe = Object3DBuilder.buildWireframe(objData);
                             wireframes.put(objData, wireframe);
                         }
@@ -454,11 +512,31 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
                     drawerObject.draw(skeleton, projectionMatrix, viewMatrix, -1, lightPosInEyeSpace, colorMask);
                 }
 
-                // draw solids
-                // 绘制实体
-                else {
-                    drawerObject.draw(objData, projectionMatrix, viewMatrix,
-                            textureId, lightPosInEyeSpace, colorMask);
+                // draw the simplified copy 绘制简化副本
+                else if (lodData != objData) {
+                    renderQueue.add(drawerObject, lodData, textureId, null, isBlended(objData, blending));
+                    queued = true;
+                }
+
+                // draw only the clusters of big meshes that are in the view
+                // 只绘制大网格在视图中的簇
+                else if (objData.getMeshClusters() != null) {
+                    MeshClusters clusters = objData.getMeshClusters();
+                    if (occlusionCulling) {
+                        clusteredObjects.add(objData);
+                    } else {
+                        clusters.resetOcclusion();
+                    }
+                    renderQueue.add(drawerObject, objData, textureId, clusters.cull(frustum, objData.getDrawMatrix()),
+                            isBlended(objData, blending));
+                    queued = true;
+                }
+
+                // draw solids. Static opaque copies of the same mesh are queued later as a single draw
+                // 绘制实体。同一网格的静态不透明副本稍后作为一次绘制加入队列
+                else if (!instanceBatch.add(objData, textureId)) {
+                    renderQueue.add(drawerObject, objData, textureId, null, isBlended(objData, blending));
+                    queued = true;
                 }
 
                 // Draw bounding box
@@ -466,6 +544,7 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
                 if (scene.isDrawBoundingBox() || scene.getSelectedObject() == objData) {
                     Object3DData boundingBoxData = boundingBoxes.get(objData);
                     if (boundingBoxData == null || changed) {
+                        release(boundingBoxData);
                         boundingBoxData = Object3DBuilder.buildBoundingBox(objData);
                         boundingBoxes.put(objData, boundingBoxData);
                     }
@@ -479,6 +558,7 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
                 if (scene.isDrawNormals()) {
                     Object3DData normalData = normals.get(objData);
                     if (normalData == null || changed) {
+                        release(normalData);
                         normalData = Object3DBuilder.buildFaceNormals(objData);
                         if (normalData != null) {
                             // it can be null if object isnt made of triangles
@@ -495,10 +575,110 @@ public class ModelRenderer implements GLSurfaceView.Renderer {
                 // TODO: enable this only when user wants it
                 // TODO:仅在用户需要时启用此功能
                 // obj3D.drawVectorNormals(result, viewMatrix);
+
+                // the changes have been uploaded to the GPU. The queued objects are uploaded later
+                // 更改已上传到GPU。排队的对象稍后上传
+                if (changed && queued) {
+                    changedObjects.add(objData);
+                } else if (changed) {
+                    objData.setChanged(false);
+                }
             } catch (Exception ex) {
                 Log.e("ModelRenderer", "There was a problem rendering the object '" + objData.getId() + "':" + ex.getMessage(), ex);
             }
         }
+
+        // draw the opaque solids, including the instanced copies, by program, texture and front to back, and then
+        // the transparent solids back to front
+        // 先按程序、纹理和从前到后绘制不透明实体（包括实例化的副本），再从后到前绘制透明实体
+        instanceBatch.submit(renderQueue, scene.isDrawTextures(), scene.isDrawLighting(), scene.isDrawColors());
+        renderQueue.draw(RenderQueue.PASS_OPAQUE, projectionMatrix, viewMatrix, lightPosInEyeSpace, colorMask);
+        renderQueue.draw(RenderQueue.PASS_BLENDED, projectionMatrix, viewMatrix, lightPosInEyeSpace, colorMask);
+        for (int i = 0; i < changedObjects.size(); i++) {
+            changedObjects.get(i).setChanged(false);
+        }
+        changedObjects.clear();
+    }
+
+    /**
+     * @return true if the object is see-through, so it has to be drawn after the opaque ones
+     */
+    private static boolean isBlended(Object3DData objData, boolean blending) {
+        return blending && objData.getColor() != null && objData.getColor()[3] < 1;
+    }
+
+    /**
+     * @return false if the object is out of the view, so it doesn't need to be drawn
+     */
+    private boolean isInFrustum(Object3DData objData) {
+        if (objData instanceof AnimatedModel && ((AnimatedModel) objData).getAnimation() != null) {
+            // skinned vertices may go beyond the bounds of the bind pose
+            // 蒙皮顶点可能超出绑定姿势的边界
+            return true;
+        }
+        if (objData.getGeometryStream() != null && !objData.getGeometryStream().isComplete()) {
+            // bounds not known yet 边界尚未知道
+            return true;
+        }
+        float[] bounds = objData.getWorldBounds();
+        return bounds == null || frustum.intersectsBox(bounds);
+    }
+
+    /**
+     * Choose the level of detail of the object from the size of a model unit on the screen, at the nearest point
+     * of its bounds to the camera
+     * 根据模型单位在屏幕上的大小（在其边界离相机最近的点）选择对象的细节级别
+     *
+     * @return the simplified copy to draw, or the object itself
+     */
+    private Object3DData getLevelOfDetail(Object3DData objData, float[] projectionMatrix) {
+        LevelOfDetail levelOfDetail = objData.getLevelOfDetail();
+        if (levelOfDetail == null) {
+            return objData;
+        }
+        Camera camera = main.getModelActivity().getScene().getCamera();
+        eyePosition[0] = camera.xPos;
+        eyePosition[1] = camera.yPos;
+        eyePosition[2] = camera.zPos;
+        float pixelsPerUnit = LevelOfDetail.getPixelsPerUnit(objData, eyePosition, projectionMatrix[5], height,
+                getNear());
+        return levelOfDetail.select(objData, pixelsPerUnit, LevelOfDetail.DEFAULT_MAX_PIXEL_ERROR);
+    }
+
+    /**
+     * Release the GPU buffers of the objects that are no longer in the scene
+     * 释放不在场景中的对象的GPU缓冲区
+     */
+    private void releaseRemovedObjects(List<Object3DData> objects) {
+        Set<Object3DData> current = Collections.newSetFromMap(new IdentityHashMap<Object3DData, Boolean>());
+        current.addAll(objects);
+        for (Object3DData obj : lastObjects) {
+            if (current.contains(obj)) {
+                continue;
+            }
+            release(obj);
+            drawer.getOcclusionCulling().release(obj);
+            LevelOfDetail levelOfDetail = obj.getLevelOfDetail();
+            if (levelOfDetail != null) {
+                for (int i = 1; i <= levelOfDetail.size(); i++) {
+                    release(levelOfDetail.getLevel(i));
+                }
+            }
+            release(wireframes.remove(obj));
+            release(boundingBoxes.remove(obj));
+            release(normals.remove(obj));
+            release(skeleton.remove(obj));
+            infoLogged.remove(obj);
+        }
+        lastObjects = objects;
+        Log.i("ModelRenderer", "Objects: " + objects.size() + ", " + drawer.getTextureManager());
+    }
+
+    private void release(Object3DData obj) {
+        if (obj != null) {
+            drawer.getBufferManager().release(obj);
+            drawer.getTextureManager().release(obj);
+        }
     }
 
     public int getWidth() {
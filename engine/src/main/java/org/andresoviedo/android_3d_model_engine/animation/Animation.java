@@ -13,7 +13,7 @@ public class Animation {
 
     private final float length;//in seconds
     private final KeyFrame[] keyFrames;
-    private boolean initialized;
+    private CompiledAnimation compiled;
 
     /**
      * @param lengthInSeconds - the total length of the animation in seconds. 动画的总长度（以秒为单位）。
@@ -24,12 +24,16 @@ public class Animation {
         this.length = lengthInSeconds;
     }
 
-    public void setInitialized(boolean initialized) {
-        this.initialized = initialized;
-    }
-
-    public boolean isInitialized() {
-        return initialized;
+    /**
+     * @return the animation compiled into per joint channels, ready to be sampled every frame. It's compiled
+     * only the first time it's requested.
+     * 编译为每个关节通道的动画，只在第一次请求时编译
+     */
+    public synchronized CompiledAnimation getCompiled() {
+        if (compiled == null) {
+            compiled = new CompiledAnimation(this);
+        }
+        return compiled;
     }
 
     /**
@@ -0,0 +1,244 @@
+package org.andresoviedo.android_3d_model_engine.animation;
+
+import android.opengl.Matrix;
+
+import java.util.Arrays;
+
+/**
+ * Animation state of one instance of an animated model: the time, speed and blend weight of every animation
+ * layer, and the resulting matrix palette (the joint transforms loaded up to the vertex shader).
+ * <p>
+ * The {@link Skeleton} and the {@link CompiledAnimation}s are shared, so any number of instances of the same
+ * model can play at different times. Evaluating the state doesn't allocate memory. The state is not thread
+ * safe, but different states can be evaluated in parallel.
+ * 动画模型实例的动画状态：每个动画层的时间、速度和混合权重，以及结果矩阵调色板。
+ * 骨架和动画是共享的，所以同一模型的多个实例可以在不同时间播放
+ *
+ * @author andresoviedo
+ */
+public final class AnimationState {
+
+    private static final Layer[] NO_LAYERS = new Layer[0];
+
+    private final Skeleton skeleton;
+    private Layer[] layers = NO_LAYERS;
+
+    // uptime of the last update, or -1 if it was never updated
+    // 上次更新的运行时间，从未更新则为-1
+    private long lastUpdate = -1;
+
+    // model-space transform of every joint
+    // 每个关节的模型空间变换
+    private final float[] globalTransforms;
+    // model-space transform of every joint multiplied by its inverse bind transform, indexed by bone
+    // 每个关节的模型空间变换乘以其逆绑定变换，按骨骼索引
+    private final float[] palette;
+
+    // scratch memory
+    // 临时缓冲区
+    private final float[] key = new float[CompiledAnimation.KEY_SIZE];
+    private final float[] blended = new float[CompiledAnimation.KEY_SIZE];
+    private final float[] local = new float[16];
+
+    public AnimationState(Skeleton skeleton) {
+        this.skeleton = skeleton;
+        this.globalTransforms = new float[skeleton.getJointCount() * 16];
+        this.palette = new float[skeleton.getBoneCount() * 16];
+        for (int i = 0; i < skeleton.getBoneCount(); i++) {
+            Matrix.setIdentityM(palette, i * 16);
+        }
+    }
+
+    public Skeleton getSkeleton() {
+        return skeleton;
+    }
+
+    /**
+     * Play only the specified animation, removing all the other layers
+     *
+     * @param animation the animation, or null to stop animating
+     */
+    public void setAnimation(CompiledAnimation animation) {
+        layers = NO_LAYERS;
+        if (animation != null) {
+            addLayer(animation);
+        }
+    }
+
+    /**
+     * Add an animation blended with the current ones. The layer starts at time 0, with speed 1 and weight 1.
+     * 添加与当前动画混合的动画层
+     *
+     * @param animation the animation
+     * @return the index of the new layer
+     */
+    public int addLayer(CompiledAnimation animation) {
+        Layer layer = new Layer(animation);
+        layer.channels = new int[skeleton.getJointCount()];
+        for (int i = 0; i < layer.channels.length; i++) {
+            layer.channels[i] = animation.indexOf(skeleton.getName(i));
+        }
+        layer.cursors = new int[animation.getChannelCount()];
+        layers = Arrays.copyOf(layers, layers.length + 1);
+        layers[layers.length - 1] = layer;
+        return layers.length - 1;
+    }
+
+    public int getLayerCount() {
+        return layers.length;
+    }
+
+    public CompiledAnimation getAnimation(int layer) {
+        return layers[layer].animation;
+    }
+
+    public float getTime(int layer) {
+        return layers[layer].time;
+    }
+
+    public void setTime(int layer, float time) {
+        layers[layer].time = time;
+    }
+
+    public float getSpeed(int layer) {
+        return layers[layer].speed;
+    }
+
+    public void setSpeed(int layer, float speed) {
+        layers[layer].speed = speed;
+    }
+
+    public float getWeight(int layer) {
+        return layers[layer].weight;
+    }
+
+    public void setWeight(int layer, float weight) {
+        layers[layer].weight = weight;
+    }
+
+    long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    void setLastUpdate(long lastUpdate) {
+        this.lastUpdate = lastUpdate;
+    }
+
+    /**
+     * Advance the time of all the layers, looping the animations
+     * 推进所有层的时间，循环播放动画
+     *
+     * @param seconds elapsed time in seconds
+     */
+    public void advance(float seconds) {
+        for (Layer layer : layers) {
+            layer.time += seconds * layer.speed;
+            float length = layer.animation.getLength();
+            if (length > 0) {
+                layer.time %= length;
+                if (layer.time < 0) {
+                    layer.time += length;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculate the pose for the current time of the layers. The local transform of every joint is the
+     * weighted blend of the layers (the bind local transform for layers not animating the joint). It's then
+     * converted to model-space by multiplying it with the model-space transform of the parent joint. Joints
+     * are sorted so parents are always calculated first.
+     * <p>
+     * 计算各层当前时间的姿势。每个关节的局部变换是各层的加权混合，然后乘以父关节的模型空间变换。
+     *
+     * @param bindPoseOnly whether to calculate the bind pose, ignoring the animations
+     */
+    public void evaluate(boolean bindPoseOnly) {
+        final float[] bindKeys = skeleton.getBindKeys();
+        final float[] bindLocalTransforms = skeleton.getBindLocalTransforms();
+        final float[] inverseBindTransforms = skeleton.getInverseBindTransforms();
+        for (int i = 0; i < skeleton.getJointCount(); i++) {
+
+            // blend local transform
+            // 混合局部变换
+            boolean animated = false;
+            if (!bindPoseOnly) {
+                float totalWeight = 0;
+                boolean first = true;
+                for (Layer layer : layers) {
+                    if (layer.weight <= 0) {
+                        continue;
+                    }
+                    float[] source = bindKeys;
+                    int sourceOffset = i * CompiledAnimation.KEY_SIZE;
+                    int channel = layer.channels[i];
+                    if (channel >= 0) {
+                        layer.animation.sample(channel, layer.time, layer.cursors, key, 0);
+                        source = key;
+                        sourceOffset = 0;
+                        animated = true;
+                    }
+                    totalWeight += layer.weight;
+                    if (first) {
+                        System.arraycopy(source, sourceOffset, blended, 0, CompiledAnimation.KEY_SIZE);
+                        first = false;
+                    } else {
+                        CompiledAnimation.blend(blended, 0, source, sourceOffset, layer.weight / totalWeight,
+                                blended, 0);
+                    }
+                }
+            }
+
+            float[] localTransform = bindLocalTransforms;
+            int localOffset = i * 16;
+            if (animated) {
+                CompiledAnimation.toMatrix(blended, 0, local, 0);
+                localTransform = local;
+                localOffset = 0;
+            }
+
+            // apply joint local transform to current (parent) transform
+            // 将联合局部变换应用于当前（父）变换
+            int parent = skeleton.getParent(i);
+            if (parent < 0) {
+                System.arraycopy(localTransform, localOffset, globalTransforms, i * 16, 16);
+            } else {
+                Matrix.multiplyMM(globalTransforms, i * 16, globalTransforms, parent * 16, localTransform,
+                        localOffset);
+            }
+
+            // apply calculated transform to inverse matrix for joints used by vertices only
+            // 仅对顶点使用的关节应用逆绑定矩阵
+            int bone = skeleton.getBoneIndex(i);
+            if (bone >= 0) {
+                Matrix.multiplyMM(palette, bone * 16, globalTransforms, i * 16, inverseBindTransforms, i * 16);
+            }
+        }
+    }
+
+    /**
+     * @return the joint transforms of the current pose, 16 floats per bone, ready to be loaded up to the
+     * vertex shader. 当前姿势的关节变换，每个骨骼16个浮点数
+     */
+    public float[] getPalette() {
+        return palette;
+    }
+
+    private static final class Layer {
+
+        private final CompiledAnimation animation;
+        private float time;
+        private float speed = 1f;
+        private float weight = 1f;
+        // animation channel of every joint, or -1 if the joint is not animated
+        // 每个关节的动画通道，没有动画则为-1
+        private int[] channels;
+        // last key of every channel
+        // 每个通道的上一个关键帧
+        private int[] cursors;
+
+        private Layer(CompiledAnimation animation) {
+            this.animation = animation;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package org.andresoviedo.android_3d_model_engine.animation;
+
+import org.andresoviedo.util.math.Quaternion;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled form of an {@link Animation}, ready to be sampled every frame without allocating memory.
+ * <p>
+ * The key frames are split into one channel per joint. Every channel has its own key times and a flat array
+ * of key values (translation, rotation quaternion and scale), so joints with missing key frames are just
+ * interpolated between the keys they have. Channels are addressed by a dense integer id, resolved only once
+ * with {@link #indexOf(String)}.
+ * <p>
+ * Sampled keys are {@link #KEY_SIZE} floats, so they can be blended with {@link #blend} before building
+ * the matrix with {@link #toMatrix}.
+ * <p>
+ * Instances are immutable and can be shared by any number of animated models and threads.
+ * 动画的编译形式，每个关节一个通道，每帧采样时不分配内存。实例不可变，可以共享
+ *
+ * @author andresoviedo
+ */
+public final class CompiledAnimation {
+
+    // floats per key: translation (3), rotation (4) and scale (3)
+    // 每个关键帧的浮点数：平移(3)、旋转(4)和缩放(3)
+    public static final int KEY_SIZE = 10;
+
+    private final float length;
+    private final String[] jointNames;
+    private final Map<String, Integer> channels;
+    private final float[][] times;
+    private final float[][] keys;
+
+    CompiledAnimation(Animation animation) {
+        this.length = animation.getLength();
+
+        // group keys by joint
+        // 按关节分组关键帧
+        Map<String, Integer> channels = new HashMap<>();
+        List<List<Float>> timesList = new ArrayList<>();
+        List<List<JointTransform>> keysList = new ArrayList<>();
+        for (KeyFrame keyFrame : animation.getKeyFrames()) {
+            for (Map.Entry<String, JointTransform> entry : keyFrame.getJointKeyFrames().entrySet()) {
+                Integer channel = channels.get(entry.getKey());
+                if (channel == null) {
+                    channel = channels.size();
+                    channels.put(entry.getKey(), channel);
+                    timesList.add(new ArrayList<Float>());
+                    keysList.add(new ArrayList<JointTransform>());
+                }
+                timesList.get(channel).add(keyFrame.getTimeStamp());
+                keysList.get(channel).add(entry.getValue());
+            }
+        }
+
+        this.channels = channels;
+        this.jointNames = new String[channels.size()];
+        this.times = new float[channels.size()][];
+        this.keys = new float[channels.size()][];
+        for (Map.Entry<String, Integer> entry : channels.entrySet()) {
+            int channel = entry.getValue();
+            jointNames[channel] = entry.getKey();
+            List<Float> channelTimes = timesList.get(channel);
+            List<JointTransform> channelKeys = keysList.get(channel);
+            times[channel] = new float[channelTimes.size()];
+            keys[channel] = new float[channelKeys.size() * KEY_SIZE];
+            for (int i = 0; i < channelTimes.size(); i++) {
+                times[channel][i] = channelTimes.get(i);
+                decompose(channelKeys.get(i).getLocalTransform(), keys[channel], i * KEY_SIZE);
+            }
+        }
+    }
+
+    /**
+     * @return The length of the animation in seconds. 动画的长度（以秒为单位）。
+     */
+    public float getLength() {
+        return length;
+    }
+
+    /**
+     * @return number of animated joints
+     */
+    public int getChannelCount() {
+        return jointNames.length;
+    }
+
+    public String getJointName(int channel) {
+        return jointNames[channel];
+    }
+
+    /**
+     * @param jointName name of the joint
+     * @return the channel animating the joint, or -1 if the joint is not animated
+     */
+    public int indexOf(String jointName) {
+        Integer channel = channels.get(jointName);
+        return channel != null ? channel : -1;
+    }
+
+    /**
+     * Calculate the local transform of the joint animated by the channel at the specified time. The time is
+     * clamped to the first and last keys of the channel.
+     * 计算通道在指定时间的关节局部变换
+     *
+     * @param channel the channel
+     * @param time    the animation time in seconds
+     * @param cursors last key used by every channel, so consecutive frames don't need to search the keys.
+     *                Use one array per animated model (length {@link #getChannelCount()})
+     * @param out     the output key (translation, rotation and scale)
+     * @param offset  the offset of the key in the output array
+     */
+    public void sample(int channel, float time, int[] cursors, float[] out, int offset) {
+        float[] channelTimes = times[channel];
+        float[] channelKeys = keys[channel];
+        int last = channelTimes.length - 1;
+        if (last == 0 || time <= channelTimes[0]) {
+            System.arraycopy(channelKeys, 0, out, offset, KEY_SIZE);
+            return;
+        }
+        if (time >= channelTimes[last]) {
+            System.arraycopy(channelKeys, last * KEY_SIZE, out, offset, KEY_SIZE);
+            return;
+        }
+
+        // find key so times[key] <= time < times[key + 1]. Try the previous key or the next one first
+        // 查找关键帧。先尝试上一个或下一个关键帧
+        int key = cursors[channel];
+        if (key >= last || channelTimes[key] > time || channelTimes[key + 1] <= time) {
+            if (key + 1 < last && channelTimes[key + 1] <= time && time < channelTimes[key + 2]) {
+                key++;
+            } else {
+                key = search(channelTimes, time);
+            }
+            cursors[channel] = key;
+        }
+
+        float progression = (time - channelTimes[key]) / (channelTimes[key + 1] - channelTimes[key]);
+        blend(channelKeys, key * KEY_SIZE, channelKeys, (key + 1) * KEY_SIZE, progression, out, offset);
+    }
+
+    /**
+     * @return the greatest key so times[key] <= time, being times[0] <= time < times[last]
+     */
+    private static int search(float[] times, float time) {
+        int low = 0;
+        int high = times.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (times[mid] <= time) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Interpolate two keys. The translation and scale are interpolated linearly and the rotation the same way as
+     * {@link Quaternion#interpolate(Quaternion, Quaternion, float)} (nlerp). The output may be one of the inputs.
+     * 插值两个关键帧。输出可以是其中一个输入
+     */
+    public static void blend(float[] a, int aOffset, float[] b, int bOffset, float progression,
+                             float[] out, int offset) {
+        float blendI = 1f - progression;
+
+        // rotation
+        float dot = a[aOffset + 3] * b[bOffset + 3] + a[aOffset + 4] * b[bOffset + 4]
+                + a[aOffset + 5] * b[bOffset + 5] + a[aOffset + 6] * b[bOffset + 6];
+        float blend = dot < 0 ? -progression : progression;
+        float x = blendI * a[aOffset + 3] + blend * b[bOffset + 3];
+        float y = blendI * a[aOffset + 4] + blend * b[bOffset + 4];
+        float z = blendI * a[aOffset + 5] + blend * b[bOffset + 5];
+        float w = blendI * a[aOffset + 6] + blend * b[bOffset + 6];
+        float mag = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+
+        // translation and scale
+        for (int i = 0; i < 3; i++) {
+            out[offset + i] = blendI * a[aOffset + i] + progression * b[bOffset + i];
+            out[offset + 7 + i] = blendI * a[aOffset + 7 + i] + progression * b[bOffset + 7 + i];
+        }
+        out[offset + 3] = x / mag;
+        out[offset + 4] = y / mag;
+        out[offset + 5] = z / mag;
+        out[offset + 6] = w / mag;
+    }
+
+    /**
+     * Build the matrix translation * rotation * scale of the key
+     * 构建关键帧的矩阵：平移*旋转*缩放
+     */
+    public static void toMatrix(float[] key, int keyOffset, float[] out, int offset) {
+        Quaternion.toRotationMatrix(key[keyOffset + 3], key[keyOffset + 4], key[keyOffset + 5], key[keyOffset + 6],
+                out, offset);
+        for (int column = 0; column < 3; column++) {
+            float scale = key[keyOffset + 7 + column];
+            out[offset + column * 4] *= scale;
+            out[offset + column * 4 + 1] *= scale;
+            out[offset + column * 4 + 2] *= scale;
+        }
+        out[offset + 12] = key[keyOffset];
+        out[offset + 13] = key[keyOffset + 1];
+        out[offset + 14] = key[keyOffset + 2];
+    }
+
+    /**
+     * Split the matrix into translation, rotation and scale. A mirroring matrix (negative determinant) gets a
+     * negative x scale, so the rest is still a rotation and {@link #toMatrix} builds the same matrix again.
+     * 将矩阵分解为平移、旋转和缩放。镜像矩阵（行列式为负）得到负的x缩放，因此其余部分仍是旋转
+     */
+    static void decompose(float[] matrix, float[] out, int offset) {
+        float[] rotation = new float[16];
+        for (int column = 0; column < 3; column++) {
+            float x = matrix[column * 4];
+            float y = matrix[column * 4 + 1];
+            float z = matrix[column * 4 + 2];
+            float scale = (float) Math.sqrt(x * x + y * y + z * z);
+            float divisor = scale != 0 ? scale : 1;
+            rotation[column * 4] = x / divisor;
+            rotation[column * 4 + 1] = y / divisor;
+            rotation[column * 4 + 2] = z / divisor;
+            out[offset + 7 + column] = scale;
+        }
+        if (determinant(matrix) < 0) {
+            out[offset + 7] = -out[offset + 7];
+            rotation[0] = -rotation[0];
+            rotation[1] = -rotation[1];
+            rotation[2] = -rotation[2];
+        }
+        rotation[15] = 1;
+        Quaternion quaternion = Quaternion.fromMatrix(rotation);
+        out[offset] = matrix[12];
+        out[offset + 1] = matrix[13];
+        out[offset + 2] = matrix[14];
+        out[offset + 3] = quaternion.getX();
+        out[offset + 4] = quaternion.getY();
+        out[offset + 5] = quaternion.getZ();
+        out[offset + 6] = quaternion.getW();
+    }
+
+    /**
+     * @return determinant of the upper 3x3 part of the matrix 矩阵左上3x3部分的行列式
+     */
+    private static float determinant(float[] m) {
+        return m[0] * (m[5] * m[10] - m[6] * m[9]) - m[4] * (m[1] * m[10] - m[2] * m[9])
+                + m[8] * (m[1] * m[6] - m[2] * m[5]);
+    }
+}
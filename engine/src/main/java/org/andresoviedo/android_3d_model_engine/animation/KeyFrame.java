@@ -43,7 +43,7 @@ public class KeyFrame {
      * @return The time in seconds of the keyframe in the animation.
      * 动画中关键帧的时间（以秒为单位）。
      */
-    protected float getTimeStamp() {
+    public float getTimeStamp() {
         return timeStamp;
     }
 
@@ -54,7 +54,7 @@ public class KeyFrame {
      * keyframe.
      * 该关键帧处所有关节、动画的所需骨骼空间变换，由它们对应的关节名称索引。这基本上代表了这个关键帧的“姿势”。
      */
-    protected Map<String, JointTransform> getJointKeyFrames() {
+    public Map<String, JointTransform> getJointKeyFrames() {
         return pose;
     }
 
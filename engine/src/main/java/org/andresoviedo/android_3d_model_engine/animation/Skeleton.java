@@ -0,0 +1,111 @@
+package org.andresoviedo.android_3d_model_engine.animation;
+
+import android.opengl.Matrix;
+
+import org.andresoviedo.android_3d_model_engine.services.collada.entities.Joint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable joint hierarchy of an animated model, flattened into arrays. Joints are sorted in depth first
+ * order, so the parent of a joint always comes before the joint itself.
+ * <p>
+ * The skeleton is built once per loaded model and can be shared by any number of instances, each one with
+ * its own {@link AnimationState}.
+ * 动画模型的不可变关节层次，展开为数组（深度优先顺序）。每个加载的模型只构建一次，可被多个实例共享
+ *
+ * @author andresoviedo
+ */
+public final class Skeleton {
+
+    private final String[] names;
+    // index of the parent joint, or -1 for the root
+    // 父关节的索引，根关节为-1
+    private final int[] parents;
+    // index of the joint in the shader (the matrix palette), or -1 if no vertex uses it
+    // 关节在着色器中的索引（矩阵调色板），没有顶点使用则为-1
+    private final int[] boneIndices;
+    // local bind transform of every joint, as keys (see CompiledAnimation.KEY_SIZE) and as matrices
+    // 每个关节的局部绑定变换
+    private final float[] bindKeys;
+    private final float[] bindLocalTransforms;
+    private final float[] inverseBindTransforms;
+    private final int boneCount;
+
+    /**
+     * @param rootJoint the root joint, with the inverse bind transforms already calculated
+     * @param boneCount number of joints used by the vertices (size of the matrix palette)
+     */
+    public Skeleton(Joint rootJoint, int boneCount) {
+        List<Joint> jointList = new ArrayList<>();
+        List<Integer> parentList = new ArrayList<>();
+        flatten(rootJoint, -1, jointList, parentList);
+
+        int count = jointList.size();
+        this.boneCount = boneCount;
+        this.names = new String[count];
+        this.parents = new int[count];
+        this.boneIndices = new int[count];
+        this.bindKeys = new float[count * CompiledAnimation.KEY_SIZE];
+        this.bindLocalTransforms = new float[count * 16];
+        this.inverseBindTransforms = new float[count * 16];
+        for (int i = 0; i < count; i++) {
+            Joint joint = jointList.get(i);
+            names[i] = joint.getName();
+            parents[i] = parentList.get(i);
+            boneIndices[i] = joint.getIndex() < boneCount ? joint.getIndex() : -1;
+            System.arraycopy(joint.getBindLocalTransform(), 0, bindLocalTransforms, i * 16, 16);
+            CompiledAnimation.decompose(joint.getBindLocalTransform(), bindKeys, i * CompiledAnimation.KEY_SIZE);
+            if (joint.getInverseBindTransform() != null) {
+                System.arraycopy(joint.getInverseBindTransform(), 0, inverseBindTransforms, i * 16, 16);
+            } else {
+                Matrix.setIdentityM(inverseBindTransforms, i * 16);
+            }
+        }
+    }
+
+    private static void flatten(Joint joint, int parent, List<Joint> joints, List<Integer> parents) {
+        int index = joints.size();
+        joints.add(joint);
+        parents.add(parent);
+        for (int i = 0; i < joint.getChildren().size(); i++) {
+            flatten(joint.getChildren().get(i), index, joints, parents);
+        }
+    }
+
+    public int getJointCount() {
+        return names.length;
+    }
+
+    /**
+     * @return size of the matrix palette
+     */
+    public int getBoneCount() {
+        return boneCount;
+    }
+
+    public String getName(int joint) {
+        return names[joint];
+    }
+
+    public int getParent(int joint) {
+        return parents[joint];
+    }
+
+    public int getBoneIndex(int joint) {
+        return boneIndices[joint];
+    }
+
+    float[] getBindKeys() {
+        return bindKeys;
+    }
+
+    float[] getBindLocalTransforms() {
+        return bindLocalTransforms;
+    }
+
+    float[] getInverseBindTransforms() {
+        return inverseBindTransforms;
+    }
+}
@@ -0,0 +1,594 @@
+package org.andresoviedo.android_3d_model_engine.collision;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounding volume hierarchy of the triangles of an object, used to find the triangle hit by a ray (picking).
+ * <p>
+ * The tree is stored in flat arrays: the bounds of every node (6 floats), the children or triangles of every
+ * node (2 ints) and the triangles ({@link TriangleArrays}) sorted so the triangles of a leaf are consecutive. It's built with the surface area heuristic (SAH) on binned centroids, and large subtrees are built
+ * in parallel in the fork-join pool. Triangles are kept in model space, so the tree is still valid when the object
+ * is moved, and rays must be transformed to model space before querying.
+ * <p>
+ * 对象三角形的包围体层次结构，用于查找光线击中的三角形（拾取）。树存储在扁平数组中，使用表面积启发式（SAH）构建，
+ * 大的子树在fork-join池中并行构建。三角形保存在模型空间中，查询前必须将光线变换到模型空间。
+ *
+ * @author andresoviedo
+ */
+public final class BVH {
+
+    // buckets to evaluate the split of a node 评估节点分割的桶数
+    private static final int BINS = 16;
+    // nodes with fewer triangles are never split 三角形少于此数的节点不再分割
+    private static final int MIN_SPLIT = 4;
+    // nodes with more triangles are always split, even if SAH says it's not worth it
+    private static final int MAX_LEAF = 32;
+    private static final int MAX_DEPTH = 64;
+    // subtrees with more triangles are built in a separate fork-join task
+    // 三角形多于此数的子树在单独的fork-join任务中构建
+    private static final int PARALLEL_THRESHOLD = 8192;
+    // cost of visiting a node, relative to testing a triangle 访问节点的代价，相对于测试三角形
+    private static final float TRAVERSAL_COST = 1f;
+    // rays per fork-join task in batch queries 批量查询中每个fork-join任务的光线数
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * Triangles, in leaf order
+     */
+    private final TriangleArrays triangles;
+    /**
+     * Bounds of the nodes (minX,minY,minZ,maxX,maxY,maxZ). Node 0 is the root
+     */
+    private final float[] bounds;
+    /**
+     * For leaves: first triangle and number of triangles. For inner nodes: left child (the right child is the
+     * next one) and 0.
+     * 叶子：第一个三角形和三角形数量。内部节点：左子节点（右子节点紧随其后）和0
+     */
+    private final int[] nodes;
+    private final int nodeCount;
+
+    // traversal stack, reused between queries 遍历栈，在查询之间重用
+    private final int[] stack = new int[MAX_DEPTH * 2 + 2];
+
+    private BVH(TriangleArrays triangles, float[] bounds, int[] nodes, int nodeCount) {
+        this.triangles = triangles;
+        this.bounds = bounds;
+        this.nodes = nodes;
+        this.nodeCount = nodeCount;
+    }
+
+    public int getTriangleCount() {
+        return triangles.size();
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Build the hierarchy for the triangles of the object
+     * 为对象的三角形构建层次结构
+     *
+     * @param object the object, drawn as {@link GLES20#GL_TRIANGLES}
+     * @return the hierarchy, or null if the object has no triangles
+     */
+    public static BVH build(Object3DData object) {
+        float[] triangles = getTriangles(object);
+        if (triangles == null || triangles.length == 0) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        BVH ret = build(triangles);
+        Log.i("BVH", "Built BVH for " + object.getId() + ". triangles: " + ret.getTriangleCount()
+                + ", nodes: " + ret.nodeCount + ", time: " + (System.currentTimeMillis() - start) + " ms");
+        return ret;
+    }
+
+    /**
+     * @param triangles triangle vertices, 9 floats per triangle. The array is reordered.
+     */
+    static BVH build(float[] triangles) {
+        int count = triangles.length / 9;
+        Builder builder = new Builder(triangles, count);
+        if (count > PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(builder.new BuildTask(0, 0, count, 0));
+        } else {
+            builder.build(0, 0, count, 0);
+        }
+        return builder.finish();
+    }
+
+    /**
+     * @return the model space vertices of the triangles, 9 floats per triangle, or null if the object is not
+     * drawn with triangles
+     */
+    private static float[] getTriangles(Object3DData object) {
+        if (object.getDrawMode() != GLES20.GL_TRIANGLES || object.getDrawModeList() != null) {
+            return null;
+        }
+        // indices point to the vertex array when it's available (i.e. indexed obj)
+        // 索引指向顶点数组
+        FloatBuffer buffer = object.getVertexArrayBuffer() != null ? object.getVertexArrayBuffer()
+                : object.getVertexBuffer();
+        if (buffer == null) {
+            return null;
+        }
+        buffer = buffer.asReadOnlyBuffer();
+        IntBuffer drawOrder = object.getDrawOrderBuffer() != null && !object.isDrawUsingArrays() ?
+                object.getDrawOrder() : null;
+        float[] ret;
+        if (drawOrder == null) {
+            // vertex array contains vertex in sequence
+            // 顶点数组按顺序包含顶点
+            ret = new float[buffer.capacity() / 9 * 9];
+            buffer.position(0);
+            buffer.get(ret);
+        } else {
+            int count = drawOrder.capacity() / 3;
+            ret = new float[count * 9];
+            for (int i = 0; i < count * 3; i++) {
+                int v = drawOrder.get(i) * 3;
+                ret[i * 3] = buffer.get(v);
+                ret[i * 3 + 1] = buffer.get(v + 1);
+                ret[i * 3 + 2] = buffer.get(v + 2);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Find the nearest triangle hit by the ray. Nothing is allocated. Rays are given in model space, and the
+     * distance is measured in units of the direction, so it's the same in world space if both points of the
+     * ray are transformed.
+     * 查找光线击中的最近三角形。不分配内存
+     *
+     * @param origin    ray origin (x,y,z) 射线起点
+     * @param direction ray direction (x,y,z) 射线方向
+     * @return distance to the hit along the direction, or -1 if no triangle is hit 到命中点的距离，未命中时为-1
+     */
+    public synchronized float intersect(float[] origin, float[] direction) {
+        return intersect(origin[0], origin[1], origin[2], direction[0], direction[1], direction[2], stack);
+    }
+
+    /**
+     * Find the nearest triangle hit by every ray (i.e. hover picking, measurements or coverage tests). Large
+     * batches are split in the fork-join pool, so they are answered by all the cores.
+     * 查找每条光线击中的最近三角形（例如悬停拾取、测量或覆盖测试）。大批量在fork-join池中拆分，由所有核心处理
+     *
+     * @param origins    ray origins in model space, 3 floats per ray 模型空间中的光线起点，每条光线3个浮点数
+     * @param directions ray directions in model space, 3 floats per ray 光线方向，每条光线3个浮点数
+     * @param distances  where to write the distance to the hit of every ray, or -1 if it misses 每条光线的命中距离
+     * @param count      number of rays 光线数
+     */
+    public void intersect(float[] origins, float[] directions, float[] distances, int count) {
+        if (count > BATCH_SIZE) {
+            ForkJoinPool.commonPool().invoke(new BatchTask(origins, directions, distances, 0, count));
+        } else {
+            synchronized (this) {
+                intersect(origins, directions, distances, 0, count, stack);
+            }
+        }
+    }
+
+    private void intersect(float[] origins, float[] directions, float[] distances, int start, int end,
+                           int[] stack) {
+        for (int i = start; i < end; i++) {
+            int r = i * 3;
+            distances[i] = intersect(origins[r], origins[r + 1], origins[r + 2],
+                    directions[r], directions[r + 1], directions[r + 2], stack);
+        }
+    }
+
+    private final class BatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final float[] origins, directions, distances;
+        private final int start, end;
+
+        private BatchTask(float[] origins, float[] directions, float[] distances, int start, int end) {
+            this.origins = origins;
+            this.directions = directions;
+            this.distances = distances;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= BATCH_SIZE) {
+                // a stack for all the rays of the task 任务的所有光线共用一个栈
+                intersect(origins, directions, distances, start, end, new int[MAX_DEPTH * 2 + 2]);
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new BatchTask(origins, directions, distances, start, middle),
+                    new BatchTask(origins, directions, distances, middle, end));
+        }
+    }
+
+    /**
+     * Traverse the tree for the ray, visiting the nearest child first
+     *
+     * @param stack scratch stack of nodes, not shared with other threads
+     * @return distance to the hit along the direction, or -1 if no triangle is hit
+     */
+    private float intersect(float ox, float oy, float oz, float dx, float dy, float dz, int[] stack) {
+        float invX = 1 / dx, invY = 1 / dy, invZ = 1 / dz;
+        float nearest = Float.MAX_VALUE;
+
+        int top = 0;
+        if (boxDistance(0, ox, oy, oz, invX, invY, invZ, nearest) >= 0) {
+            stack[top++] = 0;
+        }
+        while (top > 0) {
+            int node = stack[--top];
+            int first = nodes[node * 2];
+            int count = nodes[node * 2 + 1];
+            if (count > 0) {
+                nearest = triangles.nearest(first, count, ox, oy, oz, dx, dy, dz, nearest);
+                continue;
+            }
+            // visit the nearest child first, so the farthest may be discarded by distance
+            // 先访问最近的子节点，这样最远的可能因距离被丢弃
+            int left = first, right = first + 1;
+            float tLeft = boxDistance(left, ox, oy, oz, invX, invY, invZ, nearest);
+            float tRight = boxDistance(right, ox, oy, oz, invX, invY, invZ, nearest);
+            if (tLeft >= 0 && tRight >= 0) {
+                if (tLeft <= tRight) {
+                    stack[top++] = right;
+                    stack[top++] = left;
+                } else {
+                    stack[top++] = left;
+                    stack[top++] = right;
+                }
+            } else if (tLeft >= 0) {
+                stack[top++] = left;
+            } else if (tRight >= 0) {
+                stack[top++] = right;
+            }
+        }
+        return nearest != Float.MAX_VALUE ? nearest : -1;
+    }
+
+    /**
+     * Slab test. The axes the ray is parallel to (the inverse of the direction is infinite) are tested by position,
+     * because the origin may lie on the plane of the box, and 0 * infinity would make the distances NaN.
+     * 平板测试。光线平行的轴按位置测试，因为起点可能位于盒子的平面上，0乘以无穷大会得到NaN
+     *
+     * @return distance where the ray enters the box of the node, or -1 if it's not hit before maxDistance
+     */
+    private float boxDistance(int node, float ox, float oy, float oz, float invX, float invY, float invZ,
+                              float maxDistance) {
+        int offset = node * 6;
+        float tNear = 0;
+        float tFar = maxDistance;
+        if (Float.isInfinite(invX)) {
+            if (ox < bounds[offset] || ox > bounds[offset + 3]) {
+                return -1;
+            }
+        } else {
+            float t1 = (bounds[offset] - ox) * invX;
+            float t2 = (bounds[offset + 3] - ox) * invX;
+            tNear = Math.max(tNear, Math.min(t1, t2));
+            tFar = Math.min(tFar, Math.max(t1, t2));
+        }
+        if (Float.isInfinite(invY)) {
+            if (oy < bounds[offset + 1] || oy > bounds[offset + 4]) {
+                return -1;
+            }
+        } else {
+            float t1 = (bounds[offset + 1] - oy) * invY;
+            float t2 = (bounds[offset + 4] - oy) * invY;
+            tNear = Math.max(tNear, Math.min(t1, t2));
+            tFar = Math.min(tFar, Math.max(t1, t2));
+        }
+        if (Float.isInfinite(invZ)) {
+            if (oz < bounds[offset + 2] || oz > bounds[offset + 5]) {
+                return -1;
+            }
+        } else {
+            float t1 = (bounds[offset + 2] - oz) * invZ;
+            float t2 = (bounds[offset + 5] - oz) * invZ;
+            tNear = Math.max(tNear, Math.min(t1, t2));
+            tFar = Math.min(tFar, Math.max(t1, t2));
+        }
+        return tNear <= tFar ? tNear : -1;
+    }
+
+    /**
+     * Builds the nodes, sorting the triangles in place. Subtrees write disjoint ranges of the arrays, so they can
+     * be built in parallel.
+     * 构建节点，原地排序三角形。子树写入数组的不相交范围，因此可以并行构建
+     */
+    private static final class Builder {
+
+        private final float[] triangles;
+        private final float[] centroids;
+        private final float[] bounds;
+        private final int[] nodes;
+        private final AtomicInteger nodeCount = new AtomicInteger(1);
+
+        private Builder(float[] triangles, int count) {
+            this.triangles = triangles;
+            this.centroids = new float[count * 3];
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < 3; j++) {
+                    centroids[i * 3 + j] = (triangles[i * 9 + j] + triangles[i * 9 + 3 + j]
+                            + triangles[i * 9 + 6 + j]) / 3;
+                }
+            }
+            // a binary tree with a triangle per leaf at most 二叉树最多每个叶子一个三角形
+            int maxNodes = Math.max(1, 2 * count - 1);
+            this.bounds = new float[maxNodes * 6];
+            this.nodes = new int[maxNodes * 2];
+        }
+
+        private final class BuildTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final int node, start, end, depth;
+
+            private BuildTask(int node, int start, int end, int depth) {
+                this.node = node;
+                this.start = start;
+                this.end = end;
+                this.depth = depth;
+            }
+
+            @Override
+            protected void compute() {
+                build(node, start, end, depth);
+            }
+        }
+
+        /**
+         * Build the subtree. The bounds of the node are already set, except for the root.
+         * 构建子树。除根节点外，节点的边界已经设置
+         */
+        private void build(int node, int start, int end, int depth) {
+            int count = end - start;
+            if (node == 0) {
+                resetBox(bounds, 0);
+                for (int i = start; i < end; i++) {
+                    for (int v = 0; v < 9; v += 3) {
+                        grow(bounds, 0, triangles, i * 9 + v);
+                    }
+                }
+            }
+
+            int split = -1;
+            float[] childBounds = new float[12];
+            if (count >= MIN_SPLIT && depth < MAX_DEPTH) {
+                split = partition(node, start, end, childBounds);
+            }
+            if (split == -1) {
+                nodes[node * 2] = start;
+                nodes[node * 2 + 1] = count;
+                return;
+            }
+
+            int left = nodeCount.getAndAdd(2);
+            System.arraycopy(childBounds, 0, bounds, left * 6, 12);
+            nodes[node * 2] = left;
+            nodes[node * 2 + 1] = 0;
+            if (count > PARALLEL_THRESHOLD) {
+                RecursiveAction.invokeAll(new BuildTask(left, start, split, depth + 1),
+                        new BuildTask(left + 1, split, end, depth + 1));
+            } else {
+                build(left, start, split, depth + 1);
+                build(left + 1, split, end, depth + 1);
+            }
+        }
+
+        /**
+         * Find the cheapest split according to the SAH, partition the triangles and set the bounds of the children.
+         * The triangles are binned by centroid along the 3 axes in a single pass.
+         * 根据SAH找到代价最小的分割，划分三角形并设置子节点的边界。三角形在一次遍历中沿3个轴按质心分桶
+         *
+         * @param childBounds where to write the bounds of the left and right children
+         * @return index of the first triangle of the right child, or -1 if the node should be a leaf
+         */
+        private int partition(int node, int start, int end, float[] childBounds) {
+            int count = end - start;
+
+            // bounds of the centroids 质心的边界
+            float[] centroidBox = new float[6];
+            resetBox(centroidBox, 0);
+            for (int i = start; i < end; i++) {
+                grow(centroidBox, 0, centroids, i * 3);
+            }
+            float[] scales = new float[3];
+            for (int axis = 0; axis < 3; axis++) {
+                float extent = centroidBox[axis + 3] - centroidBox[axis];
+                scales[axis] = extent > 0 ? BINS / extent : 0;
+            }
+
+            // bin the triangles 将三角形分桶
+            int[] binCounts = new int[3 * BINS];
+            float[] binBounds = new float[3 * BINS * 6];
+            for (int b = 0; b < 3 * BINS; b++) {
+                resetBox(binBounds, b * 6);
+            }
+            for (int i = start; i < end; i++) {
+                int t = i * 9;
+                float minX = Math.min(Math.min(triangles[t], triangles[t + 3]), triangles[t + 6]);
+                float minY = Math.min(Math.min(triangles[t + 1], triangles[t + 4]), triangles[t + 7]);
+                float minZ = Math.min(Math.min(triangles[t + 2], triangles[t + 5]), triangles[t + 8]);
+                float maxX = Math.max(Math.max(triangles[t], triangles[t + 3]), triangles[t + 6]);
+                float maxY = Math.max(Math.max(triangles[t + 1], triangles[t + 4]), triangles[t + 7]);
+                float maxZ = Math.max(Math.max(triangles[t + 2], triangles[t + 5]), triangles[t + 8]);
+                int c = i * 3;
+                for (int axis = 0; axis < 3; axis++) {
+                    if (scales[axis] == 0) {
+                        continue;
+                    }
+                    int b = axis * BINS + bin(centroids[c + axis], centroidBox[axis], scales[axis]);
+                    binCounts[b]++;
+                    int o = b * 6;
+                    if (minX < binBounds[o]) binBounds[o] = minX;
+                    if (minY < binBounds[o + 1]) binBounds[o + 1] = minY;
+                    if (minZ < binBounds[o + 2]) binBounds[o + 2] = minZ;
+                    if (maxX > binBounds[o + 3]) binBounds[o + 3] = maxX;
+                    if (maxY > binBounds[o + 4]) binBounds[o + 4] = maxY;
+                    if (maxZ > binBounds[o + 5]) binBounds[o + 5] = maxZ;
+                }
+            }
+
+            // sweep from the right, then from the left 从右向左扫描，然后从左向右
+            float bestCost = Float.MAX_VALUE;
+            int bestAxis = -1;
+            int bestBin = -1;
+            float[] rightAreas = new float[BINS];
+            float[] accumulated = new float[6];
+            for (int axis = 0; axis < 3; axis++) {
+                if (scales[axis] == 0) {
+                    continue;
+                }
+                int first = axis * BINS;
+                resetBox(accumulated, 0);
+                for (int b = BINS - 1; b > 0; b--) {
+                    merge(accumulated, binBounds, (first + b) * 6);
+                    rightAreas[b] = area(accumulated);
+                }
+                resetBox(accumulated, 0);
+                int leftCount = 0;
+                for (int b = 0; b < BINS - 1; b++) {
+                    merge(accumulated, binBounds, (first + b) * 6);
+                    leftCount += binCounts[first + b];
+                    int rightCount = count - leftCount;
+                    if (leftCount == 0 || rightCount == 0) {
+                        continue;
+                    }
+                    float cost = leftCount * area(accumulated) + rightCount * rightAreas[b + 1];
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestBin = b;
+                    }
+                }
+            }
+
+            if (bestAxis == -1) {
+                // all the centroids are in the same place: split in half if there are too many
+                // 所有质心都在同一位置：如果太多则对半分割
+                if (count <= MAX_LEAF) {
+                    return -1;
+                }
+                int split = start + count / 2;
+                setBounds(childBounds, 0, start, split);
+                setBounds(childBounds, 6, split, end);
+                return split;
+            }
+            float parentArea = area(bounds, node * 6);
+            float splitCost = TRAVERSAL_COST + (parentArea > 0 ? bestCost / parentArea : count);
+            if (splitCost >= count && count <= MAX_LEAF) {
+                return -1;
+            }
+
+            // children bounds from the bins 由桶得到子节点的边界
+            int first = bestAxis * BINS;
+            resetBox(childBounds, 0);
+            resetBox(childBounds, 6);
+            for (int b = 0; b < BINS; b++) {
+                mergeInto(childBounds, b <= bestBin ? 0 : 6, binBounds, (first + b) * 6);
+            }
+
+            // partition in place 原地划分
+            float min = centroidBox[bestAxis];
+            float scale = scales[bestAxis];
+            int i = start, j = end - 1;
+            while (i <= j) {
+                if (bin(centroids[i * 3 + bestAxis], min, scale) <= bestBin) {
+                    i++;
+                } else {
+                    swap(i, j--);
+                }
+            }
+            return i;
+        }
+
+        private void setBounds(float[] box, int offset, int start, int end) {
+            resetBox(box, offset);
+            for (int i = start; i < end; i++) {
+                for (int v = 0; v < 9; v += 3) {
+                    grow(box, offset, triangles, i * 9 + v);
+                }
+            }
+        }
+
+        private BVH finish() {
+            return new BVH(new TriangleArrays(triangles), bounds, nodes, nodeCount.get());
+        }
+
+        /**
+         * Swap 2 triangles (and their centroids), so the triangles of a node are always consecutive
+         * 交换2个三角形（及其质心），使节点的三角形始终连续
+         */
+        private void swap(int i, int j) {
+            for (int k = 0; k < 9; k++) {
+                float tmp = triangles[i * 9 + k];
+                triangles[i * 9 + k] = triangles[j * 9 + k];
+                triangles[j * 9 + k] = tmp;
+            }
+            for (int k = 0; k < 3; k++) {
+                float tmp = centroids[i * 3 + k];
+                centroids[i * 3 + k] = centroids[j * 3 + k];
+                centroids[j * 3 + k] = tmp;
+            }
+        }
+
+        private static int bin(float centroid, float min, float scale) {
+            int b = (int) ((centroid - min) * scale);
+            return b < 0 ? 0 : b >= BINS ? BINS - 1 : b;
+        }
+
+        private static void resetBox(float[] box, int offset) {
+            box[offset] = box[offset + 1] = box[offset + 2] = Float.MAX_VALUE;
+            box[offset + 3] = box[offset + 4] = box[offset + 5] = -Float.MAX_VALUE;
+        }
+
+        private static void grow(float[] box, int offset, float[] points, int point) {
+            for (int j = 0; j < 3; j++) {
+                float value = points[point + j];
+                if (value < box[offset + j]) box[offset + j] = value;
+                if (value > box[offset + 3 + j]) box[offset + 3 + j] = value;
+            }
+        }
+
+        private static void merge(float[] box, float[] other, int offset) {
+            mergeInto(box, 0, other, offset);
+        }
+
+        private static void mergeInto(float[] box, int boxOffset, float[] other, int offset) {
+            for (int j = 0; j < 3; j++) {
+                if (other[offset + j] < box[boxOffset + j]) box[boxOffset + j] = other[offset + j];
+                if (other[offset + 3 + j] > box[boxOffset + 3 + j]) box[boxOffset + 3 + j] = other[offset + 3 + j];
+            }
+        }
+
+        private static float area(float[] box) {
+            return area(box, 0);
+        }
+
+        private static float area(float[] box, int offset) {
+            float x = box[offset + 3] - box[offset], y = box[offset + 4] - box[offset + 1],
+                    z = box[offset + 5] - box[offset + 2];
+            if (x < 0 || y < 0 || z < 0) {
+                return 0;
+            }
+            return 2 * (x * y + y * z + z * x);
+        }
+    }
+}
@@ -1,11 +1,10 @@
 package org.andresoviedo.android_3d_model_engine.collision;
 
-import android.opengl.GLU;
+import android.opengl.Matrix;
 import android.util.Log;
 
 import org.andresoviedo.android_3d_model_engine.model.BoundingBox;
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
-import org.andresoviedo.util.math.Math3DUtils;
 
 import java.util.Arrays;
 import java.util.List;
@@ -32,10 +31,10 @@ public class CollisionDetection {
      * @return the nearest object intersected by the specified coordinates or null 与指定坐标或空坐标相交的最近对象
      */
     public static Object3DData getBoxIntersection(List<Object3DData> objects, int width, int height, float[] modelViewMatrix, float[] modelProjectionMatrix, float windowX, float windowY) {
-        float[] nearHit = unProject(width, height, modelViewMatrix, modelProjectionMatrix, windowX, windowY, 0);
-        float[] farHit = unProject(width, height, modelViewMatrix, modelProjectionMatrix, windowX, windowY, 1);
-        float[] direction = Math3DUtils.substract(farHit, nearHit);
-        Math3DUtils.normalize(direction);
+        float[] nearHit = new float[3];
+        float[] direction = new float[3];
+        getRays(width, height, modelViewMatrix, modelProjectionMatrix, new float[]{windowX, windowY}, 1, nearHit,
+                direction);
         return getBoxIntersection(objects, nearHit, direction);
     }
 
@@ -56,9 +55,9 @@ public class CollisionDetection {
                 continue;
             }
             BoundingBox box = obj.getBoundingBox();
-            float[] intersection = getBoxIntersection(p1, direction, box);
-            if (intersection[0] > 0 && intersection[0] <= intersection[1] && intersection[0] < min) {
-                min = intersection[0];
+            float distance = getBoxDistance(p1, direction, box);
+            if (distance > 0 && distance < min) {
+                min = distance;
                 ret = obj;
             }
         }
@@ -99,63 +98,72 @@ public class CollisionDetection {
     }*/
 
     /**
-     * Return true if the specified ray intersects the bounding box
-     * 如果指定的光线与边界框相交，则返回true
-     *
-     * @param origin origin of the ray      射线的起源
-     * @param dir    direction of the ray   射线的方向
-     * @param b      bounding box           包围盒
-     * @return true if the specified ray intersects the bounding box, false otherwise 如果指定的光线与边界框相交，则为true，否则为false
-     */
-    private static boolean isBoxIntersection(float[] origin, float[] dir, BoundingBox b) {
-        float[] intersection = getBoxIntersection(origin, dir, b);
-        return intersection[0] > 0 && intersection[0] < intersection[1];
-    }
-
-    /**
-     * Get the intersection points of the near and far plane for the specified ray and bounding box
-     * 获取指定光线和边界框的近平面和远平面的交点
+     * Get the distance to the near plane of the bounding box for the specified ray
+     * 获取指定光线到边界框近平面的距离
      *
      * @param origin the ray origin         射线起源
      * @param dir    the ray direction      射线方向
      * @param b      the bounding box       边界框
-     * @return the intersection points of the near and far plane 近平面和远平面的交点
+     * @return the distance to the near plane, or -1 if the box is not hit 到近平面的距离，未命中时为-1
      */
-    private static float[] getBoxIntersection(float[] origin, float[] dir, BoundingBox b) {
-        float[] tMin = Math3DUtils.divide(Math3DUtils.substract(b.getMin(), origin), dir);
-        float[] tMax = Math3DUtils.divide(Math3DUtils.substract(b.getMax(), origin), dir);
-        float[] t1 = Math3DUtils.min(tMin, tMax);
-        float[] t2 = Math3DUtils.max(tMin, tMax);
-        float tNear = Math.max(Math.max(t1[0], t1[1]), t1[2]);
-        float tFar = Math.min(Math.min(t2[0], t2[1]), t2[2]);
-        return new float[]{tNear, tFar};
+    private static float getBoxDistance(float[] origin, float[] dir, BoundingBox b) {
+        float[] min = b.getMin();
+        float[] max = b.getMax();
+        float tNear = -Float.MAX_VALUE;
+        float tFar = Float.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            float t1 = (min[i] - origin[i]) / dir[i];
+            float t2 = (max[i] - origin[i]) / dir[i];
+            tNear = Math.max(tNear, Math.min(t1, t2));
+            tFar = Math.min(tFar, Math.max(t1, t2));
+        }
+        return tNear <= tFar ? tNear : -1;
     }
 
     /**
-     * Map window coordinates to object coordinates.
-     * 将窗口坐标映射到对象坐标。
+     * Map window coordinates to rays in world space. The matrices are inverted once for all the rays.
+     * 将窗口坐标映射到世界空间中的光线。矩阵对所有光线只求逆一次。
      *
-     * @param height                viewport height         视口高度
      * @param width                 viewport width          视口宽度
+     * @param height                viewport height         视口高度
      * @param modelViewMatrix       model view matrix       模型视图矩阵
      * @param modelProjectionMatrix model projection matrix 模型投影矩阵
-     * @param rx                    x point                 x点
-     * @param ry                    y point                 y点
-     * @param rz                    z point                 z点
-     * @return the corresponding near and far vertex for the specified window coordinates 指定窗口坐标对应的近顶点和远顶点
+     * @param windowCoords          window coordinates (x,y) of every ray 每条光线的窗口坐标
+     * @param count                 number of rays          光线数
+     * @param origins               where to write the origin of every ray, on the near plane (3 floats per ray)
+     * @param directions            where to write the normalized direction of every ray (3 floats per ray)
+     * @return false if the matrices can't be inverted
      */
-    private static float[] unProject(int width, int height, float[] modelViewMatrix, float[] modelProjectionMatrix,
-                                     float rx, float ry, float rz) {
-        float[] xyzw = {0, 0, 0, 0};
-        ry = (float) height - ry;
-        int[] viewport = {0, 0, width, height};
-        GLU.gluUnProject(rx, ry, rz, modelViewMatrix, 0, modelProjectionMatrix, 0,
-                viewport, 0, xyzw, 0);
-        xyzw[0] /= xyzw[3];
-        xyzw[1] /= xyzw[3];
-        xyzw[2] /= xyzw[3];
-        xyzw[3] = 1;
-        return xyzw;
+    public static boolean getRays(int width, int height, float[] modelViewMatrix, float[] modelProjectionMatrix,
+                                  float[] windowCoords, int count, float[] origins, float[] directions) {
+        float[] matrix = new float[16];
+        float[] inverse = new float[16];
+        Matrix.multiplyMM(matrix, 0, modelProjectionMatrix, 0, modelViewMatrix, 0);
+        if (!Matrix.invertM(inverse, 0, matrix, 0)) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            // normalized device coordinates 标准化设备坐标
+            float x = windowCoords[i * 2] * 2 / width - 1;
+            float y = ((float) height - windowCoords[i * 2 + 1]) * 2 / height - 1;
+            // near (z=-1) and far (z=1) points 近点和远点
+            float nw = inverse[3] * x + inverse[7] * y - inverse[11] + inverse[15];
+            float nx = (inverse[0] * x + inverse[4] * y - inverse[8] + inverse[12]) / nw;
+            float ny = (inverse[1] * x + inverse[5] * y - inverse[9] + inverse[13]) / nw;
+            float nz = (inverse[2] * x + inverse[6] * y - inverse[10] + inverse[14]) / nw;
+            float fw = inverse[3] * x + inverse[7] * y + inverse[11] + inverse[15];
+            float fx = (inverse[0] * x + inverse[4] * y + inverse[8] + inverse[12]) / fw - nx;
+            float fy = (inverse[1] * x + inverse[5] * y + inverse[9] + inverse[13]) / fw - ny;
+            float fz = (inverse[2] * x + inverse[6] * y + inverse[10] + inverse[14]) / fw - nz;
+            float length = (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+            origins[i * 3] = nx;
+            origins[i * 3 + 1] = ny;
+            origins[i * 3 + 2] = nz;
+            directions[i * 3] = fx / length;
+            directions[i * 3 + 1] = fy / length;
+            directions[i * 3 + 2] = fz / length;
+        }
+        return true;
     }
 
     /*public static float[] getTriangleIntersection(List<Object3DData> objects, ModelRenderer mRenderer, float
@@ -210,24 +218,20 @@ public class CollisionDetection {
      * @return
      */
     public static float[] getTriangleIntersection(List<Object3DData> objects, int width, int height, float[] modelViewMatrix, float[] modelProjectionMatrix, float windowX, float windowY) {
-        float[] nearHit = unProject(width, height, modelViewMatrix, modelProjectionMatrix, windowX, windowY, 0);
-        float[] farHit = unProject(width, height, modelViewMatrix, modelProjectionMatrix, windowX, windowY, 1);
-        float[] direction = Math3DUtils.substract(farHit, nearHit);
-        Math3DUtils.normalize(direction);
+        float[] nearHit = new float[3];
+        float[] direction = new float[3];
+        if (!getRays(width, height, modelViewMatrix, modelProjectionMatrix, new float[]{windowX, windowY}, 1,
+                nearHit, direction)) {
+            return null;
+        }
         Object3DData intersected = getBoxIntersection(objects, nearHit, direction);
         if (intersected != null) {
             Log.d("CollisionDetection", "intersected: " + intersected.getId());
-            Octree octree;
-            synchronized (intersected) {
-                octree = intersected.getOctree();
-                if (octree == null) {
-                    octree = Octree.build(intersected);
-                    intersected.setOctree(octree);
-                }
-            }
-            float intersection = getTriangleIntersectionForOctree(octree, nearHit, direction);
-            if (intersection != -1) {
-                float[] intersectionPoint = Math3DUtils.add(nearHit, Math3DUtils.multiply(direction, intersection));
+            float[] distance = new float[1];
+            getTriangleIntersections(intersected, nearHit, direction, distance, 1);
+            if (distance[0] != -1) {
+                float[] intersectionPoint = new float[]{nearHit[0] + direction[0] * distance[0],
+                        nearHit[1] + direction[1] * distance[0], nearHit[2] + direction[2] * distance[0]};
                 Log.d("CollisionDetection", "Interaction point: " + Arrays.toString(intersectionPoint));
                 return intersectionPoint;
             } else {
@@ -238,103 +242,62 @@ public class CollisionDetection {
     }
 
     /**
-     * 求八叉树的三角形交点
+     * Intersect many rays with the triangles of the object at once (i.e. hover picking, measurement tools or
+     * coverage tests). Large batches are answered in parallel.
+     * 一次将多条光线与对象的三角形求交（例如悬停拾取、测量工具或覆盖测试）。大批量并行处理
      *
-     * @param octree
-     * @param rayOrigin
-     * @param rayDirection
-     * @return
+     * @param object     the object                                 对象
+     * @param origins    ray origins in world space, 3 floats per ray   世界空间中的光线起点
+     * @param directions ray directions in world space, 3 floats per ray 世界空间中的光线方向
+     * @param distances  where to write the distance along the direction to the nearest triangle of every ray, or -1
+     *                   if the ray misses the object                 每条光线到最近三角形的距离，未命中时为-1
+     * @param count      number of rays                             光线数
      */
-    private static float getTriangleIntersectionForOctree(Octree octree, float[] rayOrigin, float[] rayDirection) {
-        //Log.v("CollisionDetection","Testing octree "+octree);
-        if (!isBoxIntersection(rayOrigin, rayDirection, octree.boundingBox)) {
-            Log.d("CollisionDetection", "No octree intersection");
-            return -1;
-        }
-        Octree selected = null;
-        float min = Float.MAX_VALUE;
-        for (Octree child : octree.getChildren()) {
-            if (child == null) {
-                continue;
-            }
-            float intersection = getTriangleIntersectionForOctree(child, rayOrigin, rayDirection);
-            if (intersection != -1 && intersection < min) {
-                Log.d("CollisionDetection", "Octree intersection: " + intersection);
-                min = intersection;
-                selected = child;
-            }
-        }
-        float[] selectedTriangle = null;
-        for (float[] triangle : octree.getTriangles()) {
-            float[] vertex0 = new float[]{triangle[0], triangle[1], triangle[2]};
-            float[] vertex1 = new float[]{triangle[4], triangle[5], triangle[6]};
-            float[] vertex2 = new float[]{triangle[8], triangle[9], triangle[10]};
-            float intersection = getTriangleIntersection(rayOrigin, rayDirection, vertex0, vertex1, vertex2);
-            if (intersection != -1 && intersection < min) {
-                min = intersection;
-                selectedTriangle = triangle;
-                selected = octree;
-
-            }
+    public static void getTriangleIntersections(Object3DData object, float[] origins, float[] directions,
+                                                float[] distances, int count) {
+        BVH bvh = getBVH(object);
+        float[] inverseModel = new float[16];
+        if (bvh == null || !Matrix.invertM(inverseModel, 0, object.getModelMatrix(), 0)) {
+            Arrays.fill(distances, 0, count, -1);
+            return;
         }
-        if (min != Float.MAX_VALUE) {
-            Log.d("CollisionDetection", "Intersection at distance: " + min);
-            Log.d("CollisionDetection", "Intersection at triangle: " + Arrays.toString(selectedTriangle));
-            Log.d("CollisionDetection", "Intersection at octree: " + selected);
-            return min;
+        // the hierarchy is in model space 层次结构在模型空间中
+        float[] modelOrigins = new float[count * 3];
+        float[] modelDirections = new float[count * 3];
+        float[] m = inverseModel;
+        for (int i = 0; i < count * 3; i += 3) {
+            float x = origins[i], y = origins[i + 1], z = origins[i + 2];
+            modelOrigins[i] = m[0] * x + m[4] * y + m[8] * z + m[12];
+            modelOrigins[i + 1] = m[1] * x + m[5] * y + m[9] * z + m[13];
+            modelOrigins[i + 2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+            x = directions[i];
+            y = directions[i + 1];
+            z = directions[i + 2];
+            modelDirections[i] = m[0] * x + m[4] * y + m[8] * z;
+            modelDirections[i + 1] = m[1] * x + m[5] * y + m[9] * z;
+            modelDirections[i + 2] = m[2] * x + m[6] * y + m[10] * z;
         }
-        return -1;
+        bvh.intersect(modelOrigins, modelDirections, distances, count);
     }
 
     /**
-     * 得到三角形交点
+     * Get the triangle hierarchy of the object. It's normally built by the loader, otherwise it's built now.
+     * 获取对象的三角形层次结构。通常由加载器构建，否则现在构建
      *
-     * @param rayOrigin
-     * @param rayVector
-     * @param vertex0
-     * @param vertex1
-     * @param vertex2
-     * @return
+     * @param object the object
+     * @return the hierarchy, or null if the object has no triangles
      */
-    private static float getTriangleIntersection(float[] rayOrigin,
-                                                 float[] rayVector,
-                                                 float[] vertex0, float[] vertex1, float[] vertex2) {
-        float EPSILON = 0.0000001f;
-        float[] edge1, edge2, h, s, q;
-        float a, f, u, v;
-        edge1 = Math3DUtils.substract(vertex1, vertex0);
-        edge2 = Math3DUtils.substract(vertex2, vertex0);
-        h = Math3DUtils.crossProduct(rayVector, edge2);
-        a = Math3DUtils.dotProduct(edge1, h);
-        if (a > -EPSILON && a < EPSILON) {
-            return -1;
-        }
-        f = 1 / a;
-        s = Math3DUtils.substract(rayOrigin, vertex0);
-        u = f * Math3DUtils.dotProduct(s, h);
-        if (u < 0.0 || u > 1.0) {
-            return -1;
-        }
-        q = Math3DUtils.crossProduct(s, edge1);
-        v = f * Math3DUtils.dotProduct(rayVector, q);
-        if (v < 0.0 || u + v > 1.0) {
-            return -1;
-        }
-        // At this stage we can compute t to find out where the intersection point is on the line.
-        //在这个阶段，我们可以计算t来找出交点在这条线上的位置。
-        float t = f * Math3DUtils.dotProduct(edge2, q);
-        if (t > EPSILON)
-        // ray intersection
-        //射线交叉
-        {
-            Log.d("CollisionDetection", "Triangle intersection at: " + t);
-            return t;
-        } else
-        // This means that there is a line intersection but not a ray intersection.
-        //这意味着存在直线交点，但不存在光线交点。
-        {
-            return -1;
+    private static BVH getBVH(Object3DData object) {
+        BVH bvh = object.getBVH();
+        if (bvh == null) {
+            synchronized (object) {
+                bvh = object.getBVH();
+                if (bvh == null) {
+                    bvh = BVH.build(object);
+                    object.setBVH(bvh);
+                }
+            }
         }
+        return bvh;
     }
 }
-
@@ -0,0 +1,101 @@
+package org.andresoviedo.android_3d_model_engine.collision;
+
+/**
+ * Triangles stored as a structure of arrays: the first vertex and the 2 edges starting at it, one array per
+ * component. The edges are computed once, so the ray-triangle test (Möller–Trumbore) only reads 9 floats and
+ * works with local variables, without allocating anything.
+ * <p>
+ * 以数组结构存储的三角形：第一个顶点和从它出发的2条边，每个分量一个数组。边只计算一次，
+ * 因此光线-三角形测试（Möller–Trumbore）只读取9个浮点数，使用局部变量，不分配任何内存。
+ *
+ * @author andresoviedo
+ */
+final class TriangleArrays {
+
+    private static final float EPSILON = 0.0000001f;
+
+    private final float[] v0x, v0y, v0z;
+    private final float[] e1x, e1y, e1z;
+    private final float[] e2x, e2y, e2z;
+
+    /**
+     * @param triangles triangle vertices (x0,y0,z0,x1,y1,z1,x2,y2,z2), 9 floats per triangle
+     */
+    TriangleArrays(float[] triangles) {
+        int count = triangles.length / 9;
+        v0x = new float[count];
+        v0y = new float[count];
+        v0z = new float[count];
+        e1x = new float[count];
+        e1y = new float[count];
+        e1z = new float[count];
+        e2x = new float[count];
+        e2y = new float[count];
+        e2z = new float[count];
+        for (int i = 0, t = 0; i < count; i++, t += 9) {
+            v0x[i] = triangles[t];
+            v0y[i] = triangles[t + 1];
+            v0z[i] = triangles[t + 2];
+            e1x[i] = triangles[t + 3] - triangles[t];
+            e1y[i] = triangles[t + 4] - triangles[t + 1];
+            e1z[i] = triangles[t + 5] - triangles[t + 2];
+            e2x[i] = triangles[t + 6] - triangles[t];
+            e2y[i] = triangles[t + 7] - triangles[t + 1];
+            e2z[i] = triangles[t + 8] - triangles[t + 2];
+        }
+    }
+
+    int size() {
+        return v0x.length;
+    }
+
+    /**
+     * Möller–Trumbore ray-triangle intersection
+     *
+     * @param i triangle index 三角形索引
+     * @return distance to the hit along the direction, or -1 if the triangle is not hit 到命中点的距离，未命中时为-1
+     */
+    float intersect(int i, float ox, float oy, float oz, float dx, float dy, float dz) {
+        float ax = e1x[i], ay = e1y[i], az = e1z[i];
+        float bx = e2x[i], by = e2y[i], bz = e2z[i];
+        // h = direction x edge2
+        float hx = dy * bz - dz * by, hy = dz * bx - dx * bz, hz = dx * by - dy * bx;
+        float a = ax * hx + ay * hy + az * hz;
+        if (a > -EPSILON && a < EPSILON) {
+            // ray parallel to the triangle 光线与三角形平行
+            return -1;
+        }
+        float f = 1 / a;
+        float sx = ox - v0x[i], sy = oy - v0y[i], sz = oz - v0z[i];
+        float u = f * (sx * hx + sy * hy + sz * hz);
+        if (u < 0 || u > 1) {
+            return -1;
+        }
+        // q = s x edge1
+        float qx = sy * az - sz * ay, qy = sz * ax - sx * az, qz = sx * ay - sy * ax;
+        float v = f * (dx * qx + dy * qy + dz * qz);
+        if (v < 0 || u + v > 1) {
+            return -1;
+        }
+        // At this stage we can compute t to find out where the intersection point is on the line.
+        // 在这个阶段，我们可以计算t来找出交点在这条线上的位置。
+        float t = f * (bx * qx + by * qy + bz * qz);
+        return t > EPSILON ? t : -1;
+    }
+
+    /**
+     * @return distance to the nearest of the triangles [first, first + count) hit before maxDistance, or
+     * maxDistance if none is hit
+     */
+    float nearest(int first, int count, float ox, float oy, float oz, float dx, float dy, float dz,
+                  float maxDistance) {
+        float nearest = maxDistance;
+        for (int i = first, end = first + count; i < end; i++) {
+            float t = intersect(i, ox, oy, oz, dx, dy, dz);
+            if (t > 0 && t < nearest) {
+                nearest = t;
+            }
+        }
+        return nearest;
+    }
+}
@@ -22,6 +22,15 @@ import java.util.Map;
  */
 public class DrawerFactory {
 
+    // features of the shaders 着色器的功能
+    private static final int FEATURE_ANIMATED = 1;
+    private static final int FEATURE_LIGHTS = 1 << 1;
+    private static final int FEATURE_TEXTURED = 1 << 2;
+    private static final int FEATURE_COLOURED = 1 << 3;
+    private static final int FEATURE_EMISSIVE = 1 << 4;
+    private static final int FEATURE_INSTANCED = 1 << 5;
+    private static final int FEATURE_COMBINATIONS = 1 << 6;
+
     /**
      * shader code loaded from raw resources
      * resources are cached on activity thread
@@ -34,8 +43,47 @@ public class DrawerFactory {
      * opengl抽屉列表
      */
     private Map<String, DrawerImpl> drawers = new HashMap<>();
+    /**
+     * Drawers by features (see the <code>FEATURE_</code> constants), so the drawer of an object is found without
+     * building its shader id. Features without shaders are remembered too, so they are not looked up again.
+     * 按功能索引的抽屉，无需构建着色器id即可找到对象的抽屉。没有着色器的功能也会被记住
+     */
+    private final DrawerImpl[] drawersByFeatures = new DrawerImpl[FEATURE_COMBINATIONS];
+    private final boolean[] missingFeatures = new boolean[FEATURE_COMBINATIONS];
+    /**
+     * GPU buffers of the objects, shared by all the drawers
+     * 所有抽屉共享的对象GPU缓冲区
+     */
+    private final GpuBufferManager bufferManager = new GpuBufferManager();
+    /**
+     * Textures of the objects, shared by all the drawers
+     * 所有抽屉共享的对象纹理
+     */
+    private final TextureManager textureManager = new TextureManager();
+    /**
+     * OpenGL state, shared by all the drawers
+     * 所有抽屉共享的OpenGL状态
+     */
+    private final GLState glState = new GLState();
+    /**
+     * Occlusion queries of the clusters of big meshes
+     * 大网格簇的遮挡查询
+     */
+    private final OcclusionCulling occlusionCulling = new OcclusionCulling(glState);
 
     public DrawerFactory(Context context) throws IllegalAccessException, IOException {
+        this(loadShaders(context));
+    }
+
+    /**
+     * @param shadersCode the code of the shaders, by resource name 着色器代码，按资源名
+     */
+    DrawerFactory(Map<String, String> shadersCode) {
+        this.shadersCode.putAll(shadersCode);
+    }
+
+    private static Map<String, String> loadShaders(Context context) throws IllegalAccessException, IOException {
+        Map<String, String> shadersCode = new HashMap<>();
         Log.i("DrawerFactory", "Discovering shaders...");
         Field[] fields = R.raw.class.getFields();
         for (Field field : fields) {
@@ -47,9 +95,26 @@ public class DrawerFactory {
             shadersCode.put(shaderId, shaderCode);
         }
         Log.i("DrawerFactory", "Shaders loaded: " + shadersCode.size());
+        return shadersCode;
     }
 
     public Object3D getDrawer(Object3DData obj, boolean usingTextures, boolean usingLights, boolean usingAnimation, boolean drawColors) {
+        return getDrawer(obj, usingTextures, usingLights, usingAnimation, drawColors, false);
+    }
+
+    /**
+     * Get a drawer whose vertex shader takes the model matrix as a per instance attribute, so many copies of
+     * the same mesh can be drawn with a single call. Animated models are not supported.
+     * 获取一个将模型矩阵作为每实例属性的绘制器，用一次调用绘制同一网格的多个副本
+     *
+     * @return the drawer or null if there is no shader for the features of the object
+     */
+    DrawerImpl getInstancedDrawer(Object3DData obj, boolean usingTextures, boolean usingLights, boolean drawColors) {
+        return getDrawer(obj, usingTextures, usingLights, false, drawColors, true);
+    }
+
+    private DrawerImpl getDrawer(Object3DData obj, boolean usingTextures, boolean usingLights, boolean usingAnimation,
+                                 boolean drawColors, boolean instanced) {
 
         // double check features
         // 双重检查功能
@@ -60,6 +125,13 @@ public class DrawerFactory {
         boolean isEmissive = usingTextures && obj.getEmissiveTextureData() != null
                 && obj.getEmissiveTextureCoordsArrayBuffer() != null;
 
+        int features = (isAnimated ? FEATURE_ANIMATED : 0) | (isUsingLights ? FEATURE_LIGHTS : 0)
+                | (isTextured ? FEATURE_TEXTURED : 0) | (isColoured ? FEATURE_COLOURED : 0)
+                | (isEmissive ? FEATURE_EMISSIVE : 0) | (instanced ? FEATURE_INSTANCED : 0);
+        if (drawersByFeatures[features] != null || missingFeatures[features]) {
+            return drawersByFeatures[features];
+        }
+
         // build shader id according to features
         // 根据功能构建着色器id
         StringBuilder shaderIdBuilder = new StringBuilder("shader_");
@@ -72,8 +144,10 @@ public class DrawerFactory {
         // get cached drawer
         //从抽屉里拿
         String shaderId = shaderIdBuilder.toString();
-        DrawerImpl drawer = drawers.get(shaderId);
+        String drawerId = instanced ? shaderId + "instanced_" : shaderId;
+        DrawerImpl drawer = drawers.get(drawerId);
         if (drawer != null) {
+            drawersByFeatures[features] = drawer;
             return drawer;
         }
 
@@ -83,11 +157,15 @@ public class DrawerFactory {
         String fragmentShaderCode = shadersCode.get(shaderId + "frag");
         if (vertexShaderCode == null || fragmentShaderCode == null) {
             Log.e("DrawerFactory", "Shaders not found for " + shaderId);
+            missingFeatures[features] = true;
             return null;
         }
 
         // experimental: inject glPointSize
         vertexShaderCode = vertexShaderCode.replace("void main(){", "void main(){\n\tgl_PointSize = 5.0;");
+        if (instanced) {
+            vertexShaderCode = toInstanced(vertexShaderCode);
+        }
 
         // create drawer
         Log.i("Object3DImpl2", "\n---------- Vertex shader ----------\n");
@@ -95,15 +173,49 @@ public class DrawerFactory {
         Log.i("Object3DImpl2", "---------- Fragment shader ----------\n");
         Log.i("Object3DImpl2", fragmentShaderCode);
         Log.i("Object3DImpl2", "-------------------------------------\n");
-        drawer = DrawerImpl.getInstance(shaderId, vertexShaderCode, fragmentShaderCode);
+        drawer = DrawerImpl.getInstance(drawerId, vertexShaderCode, fragmentShaderCode, bufferManager, glState);
 
         // cache drawer
-        drawers.put(shaderId, drawer);
+        drawers.put(drawerId, drawer);
+        drawersByFeatures[features] = drawer;
 
         // return drawer
         return drawer;
     }
 
+    /**
+     * Rewrite the vertex shader so the model matrix is read from the a_ModelMatrix attribute, and the
+     * u_MVPMatrix and u_MVMatrix are calculated from the u_VPMatrix and u_VMatrix uniforms
+     * 重写顶点着色器，从a_ModelMatrix属性读取模型矩阵
+     */
+    private static String toInstanced(String vertexShaderCode) {
+        boolean usingMvMatrix = vertexShaderCode.contains("u_MVMatrix");
+        StringBuilder main = new StringBuilder("void main(){\n\tmat4 u_MVPMatrix = u_VPMatrix * a_ModelMatrix;");
+        if (usingMvMatrix) {
+            main.append("\n\tmat4 u_MVMatrix = u_VMatrix * a_ModelMatrix;");
+        }
+        return vertexShaderCode
+                .replace("uniform mat4 u_MVPMatrix;", "uniform mat4 u_VPMatrix;\nattribute mat4 a_ModelMatrix;")
+                .replace("uniform mat4 u_MVMatrix;", "uniform mat4 u_VMatrix;")
+                .replace("void main(){", main.toString());
+    }
+
+    public GpuBufferManager getBufferManager() {
+        return bufferManager;
+    }
+
+    public TextureManager getTextureManager() {
+        return textureManager;
+    }
+
+    public GLState getGLState() {
+        return glState;
+    }
+
+    public OcclusionCulling getOcclusionCulling() {
+        return occlusionCulling;
+    }
+
     public Object3D getBoundingBoxDrawer() {
         return getDrawer(null, false, false, false, false);
     }
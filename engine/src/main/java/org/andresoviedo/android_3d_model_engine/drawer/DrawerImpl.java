@@ -1,17 +1,22 @@
 package org.andresoviedo.android_3d_model_engine.drawer;
 
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 import android.opengl.Matrix;
 import android.os.SystemClock;
 import android.util.Log;
-import android.util.SparseArray;
 
+import org.andresoviedo.android_3d_model_engine.animation.AnimationState;
 import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.GeometryStream;
+import org.andresoviedo.android_3d_model_engine.model.MaterialRange;
 import org.andresoviedo.android_3d_model_engine.model.Object3D;
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
 import org.andresoviedo.util.android.GLUtil;
 
 import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.util.HashSet;
 import java.util.List;
@@ -56,9 +61,62 @@ class DrawerImpl implements Object3D {
     // 设备是否支持用于GL_UNSIGNED_INT的抽屉元素？
     private boolean drawUsingUnsignedInt = true;
 
-    private final SparseArray<String> cache1 = new SparseArray<>();
-
-    public static DrawerImpl getInstance(String id, String vertexShaderCode, String fragmentShaderCode) {
+    // was glDrawElements with GL_UNSIGNED_INT already checked for errors?
+    // 是否已检查GL_UNSIGNED_INT的glDrawElements错误？
+    private boolean unsignedIntChecked = false;
+
+    // attribute and uniform locations, resolved only once when the program is linked
+    // 属性和统一变量的位置，只在程序链接时解析一次
+    private static final int A_POSITION = 0;
+    private static final int A_NORMAL = 1;
+    private static final int A_COLOR = 2;
+    private static final int A_TEX_COORDINATE = 3;
+    private static final int A_EMISSIVE_TEX_COORDINATE = 4;
+    private static final int A_WEIGHTS = 5;
+    private static final int A_JOINT_INDICES = 6;
+    private static final int A_MODEL_MATRIX = 7;
+    private static final int U_MVP_MATRIX = 8;
+    private static final int U_MV_MATRIX = 9;
+    private static final int U_COLOR = 10;
+    private static final int U_COLOR_MASK = 11;
+    private static final int U_LIGHT_POS = 12;
+    private static final int U_TEXTURE = 13;
+    private static final int U_EMISSIVE_TEXTURE = 14;
+    private static final int U_JOINT_TRANSFORMS = 15;
+    private static final int U_VP_MATRIX = 16;
+    private static final int U_V_MATRIX = 17;
+    private static final String[] LOCATION_NAMES = {"a_Position", "a_Normal", "a_Color", "a_TexCoordinate",
+            "a_EmissiveTexCoordinate", "in_weights", "in_jointIndices", "a_ModelMatrix", "u_MVPMatrix", "u_MVMatrix",
+            "vColor", "vColorMask", "u_LightPos", "u_Texture", "u_EmissiveTexture", "jointTransforms[0]",
+            "u_VPMatrix", "u_VMatrix"};
+    private final int[] locations = new int[LOCATION_NAMES.length];
+
+    // all joint transforms, so they are uploaded with a single call
+    // 所有关节变换，一次调用上传
+    private float[] jointTransforms = new float[0];
+
+    // instancing: number of instances of the current draw (0 when not instancing) and model matrices
+    // 实例化：当前绘制的实例数（不使用实例化时为0）和模型矩阵
+    private final boolean instancedArrays;
+    private int instanceCount = 0;
+    private float[] instanceMatrices = new float[0];
+    private FloatBuffer instanceBuffer;
+
+    // material ranges of the current draw, each one drawn with its own texture (null when not textured)
+    // 当前绘制的材质范围，每个范围使用自己的纹理绘制（无纹理时为null）
+    private List<MaterialRange> materialRanges;
+
+    private final float[] vpMatrix = new float[16];
+
+    // vertex and index buffer objects (shared by all the drawers)
+    // 顶点和索引缓冲区对象（所有抽屉共享）
+    private final GpuBufferManager bufferManager;
+    // opengl state (shared by all the drawers)
+    // opengl状态（所有抽屉共享）
+    private final GLState glState;
+
+    public static DrawerImpl getInstance(String id, String vertexShaderCode, String fragmentShaderCode,
+                                         GpuBufferManager bufferManager, GLState glState) {
         Set<String> shaderFeatures = new HashSet<>();
         testShaderFeature(shaderFeatures, vertexShaderCode, "a_Position");
         testShaderFeature(shaderFeatures, vertexShaderCode, "u_MVMatrix");
@@ -70,7 +128,8 @@ class DrawerImpl implements Object3D {
         testShaderFeature(shaderFeatures, vertexShaderCode, "u_MVMatrix");
         testShaderFeature(shaderFeatures, vertexShaderCode, "in_jointIndices");
         testShaderFeature(shaderFeatures, vertexShaderCode, "in_weights");
-        return new DrawerImpl(id, vertexShaderCode, fragmentShaderCode, shaderFeatures);
+        testShaderFeature(shaderFeatures, vertexShaderCode, "a_ModelMatrix");
+        return new DrawerImpl(id, vertexShaderCode, fragmentShaderCode, shaderFeatures, bufferManager, glState);
     }
 
     private static void testShaderFeature(Set<String> outputFeatures, String shaderCode, String feature) {
@@ -79,10 +138,13 @@ class DrawerImpl implements Object3D {
         }
     }
 
-    private DrawerImpl(String id, String vertexShaderCode, String fragmentShaderCode, Set<String> features) {
+    private DrawerImpl(String id, String vertexShaderCode, String fragmentShaderCode, Set<String> features,
+                       GpuBufferManager bufferManager, GLState glState) {
 
         this.id = id;
         this.features = features;
+        this.bufferManager = bufferManager;
+        this.glState = glState;
         Log.i("Object3DImpl2", "Compiling 3D Drawer... " + id);
 
         // load shaders
@@ -92,6 +154,25 @@ class DrawerImpl implements Object3D {
         // compile program
         mProgram = GLUtil.createAndLinkProgram(vertexShader, fragmentShader, features.toArray(new String[features.size()]));
         Log.i("Object3DImpl2", "Compiled 3D Drawer (" + id + ") with id " + mProgram);
+
+        // resolve locations
+        // 解析位置
+        for (int i = 0; i < LOCATION_NAMES.length; i++) {
+            locations[i] = i < U_MVP_MATRIX ? GLES20.glGetAttribLocation(mProgram, LOCATION_NAMES[i])
+                    : GLES20.glGetUniformLocation(mProgram, LOCATION_NAMES[i]);
+        }
+
+        // the texture units never change, so the samplers are set only once
+        // 纹理单元永远不变，所以采样器只设置一次
+        glState.useProgram(mProgram);
+        GLES20.glUniform1i(locations[U_TEXTURE], 0);
+        GLES20.glUniform1i(locations[U_EMISSIVE_TEXTURE], 1);
+
+        // instanced arrays are core since OpenGL ES 3.0
+        // 实例化数组从OpenGL ES 3.0开始成为核心功能
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        instancedArrays = version != null && version.startsWith("OpenGL ES ")
+                && version.length() > 10 && version.charAt(10) >= '3';
     }
 
     @Override
@@ -113,17 +194,53 @@ class DrawerImpl implements Object3D {
     @Override
     public void draw(Object3DData obj, float[] pMatrix, float[] vMatrix, int drawMode, int drawSize, int textureId,
                      float[] lightPos, float[] colorMask) {
+        this.draw(obj, null, pMatrix, vMatrix, drawMode, drawSize, textureId, lightPos, colorMask);
+    }
+
+    /**
+     * Draw all the objects with a single instanced draw call. The objects must share the geometry and the
+     * material of the first one, and only differ in their transformation. The drawer must have been compiled
+     * with an instanced shader (see {@link #supportsInstancing()}).
+     * 使用一次实例化绘制调用绘制所有对象。对象必须共享第一个对象的几何体和材质，只有变换不同
+     *
+     * @param objects the instances
+     */
+    void drawInstanced(List<? extends Object3DData> objects, float[] pMatrix, float[] vMatrix, int textureId,
+                       float[] lightPos, float[] colorMask) {
+        Object3DData obj = objects.get(0);
+        this.draw(obj, objects, pMatrix, vMatrix, obj.getDrawMode(), obj.getDrawSize(), textureId, lightPos,
+                colorMask);
+    }
 
+    private void draw(Object3DData obj, List<? extends Object3DData> instances, float[] pMatrix, float[] vMatrix,
+                      int drawMode, int drawSize, int textureId, float[] lightPos, float[] colorMask) {
 
         // Add program to OpenGL environment
         // 将程序添加到OpenGL环境
-        GLES20.glUseProgram(mProgram);
+        glState.useProgram(mProgram);
 
-        float[] mMatrix = getMMatrix(obj);
-        float[] mvMatrix = getMvMatrix(mMatrix, vMatrix);
-        float[] mvpMatrix = getMvpMatrix(mvMatrix, pMatrix);
+        // take the vertices loaded so far, before binding any buffer
+        // 在绑定缓冲区之前获取目前已加载的顶点
+        GeometryStream stream = obj.getGeometryStream();
+        if (stream != null) {
+            stream.poll(obj);
+        }
 
-        setMvpMatrix(mvpMatrix);
+        float[] mvMatrix = null;
+        if (instances == null) {
+            float[] mMatrix = getMMatrix(obj);
+            mvMatrix = getMvMatrix(mMatrix, vMatrix);
+            float[] mvpMatrix = getMvpMatrix(mvMatrix, pMatrix);
+            setMvpMatrix(mvpMatrix);
+        } else {
+            // the model matrix is applied in the shader
+            // 模型矩阵在着色器中应用
+            Matrix.multiplyMM(vpMatrix, 0, pMatrix, 0, vMatrix, 0);
+            GLES20.glUniformMatrix4fv(locations[U_VP_MATRIX], 1, false, vpMatrix, 0);
+            if (locations[U_V_MATRIX] != -1) {
+                GLES20.glUniformMatrix4fv(locations[U_V_MATRIX], 1, false, vMatrix, 0);
+            }
+        }
 
         int mPositionHandle = setPosition(obj);
 
@@ -134,11 +251,13 @@ class DrawerImpl implements Object3D {
 
         int mColorHandle = -1;
         if (supportsColors()) {
-            GLES20.glEnable(GLES20.GL_BLEND);
-            GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE);
+            // blending used to be enabled only while setting the colors, which has no effect on the draw call.
+            // Only the resulting state is kept
+            // 混合只在设置颜色时启用，对绘制没有影响，只保留最终状态
+            glState.setBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE);
+            glState.setBlending(false);
             setColor(obj);
             mColorHandle = setColors(obj);
-            GLES20.glDisable(GLES20.GL_BLEND);
         } else {
             setColor(obj);
         }
@@ -146,20 +265,26 @@ class DrawerImpl implements Object3D {
 
         // TODO: refactor code here for not using both texture and emissiveTexture
         // TODO:重构代码，避免同时使用纹理和emissiveTexture
+        boolean textured = textureId != -1 && supportsTextures();
+        boolean emissive = obj.getEmissiveTextureHandle() != -1 && supportsEmissiveTexture();
+
+        // textured single sided objects are drawn with back face culling
+        // 纹理单面对象使用背面剔除绘制
+        glState.setCullFace((textured || emissive) && !obj.getIsDoubleSided());
+
         int mTextureHandle = -1;
-        if (textureId != -1 && supportsTextures()) {
+        if (textured) {
             mTextureHandle = setTexture(obj, textureId);
         }
 
-
         int mEmissiveTextureHandle = -1;
-        if (obj.getEmissiveTextureHandle() != -1 && supportsEmissiveTexture()) {
+        if (emissive) {
             mEmissiveTextureHandle = setEmissiveTexture(obj);
         }
 
         // light rendering needs mv matrix
         // 灯光渲染需要mv矩阵
-        if (supportsMvMatrix()) {
+        if (mvMatrix != null && supportsMvMatrix()) {
             setMvMatrix(mvMatrix);
         }
 
@@ -179,8 +304,20 @@ class DrawerImpl implements Object3D {
             setJointTransforms((AnimatedModel) obj);
         }
 
+        // the textures of the material ranges are bound as the ranges are drawn
+        // 材质范围的纹理在绘制范围时绑定
+        if (textured && drawMode == obj.getDrawMode() && drawSize <= 0) {
+            materialRanges = obj.getMaterialRanges();
+        }
+
         // draw mesh
-        drawShape(obj, drawMode, drawSize);
+        if (instances == null) {
+            drawShape(obj, drawMode, drawSize);
+        } else {
+            drawInstances(obj, instances, drawMode, drawSize);
+        }
+        materialRanges = null;
+        bufferManager.unbind();
 
         // Disable vertex array
         GLES20.glDisableVertexAttribArray(mPositionHandle);
@@ -208,28 +345,17 @@ class DrawerImpl implements Object3D {
             GLES20.glDisableVertexAttribArray(in_jointIndicesHandle);
         }
 
-        if (!obj.getIsDoubleSided()) {
-            GLES20.glDisable(GLES20.GL_CULL_FACE);
-        }
-
     }
 
     private float[] getMMatrix(Object3DData obj) {
+        getMMatrix(obj, mMatrix, 0);
+        return mMatrix;
+    }
+
+    private static void getMMatrix(Object3DData obj, float[] mMatrix, int offset) {
         // calculate object transformation
         // 计算对象变换
-        Matrix.setIdentityM(mMatrix, 0);
-        if (obj.getRotation() != null) {
-            Matrix.rotateM(mMatrix, 0, obj.getRotation()[0], 1f, 0f, 0f);
-            Matrix.rotateM(mMatrix, 0, obj.getRotation()[1], 0, 1f, 0f);
-            Matrix.rotateM(mMatrix, 0, obj.getRotationZ(), 0, 0, 1f);
-        }
-        if (obj.getScale() != null) {
-            Matrix.scaleM(mMatrix, 0, obj.getScaleX(), obj.getScaleY(), obj.getScaleZ());
-        }
-        if (obj.getPosition() != null) {
-            Matrix.translateM(mMatrix, 0, obj.getPositionX(), obj.getPositionY(), obj.getPositionZ());
-        }
-        return mMatrix;
+        obj.getDrawMatrix(mMatrix, offset);
     }
 
     private float[] getMvMatrix(float[] mMatrix, float[] vMatrix) {
@@ -245,13 +371,12 @@ class DrawerImpl implements Object3D {
     private void setMvpMatrix(float[] mvpMatrix) {
         // get handle to shape's transformation matrix
         // 掌握形状的变换矩阵
-        int mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "u_MVPMatrix");
-        GLUtil.checkGlError("glGetUniformLocation");
+        int mMVPMatrixHandle = locations[U_MVP_MATRIX];
 
         // Apply the projection and view transformation
         // 应用投影和视图变换
         GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
-        GLUtil.checkGlError("glUniformMatrix4fv");
+        GLUtil.debugGlError("glUniformMatrix4fv");
     }
 
     private boolean supportsColors() {
@@ -262,8 +387,7 @@ class DrawerImpl implements Object3D {
 
         // get handle to fragment shader's vColor member
         // 获取片段着色器的vColor成员的句柄
-        int mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
-        GLUtil.checkGlError("glGetUniformLocation");
+        int mColorHandle = locations[U_COLOR];
 
         // Set color for drawing the triangle
         float[] color = obj.getColor() != null ? obj.getColor() : DEFAULT_COLOR;
@@ -271,24 +395,23 @@ class DrawerImpl implements Object3D {
 //        float[] color = {1f, 0f, 0f, 1f};
 
         GLES20.glUniform4fv(mColorHandle, 1, color, 0);
-        GLUtil.checkGlError("glUniform4fv");
+        GLUtil.debugGlError("glUniform4fv");
     }
 
     private int setColors(Object3DData obj) {
 
         // get handle to fragment shader's vColor member
         // 获取片段着色器的vColor成员的句柄
-        int mColorHandle = GLES20.glGetAttribLocation(mProgram, "a_Color");
-        GLUtil.checkGlError("glGetAttribLocation");
+        int mColorHandle = locations[A_COLOR];
 
         // Pass in the color information
         // 传递颜色信息
         GLES20.glEnableVertexAttribArray(mColorHandle);
-        GLUtil.checkGlError("glEnableVertexAttribArray");
+        GLUtil.debugGlError("glEnableVertexAttribArray");
 
-        obj.getVertexColorsArrayBuffer().position(0);
-        GLES20.glVertexAttribPointer(mColorHandle, 4, GLES20.GL_FLOAT, false, 0, obj.getVertexColorsArrayBuffer());
-        GLUtil.checkGlError("glVertexAttribPointer");
+        bufferManager.bind(obj, GpuBufferManager.COLOR, obj.getVertexColorsArrayBuffer());
+        GLES20.glVertexAttribPointer(mColorHandle, 4, GLES20.GL_FLOAT, false, 0, 0);
+        GLUtil.debugGlError("glVertexAttribPointer");
 
         return mColorHandle;
     }
@@ -297,20 +420,18 @@ class DrawerImpl implements Object3D {
 
         // get handle to vertex shader's a_Position member
         // 获取顶点着色器的一个位置成员的句柄
-        int mPositionHandle = GLES20.glGetAttribLocation(mProgram, "a_Position");
-        GLUtil.checkGlError("glGetAttribLocation");
+        int mPositionHandle = locations[A_POSITION];
 
         // Enable a handle to the triangle vertices
         // 启用三角形顶点的控制柄
         GLES20.glEnableVertexAttribArray(mPositionHandle);
-        GLUtil.checkGlError("glEnableVertexAttribArray");
+        GLUtil.debugGlError("glEnableVertexAttribArray");
 
         FloatBuffer vertexBuffer = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
                 : obj.getVertexBuffer();
-        vertexBuffer.position(0);
-        GLES20.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, VERTEX_STRIDE,
-                vertexBuffer);
-        GLUtil.checkGlError("glVertexAttribPointer");
+        bufferManager.bind(obj, GpuBufferManager.POSITION, vertexBuffer);
+        GLES20.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, VERTEX_STRIDE, 0);
+        GLUtil.debugGlError("glVertexAttribPointer");
 
         return mPositionHandle;
     }
@@ -320,17 +441,16 @@ class DrawerImpl implements Object3D {
     }
 
     private int setNormals(Object3DData obj) {
-        int mNormalHandle = GLES20.glGetAttribLocation(mProgram, "a_Normal");
-        GLUtil.checkGlError("glGetAttribLocation");
+        int mNormalHandle = locations[A_NORMAL];
 
         GLES20.glEnableVertexAttribArray(mNormalHandle);
-        GLUtil.checkGlError("glEnableVertexAttribArray");
+        GLUtil.debugGlError("glEnableVertexAttribArray");
 
         // Pass in the normal information
         // 传递正常信息
         FloatBuffer buffer = obj.getVertexNormalsArrayBuffer() != null ? obj.getVertexNormalsArrayBuffer() : obj.getNormals();
-        buffer.position(0);
-        GLES20.glVertexAttribPointer(mNormalHandle, 3, GLES20.GL_FLOAT, false, 0, buffer);
+        bufferManager.bind(obj, GpuBufferManager.NORMAL, buffer);
+        GLES20.glVertexAttribPointer(mNormalHandle, 3, GLES20.GL_FLOAT, false, 0, 0);
 
         return mNormalHandle;
     }
@@ -340,7 +460,7 @@ class DrawerImpl implements Object3D {
     }
 
     private void setLightPos(float[] lightPosInEyeSpace) {
-        int mLightPosHandle = GLES20.glGetUniformLocation(mProgram, "u_LightPos");
+        int mLightPosHandle = locations[U_LIGHT_POS];
         // Pass in the light position in eye space.
         // 在眼睛空间的光线位置通过。
         GLES20.glUniform3f(mLightPosHandle, lightPosInEyeSpace[0], lightPosInEyeSpace[1], lightPosInEyeSpace[2]);
@@ -351,13 +471,12 @@ class DrawerImpl implements Object3D {
     }
 
     private void setMvMatrix(float[] mvMatrix) {
-        int mMVMatrixHandle = GLES20.glGetUniformLocation(mProgram, "u_MVMatrix");
-        GLUtil.checkGlError("glGetUniformLocation");
+        int mMVMatrixHandle = locations[U_MV_MATRIX];
 
         // Pass in the modelview matrix.
         // 传入modelview矩阵。
         GLES20.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mvMatrix, 0);
-        GLUtil.checkGlError("glUniformMatrix4fv");
+        GLUtil.debugGlError("glUniformMatrix4fv");
     }
 
     private boolean supportsTextures() {
@@ -369,12 +488,11 @@ class DrawerImpl implements Object3D {
     }
 
     private void setColorMask(float[] colorMask) {
-        int vColorMaskHandle = GLES20.glGetUniformLocation(mProgram, "vColorMask");
-        GLUtil.checkGlError("glGetUniformLocation");
+        int vColorMaskHandle = locations[U_COLOR_MASK];
 
         float[] color = colorMask != null ? colorMask : NO_COLOR_MASK;
         GLES20.glUniform4fv(vColorMaskHandle, 1, color, 0);
-        GLUtil.checkGlError("glUniform4fv");
+        GLUtil.debugGlError("glUniform4fv");
     }
 
     // TODO: refactor to remove duplicate code
@@ -382,23 +500,15 @@ class DrawerImpl implements Object3D {
     private int setEmissiveTexture(Object3DData obj) {
         // TODO: add emissive texture
         // TODO:添加发射纹理
-        int mEmissiveTextureUniformHandle = GLES20.glGetUniformLocation(mProgram, "u_EmissiveTexture");
-        GLUtil.checkGlError("glGetUniformLocation");
-
         // Set the active texture unit to texture unit 1.
         // 将活动纹理单元设置为纹理单元1。
         GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
-        GLUtil.checkGlError("glActiveTexture");
-
-        if (!obj.getIsDoubleSided()) {
-            GLES20.glCullFace(GLES20.GL_BACK);
-            GLES20.glEnable(GLES20.GL_CULL_FACE);
-        }
+        GLUtil.debugGlError("glActiveTexture");
 
         // Bind to the texture in OpenGL
         // 在OpenGL中绑定到纹理
         GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, obj.getEmissiveTextureHandle());
-        GLUtil.checkGlError("glBindTexture");
+        GLUtil.debugGlError("glBindTexture");
 
         // set sampling and filtering
         // 设置采样和过滤
@@ -407,25 +517,18 @@ class DrawerImpl implements Object3D {
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, obj.getEmissiveTextureWrapS());
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, obj.getEmissiveTextureWrapT());
 
-        // Tell the texture uniform sampler to use this texture in the shader by binding to texture unit 0.
-        // 通过绑定到纹理单元0，告诉纹理均匀采样器在着色器中使用此纹理。
-        GLES20.glUniform1i(mEmissiveTextureUniformHandle, 1);
-        GLUtil.checkGlError("glUniform1i");
-
-        int mTextureCoordinateHandle = GLES20.glGetAttribLocation(mProgram, "a_EmissiveTexCoordinate");
-        GLUtil.checkGlError("glGetAttribLocation");
+        int mTextureCoordinateHandle = locations[A_EMISSIVE_TEX_COORDINATE];
 
         // Enable a handle to the triangle vertices
         // 启用三角形顶点的控制柄
         GLES20.glEnableVertexAttribArray(mTextureCoordinateHandle);
-        GLUtil.checkGlError("glEnableVertexAttribArray");
+        GLUtil.debugGlError("glEnableVertexAttribArray");
 
         // Prepare the triangle coordinate data
         // 准备三角形坐标数据
-        obj.getEmissiveTextureCoordsArrayBuffer().position(0);
-        GLES20.glVertexAttribPointer(mTextureCoordinateHandle, 2, GLES20.GL_FLOAT, false, 0,
-                obj.getEmissiveTextureCoordsArrayBuffer());
-        GLUtil.checkGlError("glVertexAttribPointer");
+        bufferManager.bind(obj, GpuBufferManager.EMISSIVE_TEXTURE, obj.getEmissiveTextureCoordsArrayBuffer());
+        GLES20.glVertexAttribPointer(mTextureCoordinateHandle, 2, GLES20.GL_FLOAT, false, 0, 0);
+        GLUtil.debugGlError("glVertexAttribPointer");
 
         return mTextureCoordinateHandle;
     }
@@ -433,23 +536,34 @@ class DrawerImpl implements Object3D {
     private int setTexture(Object3DData obj, int textureId) {
         // TODO: add emissive texture
         // TODO:添加发射纹理
-        int mTextureUniformHandle = GLES20.glGetUniformLocation(mProgram, "u_Texture");
-        GLUtil.checkGlError("glGetUniformLocation");
+        bindTexture(obj, textureId);
+
+        int mTextureCoordinateHandle = locations[A_TEX_COORDINATE];
 
+        // Enable a handle to the triangle vertices
+        // 启用三角形顶点的控制柄
+        GLES20.glEnableVertexAttribArray(mTextureCoordinateHandle);
+        GLUtil.debugGlError("glEnableVertexAttribArray");
+
+        // Prepare the triangle coordinate data
+        // 准备三角形坐标数据
+        bufferManager.bind(obj, GpuBufferManager.TEXTURE, obj.getTextureCoordsArrayBuffer());
+        GLES20.glVertexAttribPointer(mTextureCoordinateHandle, 2, GLES20.GL_FLOAT, false, 0, 0);
+        GLUtil.debugGlError("glVertexAttribPointer");
+
+        return mTextureCoordinateHandle;
+    }
+
+    private void bindTexture(Object3DData obj, int textureId) {
         // Set the active texture unit to texture unit 0.
         // 将活动纹理单位设置为纹理单位0。
         GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLUtil.checkGlError("glActiveTexture");
-
-        if (!obj.getIsDoubleSided()) {
-            GLES20.glCullFace(GLES20.GL_BACK);
-            GLES20.glEnable(GLES20.GL_CULL_FACE);
-        }
+        GLUtil.debugGlError("glActiveTexture");
 
         // Bind to the texture in OpenGL
         // 在OpenGL中绑定到纹理
         GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
-        GLUtil.checkGlError("glBindTexture");
+        GLUtil.debugGlError("glBindTexture");
 
         // set sampling and filtering
         // 设置采样和过滤
@@ -457,28 +571,17 @@ class DrawerImpl implements Object3D {
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, obj.getTextureMagFilter());
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, obj.getTextureWrapS());
         GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, obj.getTextureWrapT());
+    }
 
-        // Tell the texture uniform sampler to use this texture in the shader by binding to texture unit 0.
-        // 通过绑定到纹理单元0，告诉纹理均匀采样器在着色器中使用此纹理。
-        GLES20.glUniform1i(mTextureUniformHandle, 0);
-        GLUtil.checkGlError("glUniform1i");
-
-        int mTextureCoordinateHandle = GLES20.glGetAttribLocation(mProgram, "a_TexCoordinate");
-        GLUtil.checkGlError("glGetAttribLocation");
-
-        // Enable a handle to the triangle vertices
-        // 启用三角形顶点的控制柄
-        GLES20.glEnableVertexAttribArray(mTextureCoordinateHandle);
-        GLUtil.checkGlError("glEnableVertexAttribArray");
-
-        // Prepare the triangle coordinate data
-        // 准备三角形坐标数据
-        obj.getTextureCoordsArrayBuffer().position(0);
-        GLES20.glVertexAttribPointer(mTextureCoordinateHandle, 2, GLES20.GL_FLOAT, false, 0,
-                obj.getTextureCoordsArrayBuffer());
-        GLUtil.checkGlError("glVertexAttribPointer");
+    /**
+     * @return the OpenGL program of this drawer 此抽屉的OpenGL程序
+     */
+    int getProgram() {
+        return mProgram;
+    }
 
-        return mTextureCoordinateHandle;
+    boolean supportsInstancing() {
+        return features.contains("a_ModelMatrix");
     }
 
     private boolean supportsJoints() {
@@ -486,69 +589,150 @@ class DrawerImpl implements Object3D {
     }
 
     private int setWeights(AnimatedModel animatedModel) {
-        int in_weightsHandle = GLES20.glGetAttribLocation(mProgram, "in_weights");
-        GLUtil.checkGlError("glGetAttribLocation");
+        int in_weightsHandle = locations[A_WEIGHTS];
         GLES20.glEnableVertexAttribArray(in_weightsHandle);
-        GLUtil.checkGlError("glEnableVertexAttribArray");
-        animatedModel.getVertexWeights().position(0);
-        GLES20.glVertexAttribPointer(in_weightsHandle, 3, GLES20.GL_FLOAT, false, 0, animatedModel.getVertexWeights());
+        GLUtil.debugGlError("glEnableVertexAttribArray");
+        bufferManager.bind(animatedModel, GpuBufferManager.WEIGHTS, animatedModel.getVertexWeights());
+        GLES20.glVertexAttribPointer(in_weightsHandle, 3, GLES20.GL_FLOAT, false, 0, 0);
         return in_weightsHandle;
     }
 
     private int setJoints(AnimatedModel animatedModel) {
-        int in_jointIndicesHandle = GLES20.glGetAttribLocation(mProgram, "in_jointIndices");
-        GLUtil.checkGlError("glGetAttribLocation");
+        int in_jointIndicesHandle = locations[A_JOINT_INDICES];
         GLES20.glEnableVertexAttribArray(in_jointIndicesHandle);
-        GLUtil.checkGlError("glEnableVertexAttribArray");
-        animatedModel.getJointIds().position(0);
-        GLES20.glVertexAttribPointer(in_jointIndicesHandle, 3, GLES20.GL_FLOAT, false, 0, animatedModel.getJointIds());
-        GLUtil.checkGlError("glVertexAttribPointer");
+        GLUtil.debugGlError("glEnableVertexAttribArray");
+        bufferManager.bind(animatedModel, GpuBufferManager.JOINTS, animatedModel.getJointIds());
+        GLES20.glVertexAttribPointer(in_jointIndicesHandle, 3, GLES20.GL_FLOAT, false, 0, 0);
+        GLUtil.debugGlError("glVertexAttribPointer");
         return in_jointIndicesHandle;
     }
 
     private void setJointTransforms(AnimatedModel animatedModel) {
+        AnimationState animationState = animatedModel.getAnimationState();
+        if (animationState != null) {
+            // the palette is already a flat array
+            // 调色板已经是一维数组
+            GLES20.glUniformMatrix4fv(locations[U_JOINT_TRANSFORMS], animationState.getSkeleton().getBoneCount(),
+                    false, animationState.getPalette(), 0);
+            GLUtil.debugGlError("glUniformMatrix4fv");
+            return;
+        }
         float[][] jointTransformsArray = animatedModel.getJointTransforms();
-        // get handle to fragment shader's vColor member
-        // 获取片段着色器的vColor成员的句柄
+        int count = jointTransformsArray.length;
+        if (jointTransforms.length < count * 16) {
+            jointTransforms = new float[count * 16];
+        }
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(jointTransformsArray[i], 0, jointTransforms, i * 16, 16);
+        }
+        // upload the whole array at once
+        // 一次上传整个数组
+        GLES20.glUniformMatrix4fv(locations[U_JOINT_TRANSFORMS], count, false, jointTransforms, 0);
+        GLUtil.debugGlError("glUniformMatrix4fv");
+    }
+
+    /**
+     * Draw the instances. The model matrices are uploaded as a per instance attribute, or if the device doesn't
+     * support instanced arrays, the geometry stays bound and every instance is drawn with its model matrix set
+     * as a constant attribute.
+     * 绘制实例。模型矩阵作为每实例属性上传；如果设备不支持实例化数组，几何体保持绑定，每个实例使用常量属性绘制
+     */
+    private void drawInstances(Object3DData obj, List<? extends Object3DData> instances, int drawMode, int drawSize) {
+        int count = instances.size();
+        if (instanceMatrices.length < count * 16) {
+            instanceMatrices = new float[count * 16];
+        }
+        for (int i = 0; i < count; i++) {
+            getMMatrix(instances.get(i), instanceMatrices, i * 16);
+        }
 
-        // TODO: optimize this (memory allocation)
-        // TODO:优化（内存分配）
-        for (int i = 0; i < jointTransformsArray.length; i++) {
-            float[] jointTransform = jointTransformsArray[i];
-            // Log.v("DrawerImpl","jointTransform: "+ Arrays.toString(jointTransform));
-            String jointTransformHandleName = cache1.get(i);
-            if (jointTransformHandleName == null) {
-                jointTransformHandleName = "jointTransforms[" + i + "]";
-                cache1.put(i, jointTransformHandleName);
+        int location = locations[A_MODEL_MATRIX];
+        if (!instancedArrays) {
+            for (int i = 0; i < count; i++) {
+                for (int column = 0; column < 4; column++) {
+                    int offset = i * 16 + column * 4;
+                    GLES20.glVertexAttrib4f(location + column, instanceMatrices[offset], instanceMatrices[offset + 1],
+                            instanceMatrices[offset + 2], instanceMatrices[offset + 3]);
+                }
+                drawShape(obj, drawMode, drawSize);
             }
-            int jointTransformsHandle = GLES20.glGetUniformLocation(mProgram, jointTransformHandleName);
-            GLUtil.checkGlError("glGetUniformLocation");
-            GLES20.glUniformMatrix4fv(jointTransformsHandle, 1, false, jointTransform, 0);
-            //handles.add(jointTransformsHandle);
+            return;
+        }
+
+        if (instanceBuffer == null || instanceBuffer.capacity() < count * 16) {
+            instanceBuffer = ByteBuffer.allocateDirect(count * 16 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        instanceBuffer.clear();
+        instanceBuffer.put(instanceMatrices, 0, count * 16);
+        instanceBuffer.flip();
+        bufferManager.bindStream(instanceBuffer);
+
+        // a mat4 attribute takes 4 consecutive locations, one per column
+        // mat4属性占用4个连续位置，每列一个
+        for (int column = 0; column < 4; column++) {
+            GLES20.glEnableVertexAttribArray(location + column);
+            GLES20.glVertexAttribPointer(location + column, 4, GLES20.GL_FLOAT, false, 64, column * 16);
+            GLES30.glVertexAttribDivisor(location + column, 1);
+        }
+        instanceCount = count;
+        drawShape(obj, drawMode, drawSize);
+        instanceCount = 0;
+        for (int column = 0; column < 4; column++) {
+            GLES30.glVertexAttribDivisor(location + column, 0);
+            GLES20.glDisableVertexAttribArray(location + column);
+        }
+    }
+
+    private void drawArrays(int mode, int first, int count) {
+        if (instanceCount > 0) {
+            GLES30.glDrawArraysInstanced(mode, first, count, instanceCount);
+        } else {
+            GLES20.glDrawArrays(mode, first, count);
+        }
+    }
+
+    private void drawElements(int mode, int count, int type, int offset) {
+        if (instanceCount > 0) {
+            GLES30.glDrawElementsInstanced(mode, count, type, offset, instanceCount);
+        } else {
+            GLES20.glDrawElements(mode, count, type, offset);
         }
     }
 
     private void drawShape(Object3DData obj, int drawMode, int drawSize) {
         FloatBuffer vertexBuffer = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
                 : obj.getVertexBuffer();
-        vertexBuffer.position(0);
         List<int[]> drawModeList = obj.getDrawModeList();
 
         Buffer drawOrderBuffer = obj.getDrawOrderBuffer();
         int drawBufferType = obj.getDrawOrderBufferType();
 
-
-        if (!drawUsingUnsignedInt) {
-            drawOrderBuffer = obj.getDrawOrderAsShort();
-            drawBufferType = GLES20.GL_UNSIGNED_SHORT;
-        }
-
-
         if (obj.isDrawUsingArrays()) {
             drawOrderBuffer = null;
         }
 
-        if (drawModeList != null) {
+        // indices are read from the index buffer object, so the draw calls get an offset in bytes
+        // 索引从索引缓冲区对象读取，所以绘制调用使用字节偏移量
+        int indexSize = 0;
+        if (drawOrderBuffer != null) {
+            if (drawBufferType == GLES20.GL_UNSIGNED_INT && !unsignedIntChecked) {
+                // discard previous errors, so they are not taken as a failure of GL_UNSIGNED_INT
+                // 丢弃之前的错误，以免被当作GL_UNSIGNED_INT的失败
+                GLUtil.checkGlError("glDrawElements (before)");
+            }
+            if (!drawUsingUnsignedInt && drawBufferType == GLES20.GL_UNSIGNED_INT) {
+                bufferManager.bindIndicesAsShort(obj);
+                drawBufferType = GLES20.GL_UNSIGNED_SHORT;
+            } else {
+                bufferManager.bind(obj, GpuBufferManager.INDICES, drawOrderBuffer);
+            }
+            indexSize = drawBufferType == GLES20.GL_UNSIGNED_INT ? 4
+                    : drawBufferType == GLES20.GL_UNSIGNED_BYTE ? 1 : 2;
+        }
+
+        if (materialRanges != null && drawModeList == null) {
+            drawRanges(obj, drawMode, drawOrderBuffer != null, drawBufferType, indexSize);
+        } else if (drawModeList != null) {
             if (drawOrderBuffer == null) {
                 // Log.v(obj.getId(), "Drawing single polygons using arrays...");
                 for (int j = 0; j < drawModeList.size(); j++) {
@@ -561,10 +745,10 @@ class DrawerImpl implements Object3D {
                         // Log.v("Object3DImpl","Drawing wireframe for '" + obj.getId() + "' (" + drawSizePolygon + ")...");
                         for (int i = 0; i < polygon[2] - 2; i++) {
                             // Log.v("Object3DImpl","Drawing wireframe triangle '" + i + "' for '" + obj.getId() + "'...");
-                            GLES20.glDrawArrays(drawMode, polygon[1] + i, 3);
+                            drawArrays(drawMode, polygon[1] + i, 3);
                         }
                     } else {
-                        GLES20.glDrawArrays(drawMode, polygon[1], polygon[2]);
+                        drawArrays(drawMode, polygon[1], polygon[2]);
                     }
                 }
             } else {
@@ -574,11 +758,8 @@ class DrawerImpl implements Object3D {
                     int drawModePolygon = drawPart[0];
                     int vertexPos = drawPart[1];
                     int drawSizePolygon = drawPart[2];
-                    drawOrderBuffer.position(vertexPos);
-                    GLES20.glDrawElements(drawModePolygon, drawSizePolygon, drawBufferType, drawOrderBuffer);
-                    if (drawUsingUnsignedInt && GLUtil.checkGlError("glDrawElements")) {
-                        drawUsingUnsignedInt = false;
-                    }
+                    drawElements(drawModePolygon, drawSizePolygon, drawBufferType, vertexPos * indexSize);
+                    checkDrawElements(drawBufferType);
                 }
             }
         } else {
@@ -586,25 +767,24 @@ class DrawerImpl implements Object3D {
                 if (drawSize <= 0) {
                     // String mode = drawMode == GLES20.GL_POINTS ? "Points" : drawMode == GLES20.GL_LINES? "Lines": "Triangles?";
                     // Log.v(obj.getId(),"Drawing all elements with mode '"+drawMode+"'...");
-                    drawOrderBuffer.position(0);
-                    GLES20.glDrawElements(drawMode, drawOrderBuffer.capacity(), drawBufferType,
-                            drawOrderBuffer);
-                    if (drawUsingUnsignedInt && GLUtil.checkGlError("glDrawElements")) {
-                        drawUsingUnsignedInt = false;
-                    }
+                    drawElements(drawMode, drawOrderBuffer.capacity(), drawBufferType, 0);
+                    checkDrawElements(drawBufferType);
                 } else {
                     //Log.d(obj.getId(),"Drawing single elements of size '"+drawSize+"'...");
                     for (int i = 0; i < drawOrderBuffer.capacity(); i += drawSize) {
-                        drawOrderBuffer.position(i);
-                        GLES20.glDrawElements(drawMode, drawSize, drawBufferType, drawOrderBuffer);
-                    }
-                    if (drawUsingUnsignedInt && GLUtil.checkGlError("glDrawElements")) {
-                        drawUsingUnsignedInt = false;
+                        drawElements(drawMode, drawSize, drawBufferType, i * indexSize);
                     }
+                    checkDrawElements(drawBufferType);
                 }
             } else {
+                // draw only the vertices loaded so far
+                // 只绘制目前已加载的顶点
+                int vertexCount = vertexBuffer.capacity() / COORDS_PER_VERTEX;
+                if (obj.getGeometryStream() != null) {
+                    vertexCount = Math.min(vertexCount, obj.getGeometryStream().getVisibleVertices());
+                }
                 if (drawSize <= 0) {
-                    int drawCount = vertexBuffer.capacity() / COORDS_PER_VERTEX;
+                    int drawCount = vertexCount;
 
                     // if we want to animate, initialize counter=0 at variable declaration
                     if (this.shift >= 0) {
@@ -616,14 +796,53 @@ class DrawerImpl implements Object3D {
                         drawCount = (int) ((Math.sin(rotation - this.shift + Math.PI / 2 * 3) + 1) / 2f * drawCount);
                     }
                     // Log.d(obj.getId(),"Drawing all triangles using arrays... counter("+drawCount+")");
-                    GLES20.glDrawArrays(drawMode, 0, drawCount);
+                    drawArrays(drawMode, 0, drawCount);
                 } else {
                     //Log.d(obj.getId(),"Drawing single triangles using arrays...");
-                    for (int i = 0; i < vertexBuffer.capacity() / COORDS_PER_VERTEX; i += drawSize) {
-                        GLES20.glDrawArrays(drawMode, i, drawSize);
+                    for (int i = 0; i + drawSize <= vertexCount; i += drawSize) {
+                        drawArrays(drawMode, i, drawSize);
                     }
                 }
             }
         }
     }
+
+    /**
+     * Draw every material range with its texture. The ranges are sorted by texture, so the texture is only bound
+     * again when it changes.
+     * 使用各自的纹理绘制每个材质范围。范围按纹理排序，所以纹理只在改变时重新绑定
+     */
+    private void drawRanges(Object3DData obj, int drawMode, boolean indexed, int drawBufferType, int indexSize) {
+        int boundTexture = -1;
+        for (int i = 0; i < materialRanges.size(); i++) {
+            MaterialRange range = materialRanges.get(i);
+            if (range.getTextureHandle() != -1 && range.getTextureHandle() != boundTexture) {
+                boundTexture = range.getTextureHandle();
+                bindTexture(obj, boundTexture);
+            }
+            if (indexed) {
+                drawElements(drawMode, range.getCount(), drawBufferType, range.getFirst() * indexSize);
+                checkDrawElements(drawBufferType);
+            } else {
+                drawArrays(drawMode, range.getFirst(), range.getCount());
+            }
+        }
+    }
+
+    /**
+     * Check whether the device supports GL_UNSIGNED_INT indices. glGetError() stalls the pipeline, so it's only
+     * queried after the first draw (or always in debug mode)
+     * 检查设备是否支持GL_UNSIGNED_INT索引，只在第一次绘制后查询
+     */
+    private void checkDrawElements(int drawBufferType) {
+        if (drawBufferType != GLES20.GL_UNSIGNED_INT || unsignedIntChecked) {
+            GLUtil.debugGlError("glDrawElements");
+            return;
+        }
+        unsignedIntChecked = true;
+        if (GLUtil.checkGlError("glDrawElements")) {
+            Log.i("DrawerImpl", "GL_UNSIGNED_INT indices not supported. Using GL_UNSIGNED_SHORT");
+            drawUsingUnsignedInt = false;
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+
+/**
+ * Shadow of the OpenGL state shared by the drawers. Calls that would not change the current state are
+ * filtered, so consecutive objects drawn with the same program or blending don't switch it again.
+ * <p>
+ * The shadow only works if all the changes to the tracked state go through this class. Call {@link #reset()}
+ * when the OpenGL context is created or when the state has been changed somewhere else.
+ * 抽屉共享的OpenGL状态影子，过滤不会改变当前状态的调用
+ *
+ * @author andresoviedo
+ */
+public final class GLState {
+
+    private static final int UNKNOWN = -1;
+
+    private int program = UNKNOWN;
+    private int blending = UNKNOWN;
+    private int blendSrc = UNKNOWN;
+    private int blendDst = UNKNOWN;
+    private int cullFace = UNKNOWN;
+
+    public void useProgram(int program) {
+        if (this.program != program) {
+            GLES20.glUseProgram(program);
+            this.program = program;
+        }
+    }
+
+    public void setBlending(boolean enabled) {
+        blending = setCapability(GLES20.GL_BLEND, blending, enabled);
+    }
+
+    public void setBlendFunc(int src, int dst) {
+        if (blendSrc != src || blendDst != dst) {
+            GLES20.glBlendFunc(src, dst);
+            blendSrc = src;
+            blendDst = dst;
+        }
+    }
+
+    public void setCullFace(boolean enabled) {
+        cullFace = setCapability(GLES20.GL_CULL_FACE, cullFace, enabled);
+    }
+
+    /**
+     * Forget the tracked state, so the next calls are always issued
+     * 忘记跟踪的状态
+     */
+    public void reset() {
+        program = UNKNOWN;
+        blending = UNKNOWN;
+        blendSrc = UNKNOWN;
+        blendDst = UNKNOWN;
+        cullFace = UNKNOWN;
+    }
+
+    private static int setCapability(int capability, int current, boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (current != value) {
+            if (enabled) {
+                GLES20.glEnable(capability);
+            } else {
+                GLES20.glDisable(capability);
+            }
+        }
+        return value;
+    }
+}
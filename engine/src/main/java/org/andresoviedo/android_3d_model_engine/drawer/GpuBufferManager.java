@@ -0,0 +1,291 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.GeometryStream;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the vertex attributes and indices of every {@link Object3DData} in GPU buffer objects (VBO/IBO).
+ * <p>
+ * Buffer objects belong to the client side buffers they are uploaded from, not to the objects, so the
+ * instances of a model (see {@link AnimatedModel#newInstance()}) share the same buffer objects. Every object
+ * holds a reference to the buffers it has bound, and a buffer object is deleted once no object references it.
+ * <p>
+ * Each buffer is uploaded only once. It's uploaded again only if the object replaces the buffer or if the
+ * object is flagged as {@link Object3DData#isChanged() changed}. Objects still being loaded (see
+ * {@link GeometryStream}) get their buffer objects allocated at full size, and then only the new vertices are
+ * uploaded every frame. All the methods must be called from the OpenGL thread.
+ * 将每个对象的顶点属性和索引保存在GPU缓冲区对象中，只上传一次。缓冲区对象属于上传它们的客户端缓冲区，
+ * 共享缓冲区的实例共享缓冲区对象，没有对象引用时删除
+ *
+ * @author andresoviedo
+ */
+public final class GpuBufferManager {
+
+    // buffer slots of every object
+    // 每个对象的缓冲区槽
+    static final int POSITION = 0;
+    static final int NORMAL = 1;
+    static final int COLOR = 2;
+    static final int TEXTURE = 3;
+    static final int EMISSIVE_TEXTURE = 4;
+    static final int WEIGHTS = 5;
+    static final int JOINTS = 6;
+    static final int INDICES = 7;
+    private static final int SLOTS = 8;
+
+    // buffer objects by the client side buffer they are uploaded from
+    // 按上传来源的客户端缓冲区索引的缓冲区对象
+    private final Map<Buffer, Entry> entries = new IdentityHashMap<>();
+
+    // buffers referenced by every object, by slot
+    // 每个对象按槽引用的缓冲区
+    private final Map<Object3DData, Buffer[]> references = new IdentityHashMap<>();
+
+    // buffer for the data uploaded every frame (i.e. instance matrices)
+    // 每帧上传的数据的缓冲区（例如实例矩阵）
+    private final int[] streamBuffer = new int[1];
+
+    /**
+     * Bind the buffer object holding the specified buffer, uploading the data first if required
+     *
+     * @param obj    the object owning the buffer
+     * @param slot   the slot of the buffer (i.e. {@link #POSITION})
+     * @param buffer the client side buffer
+     */
+    void bind(Object3DData obj, int slot, Buffer buffer) {
+        Entry entry = reference(obj, slot, buffer);
+        GeometryStream stream = obj.getGeometryStream();
+        if (stream != null && slot != INDICES && stream.getTotalVertices() > 0) {
+            bindStreaming(obj, entry, slot, buffer, stream);
+            return;
+        }
+        if (needsUpload(obj, entry, sizeInBytes(buffer))) {
+            upload(entry, slot, buffer);
+        } else {
+            GLES20.glBindBuffer(getTarget(slot), entry.id[0]);
+        }
+    }
+
+    /**
+     * Bind the index buffer object converted to 16 bit indices, for devices that don't support
+     * GL_UNSIGNED_INT. The conversion is only done when the data has to be uploaded.
+     * 绑定转换为16位的索引缓冲区，用于不支持GL_UNSIGNED_INT的设备
+     *
+     * @param obj the object owning the indices
+     */
+    void bindIndicesAsShort(Object3DData obj) {
+        Buffer source = obj.getDrawOrderBuffer();
+        Entry entry = reference(obj, INDICES, source);
+        if (needsUpload(obj, entry, source.capacity() * 2)) {
+            upload(entry, INDICES, obj.getDrawOrderAsShort());
+        } else {
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, entry.id[0]);
+        }
+    }
+
+    /**
+     * Make the slot of the object reference the buffer, releasing the buffer it referenced before
+     *
+     * @return the buffer object of the buffer
+     */
+    private Entry reference(Object3DData obj, int slot, Buffer buffer) {
+        Buffer[] slots = references.get(obj);
+        if (slots == null) {
+            slots = new Buffer[SLOTS];
+            references.put(obj, slots);
+        }
+        Entry entry = entries.get(buffer);
+        if (slots[slot] == buffer) {
+            return entry;
+        }
+        if (slots[slot] != null) {
+            unreference(slots[slot]);
+        }
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(buffer, entry);
+        }
+        entry.references++;
+        slots[slot] = buffer;
+        return entry;
+    }
+
+    private void unreference(Buffer buffer) {
+        Entry entry = entries.get(buffer);
+        if (entry != null && --entry.references == 0) {
+            entries.remove(buffer);
+            if (entry.id[0] != 0) {
+                GLES20.glDeleteBuffers(1, entry.id, 0);
+            }
+        }
+    }
+
+    /**
+     * Bind the buffer object of an object being loaded, uploading the vertices published since the last frame
+     * 绑定正在加载的对象的缓冲区对象，上传上一帧之后发布的顶点
+     */
+    private void bindStreaming(Object3DData obj, Entry entry, int slot, Buffer buffer, GeometryStream stream) {
+        int target = getTarget(slot);
+        int size = sizeInBytes(buffer);
+        if (entry.id[0] == 0) {
+            GLES20.glGenBuffers(1, entry.id, 0);
+        }
+        GLES20.glBindBuffer(target, entry.id[0]);
+        if (!entry.uploaded || entry.size != size || obj.isChanged()) {
+            // allocate the whole buffer, it's filled as the vertices arrive
+            // 分配整个缓冲区，随着顶点到达而填充
+            GLES20.glBufferData(target, size, null, GLES20.GL_STATIC_DRAW);
+            entry.uploaded = true;
+            entry.size = size;
+            entry.streamed = 0;
+        }
+        int visible = stream.getVisibleVertices();
+        if (entry.streamed < visible) {
+            int elements = buffer.capacity() / stream.getTotalVertices();
+            int elementSize = size / Math.max(1, buffer.capacity());
+            Buffer range = duplicate(buffer);
+            range.position(entry.streamed * elements);
+            GLES20.glBufferSubData(target, entry.streamed * elements * elementSize,
+                    (visible - entry.streamed) * elements * elementSize, range);
+            entry.streamed = visible;
+        }
+    }
+
+    private static Buffer duplicate(Buffer buffer) {
+        if (buffer instanceof FloatBuffer) {
+            return ((FloatBuffer) buffer).duplicate();
+        } else if (buffer instanceof ShortBuffer) {
+            return ((ShortBuffer) buffer).duplicate();
+        } else if (buffer instanceof ByteBuffer) {
+            return ((ByteBuffer) buffer).duplicate();
+        }
+        return ((IntBuffer) buffer).duplicate();
+    }
+
+    /**
+     * Upload data that changes every frame into the stream buffer object, and leave it bound
+     * 将每帧变化的数据上传到流缓冲区对象，并保持绑定
+     *
+     * @param data the data, from position 0 to the limit
+     */
+    void bindStream(FloatBuffer data) {
+        if (streamBuffer[0] == 0) {
+            GLES20.glGenBuffers(1, streamBuffer, 0);
+        }
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, streamBuffer[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, data.limit() * 4, data, GLES20.GL_STREAM_DRAW);
+    }
+
+    private static boolean needsUpload(Object3DData obj, Entry entry, int size) {
+        return !entry.uploaded || entry.size != size || obj.isChanged();
+    }
+
+    /**
+     * Upload the data into the buffer object, and leave it bound
+     *
+     * @param entry the buffer object of the client side buffer the data was generated from
+     * @param slot  the slot of the buffer
+     * @param data  the data to upload
+     */
+    private static void upload(Entry entry, int slot, Buffer data) {
+        if (entry.id[0] == 0) {
+            GLES20.glGenBuffers(1, entry.id, 0);
+        }
+
+        int target = getTarget(slot);
+        int size = sizeInBytes(data);
+        data.position(0);
+        GLES20.glBindBuffer(target, entry.id[0]);
+        if (entry.uploaded && size == entry.size) {
+            GLES20.glBufferSubData(target, 0, size, data);
+        } else {
+            GLES20.glBufferData(target, size, data, GLES20.GL_STATIC_DRAW);
+        }
+        entry.uploaded = true;
+        entry.size = size;
+    }
+
+    /**
+     * Unbind the array and element buffers, so client side buffers can be used again
+     */
+    void unbind() {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Release the buffers referenced by the specified object. The buffer objects no longer referenced by any
+     * object are deleted. Call this when the object leaves the scene.
+     * 释放对象引用的缓冲区，不再被任何对象引用的缓冲区对象将被删除。当对象离开场景时调用
+     *
+     * @param obj the object
+     */
+    public void release(Object3DData obj) {
+        Buffer[] slots = references.remove(obj);
+        if (slots == null) {
+            return;
+        }
+        for (Buffer buffer : slots) {
+            if (buffer != null) {
+                unreference(buffer);
+            }
+        }
+        Log.v("GpuBufferManager", "Released buffers of '" + obj.getId() + "'");
+    }
+
+    /**
+     * @return number of buffer objects 缓冲区对象的数量
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Forget all the buffer objects without deleting them. Call this when the OpenGL context has been
+     * recreated, because the old buffer names are not valid anymore.
+     * 忘记所有缓冲区对象。当OpenGL上下文重新创建时调用
+     */
+    public void invalidate() {
+        entries.clear();
+        references.clear();
+        streamBuffer[0] = 0;
+    }
+
+    private static int getTarget(int slot) {
+        return slot == INDICES ? GLES20.GL_ELEMENT_ARRAY_BUFFER : GLES20.GL_ARRAY_BUFFER;
+    }
+
+    private static int sizeInBytes(Buffer buffer) {
+        if (buffer instanceof ByteBuffer) {
+            return buffer.capacity();
+        }
+        if (buffer instanceof ShortBuffer) {
+            return buffer.capacity() * 2;
+        }
+        // float and int buffers
+        return buffer.capacity() * 4;
+    }
+
+    private static final class Entry {
+        private final int[] id = new int[1];
+        private boolean uploaded;
+        private int size;
+        // objects referencing the buffer 引用该缓冲区的对象数
+        private int references;
+        // vertices already uploaded of objects being loaded
+        // 正在加载的对象已上传的顶点
+        private int streamed;
+    }
+}
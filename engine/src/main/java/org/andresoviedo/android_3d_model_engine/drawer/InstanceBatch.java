@@ -0,0 +1,162 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.Object3D;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Collects the objects of a frame and draws the ones sharing the same mesh and material with a single instanced
+ * draw call. Objects only differ in their transformation (position, rotation and scale), which is uploaded as a
+ * per instance attribute.
+ * <p>
+ * Usage: {@link #add(Object3DData, int)} every object while drawing the scene, and then {@link #submit} once
+ * to queue the groups in the {@link RenderQueue}, so they are drawn sorted with the rest of the opaque objects.
+ * Objects not accepted by {@link #add(Object3DData, int)} must be queued as usual. The groups are reused
+ * between frames. All the methods must be called from the OpenGL thread.
+ * 收集一帧中的对象，将共享相同网格和材质的对象用一次实例化绘制调用绘制
+ *
+ * @author andresoviedo
+ */
+public final class InstanceBatch {
+
+    private final DrawerFactory drawerFactory;
+
+    // groups of objects drawn together, indexed by vertex buffer
+    // 一起绘制的对象组，按顶点缓冲区索引
+    private final Map<FloatBuffer, List<Group>> groupsByVertices = new IdentityHashMap<>();
+    private final List<Group> groups = new ArrayList<>();
+    private int groupCount = 0;
+
+    public InstanceBatch(DrawerFactory drawerFactory) {
+        this.drawerFactory = drawerFactory;
+    }
+
+    /**
+     * Queue the object to be submitted with {@link #submit}. Skinned models, points, transparent objects (they
+     * are sorted back to front one by one), objects still being loaded and objects whose buffers have changed
+     * (so they must be uploaded again) are not batched.
+     * 将对象加入队列
+     *
+     * @param obj       the object
+     * @param textureId the texture of the object, or -1
+     * @return true if the object was queued, false if the caller has to draw it
+     */
+    public boolean add(Object3DData obj, int textureId) {
+        if (obj.isChanged() || obj.getDrawMode() == GLES20.GL_POINTS
+                || (obj.getColor() != null && obj.getColor()[3] < 1)
+                || (obj.getGeometryStream() != null && !obj.getGeometryStream().isComplete())
+                || (obj instanceof AnimatedModel && ((AnimatedModel) obj).getAnimation() != null)) {
+            return false;
+        }
+        FloatBuffer vertices = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer() : obj.getVertexBuffer();
+        if (vertices == null) {
+            return false;
+        }
+
+        List<Group> candidates = groupsByVertices.get(vertices);
+        if (candidates == null) {
+            candidates = new ArrayList<>();
+            groupsByVertices.put(vertices, candidates);
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            Group group = candidates.get(i);
+            if (!group.objects.isEmpty() && group.textureId == textureId && sameDraw(group.objects.get(0), obj)) {
+                group.objects.add(obj);
+                return true;
+            }
+        }
+
+        Group group = newGroup();
+        group.textureId = textureId;
+        group.objects.add(obj);
+        candidates.add(group);
+        return true;
+    }
+
+    /**
+     * Queue the groups in the render queue and start collecting the next view. The copies of a mesh are queued as
+     * one instanced draw, and groups of one object as a regular draw. The groups must not be changed until the
+     * queue is drawn, so this must be called after {@link RenderQueue#begin(float[])}.
+     * 将各组加入渲染队列，并开始收集下一个视图。网格的副本作为一次实例化绘制加入队列，单个对象的组作为普通绘制
+     */
+    public void submit(RenderQueue queue, boolean usingTextures, boolean usingLights, boolean drawColors) {
+        // forget the objects of the groups not used in this view, so they can be garbage collected
+        // 忘记此视图未使用的组的对象，以便回收
+        for (int i = groupCount; i < groups.size(); i++) {
+            groups.get(i).objects.clear();
+        }
+        for (int i = 0; i < groupCount; i++) {
+            Group group = groups.get(i);
+            List<Object3DData> objects = group.objects;
+            DrawerImpl drawer = null;
+            if (objects.size() > 1) {
+                drawer = drawerFactory.getInstancedDrawer(objects.get(0), usingTextures, usingLights, drawColors);
+            }
+            if (drawer != null && drawer.supportsInstancing()) {
+                queue.addInstanced(drawer, objects, group.textureId);
+                continue;
+            }
+            for (int j = 0; j < objects.size(); j++) {
+                Object3DData obj = objects.get(j);
+                Object3D single = drawerFactory.getDrawer(obj, usingTextures, usingLights, false, drawColors);
+                if (single != null) {
+                    queue.add(single, obj, group.textureId, null, false);
+                }
+            }
+        }
+        groupCount = 0;
+
+        for (List<Group> candidates : groupsByVertices.values()) {
+            candidates.clear();
+        }
+        groupsByVertices.clear();
+    }
+
+    private Group newGroup() {
+        if (groupCount == groups.size()) {
+            groups.add(new Group());
+        }
+        // the objects of the group were queued in the previous view 该组的对象在上一个视图中已入队
+        Group group = groups.get(groupCount++);
+        group.objects.clear();
+        return group;
+    }
+    /**
+     * @return whether both objects are drawn with the same geometry, material and state
+     */
+    private static boolean sameDraw(Object3DData a, Object3DData b) {
+        return a.getVertexArrayBuffer() == b.getVertexArrayBuffer()
+                && a.getVertexBuffer() == b.getVertexBuffer()
+                && a.getDrawOrderBuffer() == b.getDrawOrderBuffer()
+                && a.getDrawModeList() == b.getDrawModeList()
+                && a.isDrawUsingArrays() == b.isDrawUsingArrays()
+                && a.getDrawMode() == b.getDrawMode()
+                && a.getDrawSize() == b.getDrawSize()
+                && a.getVertexNormalsArrayBuffer() == b.getVertexNormalsArrayBuffer()
+                && a.getNormals() == b.getNormals()
+                && a.getVertexColorsArrayBuffer() == b.getVertexColorsArrayBuffer()
+                && a.getTextureData() == b.getTextureData()
+                && a.getTextureCoordsArrayBuffer() == b.getTextureCoordsArrayBuffer()
+                && a.getMaterialRanges() == b.getMaterialRanges()
+                && a.getEmissiveTextureData() == b.getEmissiveTextureData()
+                && a.getEmissiveTextureCoordsArrayBuffer() == b.getEmissiveTextureCoordsArrayBuffer()
+                && Objects.equals(a.getEmissiveTextureHandle(), b.getEmissiveTextureHandle())
+                && a.getIsDoubleSided() == b.getIsDoubleSided()
+                && Arrays.equals(a.getColor(), b.getColor());
+    }
+
+    private static final class Group {
+        private final List<Object3DData> objects = new ArrayList<>();
+        private int textureId;
+    }
+}
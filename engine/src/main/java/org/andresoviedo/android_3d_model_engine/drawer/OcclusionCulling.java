@@ -0,0 +1,240 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.MeshClusters;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.util.android.GLUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Occlusion test of the clusters of big meshes (see {@link MeshClusters}). After the scene is drawn, the bounding
+ * box of every cluster in the view is drawn without writing color or depth inside an occlusion query, so the
+ * query tells whether any part of the box passed the depth test. Results are read in the next frames without
+ * waiting for the GPU, and the clusters hidden behind the geometry are skipped until their box is visible again.
+ * Requires OpenGL ES 3.0.
+ * <p>
+ * 大网格簇的遮挡测试。场景绘制完成后，在遮挡查询中绘制视图中每个簇的包围盒（不写入颜色和深度），
+ * 查询结果表示包围盒是否有部分通过深度测试。结果在后续帧中读取，不等待GPU，被遮挡的簇会被跳过，直到其包围盒再次可见。
+ *
+ * @author andresoviedo
+ */
+public final class OcclusionCulling {
+
+    private static final String VERTEX_SHADER = "uniform mat4 u_VPMatrix;\n" +
+            "uniform vec3 u_Min;\n" +
+            "uniform vec3 u_Max;\n" +
+            "attribute vec3 a_Position;\n" +
+            "void main(){\n" +
+            "\tgl_Position = u_VPMatrix * vec4(mix(u_Min, u_Max, a_Position), 1.0);\n" +
+            "}";
+    private static final String FRAGMENT_SHADER = "precision lowp float;\n" +
+            "void main(){\n" +
+            "\tgl_FragColor = vec4(1.0);\n" +
+            "}";
+
+    // unit cube, scaled to the bounds of the cluster in the vertex shader 单位立方体，在顶点着色器中缩放到簇的边界
+    private static final float[] CUBE_VERTICES = {0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0, 0, 0, 1, 1, 0, 1, 1, 1, 1, 0, 1, 1};
+    private static final short[] CUBE_INDICES = {0, 1, 2, 0, 2, 3, 4, 6, 5, 4, 7, 6, 0, 4, 5, 0, 5, 1, 3, 2, 6, 3,
+            6, 7, 0, 3, 7, 0, 7, 4, 1, 5, 6, 1, 6, 2};
+
+    private final GLState glState;
+
+    private boolean supported;
+    private int program;
+    private int positionHandle;
+    private int vpMatrixHandle;
+    private int minHandle;
+    private int maxHandle;
+    private final int[] buffers = new int[2];
+
+    // query names and pending queries of every clustered mesh 每个簇网格的查询名称和待处理查询
+    private final Map<MeshClusters, Queries> queries = new IdentityHashMap<>();
+    private final float[] box = new float[6];
+
+    OcclusionCulling(GLState glState) {
+        this.glState = glState;
+    }
+
+    /**
+     * Compile the program and upload the box. Called from the OpenGL thread once the context is created
+     * 编译程序并上传包围盒。在上下文创建后从OpenGL线程调用
+     *
+     * @return false if the device doesn't support occlusion queries 如果设备不支持遮挡查询则返回false
+     */
+    private boolean init() {
+        if (program != 0) {
+            return supported;
+        }
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        supported = version != null && version.startsWith("OpenGL ES ") && version.length() > 10
+                && version.charAt(10) >= '3';
+        if (!supported) {
+            Log.i("OcclusionCulling", "Occlusion queries not supported: " + version);
+            program = -1;
+            return false;
+        }
+        program = GLUtil.createAndLinkProgram(GLUtil.loadShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER),
+                GLUtil.loadShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER), new String[]{"a_Position"});
+        positionHandle = GLES20.glGetAttribLocation(program, "a_Position");
+        vpMatrixHandle = GLES20.glGetUniformLocation(program, "u_VPMatrix");
+        minHandle = GLES20.glGetUniformLocation(program, "u_Min");
+        maxHandle = GLES20.glGetUniformLocation(program, "u_Max");
+
+        FloatBuffer vertices = ByteBuffer.allocateDirect(CUBE_VERTICES.length * 4).order(ByteOrder.nativeOrder())
+                .asFloatBuffer().put(CUBE_VERTICES);
+        vertices.position(0);
+        ShortBuffer indices = ByteBuffer.allocateDirect(CUBE_INDICES.length * 2).order(ByteOrder.nativeOrder())
+                .asShortBuffer().put(CUBE_INDICES);
+        indices.position(0);
+        GLES20.glGenBuffers(2, buffers, 0);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, CUBE_VERTICES.length * 4, vertices, GLES20.GL_STATIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, CUBE_INDICES.length * 2, indices,
+                GLES20.GL_STATIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        GLUtil.checkGlError("OcclusionCulling.init");
+        return true;
+    }
+
+    /**
+     * Read the results of the finished queries and issue new queries for the clusters in the view. Call it
+     * after all the objects have been drawn, so the depth buffer is complete, and after
+     * {@link MeshClusters#cull} so the frustum test of the clusters is up to date.
+     * 读取已完成查询的结果，并为视图中的簇发出新查询。在所有对象绘制完成后调用
+     *
+     * @param objects              the objects drawn 绘制的对象
+     * @param viewProjectionMatrix the view projection matrix used to draw them 绘制使用的视图投影矩阵
+     * @param eye                  the position of the camera in world space 相机在世界空间中的位置
+     */
+    public void query(Iterable<Object3DData> objects, float[] viewProjectionMatrix, float[] eye) {
+        if (!init()) {
+            return;
+        }
+        boolean started = false;
+        for (Object3DData obj : objects) {
+            MeshClusters clusters = obj.getMeshClusters();
+            if (clusters == null) {
+                continue;
+            }
+            Queries pending = queries.get(clusters);
+            if (pending == null) {
+                pending = new Queries(clusters.size());
+                GLES30.glGenQueries(clusters.size(), pending.ids, 0);
+                queries.put(clusters, pending);
+            }
+            for (int c = 0; c < clusters.size(); c++) {
+                if (pending.issued[c]) {
+                    GLES30.glGetQueryObjectuiv(pending.ids[c], GLES30.GL_QUERY_RESULT_AVAILABLE, pending.result, 0);
+                    if (pending.result[0] == 0) {
+                        // still running, keep the last result 仍在运行，保留上次的结果
+                        continue;
+                    }
+                    GLES30.glGetQueryObjectuiv(pending.ids[c], GLES30.GL_QUERY_RESULT, pending.result, 0);
+                    pending.issued[c] = false;
+                    clusters.setOccluded(c, pending.result[0] == 0);
+                }
+                if (!clusters.isInFrustum(c)) {
+                    // unknown when it enters the view again, so draw it 再次进入视图时结果未知，所以绘制它
+                    clusters.setOccluded(c, false);
+                    continue;
+                }
+                clusters.getWorldBounds(c, obj.getDrawMatrix(), box);
+                if (eye[0] >= box[0] && eye[0] <= box[3] && eye[1] >= box[1] && eye[1] <= box[4]
+                        && eye[2] >= box[2] && eye[2] <= box[5]) {
+                    // the box may be clipped by the near plane 包围盒可能被近平面裁剪
+                    clusters.setOccluded(c, false);
+                    continue;
+                }
+                if (!started) {
+                    begin(viewProjectionMatrix);
+                    started = true;
+                }
+                GLES20.glUniform3f(minHandle, box[0], box[1], box[2]);
+                GLES20.glUniform3f(maxHandle, box[3], box[4], box[5]);
+                GLES30.glBeginQuery(GLES30.GL_ANY_SAMPLES_PASSED_CONSERVATIVE, pending.ids[c]);
+                GLES20.glDrawElements(GLES20.GL_TRIANGLES, CUBE_INDICES.length, GLES20.GL_UNSIGNED_SHORT, 0);
+                GLES30.glEndQuery(GLES30.GL_ANY_SAMPLES_PASSED_CONSERVATIVE);
+                pending.issued[c] = true;
+            }
+        }
+        if (started) {
+            end();
+        }
+    }
+
+    private void begin(float[] viewProjectionMatrix) {
+        glState.useProgram(program);
+        glState.setCullFace(false);
+        GLES20.glColorMask(false, false, false, false);
+        GLES20.glDepthMask(false);
+        // the faces of a flat cluster lie on its own geometry 平面簇的面与其自身几何体重合
+        GLES20.glDepthFunc(GLES20.GL_LEQUAL);
+        GLES20.glUniformMatrix4fv(vpMatrixHandle, 1, false, viewProjectionMatrix, 0);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+        GLES20.glEnableVertexAttribArray(positionHandle);
+        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 0, 0);
+    }
+
+    private void end() {
+        GLES20.glDisableVertexAttribArray(positionHandle);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        GLES20.glDepthFunc(GLES20.GL_LESS);
+        GLES20.glDepthMask(true);
+        GLES20.glColorMask(true, true, true, true);
+        GLUtil.debugGlError("OcclusionCulling.query");
+    }
+
+    /**
+     * Delete the queries of the object and forget its occlusion results. Call this when the object leaves the
+     * scene or when the occlusion test is disabled.
+     * 删除对象的查询并忘记其遮挡结果
+     */
+    public void release(Object3DData obj) {
+        MeshClusters clusters = obj.getMeshClusters();
+        if (clusters == null) {
+            return;
+        }
+        clusters.resetOcclusion();
+        Queries pending = queries.remove(clusters);
+        if (pending != null) {
+            GLES30.glDeleteQueries(pending.ids.length, pending.ids, 0);
+        }
+    }
+
+    /**
+     * Forget the program, buffers and queries without deleting them. Call this when the OpenGL context has been
+     * recreated, because the old names are not valid anymore.
+     * 忘记程序、缓冲区和查询。当OpenGL上下文重新创建时调用
+     */
+    public void invalidate() {
+        for (MeshClusters clusters : queries.keySet()) {
+            clusters.resetOcclusion();
+        }
+        queries.clear();
+        program = 0;
+    }
+
+    private static final class Queries {
+        private final int[] ids;
+        private final boolean[] issued;
+        private final int[] result = new int[1];
+
+        private Queries(int count) {
+            ids = new int[count];
+            issued = new boolean[count];
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.GeometryStream;
+import org.andresoviedo.android_3d_model_engine.model.Object3D;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Collects the draws of a frame and submits them sorted by a 64 bit key, so the objects with the same program
+ * and texture are drawn one after the other and the OpenGL state is switched as few times as possible.
+ * <p>
+ * Opaque objects are drawn first, by program, texture and then from front to back, so the hidden fragments are
+ * rejected by the depth test before being shaded. Blended objects are drawn after them from back to front, so
+ * they are composed in the right order.
+ * <p>
+ * Usage: {@link #begin(float[])} with the view matrix, {@link #add} every object while walking the scene, and
+ * then {@link #draw} once per pass. The copies of a mesh collected by an {@link InstanceBatch} are queued as a
+ * single draw, sorted by their nearest copy. The items are reused between frames. All the methods must be called from the
+ * OpenGL thread.
+ * 收集一帧的绘制，并按64位排序键提交，使相同程序和纹理的对象依次绘制，尽量减少OpenGL状态切换。
+ * 不透明对象先按程序、纹理、再从前到后绘制；混合对象之后从后到前绘制
+ *
+ * @author andresoviedo
+ */
+public final class RenderQueue {
+
+    /**
+     * Passes of the queue, drawn in this order
+     * 队列的绘制阶段，按此顺序绘制
+     */
+    public static final int PASS_OPAQUE = 0;
+    public static final int PASS_BLENDED = 1;
+
+    // layout of the keys. opaque: pass | program | texture | depth, blended: pass | inverted depth | program |
+    // texture. The depth is the bits of a positive float, which sort as the float itself
+    // 键的布局。深度为正浮点数的位，其排序与浮点数本身相同
+    private static final int PASS_SHIFT = 62;
+    private static final long PROGRAM_MASK = 0x7FFF;
+    private static final long TEXTURE_MASK = 0xFFFF;
+    private static final long DEPTH_MASK = 0x7FFFFFFF;
+
+    private static final Comparator<Item> BY_KEY = new Comparator<Item>() {
+        @Override
+        public int compare(Item a, Item b) {
+            return a.key < b.key ? -1 : a.key > b.key ? 1 : 0;
+        }
+    };
+
+    private final GLState glState;
+
+    // blending function of the blended pass 混合阶段的混合函数
+    private int blendSrc = GLES20.GL_ONE;
+    private int blendDst = GLES20.GL_ONE_MINUS_SRC_ALPHA;
+
+    private final List<Item> pool = new ArrayList<>();
+    private Item[] items = new Item[16];
+    private int count;
+    private boolean sorted;
+    private final float[] viewMatrix = new float[16];
+
+    public RenderQueue(DrawerFactory drawerFactory) {
+        this(drawerFactory.getGLState());
+    }
+
+    RenderQueue(GLState glState) {
+        this.glState = glState;
+    }
+
+    /**
+     * @param src source factor of the blended pass, i.e. {@link GLES20#GL_ONE}
+     * @param dst destination factor of the blended pass, i.e. {@link GLES20#GL_ONE_MINUS_SRC_ALPHA}
+     */
+    public void setBlendFunc(int src, int dst) {
+        this.blendSrc = src;
+        this.blendDst = dst;
+    }
+
+    /**
+     * Start collecting the draws of a view. The draws not submitted are discarded.
+     * 开始收集一个视图的绘制，未提交的绘制将被丢弃
+     *
+     * @param viewMatrix the view matrix, to sort the objects by depth 视图矩阵，用于按深度排序
+     */
+    public void begin(float[] viewMatrix) {
+        clear();
+        sorted = true;
+        System.arraycopy(viewMatrix, 0, this.viewMatrix, 0, 16);
+    }
+
+    /**
+     * Queue the draw of an object
+     * 将对象的绘制加入队列
+     *
+     * @param drawer       the drawer of the object 对象的抽屉
+     * @param obj          the object 对象
+     * @param textureId    the texture of the object, or -1
+     * @param drawModeList the parts of the object to draw, set while it's drawn, or null to draw it whole
+     * @param blended      whether the object is transparent 对象是否透明
+     */
+    public void add(Object3D drawer, Object3DData obj, int textureId, List<int[]> drawModeList, boolean blended) {
+        Item item = nextItem();
+        item.drawer = drawer;
+        item.obj = obj;
+        item.textureId = textureId;
+        item.drawModeList = drawModeList;
+        item.pass = blended ? PASS_BLENDED : PASS_OPAQUE;
+        item.key = getKey(item.pass, getProgram(drawer), textureId, getDepth(obj));
+    }
+
+    /**
+     * Queue the opaque copies of a mesh, drawn with a single instanced call. They are sorted as their nearest
+     * copy. The list is not copied, so it must not change until the queue is drawn.
+     * 将网格的不透明副本加入队列，用一次实例化调用绘制。按最近的副本排序
+     *
+     * @param drawer    the instanced drawer, or a regular drawer to draw the copies one by one
+     * @param objects   the copies, sharing the geometry and material of the first one 副本
+     * @param textureId the texture of the copies, or -1
+     */
+    void addInstanced(Object3D drawer, List<Object3DData> objects, int textureId) {
+        float depth = Float.MAX_VALUE;
+        for (int i = 0; i < objects.size(); i++) {
+            depth = Math.min(depth, getDepth(objects.get(i)));
+        }
+        Item item = nextItem();
+        item.drawer = drawer;
+        item.obj = objects.get(0);
+        item.instances = objects;
+        item.textureId = textureId;
+        item.pass = PASS_OPAQUE;
+        item.key = getKey(PASS_OPAQUE, getProgram(drawer), textureId, depth);
+    }
+
+    private Item nextItem() {
+        if (count == items.length) {
+            items = Arrays.copyOf(items, count * 2);
+        }
+        Item item = count < pool.size() ? pool.get(count) : newItem();
+        items[count++] = item;
+        sorted = false;
+        return item;
+    }
+
+    private static int getProgram(Object3D drawer) {
+        return drawer instanceof DrawerImpl ? ((DrawerImpl) drawer).getProgram() : 0;
+    }
+
+    private Item newItem() {
+        Item item = new Item();
+        pool.add(item);
+        return item;
+    }
+
+    /**
+     * Draw the objects of the pass
+     * 绘制该阶段的对象
+     *
+     * @param pass {@link #PASS_OPAQUE} or {@link #PASS_BLENDED}
+     */
+    public void draw(int pass, float[] pMatrix, float[] vMatrix, float[] lightPos, float[] colorMask) {
+        if (!sorted) {
+            Arrays.sort(items, 0, count, BY_KEY);
+            sorted = true;
+        }
+        for (int i = 0; i < count; i++) {
+            Item item = items[i];
+            if (item.pass != pass) {
+                continue;
+            }
+            if (pass == PASS_BLENDED) {
+                // some drawers leave the blending disabled 某些抽屉会禁用混合
+                glState.setBlending(true);
+                glState.setBlendFunc(blendSrc, blendDst);
+            }
+            Object3DData obj = item.obj;
+            try {
+                if (item.drawModeList != null) {
+                    // the parts of the object in the view 对象在视图中的部分
+                    obj.setDrawModeList(item.drawModeList);
+                }
+                if (item.instances == null) {
+                    item.drawer.draw(obj, pMatrix, vMatrix, item.textureId, lightPos, colorMask);
+                } else if (item.drawer instanceof DrawerImpl) {
+                    ((DrawerImpl) item.drawer).drawInstanced(item.instances, pMatrix, vMatrix, item.textureId,
+                            lightPos, colorMask);
+                } else {
+                    for (int j = 0; j < item.instances.size(); j++) {
+                        item.drawer.draw(item.instances.get(j), pMatrix, vMatrix, item.textureId, lightPos,
+                                colorMask);
+                    }
+                }
+            } catch (Exception ex) {
+                Log.e("RenderQueue", "There was a problem rendering the object '" + obj.getId() + "':"
+                        + ex.getMessage(), ex);
+            } finally {
+                if (item.drawModeList != null) {
+                    obj.setDrawModeList(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of queued draws 队列中的绘制数
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param pass      {@link #PASS_OPAQUE} or {@link #PASS_BLENDED}
+     * @param program   the program of the drawer 抽屉的程序
+     * @param textureId the texture, or -1
+     * @param depth     distance to the camera. negative distances are behind it, and sorted as 0
+     * @return the sort key of the draw 绘制的排序键
+     */
+    static long getKey(int pass, int program, int textureId, float depth) {
+        long programBits = program & PROGRAM_MASK;
+        long texture = (textureId + 1) & TEXTURE_MASK;
+        long depthBits = Float.floatToIntBits(Math.max(0, depth)) & DEPTH_MASK;
+        long passBits = (long) pass << PASS_SHIFT;
+        if (pass == PASS_OPAQUE) {
+            return passBits | programBits << 47 | texture << 31 | depthBits;
+        }
+        return passBits | (DEPTH_MASK - depthBits) << 31 | programBits << 16 | texture;
+    }
+
+    /**
+     * @return distance from the camera to the center of the object where it is drawn, along the view direction
+     * 沿视线方向从相机到对象绘制位置中心的距离
+     */
+    private float getDepth(Object3DData obj) {
+        float x, y, z;
+        // the bounds of a model still streaming would be cached with the part loaded so far
+        // 仍在流式加载的模型的边界会以目前加载的部分被缓存
+        GeometryStream stream = obj.getGeometryStream();
+        float[] bounds = stream == null || stream.isComplete() ? obj.getWorldBounds() : null;
+        if (bounds != null) {
+            x = (bounds[0] + bounds[3]) / 2;
+            y = (bounds[1] + bounds[4]) / 2;
+            z = (bounds[2] + bounds[5]) / 2;
+        } else {
+            float[] m = obj.getDrawMatrix();
+            x = m[12];
+            y = m[13];
+            z = m[14];
+        }
+        float[] v = viewMatrix;
+        return -(v[2] * x + v[6] * y + v[10] * z + v[14]);
+    }
+
+    // forget the objects, so they can be garbage collected 忘记对象，以便回收
+    private void clear() {
+        for (int i = 0; i < count; i++) {
+            items[i].drawer = null;
+            items[i].obj = null;
+            items[i].instances = null;
+            items[i].drawModeList = null;
+        }
+        count = 0;
+    }
+
+    private static final class Item {
+        private Object3D drawer;
+        private Object3DData obj;
+        // the copies drawn with a single instanced call, or null 用一次实例化调用绘制的副本
+        private List<Object3DData> instances;
+        private int textureId;
+        private List<int[]> drawModeList;
+        private int pass;
+        private long key;
+    }
+}
@@ -0,0 +1,219 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.services.ktx.EtcDecoder;
+import org.andresoviedo.android_3d_model_engine.services.ktx.KtxTexture;
+import org.andresoviedo.util.android.GLUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes the texture images in the background, so the OpenGL thread only has to upload the pixels (see
+ * {@link TextureManager}). The loaders start the decoding as soon as they have the image, and the decoded pixels
+ * wait here until the texture is first drawn.
+ * <p>
+ * KTX and KTX2 files are not decoded: their compressed levels are uploaded as they are (see {@link KtxTexture}),
+ * unless the GPU doesn't support the format, in which case they are decompressed here if possible.
+ * <p>
+ * 在后台解码纹理图像，使OpenGL线程只需上传像素。加载器一拿到图像就开始解码，解码后的像素保存在这里直到纹理首次绘制。
+ * KTX和KTX2文件不解码，其压缩级别直接上传，除非GPU不支持该格式，此时尽可能在这里解压。
+ *
+ * @author andresoviedo
+ */
+public final class TextureDecoder {
+
+    // decodings not taken yet by the texture manager (weak, so the models can be garbage collected)
+    // 纹理管理器尚未取走的解码（弱引用，以便模型可以被垃圾回收）
+    private static final Map<byte[], Future<Image>> pending = new WeakHashMap<>();
+    // compressed formats supported by the GPU, or null if not known yet GPU支持的压缩格式，未知时为null
+    private static volatile Set<Integer> compressedFormats;
+
+    private TextureDecoder() {
+    }
+
+    /**
+     * Start decoding the image in the background, if it wasn't started yet. Can be called from any thread.
+     * 在后台开始解码图像（如果尚未开始）。可以从任何线程调用
+     *
+     * @param data the encoded image (PNG, JPEG, KTX...) or null
+     */
+    public static void decode(byte[] data) {
+        if (data == null) {
+            return;
+        }
+        synchronized (pending) {
+            if (!pending.containsKey(data)) {
+                pending.put(data, submit(data));
+            }
+        }
+    }
+
+    /**
+     * Take the decoding of the image, starting it if required
+     * 取走图像的解码，必要时开始解码
+     *
+     * @return the decoding, whose result is null if the data is not a supported image
+     */
+    static Future<Image> take(byte[] data) {
+        synchronized (pending) {
+            Future<Image> decoding = pending.remove(data);
+            return decoding != null ? decoding : submit(data);
+        }
+    }
+
+    /**
+     * Forget the decoding of the image, because the texture is shared with another image with the same content
+     * 忘记图像的解码，因为纹理与另一个内容相同的图像共享
+     */
+    static void discard(byte[] data) {
+        Future<Image> decoding;
+        synchronized (pending) {
+            decoding = pending.remove(data);
+        }
+        if (decoding != null) {
+            decoding.cancel(false);
+        }
+    }
+
+    /**
+     * Check whether the image can be used as a texture, i.e. to choose between the compressed and the plain
+     * images of a glTF texture. Images other than KTX are supposed to be supported.
+     * 检查图像是否可以用作纹理，例如在glTF纹理的压缩图像和普通图像之间选择
+     *
+     * @return false if it's a KTX image whose format is neither supported by the GPU nor decodable
+     */
+    public static boolean canLoad(byte[] data) {
+        if (!KtxTexture.isKtx(data)) {
+            return data != null;
+        }
+        int format = KtxTexture.readFormat(data);
+        return format != 0 && (isSupported(format) || EtcDecoder.canDecode(format));
+    }
+
+    /**
+     * @param formats compressed formats supported by the GPU 压缩格式
+     */
+    static void setCompressedFormats(Set<Integer> formats) {
+        compressedFormats = formats;
+    }
+
+    /**
+     * @return whether the GPU supports the compressed format. True if it's not known yet
+     */
+    static boolean isSupported(int format) {
+        Set<Integer> formats = compressedFormats;
+        return formats == null || formats.contains(format);
+    }
+
+    /**
+     * Decompress a level of a texture whose format is not supported by the GPU
+     * 解压GPU不支持其格式的纹理的一个级别
+     *
+     * @param texture the texture, its format must be decodable by {@link EtcDecoder}
+     * @param level   the level to decompress 要解压的级别
+     * @return the decoding, whose result is null if there is not enough memory
+     */
+    static Future<Image> decompress(final KtxTexture texture, final int level) {
+        return ForkJoinPool.commonPool().submit(new Callable<Image>() {
+            @Override
+            public Image call() {
+                int width = texture.getLevelWidth(level);
+                int height = texture.getLevelHeight(level);
+                try {
+                    ByteBuffer pixels = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder());
+                    EtcDecoder.decode(texture.getFormat(), texture.getLevel(level), width, height, pixels);
+                    return new Image(width, height, pixels);
+                } catch (OutOfMemoryError ex) {
+                    Log.e("TextureDecoder", "Not enough memory to decompress texture " + width + "x" + height);
+                    return null;
+                }
+            }
+        });
+    }
+
+    private static Future<Image> submit(final byte[] data) {
+        return ForkJoinPool.commonPool().submit(new Callable<Image>() {
+            @Override
+            public Image call() {
+                return decodeNow(data);
+            }
+        });
+    }
+
+    private static Image decodeNow(byte[] data) {
+        if (KtxTexture.isKtx(data)) {
+            try {
+                return new Image(KtxTexture.parse(data));
+            } catch (IOException ex) {
+                Log.e("TextureDecoder", "Problem reading KTX texture: " + ex.getMessage());
+                return null;
+            }
+        }
+        Bitmap bitmap;
+        try {
+            bitmap = GLUtil.decodeBitmap(data);
+        } catch (OutOfMemoryError ex) {
+            Log.e("TextureDecoder", "Not enough memory to decode texture of " + data.length + " bytes");
+            return null;
+        }
+        if (bitmap == null) {
+            return null;
+        }
+        try {
+            if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+                Bitmap rgba = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+                bitmap.recycle();
+                if (rgba == null) {
+                    return null;
+                }
+                bitmap = rgba;
+            }
+            // same bytes as GL_RGBA / GL_UNSIGNED_BYTE 与GL_RGBA/GL_UNSIGNED_BYTE的字节相同
+            ByteBuffer pixels = ByteBuffer.allocateDirect(bitmap.getWidth() * bitmap.getHeight() * 4)
+                    .order(ByteOrder.nativeOrder());
+            bitmap.copyPixelsToBuffer(pixels);
+            pixels.position(0);
+            return new Image(bitmap.getWidth(), bitmap.getHeight(), pixels);
+        } catch (OutOfMemoryError ex) {
+            Log.e("TextureDecoder", "Not enough memory to decode texture of " + data.length + " bytes");
+            return null;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Decoded image: RGBA pixels, rows from the top, or the compressed levels of a KTX file
+     * 解码后的图像：RGBA像素，或KTX文件的压缩级别
+     */
+    static final class Image {
+        final int width;
+        final int height;
+        final ByteBuffer pixels;
+        final KtxTexture compressed;
+
+        private Image(int width, int height, ByteBuffer pixels) {
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+            this.compressed = null;
+        }
+
+        private Image(KtxTexture compressed) {
+            this.width = compressed.getWidth();
+            this.height = compressed.getHeight();
+            this.pixels = null;
+            this.compressed = compressed;
+        }
+    }
+}
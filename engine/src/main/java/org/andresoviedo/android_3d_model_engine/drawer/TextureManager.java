@@ -0,0 +1,696 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.ktx.EtcDecoder;
+import org.andresoviedo.android_3d_model_engine.services.ktx.KtxTexture;
+import org.andresoviedo.util.android.GLUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps the textures of the objects in the GPU.
+ * <p>
+ * Images with the same content are uploaded only once, even if they were loaded by different models, and every
+ * texture counts the objects using it. The memory used by the textures (mipmaps included) is estimated, and
+ * when it goes above the budget the textures drawn least recently are deleted. A deleted texture is uploaded
+ * again if an object using it is drawn later. All the methods must be called from the OpenGL thread.
+ * <p>
+ * Images are decoded in the background (see {@link TextureDecoder}) and uploaded in strips of rows, spending at
+ * most a few milliseconds per frame, so big textures don't make the frame late. Objects are drawn with a plain
+ * placeholder texture until theirs is complete.
+ * <p>
+ * KTX and KTX2 images are uploaded compressed, a level per call, if the GPU supports their format. The levels
+ * bigger than the maximum texture size are skipped. Otherwise ETC formats are decompressed in the background and
+ * uploaded as RGBA, and the other formats fail.
+ * 将对象的纹理保存在GPU中。内容相同的图像只上传一次，每个纹理记录使用它的对象数。
+ * 估算纹理使用的内存（包括mipmap），超过预算时删除最久未绘制的纹理。
+ * 图像在后台解码，并按行分块上传，每帧最多花费几毫秒。纹理完成之前，对象使用占位纹理绘制。
+ * KTX和KTX2图像如果GPU支持其格式则以压缩形式上传，否则ETC格式在后台解压后以RGBA上传。
+ *
+ * @author andresoviedo
+ */
+public class TextureManager {
+
+    /**
+     * Default maximum memory of the textures, in bytes
+     * 纹理的默认最大内存（字节）
+     */
+    public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+    /**
+     * Default time spent uploading textures in every frame, in milliseconds
+     * 每帧上传纹理的默认时间（毫秒）
+     */
+    public static final int DEFAULT_UPLOAD_TIME = 4;
+
+    // texture slots of every object
+    // 每个对象的纹理槽
+    public static final int TEXTURE = 0;
+    public static final int EMISSIVE_TEXTURE = 1;
+    // the texture of every material range goes in RANGE_TEXTURE + index of the range
+    // 每个材质范围的纹理位于RANGE_TEXTURE + 范围索引
+    public static final int RANGE_TEXTURE = 2;
+    private static final int SLOTS = 2;
+
+    // texture not uploaded (yet), or image that couldn't be decoded
+    // 纹理尚未上传，或无法解码的图像
+    private static final int NOT_LOADED = 0;
+    private static final int FAILED = -1;
+
+    // size of the strips of rows uploaded at once 一次上传的行块的大小
+    private static final int STRIP_BYTES = 256 * 1024;
+    // placeholders: white, so the color of the object is seen, and black for the emissive texture
+    // 占位纹理：白色，以显示对象的颜色；发光纹理为黑色
+    private static final byte[][] PLACEHOLDER_COLORS = {{-1, -1, -1, -1}, {0, 0, 0, -1}};
+
+    // image arrays already seen (weak, so the models can be garbage collected) 已见过的图像数组（弱引用）
+    private final Map<byte[], Entry> aliases = new WeakHashMap<>();
+    // textures by content hash 按内容哈希索引的纹理
+    private final Map<Long, Entry> byContent = new HashMap<>();
+    // textures in the GPU, least recently drawn first 在GPU中的纹理，最久未绘制的在前
+    private final LinkedHashMap<Entry, Entry> resident = new LinkedHashMap<>(16, 0.75f, true);
+    // textures used by every object 每个对象使用的纹理
+    private final Map<Object3DData, Owner> owners = new IdentityHashMap<>();
+
+    private long budget = DEFAULT_BUDGET;
+    private long usedBytes;
+    // the textures drawn in the current frame are never deleted 当前帧绘制的纹理不会被删除
+    private long frame;
+    private final int[] placeholders = new int[PLACEHOLDER_COLORS.length];
+
+    // capabilities of the GPU, read in the first frame GPU的能力，在第一帧读取
+    private Set<Integer> compressedFormats;
+    private boolean gles3;
+    private int deviceMaxTextureSize;
+    // maximum size chosen by the user, or 0 for the device limit 用户选择的最大尺寸，0表示设备限制
+    private int maxTextureSize;
+
+    // time to upload textures in every frame, and time spent in the current one, in nanoseconds
+    // 每帧上传纹理的时间，以及当前帧已花费的时间（纳秒）
+    private long uploadTime = DEFAULT_UPLOAD_TIME * 1000000L;
+    private long frameUploadTime;
+    private boolean frameUploaded;
+
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    /**
+     * @param budget maximum memory of the textures, in bytes. It may be exceeded by the textures of a single frame
+     */
+    public void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @param millis time spent uploading textures in every frame. At least a strip of rows is uploaded per frame
+     */
+    public void setUploadTime(int millis) {
+        this.uploadTime = millis * 1000000L;
+    }
+
+    /**
+     * @param size maximum width and height of the compressed textures, to skip their biggest levels and save memory.
+     *             0 for the device limit. It applies to the textures loaded after the call
+     */
+    public void setMaxTextureSize(int size) {
+        this.maxTextureSize = size;
+    }
+
+    /**
+     * @return estimated memory used by the textures in the GPU, in bytes 估算GPU中纹理使用的内存
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return times an object started using a texture that was already in the GPU
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return times a texture had to be uploaded: first use or drawn again after its eviction
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return textures deleted to stay under the budget 为保持在预算内而删除的纹理
+     */
+    public int getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Start a new frame. Call it before drawing the objects.
+     * 开始新的一帧。在绘制对象之前调用
+     */
+    public void beginFrame() {
+        if (compressedFormats == null) {
+            initFormats();
+        }
+        frame++;
+        frameUploadTime = 0;
+        frameUploaded = false;
+    }
+
+    /**
+     * Get the texture of an object to draw it, uploading the image first if required
+     * 获取对象的纹理以进行绘制，必要时先上传图像
+     *
+     * @param obj       the object 对象
+     * @param slot      {@link #TEXTURE}, {@link #EMISSIVE_TEXTURE} or {@link #RANGE_TEXTURE} + index of the range
+     * @param data      the encoded image (PNG, JPEG, KTX...) or null if the object has no texture in the slot
+     * @param minFilter the minification filter, to know whether the mipmaps are needed
+     * @return the texture name, a placeholder while it's being loaded, or -1 if there is no texture or it
+     * couldn't be decoded 纹理名称，加载期间返回占位纹理，没有纹理时返回-1
+     */
+    public int get(Object3DData obj, int slot, byte[] data, int minFilter) {
+        Owner owner = owners.get(obj);
+        if (data == null) {
+            if (owner != null && slot < owner.entries.length && owner.entries[slot] != null) {
+                unreference(owner.entries[slot]);
+                owner.entries[slot] = null;
+                owner.data[slot] = null;
+            }
+            return -1;
+        }
+        if (owner == null) {
+            owner = new Owner();
+            owners.put(obj, owner);
+        }
+        owner.ensureSlot(slot);
+        Entry entry = owner.entries[slot];
+        if (entry == null || owner.data[slot] != data) {
+            // the object starts using this image 对象开始使用此图像
+            Entry found = find(data);
+            found.references++;
+            if (entry != null) {
+                unreference(entry);
+            }
+            entry = found;
+            owner.entries[slot] = entry;
+            owner.data[slot] = data;
+            if (entry.handle > 0) {
+                hits++;
+            }
+        }
+        if (entry.handle == FAILED) {
+            return -1;
+        }
+        boolean mipmaps = isMipmapFilter(minFilter);
+        if (entry.handle == NOT_LOADED && !load(entry, data, mipmaps)) {
+            return entry.handle == FAILED ? -1 : getPlaceholder(slot);
+        }
+        if (mipmaps && !entry.mipmaps && !entry.compressed) {
+            // the first objects didn't need them 之前的对象不需要mipmap
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, entry.handle);
+            GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+            long bytes = estimateBytes(entry.width, entry.height, entry.bytesPerPixel, true);
+            usedBytes += bytes - entry.bytes;
+            entry.bytes = bytes;
+            entry.mipmaps = true;
+        }
+        entry.lastFrame = frame;
+        resident.get(entry);
+        return entry.handle;
+    }
+
+    /**
+     * Find the texture of the image, by identity first and then by content. The hash only finds the candidate:
+     * the content is compared with the first array of the texture, so images with the same hash aren't mixed up
+     * 查找图像的纹理，先按引用再按内容。哈希只用于找到候选项：内容与纹理的第一个数组比较，因此哈希相同的图像不会混淆
+     */
+    private Entry find(byte[] data) {
+        Entry entry = aliases.get(data);
+        if (entry != null) {
+            return entry;
+        }
+        long hash = hash(data);
+        entry = byContent.get(hash);
+        if (entry == null || !Arrays.equals(entry.data, data)) {
+            entry = new Entry(hash, data);
+            if (!byContent.containsKey(hash)) {
+                byContent.put(hash, entry);
+            }
+        } else {
+            // the image was already decoded from another array 图像已从另一个数组解码
+            TextureDecoder.discard(data);
+        }
+        aliases.put(data, entry);
+        return entry;
+    }
+
+    /**
+     * Continue loading the texture: wait for the decoding, then upload the pixels while there is time in this frame
+     * 继续加载纹理：等待解码，然后在本帧还有时间时上传像素
+     *
+     * @return true if the texture is complete
+     */
+    private boolean load(Entry entry, byte[] data, boolean mipmaps) {
+        if (entry.image == null) {
+            if (entry.decoding == null) {
+                misses++;
+                entry.decoding = TextureDecoder.take(data);
+            }
+            if (!entry.decoding.isDone()) {
+                return false;
+            }
+            try {
+                entry.image = entry.decoding.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                Log.e("TextureManager", "Problem decoding texture: " + ex.getMessage(), ex);
+            }
+            entry.decoding = null;
+            if (entry.image == null) {
+                Log.e("TextureManager", "Couldn't decode texture of " + data.length + " bytes");
+                entry.handle = FAILED;
+                return false;
+            }
+            if (entry.image.compressed != null && !prepareCompressed(entry, mipmaps)) {
+                return false;
+            }
+        }
+        if (frameUploaded && frameUploadTime >= uploadTime) {
+            // continue in the next frame 下一帧继续
+            return false;
+        }
+        if (entry.image.compressed != null) {
+            return loadCompressed(entry);
+        }
+        TextureDecoder.Image image = entry.image;
+        long start = System.nanoTime();
+        if (entry.uploading == 0) {
+            entry.uploading = createTexture(image.width, image.height);
+            entry.width = image.width;
+            entry.height = image.height;
+            entry.bytesPerPixel = 4;
+            entry.bytes = estimateBytes(entry.width, entry.height, entry.bytesPerPixel, false);
+            usedBytes += entry.bytes;
+        } else {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, entry.uploading);
+        }
+        int rowBytes = image.width * 4;
+        int rows = Math.max(1, STRIP_BYTES / rowBytes);
+        while (entry.uploaded < image.height) {
+            if (frameUploaded && frameUploadTime + System.nanoTime() - start >= uploadTime) {
+                frameUploadTime += System.nanoTime() - start;
+                return false;
+            }
+            int count = Math.min(rows, image.height - entry.uploaded);
+            image.pixels.position(entry.uploaded * rowBytes);
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, entry.uploaded, image.width, count,
+                    GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, image.pixels);
+            entry.uploaded += count;
+            frameUploaded = true;
+        }
+        if (mipmaps) {
+            GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+            long bytes = estimateBytes(entry.width, entry.height, entry.bytesPerPixel, true);
+            usedBytes += bytes - entry.bytes;
+            entry.bytes = bytes;
+        }
+        GLUtil.debugGlError("TextureManager.load");
+        frameUploadTime += System.nanoTime() - start;
+        complete(entry, mipmaps, false);
+        return true;
+    }
+
+    /**
+     * Choose how to load a compressed texture: as it is, or decompressed if the GPU doesn't support it
+     * 选择如何加载压缩纹理：直接上传，或在GPU不支持时解压
+     *
+     * @return true if it can be uploaded as it is
+     */
+    private boolean prepareCompressed(Entry entry, boolean mipmaps) {
+        KtxTexture texture = entry.image.compressed;
+        int limit = maxTextureSize > 0 && (deviceMaxTextureSize == 0 || maxTextureSize < deviceMaxTextureSize)
+                ? maxTextureSize : deviceMaxTextureSize;
+        int base = texture.selectBaseLevel(limit);
+        // OpenGL ES 2.0 can't limit the levels, so mipmapping needs all of them 2.0无法限制级别数，mipmap需要全部级别
+        boolean levelsOk = !mipmaps || gles3 || texture.getLevelCount() - base == countLevels(
+                texture.getLevelWidth(base), texture.getLevelHeight(base));
+        if (getUploadFormat(texture.getFormat()) != 0 && levelsOk) {
+            entry.baseLevel = base;
+            return true;
+        }
+        if (EtcDecoder.canDecode(texture.getFormat())) {
+            Log.i("TextureManager", "Decompressing texture, format not supported by the GPU: " + texture);
+            entry.decoding = TextureDecoder.decompress(texture, base);
+        } else {
+            Log.e("TextureManager", "Compressed texture format not supported: " + texture);
+            entry.handle = FAILED;
+        }
+        entry.image = null;
+        return false;
+    }
+
+    /**
+     * Continue uploading the levels of a compressed texture while there is time in this frame
+     * 在本帧还有时间时继续上传压缩纹理的级别
+     *
+     * @return true if the texture is complete
+     */
+    private boolean loadCompressed(Entry entry) {
+        KtxTexture texture = entry.image.compressed;
+        int count = texture.getLevelCount() - entry.baseLevel;
+        long start = System.nanoTime();
+        if (entry.uploading == 0) {
+            int[] handle = new int[1];
+            GLES20.glGenTextures(1, handle, 0);
+            entry.uploading = handle[0];
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, entry.uploading);
+            if (gles3) {
+                // the file may not have all the levels 文件可能不包含所有级别
+                GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAX_LEVEL, count - 1);
+            }
+            entry.width = texture.getLevelWidth(entry.baseLevel);
+            entry.height = texture.getLevelHeight(entry.baseLevel);
+            entry.bytes = texture.getSize(entry.baseLevel);
+            usedBytes += entry.bytes;
+        } else {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, entry.uploading);
+        }
+        int format = getUploadFormat(texture.getFormat());
+        while (entry.uploaded < count) {
+            if (frameUploaded && frameUploadTime + System.nanoTime() - start >= uploadTime) {
+                frameUploadTime += System.nanoTime() - start;
+                return false;
+            }
+            int level = entry.baseLevel + entry.uploaded;
+            ByteBuffer blocks = texture.getLevel(level);
+            GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, entry.uploaded, format,
+                    texture.getLevelWidth(level), texture.getLevelHeight(level), 0, blocks.remaining(), blocks);
+            entry.uploaded++;
+            frameUploaded = true;
+        }
+        GLUtil.debugGlError("TextureManager.loadCompressed");
+        frameUploadTime += System.nanoTime() - start;
+        complete(entry, count > 1, true);
+        return true;
+    }
+
+    private void complete(Entry entry, boolean mipmaps, boolean compressed) {
+        entry.handle = entry.uploading;
+        entry.uploading = 0;
+        entry.uploaded = 0;
+        entry.image = null;
+        entry.mipmaps = mipmaps;
+        entry.compressed = compressed;
+        entry.lastFrame = frame;
+        resident.put(entry, entry);
+        evict();
+    }
+
+    /**
+     * Read the compressed formats and the maximum texture size of the GPU
+     * 读取GPU支持的压缩格式和最大纹理尺寸
+     */
+    private void initFormats() {
+        Set<Integer> formats = new HashSet<>();
+        int[] values = new int[1];
+        GLES20.glGetIntegerv(GLES20.GL_NUM_COMPRESSED_TEXTURE_FORMATS, values, 0);
+        if (values[0] > 0) {
+            int[] list = new int[values[0]];
+            GLES20.glGetIntegerv(GLES20.GL_COMPRESSED_TEXTURE_FORMATS, list, 0);
+            for (int format : list) {
+                formats.add(format);
+            }
+        }
+        // ETC2 and EAC are core since OpenGL ES 3.0 ETC2和EAC从OpenGL ES 3.0开始成为核心功能
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        gles3 = version != null && version.startsWith("OpenGL ES ") && version.length() > 10
+                && version.charAt(10) >= '3';
+        if (gles3) {
+            for (int format = KtxTexture.GL_COMPRESSED_R11_EAC;
+                 format <= KtxTexture.GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC; format++) {
+                formats.add(format);
+            }
+        }
+        // ETC1 is a subset of ETC2 ETC1是ETC2的子集
+        if (formats.contains(KtxTexture.GL_COMPRESSED_RGB8_ETC2)) {
+            formats.add(KtxTexture.GL_ETC1_RGB8_OES);
+        }
+        GLES20.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, values, 0);
+        deviceMaxTextureSize = values[0];
+        compressedFormats = Collections.unmodifiableSet(formats);
+        TextureDecoder.setCompressedFormats(compressedFormats);
+        Log.i("TextureManager", "Compressed texture formats: " + formats.size() + ", GLES3: " + gles3
+                + ", max texture size: " + deviceMaxTextureSize);
+    }
+
+    /**
+     * @return the format to upload the compressed texture with, or 0 if the GPU doesn't support it
+     */
+    private int getUploadFormat(int format) {
+        if (compressedFormats != null && !compressedFormats.contains(format)) {
+            return 0;
+        }
+        if (format == KtxTexture.GL_ETC1_RGB8_OES && gles3) {
+            // some drivers only accept ETC1 data as ETC2 有些驱动只接受ETC2格式的ETC1数据
+            return KtxTexture.GL_COMPRESSED_RGB8_ETC2;
+        }
+        return format;
+    }
+
+    /**
+     * Get the texture drawn while the texture of the slot is being loaded. It's white, so the color of the
+     * object is seen, except for the emissive slot, which is black.
+     * 获取加载纹理期间绘制的占位纹理。白色，以显示对象的颜色；发光槽为黑色
+     *
+     * @param slot the slot, see {@link #get(Object3DData, int, byte[], int)}
+     * @return the texture name
+     */
+    public int getPlaceholder(int slot) {
+        int placeholder = slot == EMISSIVE_TEXTURE ? 1 : 0;
+        if (placeholders[placeholder] == 0) {
+            placeholders[placeholder] = createTexture(1, 1);
+            ByteBuffer pixel = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+            pixel.put(PLACEHOLDER_COLORS[placeholder]).position(0);
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, 1, 1, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE,
+                    pixel);
+        }
+        return placeholders[placeholder];
+    }
+
+    /**
+     * Delete the least recently drawn textures until the memory is under the budget
+     * 删除最久未绘制的纹理，直到内存低于预算
+     */
+    private void evict() {
+        Iterator<Entry> it = resident.keySet().iterator();
+        while (usedBytes > budget && it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.lastFrame == frame) {
+                // the rest were drawn in this frame too 其余的也在此帧中绘制
+                break;
+            }
+            it.remove();
+            delete(entry);
+            evictions++;
+            Log.v("TextureManager", "Evicted texture " + entry.width + "x" + entry.height + ", used: " + usedBytes
+                    + ", references: " + entry.references);
+        }
+    }
+
+    private void delete(Entry entry) {
+        deleteTexture(entry.handle);
+        usedBytes -= entry.bytes;
+        entry.handle = NOT_LOADED;
+        entry.bytes = 0;
+        entry.mipmaps = false;
+        if (entry.references == 0) {
+            forget(entry);
+        }
+    }
+
+    private void unreference(Entry entry) {
+        entry.references--;
+        if (entry.references == 0 && entry.handle <= 0) {
+            forget(entry);
+        }
+        // unused textures stay in the GPU until they are evicted, in case the model is loaded again
+        // 未使用的纹理保留在GPU中直到被淘汰，以防模型再次加载
+    }
+
+    private void forget(Entry entry) {
+        // stop loading it 停止加载
+        if (entry.decoding != null) {
+            entry.decoding.cancel(false);
+            entry.decoding = null;
+        }
+        if (entry.uploading != 0) {
+            deleteTexture(entry.uploading);
+            usedBytes -= entry.bytes;
+            entry.bytes = 0;
+            entry.uploading = 0;
+        }
+        entry.image = null;
+        if (byContent.get(entry.hash) == entry) {
+            byContent.remove(entry.hash);
+        }
+        Iterator<Entry> it = aliases.values().iterator();
+        while (it.hasNext()) {
+            if (it.next() == entry) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Stop using the textures of the object. Call this when the object leaves the scene.
+     * 停止使用对象的纹理。当对象离开场景时调用
+     */
+    public void release(Object3DData obj) {
+        Owner owner = owners.remove(obj);
+        if (owner == null) {
+            return;
+        }
+        for (int slot = 0; slot < owner.entries.length; slot++) {
+            if (owner.entries[slot] != null) {
+                unreference(owner.entries[slot]);
+            }
+        }
+    }
+
+    /**
+     * Forget all the textures without deleting them. Call this when the OpenGL context has been recreated,
+     * because the old texture names are not valid anymore.
+     * 忘记所有纹理。当OpenGL上下文重新创建时调用
+     */
+    public void invalidate() {
+        aliases.clear();
+        byContent.clear();
+        resident.clear();
+        owners.clear();
+        usedBytes = 0;
+        Arrays.fill(placeholders, 0);
+        // the new context may be a different GPU 新的上下文可能是不同的GPU
+        compressedFormats = null;
+    }
+
+    @Override
+    public String toString() {
+        return "TextureManager{textures=" + resident.size() + ", usedBytes=" + usedBytes + ", budget=" + budget
+                + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "}";
+    }
+
+    /**
+     * Create an empty RGBA texture and bind it. Overridden by the tests, which have no OpenGL context
+     * 创建空的RGBA纹理并绑定。测试中被覆盖，因为测试没有OpenGL上下文
+     */
+    int createTexture(int width, int height) {
+        return GLUtil.createTexture(width, height);
+    }
+
+    void deleteTexture(int texture) {
+        GLES20.glDeleteTextures(1, new int[]{texture}, 0);
+    }
+
+    private static boolean isMipmapFilter(int minFilter) {
+        return minFilter != GLES20.GL_NEAREST && minFilter != GLES20.GL_LINEAR;
+    }
+
+    /**
+     * @return number of levels of a complete mipmap chain 完整mipmap链的级别数
+     */
+    private static int countLevels(int width, int height) {
+        int levels = 1;
+        while (width > 1 || height > 1) {
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+            levels++;
+        }
+        return levels;
+    }
+
+    private static long estimateBytes(int width, int height, int bytesPerPixel, boolean mipmaps) {
+        long bytes = (long) width * height * bytesPerPixel;
+        while (mipmaps && (width > 1 || height > 1)) {
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+            bytes += (long) width * height * bytesPerPixel;
+        }
+        return bytes;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the image
+     */
+    private static long hash(byte[] data) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : data) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static final class Entry {
+        private final long hash;
+        // first image array of the texture, to compare the content of the arrays with the same hash
+        // 纹理的第一个图像数组，用于比较哈希相同的数组的内容
+        private final byte[] data;
+        private int handle = NOT_LOADED;
+        private int references;
+        private int width;
+        private int height;
+        private int bytesPerPixel;
+        private boolean mipmaps;
+        // uploaded as it is, so its mipmaps can't be generated 以压缩形式上传，因此无法生成mipmap
+        private boolean compressed;
+        private long bytes;
+        private long lastFrame;
+        // loading: decoding, decoded pixels, texture being uploaded and rows or levels uploaded
+        // 加载中：解码、解码后的像素、正在上传的纹理以及已上传的行或级别
+        private Future<TextureDecoder.Image> decoding;
+        private TextureDecoder.Image image;
+        private int uploading;
+        private int uploaded;
+        // first level of the compressed texture uploaded 上传的压缩纹理的第一个级别
+        private int baseLevel;
+
+        private Entry(long hash, byte[] data) {
+            this.hash = hash;
+            this.data = data;
+        }
+    }
+
+    private static final class Owner {
+        private Entry[] entries = new Entry[SLOTS];
+        private byte[][] data = new byte[SLOTS][];
+
+        // the objects with material ranges have a slot for every range 带材质范围的对象每个范围有一个槽
+        private void ensureSlot(int slot) {
+            if (slot >= entries.length) {
+                entries = Arrays.copyOf(entries, slot + 1);
+                data = Arrays.copyOf(data, slot + 1);
+            }
+        }
+    }
+}
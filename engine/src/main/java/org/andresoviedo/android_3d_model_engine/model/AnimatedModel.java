@@ -3,6 +3,8 @@ package org.andresoviedo.android_3d_model_engine.model;
 import android.opengl.Matrix;
 
 import org.andresoviedo.android_3d_model_engine.animation.Animation;
+import org.andresoviedo.android_3d_model_engine.animation.AnimationState;
+import org.andresoviedo.android_3d_model_engine.animation.Skeleton;
 import org.andresoviedo.android_3d_model_engine.services.collada.entities.Joint;
 import org.andresoviedo.android_3d_model_engine.services.gltf.jgltf_model.AnimationModel;
 
@@ -19,9 +21,14 @@ import java.nio.FloatBuffer;
  * 它还包含一个int，表示模型骨架包含的关节数，
  * 并有自己的{@link org.andresoviedo.android_3d_model_engine.animation.Animator}实例，可用于将动画应用于该实体。
  *
+ * <p>
+ * The {@link Skeleton} and the {@link Animation} can be shared by several instances of the model (see
+ * {@link #newInstance()}), while every instance has its own {@link AnimationState}.
+ * 骨架和动画可以被模型的多个实例共享，而每个实例都有自己的动画状态。
+ *
  * @author Karl
  */
-public class AnimatedModel extends Object3DData {
+public class AnimatedModel extends Object3DData implements Cloneable {
 
     // skeleton
     private Joint rootJoint;
@@ -31,6 +38,8 @@ public class AnimatedModel extends Object3DData {
     private FloatBuffer vertexWeigths;
     private Animation animation;
     private AnimationModel gltfAnimation = null;
+    private Skeleton skeleton;
+    private AnimationState animationState;
 
     // cache
     private float[][] jointMatrices;
@@ -69,6 +78,8 @@ public class AnimatedModel extends Object3DData {
         Matrix.setIdentityM(parentTransform, 0);
         rootJoint.calcInverseBindTransform(parentTransform, recalculateInverseBindTransforms);
         this.jointMatrices = new float[boneCount][16];
+        this.skeleton = new Skeleton(rootJoint, boneCount);
+        this.animationState = null;
         return this;
     }
 
@@ -105,6 +116,9 @@ public class AnimatedModel extends Object3DData {
 
     public AnimatedModel doAnimation(Animation animation) {
         this.animation = animation;
+        if (animationState != null) {
+            animationState.setAnimation(animation != null ? animation.getCompiled() : null);
+        }
         return this;
     }
 
@@ -121,6 +135,65 @@ public class AnimatedModel extends Object3DData {
         return gltfAnimation;
     }
 
+    public Skeleton getSkeleton() {
+        return skeleton;
+    }
+
+    /**
+     * @return the animation state of this instance, created the first time it's requested, or null if the
+     * model has no skeleton or no animation. 此实例的动画状态
+     */
+    public AnimationState getAnimationState() {
+        if (animationState == null && skeleton != null && animation != null) {
+            animationState = new AnimationState(skeleton);
+            animationState.setAnimation(animation.getCompiled());
+        }
+        return animationState;
+    }
+
+    /**
+     * Share the animation state of another model, i.e. a wireframe drawn with the pose of the original model
+     * 共享另一个模型的动画状态
+     */
+    public AnimatedModel setAnimationState(AnimationState animationState) {
+        this.animationState = animationState;
+        return this;
+    }
+
+    /**
+     * Create a new instance of this model. The instance shares the buffers, the skeleton and the animation,
+     * but it has its own transformation and its own animation state, so it can be placed and animated
+     * independently.
+     * 创建此模型的新实例。实例共享缓冲区、骨架和动画，但有自己的变换和动画状态
+     *
+     * @return the new instance
+     */
+    public AnimatedModel newInstance() {
+        AnimatedModel instance;
+        try {
+            instance = (AnimatedModel) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        instance.translation = translation.clone();
+        instance.position = position.clone();
+        instance.rotation = rotation.clone();
+        instance.quadRotation = quadRotation.clone();
+        instance.scale = scale.clone();
+        instance.modelMatrix = modelMatrix.clone();
+        instance.drawMatrix = new float[16];
+        // the world bounds are cached for the draw matrix of every instance 世界边界按每个实例的绘制矩阵缓存
+        instance.worldBounds = new float[6];
+        instance.worldBoundsMatrix = new float[16];
+        instance.worldBoundsValid = false;
+        if (getColor() != null) {
+            instance.setColor(getColor().clone());
+        }
+        instance.jointMatrices = new float[boneCount][16];
+        instance.animationState = null;
+        return instance;
+    }
+
     /**
      * @return The root joint of the joint hierarchy. This joint has no parent,
      * and every other joint in the skeleton is a descendant of this
@@ -143,6 +216,13 @@ public class AnimatedModel extends Object3DData {
      * animation pose. 当前动画姿势中关节的模型空间变换数组。
      */
     public float[][] getJointTransforms() {
+        if (animationState != null) {
+            float[] palette = animationState.getPalette();
+            for (int i = 0; i < jointMatrices.length; i++) {
+                System.arraycopy(palette, i * 16, jointMatrices[i], 0, 16);
+            }
+            return jointMatrices;
+        }
         addJointsToArray(rootJoint, jointMatrices);
         return jointMatrices;
     }
@@ -161,7 +241,7 @@ public class AnimatedModel extends Object3DData {
      */
     private void addJointsToArray(Joint headJoint, float[][] jointMatrices) {
         if (headJoint.getIndex() >= 0) {
-            jointMatrices[headJoint.getIndex()] = headJoint.getAnimatedTransform();
+            System.arraycopy(headJoint.getAnimatedTransform(), 0, jointMatrices[headJoint.getIndex()], 0, 16);
         }
         for (int i = 0; i < headJoint.getChildren().size(); i++) {
             Joint childJoint = headJoint.getChildren().get(i);
@@ -0,0 +1,79 @@
+package org.andresoviedo.android_3d_model_engine.model;
+
+/**
+ * The 6 planes of the view frustum, extracted from a view-projection matrix, to skip the objects that are not
+ * visible (frustum culling). Planes are stored as (a,b,c,d), normalized and pointing inwards, so a point is inside
+ * when <code>a*x + b*y + c*z + d >= 0</code> for all of them.
+ * <p>
+ * 从视图投影矩阵提取的视锥体的6个平面，用于跳过不可见的对象（视锥体剔除）。平面存储为(a,b,c,d)，已归一化并指向内部。
+ *
+ * @author andresoviedo
+ */
+public final class Frustum {
+
+    // left, right, bottom, top, near, far
+    private final float[] planes = new float[24];
+
+    /**
+     * Extract the planes of the matrix (Gribb &amp; Hartmann). Objects tested later must be in the space the matrix
+     * transforms from (i.e. world space for the view-projection matrix).
+     * 提取矩阵的平面（Gribb和Hartmann方法）
+     *
+     * @param viewProjectionMatrix column-major matrix 列主序矩阵
+     */
+    public void set(float[] viewProjectionMatrix) {
+        float[] m = viewProjectionMatrix;
+        for (int i = 0; i < 3; i++) {
+            // row i +/- row 3 行i加/减行3
+            for (int side = 0; side < 2; side++) {
+                float sign = side == 0 ? 1 : -1;
+                int p = (i * 2 + side) * 4;
+                planes[p] = m[3] + sign * m[i];
+                planes[p + 1] = m[7] + sign * m[4 + i];
+                planes[p + 2] = m[11] + sign * m[8 + i];
+                planes[p + 3] = m[15] + sign * m[12 + i];
+                float length = (float) Math.sqrt(planes[p] * planes[p] + planes[p + 1] * planes[p + 1]
+                        + planes[p + 2] * planes[p + 2]);
+                if (length > 0) {
+                    planes[p] /= length;
+                    planes[p + 1] /= length;
+                    planes[p + 2] /= length;
+                    planes[p + 3] /= length;
+                }
+            }
+        }
+    }
+
+    /**
+     * Test an axis aligned box. The test is conservative: boxes near the corners of the frustum may be reported as
+     * visible.
+     * 测试轴对齐包围盒。测试是保守的：靠近视锥体角的包围盒可能报告为可见
+     *
+     * @param bounds minX, minY, minZ, maxX, maxY, maxZ
+     * @return false if the box is completely outside the frustum 如果包围盒完全在视锥体之外则返回false
+     */
+    public boolean intersectsBox(float[] bounds) {
+        for (int p = 0; p < 24; p += 4) {
+            // the corner of the box farthest along the normal of the plane 沿平面法线最远的包围盒角
+            float x = planes[p] >= 0 ? bounds[3] : bounds[0];
+            float y = planes[p + 1] >= 0 ? bounds[4] : bounds[1];
+            float z = planes[p + 2] >= 0 ? bounds[5] : bounds[2];
+            if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the sphere is completely outside the frustum 如果球体完全在视锥体之外则返回false
+     */
+    public boolean intersectsSphere(float x, float y, float z, float radius) {
+        for (int p = 0; p < 24; p += 4) {
+            if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,188 @@
+package org.andresoviedo.android_3d_model_engine.model;
+
+import org.andresoviedo.util.collections.SpscQueue;
+
+/**
+ * Geometry of an object that is still being loaded. The loader fills the vertex buffers of the object in order
+ * and publishes the vertices written so far in batches. The OpenGL thread polls the batches once per frame,
+ * uploads the new vertices and draws only the vertices that have arrived.
+ * <p>
+ * The loader is the only producer and the OpenGL thread the only consumer, so batches go through a lock-free
+ * queue. If the queue is full (i.e. the scene is not being drawn) the pending vertices are merged into the
+ * next batch, so the loader never waits for the renderer.
+ * <p>
+ * The loader may also publish the transform of the object (i.e. to center it with the dimensions known so far)
+ * together with the vertices, so the model matrix is only changed by the OpenGL thread.
+ * 仍在加载的对象的几何体。加载器按顺序填充顶点缓冲区并分批发布，OpenGL线程每帧轮询批次并只绘制已到达的顶点
+ *
+ * @author andresoviedo
+ */
+public final class GeometryStream {
+
+    // triangles published per batch
+    // 每批发布的三角形数
+    public static final int BATCH_TRIANGLES = 64 * 1024;
+
+    private final int totalVertices;
+    private final SpscQueue<Batch> queue = new SpscQueue<>(64);
+
+    // producer side: vertices already queued
+    // 生产者：已入队的顶点
+    private int published;
+
+    // consumer side: vertices visible in the current frame
+    // 消费者：当前帧可见的顶点
+    private int visible;
+
+    // transform of the complete object, written before finished
+    // 完整对象的变换，在finished之前写入
+    private float[] finalScale;
+    private float[] finalPosition;
+
+    // set by the producer once all the vertices are written
+    // 生产者写完所有顶点后设置
+    private volatile boolean finished;
+
+    /**
+     * @param totalVertices number of vertices of the complete object
+     */
+    public GeometryStream(int totalVertices) {
+        this.totalVertices = totalVertices;
+    }
+
+    public int getTotalVertices() {
+        return totalVertices;
+    }
+
+    /**
+     * Publish the vertices written so far. Called from the loader thread only.
+     * 发布目前已写入的顶点（只由加载线程调用）
+     *
+     * @param vertexCount number of vertices completely written into the buffers, from the first one
+     */
+    public void publish(int vertexCount) {
+        publish(vertexCount, null, null);
+    }
+
+    /**
+     * Publish the vertices written so far and the transform to draw them with. Called from the loader thread
+     * only. If the batch can't be queued, the transform is published with the next one.
+     * 发布目前已写入的顶点以及绘制它们的变换（只由加载线程调用）
+     *
+     * @param vertexCount number of vertices completely written into the buffers, from the first one
+     * @param scale       scale of the object, or null to keep it
+     * @param position    position of the object, or null to keep it
+     */
+    public void publish(int vertexCount, float[] scale, float[] position) {
+        if (vertexCount > published && queue.offer(new Batch(published, vertexCount - published, scale, position))) {
+            published = vertexCount;
+        }
+    }
+
+    /**
+     * Publish the remaining vertices. Called from the loader thread only, once all the buffers are written.
+     * It doesn't wait for the queue, so it doesn't block if the object is no longer drawn.
+     * 发布剩余的顶点（只由加载线程调用）。不等待队列，所以对象不再绘制时也不会阻塞
+     */
+    public void finish() {
+        finish(null, null);
+    }
+
+    /**
+     * Publish the remaining vertices and the final transform of the object (see {@link #finish()})
+     * 发布剩余的顶点和对象的最终变换
+     *
+     * @param scale    scale of the object, or null to keep it
+     * @param position position of the object, or null to keep it
+     */
+    public void finish(float[] scale, float[] position) {
+        finalScale = scale;
+        finalPosition = position;
+        finished = true;
+    }
+
+    /**
+     * @return the scale of the complete object given to {@link #finish(float[], float[])}, or null. Call it from
+     * the loader thread, or once the stream is complete
+     */
+    public float[] getFinalScale() {
+        return finalScale;
+    }
+
+    /**
+     * @return the position of the complete object given to {@link #finish(float[], float[])}, or null. Call it
+     * from the loader thread, or once the stream is complete
+     */
+    public float[] getFinalPosition() {
+        return finalPosition;
+    }
+
+    /**
+     * Take the batches published since the last poll. Called from the OpenGL thread once per frame, before
+     * uploading the buffers, so all the buffers of the object are drawn with the same number of vertices.
+     * The transform published with the batches is applied to the object, and its bounds are computed again
+     * once it's complete, because any bounds calculated before only included part of the vertices.
+     * 获取上次轮询后发布的批次（只由OpenGL线程每帧调用一次）。应用随批次发布的变换，完成后重新计算边界
+     *
+     * @param obj the object being loaded
+     * @return number of vertices visible in this frame
+     */
+    public int poll(Object3DData obj) {
+        if (isComplete()) {
+            return visible;
+        }
+        float[] scale = null, position = null;
+        for (Batch batch = queue.poll(); batch != null; batch = queue.poll()) {
+            visible = Math.max(visible, batch.firstVertex + batch.vertexCount);
+            if (batch.scale != null) {
+                scale = batch.scale;
+            }
+            if (batch.position != null) {
+                position = batch.position;
+            }
+        }
+        if (finished) {
+            visible = totalVertices;
+            if (finalScale != null) {
+                scale = finalScale;
+            }
+            if (finalPosition != null) {
+                position = finalPosition;
+            }
+        }
+        obj.setScale(scale);
+        obj.setPosition(position);
+        if (isComplete()) {
+            obj.resetBounds();
+        }
+        return visible;
+    }
+
+    /**
+     * @return number of vertices visible in the current frame (see {@link #poll()})
+     */
+    public int getVisibleVertices() {
+        return visible;
+    }
+
+    /**
+     * @return true if all the vertices are visible
+     */
+    public boolean isComplete() {
+        return visible == totalVertices;
+    }
+
+    private static final class Batch {
+        private final int firstVertex;
+        private final int vertexCount;
+        private final float[] scale;
+        private final float[] position;
+
+        private Batch(int firstVertex, int vertexCount, float[] scale, float[] position) {
+            this.firstVertex = firstVertex;
+            this.vertexCount = vertexCount;
+            this.scale = scale;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.andresoviedo.android_3d_model_engine.model;
+
+import java.util.List;
+
+/**
+ * Simplified copies of an object (see {@link org.andresoviedo.android_3d_model_engine.services.MeshSimplifier}),
+ * and the choice of the one to draw. The coarsest copy is chosen whose error, projected on the screen, is below
+ * the maximum error in pixels, so the change from a level to the next one is not visible. A coarser level is only
+ * taken when its error is clearly below the maximum (hysteresis), so the level doesn't switch back and forth
+ * when the object is at the limit distance.
+ * <p>
+ * 对象的简化副本，以及要绘制副本的选择。选择投影到屏幕上的误差低于最大像素误差的最粗副本，因此级别的变化不可见。
+ * 只有当误差明显低于最大值时才使用更粗的级别（滞后），使对象处于临界距离时级别不会来回切换。
+ *
+ * @author andresoviedo
+ */
+public final class LevelOfDetail {
+
+    /**
+     * Default maximum error of the level drawn, in pixels
+     * 所绘制级别的默认最大误差（像素）
+     */
+    public static final float DEFAULT_MAX_PIXEL_ERROR = 1f;
+
+    // fraction of the maximum error to go to a coarser level 切换到更粗级别的最大误差比例
+    private static final float HYSTERESIS = 0.7f;
+
+    // coarser levels, in order 更粗的级别，按顺序
+    private final Object3DData[] levels;
+    // error of every level, in model units 每个级别的误差，模型单位
+    private final float[] errors;
+    // level drawn: 0 is the object itself 绘制的级别：0是对象本身
+    private int current;
+
+    /**
+     * @param levels coarser levels, in order 更粗的级别，按顺序
+     * @param errors maximum distance of every level to the full detail surface, in model units
+     */
+    public LevelOfDetail(List<Object3DData> levels, float[] errors) {
+        this.levels = levels.toArray(new Object3DData[0]);
+        this.errors = errors;
+    }
+
+    /**
+     * @return number of coarser levels 较粗级别的数量
+     */
+    public int size() {
+        return levels.length;
+    }
+
+    /**
+     * @param level from 1 (the first simplified copy) to {@link #size()} 从1到size()
+     */
+    public Object3DData getLevel(int level) {
+        return levels[level - 1];
+    }
+
+    public float getError(int level) {
+        return errors[level - 1];
+    }
+
+    /**
+     * @return the level chosen by the last {@link #select}, 0 for the object itself
+     */
+    public int getCurrent() {
+        return current;
+    }
+
+    /**
+     * Choose the level to draw
+     * 选择要绘制的级别
+     *
+     * @param source        the full detail object 完整细节的对象
+     * @param pixelsPerUnit size in pixels of a model unit at the distance of the object 在对象距离处一个模型单位的像素大小
+     * @param maxPixelError maximum error in pixels 最大像素误差
+     * @return the object to draw: the source or a simplified copy with its transformation and textures
+     */
+    public Object3DData select(Object3DData source, float pixelsPerUnit, float maxPixelError) {
+        int level = coarsest(pixelsPerUnit, maxPixelError);
+        if (level < current) {
+            // more detail is needed now 现在需要更多细节
+            current = level;
+        } else if (level > current) {
+            current = Math.max(current, coarsest(pixelsPerUnit, maxPixelError * HYSTERESIS));
+        }
+        if (current == 0) {
+            return source;
+        }
+        Object3DData lod = levels[current - 1];
+        sync(source, lod);
+        return lod;
+    }
+
+    /**
+     * Get the size on the screen of a model unit of the object, at the point of its bounds nearest to the camera.
+     * The bounds and the scale are those of the matrix the object is drawn with ({@link Object3DData#getDrawMatrix()})
+     * 获取对象的一个模型单位在屏幕上的大小（在其边界离相机最近的点）。边界和缩放取自绘制对象所用的矩阵
+     *
+     * @param obj             the object 对象
+     * @param eye             position of the camera 相机位置
+     * @param projectionScale vertical scale of the projection, i.e. the element 5 of the matrix 投影的垂直缩放
+     * @param height          height of the viewport, in pixels 视口高度（像素）
+     * @param near            distance to the near plane 到近平面的距离
+     * @return pixels per model unit, or infinite if the object has no vertices, so it's drawn with full detail
+     */
+    public static float getPixelsPerUnit(Object3DData obj, float[] eye, float projectionScale, int height,
+                                         float near) {
+        float[] bounds = obj.getWorldBounds();
+        if (bounds == null) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float dx = (bounds[0] + bounds[3]) / 2 - eye[0];
+        float dy = (bounds[1] + bounds[4]) / 2 - eye[1];
+        float dz = (bounds[2] + bounds[5]) / 2 - eye[2];
+        float radius = length(bounds[3] - bounds[0], bounds[4] - bounds[1], bounds[5] - bounds[2]) / 2;
+        float distance = Math.max(near, length(dx, dy, dz) - radius);
+        float[] m = obj.getDrawMatrix();
+        float scale = Math.max(length(m[0], m[1], m[2]), Math.max(length(m[4], m[5], m[6]),
+                length(m[8], m[9], m[10])));
+        return scale * projectionScale * height / 2 / distance;
+    }
+
+    private static float length(float x, float y, float z) {
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+
+    private int coarsest(float pixelsPerUnit, float maxPixelError) {
+        for (int i = levels.length; i > 0; i--) {
+            if (errors[i - 1] * pixelsPerUnit <= maxPixelError) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Take the transformation and the textures of the source, which may have changed since the copy was made
+     * 获取源对象的变换和纹理，它们可能在副本创建之后发生了变化
+     */
+    private static void sync(Object3DData source, Object3DData lod) {
+        if (lod.getPosition() != source.getPosition()) {
+            lod.setPosition(source.getPosition());
+        }
+        if (lod.getRotation() != source.getRotation()) {
+            lod.setRotation(source.getRotation());
+        }
+        if (lod.getScale() != source.getScale()) {
+            lod.setScale(source.getScale());
+        }
+        lod.setColor(source.getColor());
+        lod.setTextureData(source.getTextureData());
+        lod.setEmissiveTextureData(source.getEmissiveTextureData());
+        lod.setEmissiveTextureHandle(source.getEmissiveTextureHandle());
+    }
+}
@@ -0,0 +1,80 @@
+package org.andresoviedo.android_3d_model_engine.model;
+
+/**
+ * Contiguous part of the draw buffers of an object drawn with its own texture. Models with several textured
+ * materials (i.e. a Wavefront OBJ with many map_Kd) are sorted so all the triangles with the same texture are
+ * together, and every range is a single draw call. The color of the materials stays in the vertex colors, so
+ * materials sharing a texture share the range too.
+ * <p>
+ * 对象绘制缓冲区中使用自己纹理绘制的连续部分。具有多个纹理材质的模型经过排序，使相同纹理的三角形在一起，每个范围是一次绘制调用。
+ * 材质颜色保留在顶点颜色中，因此共享纹理的材质也共享范围。
+ *
+ * @author andresoviedo
+ */
+public final class MaterialRange {
+
+    // the first material of the range 范围的第一个材质
+    private final String material;
+    // first vertex (or index, if the object is indexed) and number of them 第一个顶点（或索引）及其数量
+    private int first;
+    private int count;
+    // texture, or null to draw the vertex colors only 纹理，为null时只绘制顶点颜色
+    private String textureFile;
+    private byte[] textureData;
+    // texture name set by the renderer before the object is drawn 渲染器在绘制对象前设置的纹理名称
+    private int textureHandle = -1;
+
+    public MaterialRange(String material, int first, int count, String textureFile) {
+        this.material = material;
+        this.first = first;
+        this.count = count;
+        this.textureFile = textureFile;
+    }
+
+    public String getMaterial() {
+        return material;
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setRange(int first, int count) {
+        this.first = first;
+        this.count = count;
+    }
+
+    public String getTextureFile() {
+        return textureFile;
+    }
+
+    public void setTextureFile(String textureFile) {
+        this.textureFile = textureFile;
+    }
+
+    public byte[] getTextureData() {
+        return textureData;
+    }
+
+    public void setTextureData(byte[] textureData) {
+        this.textureData = textureData;
+    }
+
+    public int getTextureHandle() {
+        return textureHandle;
+    }
+
+    public void setTextureHandle(int textureHandle) {
+        this.textureHandle = textureHandle;
+    }
+
+    @Override
+    public String toString() {
+        return "MaterialRange{material=" + material + ", first=" + first + ", count=" + count + ", texture="
+                + textureFile + "}";
+    }
+}
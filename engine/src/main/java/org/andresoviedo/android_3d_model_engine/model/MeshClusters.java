@@ -0,0 +1,424 @@
+package org.andresoviedo.android_3d_model_engine.model;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spatially coherent groups of triangles of a big mesh, so the renderer only draws the parts in the view instead
+ * of the whole mesh. The triangles are sorted along the Morton (Z-order) curve of their centroids, and the sorted
+ * list is split where the curve jumps to another region of space (the split of a linear BVH), so every cluster is
+ * a contiguous range of the draw buffers with its own bounds, drawn through {@link Object3DData#getDrawModeList()}.
+ * <p>
+ * 大网格中空间上连贯的三角形组，使渲染器只绘制视图中的部分而不是整个网格。三角形按其重心的Morton（Z序）曲线排序，
+ * 并在曲线跳到空间另一区域的位置切分，因此每个簇都是绘制缓冲区中的连续范围，有自己的包围盒。
+ *
+ * @author andresoviedo
+ */
+public final class MeshClusters {
+
+    /**
+     * Default maximum number of triangles of a cluster. Smaller clusters cull better, but need more draw calls
+     * 簇的默认最大三角形数。簇越小剔除越好，但需要更多绘制调用
+     */
+    public static final int DEFAULT_CLUSTER_SIZE = 4096;
+
+    // bits per axis of the Morton codes 每个轴的Morton码位数
+    private static final int MORTON_BITS = 10;
+
+    // minX, minY, minZ, maxX, maxY, maxZ of every cluster in model space 每个簇在模型空间中的边界
+    private final float[] bounds;
+    // first vertex (or index) and number of vertices (or indices) of every cluster 每个簇的第一个顶点（或索引）和数量
+    private final int[] ranges;
+    // clusters hidden behind other geometry in the last occlusion test 上次遮挡测试中被遮挡的簇
+    private final boolean[] occluded;
+    // clusters that passed the last frustum test 上次通过视锥体测试的簇
+    private final boolean[] inFrustum;
+    // the draw list handed to the drawer, and its reusable entries 交给绘制器的绘制列表及其可重用条目
+    private final List<int[]> drawList = new ArrayList<>();
+    private final int[][] drawEntries;
+    private final float[] worldBox = new float[6];
+
+    private MeshClusters(float[] bounds, int[] ranges) {
+        this.bounds = bounds;
+        this.ranges = ranges;
+        int count = ranges.length / 2;
+        this.occluded = new boolean[count];
+        this.inFrustum = new boolean[count];
+        this.drawEntries = new int[count][];
+        for (int i = 0; i < count; i++) {
+            drawEntries[i] = new int[]{GLES20.GL_TRIANGLES, 0, 0};
+        }
+    }
+
+    /**
+     * Sort the triangles of the object into clusters. The draw buffers are reordered in place (the index buffer
+     * when the object is indexed, or every per vertex array otherwise), so it must be called before they are
+     * uploaded to the GPU, i.e. from the loader thread.
+     * 将对象的三角形排序为簇。绘制缓冲区被就地重新排序，因此必须在上传到GPU之前调用（例如在加载线程中）
+     *
+     * @param obj         the object 对象
+     * @param clusterSize maximum number of triangles of a cluster 簇的最大三角形数
+     * @return the clusters, or null if the object is too small, is not a plain list of triangles (i.e. it's
+     * split in material ranges, whose order must be kept) or is animated
+     */
+    public static MeshClusters build(Object3DData obj, int clusterSize) {
+        if (obj instanceof AnimatedModel) {
+            // the skinned vertices move out of the bounds of the clusters in the bind pose, and the instances of
+            // the model share the clusters, which keep a single list of visible clusters
+            // 蒙皮顶点会移出绑定姿势中簇的边界，且模型的实例共享簇，而簇只保存一个可见簇列表
+            return null;
+        }
+        if (obj.getDrawMode() != GLES20.GL_TRIANGLES || obj.getDrawModeList() != null
+                || obj.getDrawSize() > 0 || obj.getGeometryStream() != null || obj.getMaterialRanges() != null) {
+            return null;
+        }
+        FloatBuffer vertices = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
+                : obj.getVertexBuffer();
+        if (vertices == null) {
+            return null;
+        }
+        Buffer indices = obj.isDrawUsingArrays() ? null : obj.getDrawOrderBuffer();
+        int vertexCount = vertices.capacity() / 3;
+        int triangleCount = (indices != null ? indices.capacity() : vertexCount) / 3;
+        if (triangleCount < clusterSize * 2) {
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+        long[] order = sortByMortonCode(vertices, indices, triangleCount);
+
+        // split the curve where it jumps, until the clusters are small enough 在曲线跳跃处切分，直到簇足够小
+        int[] splits = new int[16];
+        int splitCount = 0;
+        int[] stack = new int[128];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = triangleCount;
+        while (top > 0) {
+            int end = stack[--top];
+            int first = stack[--top];
+            if (end - first <= clusterSize) {
+                if (splitCount + 2 > splits.length) {
+                    splits = Arrays.copyOf(splits, splits.length * 2);
+                }
+                splits[splitCount++] = first;
+                splits[splitCount++] = end;
+                continue;
+            }
+            int split = findSplit(order, first, end);
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            // the second half is pushed first, so the clusters come out in curve order 先压入后半部分，使簇按曲线顺序输出
+            stack[top++] = split;
+            stack[top++] = end;
+            stack[top++] = first;
+            stack[top++] = split;
+        }
+
+        int[] permutation = new int[triangleCount];
+        for (int i = 0; i < triangleCount; i++) {
+            permutation[i] = (int) order[i];
+        }
+        order = null;
+        if (indices != null) {
+            permuteIndices(indices, permutation);
+        } else {
+            FloatBuffer[] arrays = {obj.getVertexArrayBuffer(), obj.getVertexNormalsArrayBuffer(),
+                    obj.getVertexColorsArrayBuffer(), obj.getTextureCoordsArrayBuffer(),
+                    obj.getEmissiveTextureCoordsArrayBuffer()};
+            for (FloatBuffer array : arrays) {
+                if (array != null && array.capacity() % vertexCount == 0) {
+                    permuteFloats(array, array.capacity() / vertexCount * 3, permutation);
+                }
+            }
+        }
+
+        int clusterCount = splitCount / 2;
+        float[] bounds = new float[clusterCount * 6];
+        int[] ranges = new int[clusterCount * 2];
+        for (int c = 0; c < clusterCount; c++) {
+            int first = splits[c * 2], end = splits[c * 2 + 1];
+            ranges[c * 2] = first * 3;
+            ranges[c * 2 + 1] = (end - first) * 3;
+            int b = c * 6;
+            bounds[b] = bounds[b + 1] = bounds[b + 2] = Float.MAX_VALUE;
+            bounds[b + 3] = bounds[b + 4] = bounds[b + 5] = -Float.MAX_VALUE;
+            for (int v = first * 3; v < end * 3; v++) {
+                int vertex = indices != null ? getIndex(indices, v) : v;
+                for (int j = 0; j < 3; j++) {
+                    float value = vertices.get(vertex * 3 + j);
+                    if (value < bounds[b + j]) bounds[b + j] = value;
+                    if (value > bounds[b + 3 + j]) bounds[b + 3 + j] = value;
+                }
+            }
+        }
+        Log.i("MeshClusters", "Clusters built for '" + obj.getId() + "'. Triangles: " + triangleCount
+                + ", clusters: " + clusterCount + ", time(ms): " + (System.currentTimeMillis() - start));
+        return new MeshClusters(bounds, ranges);
+    }
+
+    /**
+     * @return the triangles sorted by the Morton code of their centroid, as (code &lt;&lt; 32 | triangle)
+     */
+    private static long[] sortByMortonCode(FloatBuffer vertices, Buffer indices, int triangleCount) {
+        float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i + 2 < vertices.capacity(); i += 3) {
+            for (int j = 0; j < 3; j++) {
+                float value = vertices.get(i + j);
+                if (value < min[j]) min[j] = value;
+                if (value > max[j]) max[j] = value;
+            }
+        }
+        float[] scale = new float[3];
+        int cells = (1 << MORTON_BITS) - 1;
+        for (int j = 0; j < 3; j++) {
+            // centroids are averaged, so 3 * coordinate is scaled 重心是平均值，所以缩放3倍坐标
+            scale[j] = max[j] > min[j] ? cells / (3 * (max[j] - min[j])) : 0;
+        }
+        long[] order = new long[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            int code = 0;
+            for (int j = 0; j < 3; j++) {
+                float sum = 0;
+                for (int k = 0; k < 3; k++) {
+                    int vertex = indices != null ? getIndex(indices, t * 3 + k) : t * 3 + k;
+                    sum += vertices.get(vertex * 3 + j) - min[j];
+                }
+                int cell = Math.min(cells, Math.max(0, (int) (sum * scale[j])));
+                code |= spreadBits(cell) << j;
+            }
+            order[t] = ((long) code << 32) | t;
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    /**
+     * Insert 2 zeros between the 10 lower bits of the value
+     * 在值的低10位之间插入2个零
+     */
+    private static int spreadBits(int value) {
+        value = (value | (value << 16)) & 0x030000FF;
+        value = (value | (value << 8)) & 0x0300F00F;
+        value = (value | (value << 4)) & 0x030C30C3;
+        value = (value | (value << 2)) & 0x09249249;
+        return value;
+    }
+
+    /**
+     * @return where the highest bit of the codes changes in the range, or the middle if all codes are the same
+     */
+    static int findSplit(long[] order, int first, int end) {
+        int firstCode = (int) (order[first] >>> 32);
+        int lastCode = (int) (order[end - 1] >>> 32);
+        if (firstCode == lastCode) {
+            return (first + end) >>> 1;
+        }
+        int prefix = Integer.numberOfLeadingZeros(firstCode ^ lastCode);
+        // binary search of the last code sharing more than the common prefix with the first one
+        // 二分查找与第一个码共享超过公共前缀的最后一个码
+        int split = first;
+        int step = end - 1 - first;
+        do {
+            step = (step + 1) >>> 1;
+            int candidate = split + step;
+            if (candidate < end - 1) {
+                int code = (int) (order[candidate] >>> 32);
+                if (Integer.numberOfLeadingZeros(firstCode ^ code) > prefix) {
+                    split = candidate;
+                }
+            }
+        } while (step > 1);
+        return split + 1;
+    }
+
+    private static int getIndex(Buffer indices, int i) {
+        if (indices instanceof IntBuffer) {
+            return ((IntBuffer) indices).get(i);
+        }
+        return ((ShortBuffer) indices).get(i) & 0xFFFF;
+    }
+
+    private static void putIndex(Buffer indices, int i, int value) {
+        if (indices instanceof IntBuffer) {
+            ((IntBuffer) indices).put(i, value);
+        } else {
+            ((ShortBuffer) indices).put(i, (short) value);
+        }
+    }
+
+    /**
+     * Move the triangle permutation[i] to the position i, following the cycles of the permutation so no copy of
+     * the buffer is needed. The permutation is destroyed.
+     * 将三角形permutation[i]移动到位置i，沿置换的环移动，因此不需要缓冲区的副本。置换数组会被破坏
+     */
+    static void permuteIndices(Buffer indices, int[] permutation) {
+        for (int start = 0; start < permutation.length; start++) {
+            if (permutation[start] < 0 || permutation[start] == start) {
+                continue;
+            }
+            int t0 = getIndex(indices, start * 3), t1 = getIndex(indices, start * 3 + 1),
+                    t2 = getIndex(indices, start * 3 + 2);
+            int position = start;
+            while (true) {
+                int source = permutation[position];
+                permutation[position] = -1;
+                if (source == start) {
+                    putIndex(indices, position * 3, t0);
+                    putIndex(indices, position * 3 + 1, t1);
+                    putIndex(indices, position * 3 + 2, t2);
+                    break;
+                }
+                for (int k = 0; k < 3; k++) {
+                    putIndex(indices, position * 3 + k, getIndex(indices, source * 3 + k));
+                }
+                position = source;
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #permuteIndices(Buffer, int[])} for a per vertex array, but the permutation is kept
+     *
+     * @param stride floats per triangle 每个三角形的浮点数
+     */
+    static void permuteFloats(FloatBuffer array, int stride, int[] permutation) {
+        boolean[] moved = new boolean[permutation.length];
+        float[] saved = new float[stride];
+        for (int start = 0; start < permutation.length; start++) {
+            if (moved[start] || permutation[start] == start) {
+                continue;
+            }
+            for (int k = 0; k < stride; k++) {
+                saved[k] = array.get(start * stride + k);
+            }
+            int position = start;
+            while (true) {
+                int source = permutation[position];
+                moved[position] = true;
+                if (source == start) {
+                    for (int k = 0; k < stride; k++) {
+                        array.put(position * stride + k, saved[k]);
+                    }
+                    break;
+                }
+                for (int k = 0; k < stride; k++) {
+                    array.put(position * stride + k, array.get(source * stride + k));
+                }
+                position = source;
+            }
+        }
+    }
+
+    public int size() {
+        return occluded.length;
+    }
+
+    /**
+     * @return first vertex (or index) of the cluster in the draw buffers 簇在绘制缓冲区中的第一个顶点（或索引）
+     */
+    int getFirst(int cluster) {
+        return ranges[cluster * 2];
+    }
+
+    /**
+     * @return number of vertices (or indices) of the cluster 簇的顶点（或索引）数
+     */
+    int getCount(int cluster) {
+        return ranges[cluster * 2 + 1];
+    }
+
+    /**
+     * Get the bounds of a cluster in world space
+     * 获取簇在世界空间中的边界
+     *
+     * @param drawMatrix the matrix the object is drawn with ({@link Object3DData#getDrawMatrix()}) 绘制对象所用的矩阵
+     * @param out        minX, minY, minZ, maxX, maxY, maxZ
+     */
+    public void getWorldBounds(int cluster, float[] drawMatrix, float[] out) {
+        float[] m = drawMatrix;
+        int b = cluster * 6;
+        float cx = (bounds[b] + bounds[b + 3]) / 2, cy = (bounds[b + 1] + bounds[b + 4]) / 2,
+                cz = (bounds[b + 2] + bounds[b + 5]) / 2;
+        float ex = (bounds[b + 3] - bounds[b]) / 2, ey = (bounds[b + 4] - bounds[b + 1]) / 2,
+                ez = (bounds[b + 5] - bounds[b + 2]) / 2;
+        for (int i = 0; i < 3; i++) {
+            float center = m[i] * cx + m[4 + i] * cy + m[8 + i] * cz + m[12 + i];
+            float extent = Math.abs(m[i]) * ex + Math.abs(m[4 + i]) * ey + Math.abs(m[8 + i]) * ez;
+            out[i] = center - extent;
+            out[3 + i] = center + extent;
+        }
+    }
+
+    /**
+     * @return whether the cluster passed the frustum test of the last {@link #cull(Frustum, float[])}
+     */
+    public boolean isInFrustum(int cluster) {
+        return inFrustum[cluster];
+    }
+
+    public boolean isOccluded(int cluster) {
+        return occluded[cluster];
+    }
+
+    /**
+     * Set the result of the occlusion test. Occluded clusters are skipped by {@link #cull(Frustum, float[])}
+     * until they are reported as visible again.
+     * 设置遮挡测试的结果。被遮挡的簇会被跳过，直到再次报告为可见
+     */
+    public void setOccluded(int cluster, boolean occluded) {
+        this.occluded[cluster] = occluded;
+    }
+
+    /**
+     * Clear the occlusion results, i.e. when the occlusion test is disabled
+     * 清除遮挡结果
+     */
+    public void resetOcclusion() {
+        Arrays.fill(occluded, false);
+    }
+
+    /**
+     * Select the clusters to draw: those inside the frustum and not occluded. Consecutive clusters are merged
+     * into a single range. Nothing is allocated, so it can be called every frame.
+     * 选择要绘制的簇：在视锥体内且未被遮挡的簇。连续的簇合并为一个范围。不分配内存，可以每帧调用
+     *
+     * @param frustum    the planes of the view 视图的平面
+     * @param drawMatrix the matrix the object is drawn with ({@link Object3DData#getDrawMatrix()}) 绘制对象所用的矩阵
+     * @return the list of {mode, first, count} to set with {@link Object3DData#setDrawModeList(List)}. The list
+     * is reused by the next call.
+     */
+    public List<int[]> cull(Frustum frustum, float[] drawMatrix) {
+        drawList.clear();
+        int[] last = null;
+        int lastEnd = -1;
+        for (int c = 0; c < occluded.length; c++) {
+            getWorldBounds(c, drawMatrix, worldBox);
+            inFrustum[c] = frustum.intersectsBox(worldBox);
+            if (!inFrustum[c] || occluded[c]) {
+                continue;
+            }
+            int first = ranges[c * 2], count = ranges[c * 2 + 1];
+            if (last != null && lastEnd == first) {
+                last[2] += count;
+            } else {
+                last = drawEntries[drawList.size()];
+                last[1] = first;
+                last[2] = count;
+                drawList.add(last);
+            }
+            lastEnd = first + count;
+        }
+        return drawList;
+    }
+}
@@ -5,7 +5,7 @@ import android.opengl.GLES20;
 import android.opengl.Matrix;
 import android.util.Log;
 
-import org.andresoviedo.android_3d_model_engine.collision.Octree;
+import org.andresoviedo.android_3d_model_engine.collision.BVH;
 import org.andresoviedo.android_3d_model_engine.services.gltf.jgltf_model.MaterialModel;
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader.FaceMaterials;
@@ -22,6 +22,7 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -73,7 +74,7 @@ public class Object3DData {
     private FloatBuffer vertexNormalsBuffer = null;
     private Buffer drawOrderBuffer = null;
 
-    private ArrayList<Tuple3> texCoords;
+    private FloatBuffer texCoords;
     private Faces faces;
     private FaceMaterials faceMats;
     private Materials materials;
@@ -110,6 +111,12 @@ public class Object3DData {
     private int emissiveTextureMagFilter = GLES20.GL_NEAREST;
     // derived data
     private BoundingBox boundingBox;
+    // bounds of the vertices in model space, and in world space for the draw matrix they were computed with
+    // 顶点在模型空间中的边界，以及按计算时的绘制矩阵得到的世界空间边界
+    private float[] localBounds;
+    protected float[] worldBounds = new float[6];
+    protected float[] worldBoundsMatrix = new float[16];
+    protected boolean worldBoundsValid;
 
     // Transformation data
     protected float[] translation = new float[]{0f, 0f, 0f};
@@ -125,6 +132,8 @@ public class Object3DData {
     protected float[] quadRotation = new float[]{0f, 0f, 0f, 1f};
     protected float[] scale = new float[]{1, 1, 1};
     protected float[] modelMatrix = new float[16];
+    // matrix the object is drawn with 绘制对象所用的矩阵
+    protected float[] drawMatrix = new float[16];
 
     {
         Matrix.setIdentityM(modelMatrix, 0);
@@ -134,12 +143,28 @@ public class Object3DData {
     // 对象是否已更改
     private boolean changed;
 
+    // geometry published progressively by the loader, or null if the object was loaded at once
+    // 加载器逐步发布的几何体，一次性加载时为null
+    private volatile GeometryStream geometryStream;
+
     // Async Loader
     private WavefrontLoader.ModelDimensions modelDimensions;
     private WavefrontLoader loader;
 
     // collision detection
-    private Octree octree = null;
+    private volatile BVH bvh = null;
+
+    // spatial clusters of the triangles, to draw only the visible parts of big meshes
+    // 三角形的空间簇，只绘制大网格的可见部分
+    private volatile MeshClusters meshClusters = null;
+
+    // simplified copies, to draw when the object is far away
+    // 简化副本，在对象较远时绘制
+    private volatile LevelOfDetail levelOfDetail = null;
+
+    // parts drawn with different textures, or null if the object has a single texture
+    // 使用不同纹理绘制的部分，单一纹理时为null
+    private List<MaterialRange> materialRanges = null;
 
     // errors detected
     private List<String> errors = new ArrayList<>();
@@ -175,7 +200,7 @@ public class Object3DData {
         this.version = 4;
     }
 
-    public Object3DData(FloatBuffer verts, FloatBuffer normals, ArrayList<Tuple3> texCoords, Faces faces,
+    public Object3DData(FloatBuffer verts, FloatBuffer normals, FloatBuffer texCoords, Faces faces,
                         FaceMaterials faceMats, Materials materials) {
         super();
         this.vertexBuffer = verts;
@@ -203,12 +228,50 @@ public class Object3DData {
         return modelDimensions;
     }
 
-    public void setOctree(Octree octree) {
-        this.octree = octree;
+    public void setBVH(BVH bvh) {
+        this.bvh = bvh;
+    }
+
+    /**
+     * @return the hierarchy of triangles for picking, or null if it was not built yet
+     */
+    public BVH getBVH() {
+        return bvh;
+    }
+
+    /**
+     * @return the clusters of triangles culled by the renderer, or null if the object is drawn whole
+     */
+    public MeshClusters getMeshClusters() {
+        return meshClusters;
+    }
+
+    public void setMeshClusters(MeshClusters meshClusters) {
+        this.meshClusters = meshClusters;
+    }
+
+    /**
+     * @return the simplified copies of the object, or null if they were not built (yet)
+     */
+    public LevelOfDetail getLevelOfDetail() {
+        return levelOfDetail;
+    }
+
+    public void setLevelOfDetail(LevelOfDetail levelOfDetail) {
+        this.levelOfDetail = levelOfDetail;
+    }
+
+    /**
+     * @return the parts of the object drawn with their own texture, in the order of the draw buffers, or null if
+     * the whole object is drawn with {@link #getTextureData()}
+     */
+    public List<MaterialRange> getMaterialRanges() {
+        return materialRanges;
     }
 
-    public Octree getOctree() {
-        return octree;
+    public Object3DData setMaterialRanges(List<MaterialRange> materialRanges) {
+        this.materialRanges = materialRanges;
+        return this;
     }
 
     /**
@@ -244,6 +307,35 @@ public class Object3DData {
         return changed;
     }
 
+    /**
+     * Flag the object as changed, so derived data (i.e. the GPU buffers) is generated again
+     * 标记对象已更改，以便重新生成派生数据（如GPU缓冲区）
+     */
+    public Object3DData setChanged(boolean changed) {
+        this.changed = changed;
+        if (changed) {
+            localBounds = null;
+        }
+        return this;
+    }
+
+    /**
+     * @return the geometry being loaded, or null if the buffers are complete. The stream is kept once the
+     * loading finishes, so it may be complete already (see {@link GeometryStream#isComplete()})
+     */
+    public GeometryStream getGeometryStream() {
+        return geometryStream;
+    }
+
+    /**
+     * Draw only the vertices published by the loader so far. Set it before the object is added to the scene.
+     * 只绘制加载器目前发布的顶点。在对象加入场景之前设置
+     */
+    public Object3DData setGeometryStream(GeometryStream geometryStream) {
+        this.geometryStream = geometryStream;
+        return this;
+    }
+
     public Object3DData setId(String id) {
         this.id = id;
         return this;
@@ -584,11 +676,81 @@ public class Object3DData {
         }
     }
 
+    /**
+     * Get the matrix the object is drawn with. The vertices are translated by the position first, then scaled and
+     * then rotated (R*S*T), so {@link #centerAndScale(float, float[])} centers the model with a position of minus
+     * its center. This is not the {@link #getModelMatrix()}, which translates last: the bounds, the culling and the
+     * sorting must use this one to match what is on the screen. Not thread safe: call it from the OpenGL thread.
+     * 获取绘制对象所用的矩阵。顶点先按位置平移，再缩放，再旋转(R*S*T)。这不是{@link #getModelMatrix()}，边界、剔除和排序必须使用此矩阵
+     *
+     * @return column-major matrix. The array is reused 列主序矩阵，数组被重用
+     */
+    public float[] getDrawMatrix() {
+        getDrawMatrix(drawMatrix, 0);
+        return drawMatrix;
+    }
+
+    /**
+     * Build the matrix the object is drawn with, as {@link #getDrawMatrix()}. It doesn't use {@link Matrix}, so it
+     * can be checked by the unit tests
+     * 构建绘制对象所用的矩阵。不使用{@link Matrix}，因此可以由单元测试检查
+     *
+     * @param out    destination of the column-major matrix 列主序矩阵的目标
+     * @param offset first element of the matrix in the array 矩阵在数组中的第一个元素
+     */
+    public void getDrawMatrix(float[] out, int offset) {
+        // the rotations around x, y and z multiplied in that order: Rx*Ry*Rz 绕x、y、z的旋转按此顺序相乘
+        float[] rotation = getRotation();
+        double ax = rotation != null ? Math.toRadians(rotation[0]) : 0;
+        double ay = rotation != null ? Math.toRadians(rotation[1]) : 0;
+        double az = rotation != null ? Math.toRadians(rotation[2]) : 0;
+        float cx = (float) Math.cos(ax), sx = (float) Math.sin(ax);
+        float cy = (float) Math.cos(ay), sy = (float) Math.sin(ay);
+        float cz = (float) Math.cos(az), sz = (float) Math.sin(az);
+        float r00 = cy * cz, r01 = -cy * sz, r02 = sy;
+        float r10 = sx * sy * cz + cx * sz, r11 = cx * cz - sx * sy * sz, r12 = -sx * cy;
+        float r20 = sx * sz - cx * sy * cz, r21 = cx * sy * sz + sx * cz, r22 = cx * cy;
+
+        float scaleX = getScale() != null ? getScaleX() : 1;
+        float scaleY = getScale() != null ? getScaleY() : 1;
+        float scaleZ = getScale() != null ? getScaleZ() : 1;
+        out[offset] = r00 * scaleX;
+        out[offset + 1] = r10 * scaleX;
+        out[offset + 2] = r20 * scaleX;
+        out[offset + 3] = 0;
+        out[offset + 4] = r01 * scaleY;
+        out[offset + 5] = r11 * scaleY;
+        out[offset + 6] = r21 * scaleY;
+        out[offset + 7] = 0;
+        out[offset + 8] = r02 * scaleZ;
+        out[offset + 9] = r12 * scaleZ;
+        out[offset + 10] = r22 * scaleZ;
+        out[offset + 11] = 0;
+
+        // the translation is scaled and rotated too 平移也被缩放和旋转
+        float tx = getPositionX() * scaleX, ty = getPositionY() * scaleY, tz = getPositionZ() * scaleZ;
+        out[offset + 12] = r00 * tx + r01 * ty + r02 * tz;
+        out[offset + 13] = r10 * tx + r11 * ty + r12 * tz;
+        out[offset + 14] = r20 * tx + r21 * ty + r22 * tz;
+        out[offset + 15] = 1;
+    }
+
     public Buffer getDrawOrderBuffer() {
         return drawOrderBuffer;
     }
 
+    /**
+     * @return the draw buffer as int. If the indices are 16 bit, then a new buffer is returned
+     */
     public IntBuffer getDrawOrder() {
+        if (drawOrderBuffer instanceof ShortBuffer) {
+            ShortBuffer shortBuffer = (ShortBuffer) drawOrderBuffer;
+            IntBuffer intDrawOrderBuffer = createNativeByteBuffer(shortBuffer.capacity() * 4).asIntBuffer();
+            for (int i = 0; i < shortBuffer.capacity(); i++) {
+                intDrawOrderBuffer.put(i, shortBuffer.get(i) & 0xFFFF);
+            }
+            return intDrawOrderBuffer;
+        }
         return (IntBuffer) drawOrderBuffer;
     }
 
@@ -611,6 +773,8 @@ public class Object3DData {
 
     public Object3DData setDrawOrder(Buffer drawBuffer) {
         this.drawOrderBuffer = drawBuffer;
+        this.meshClusters = null;
+        this.levelOfDetail = null;
         return this;
     }
 
@@ -656,7 +820,7 @@ public class Object3DData {
         return vertexNormalsBuffer;
     }
 
-    public ArrayList<Tuple3> getTexCoords() {
+    public FloatBuffer getTexCoords() {
         return texCoords;
     }
 
@@ -706,6 +870,9 @@ public class Object3DData {
 
     public Object3DData setVertexBuffer(FloatBuffer vertexBuffer) {
         this.vertexBuffer = vertexBuffer;
+        this.localBounds = null;
+        this.meshClusters = null;
+        this.levelOfDetail = null;
         return this;
     }
 
@@ -724,6 +891,9 @@ public class Object3DData {
 
     public Object3DData setVertexArrayBuffer(FloatBuffer vertexArrayBuffer) {
         this.vertexArrayBuffer = vertexArrayBuffer;
+        this.localBounds = null;
+        this.meshClusters = null;
+        this.levelOfDetail = null;
         return this;
     }
 
@@ -994,6 +1164,76 @@ public class Object3DData {
         return boundingBox;
     }
 
+    /**
+     * Set an already calculated bounding box, i.e. when the model is restored from the cache
+     * 设置已计算的边界框，例如从缓存恢复模型时
+     */
+    public Object3DData setBoundingBox(BoundingBox boundingBox) {
+        this.boundingBox = boundingBox;
+        return this;
+    }
+
+    /**
+     * Forget the bounds calculated so far, i.e. when the vertices were still being loaded. Call it from the
+     * OpenGL thread, like {@link #getWorldBounds()}.
+     * 丢弃目前计算的边界，例如顶点仍在加载时计算的边界。在OpenGL线程中调用
+     */
+    public Object3DData resetBounds() {
+        this.localBounds = null;
+        this.boundingBox = null;
+        return this;
+    }
+
+    /**
+     * Get the axis aligned bounds of the object in world space, where it is drawn ({@link #getDrawMatrix()}). They
+     * are recomputed only when the position, rotation or scale or the vertices change, by transforming the bounds in
+     * model space, so it's cheap to call every frame. Not thread safe: call it from the OpenGL thread.
+     * 获取对象在世界空间（绘制位置）中的轴对齐边界。只有位置、旋转、缩放或顶点改变时才重新计算，每帧调用的代价很低。在OpenGL线程中调用
+     *
+     * @return minX, minY, minZ, maxX, maxY, maxZ, or null if the object has no vertices. The array is reused.
+     */
+    public float[] getWorldBounds() {
+        if (localBounds == null) {
+            FloatBuffer vertices = getVertexBuffer() != null ? getVertexBuffer() : getVertexArrayBuffer();
+            if (vertices == null || vertices.capacity() < 3) {
+                return null;
+            }
+            localBounds = computeBounds(vertices);
+            worldBoundsValid = false;
+        }
+        float[] m = getDrawMatrix();
+        if (worldBoundsValid && Arrays.equals(m, worldBoundsMatrix)) {
+            return worldBounds;
+        }
+        System.arraycopy(m, 0, worldBoundsMatrix, 0, 16);
+        // transform the center and the extents (Arvo) 变换中心和半长
+        float cx = (localBounds[0] + localBounds[3]) / 2, cy = (localBounds[1] + localBounds[4]) / 2,
+                cz = (localBounds[2] + localBounds[5]) / 2;
+        float ex = (localBounds[3] - localBounds[0]) / 2, ey = (localBounds[4] - localBounds[1]) / 2,
+                ez = (localBounds[5] - localBounds[2]) / 2;
+        for (int i = 0; i < 3; i++) {
+            float center = m[i] * cx + m[4 + i] * cy + m[8 + i] * cz + m[12 + i];
+            float extent = Math.abs(m[i]) * ex + Math.abs(m[4 + i]) * ey + Math.abs(m[8 + i]) * ez;
+            worldBounds[i] = center - extent;
+            worldBounds[3 + i] = center + extent;
+        }
+        worldBoundsValid = true;
+        return worldBounds;
+    }
+
+    private static float[] computeBounds(FloatBuffer vertices) {
+        float[] ret = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i + 2 < vertices.capacity(); i += 3) {
+            for (int j = 0; j < 3; j++) {
+                float value = vertices.get(i + j);
+                if (value < ret[j]) ret[j] = value;
+                if (value > ret[3 + j]) ret[3 + j] = value;
+            }
+        }
+        return ret;
+    }
+
     public void center(float[] newPosition) {
         // calculate a scale factor
         // 计算比例因子
@@ -0,0 +1,284 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link LoaderTask}s in a bounded pool of worker threads, so the models of a scene are loaded in parallel
+ * and the scene takes as long to load as its largest model. Tasks waiting for a thread are started by priority,
+ * and then in submission order.
+ * <p>
+ * Results are not delivered from the worker threads. The owner of the scene calls {@link #deliver()} from its
+ * own thread (normally the OpenGL thread, once per frame), which notifies the callbacks of the finished tasks in
+ * submission order, so the objects are always added to the scene in the same order whatever model loads first.
+ * Objects delivered progressively ({@link LoaderTask#publishPartial(List)}) are not ordered.
+ * <p>
+ * 在有界工作线程池中运行LoaderTask，场景的模型并行加载，加载时间取决于最大的模型。等待线程的任务按优先级、然后按提交顺序启动。
+ * 结果不从工作线程交付：场景的所有者从自己的线程（通常是OpenGL线程，每帧一次）调用deliver()，按提交顺序通知已完成任务的回调。
+ *
+ * @author andresoviedo
+ */
+public final class LoaderScheduler {
+
+    public static final int PRIORITY_LOW = -1;
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 1;
+
+    private final ThreadPoolExecutor executor;
+    /**
+     * Called from the worker threads when there is something to deliver, or null
+     * 有内容要交付时从工作线程调用，或为null
+     */
+    private final Runnable onDeliveryReady;
+
+    // jobs not delivered yet, in submission order
+    // 尚未交付的任务，按提交顺序
+    private final ArrayDeque<Job> pending = new ArrayDeque<>();
+    private long sequence = 0;
+
+    // progressive deliveries, not ordered
+    // 逐步交付，不排序
+    private final ConcurrentLinkedQueue<Runnable> partials = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param onDeliveryReady called from the worker threads when {@link #deliver()} has something to deliver
+     *                        (i.e. to request a render), or null
+     */
+    public LoaderScheduler(Runnable onDeliveryReady) {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), onDeliveryReady);
+    }
+
+    /**
+     * @param threads         maximum number of models loaded at the same time
+     * @param onDeliveryReady called from the worker threads when {@link #deliver()} has something to deliver
+     *                        (i.e. to request a render), or null
+     */
+    public LoaderScheduler(int threads, Runnable onDeliveryReady) {
+        this(newExecutor(threads), onDeliveryReady);
+    }
+
+    /**
+     * @param executor        runs the tasks. Its queue must order them, i.e. a {@link PriorityBlockingQueue}
+     * @param onDeliveryReady called when {@link #deliver()} has something to deliver, or null
+     */
+    LoaderScheduler(ThreadPoolExecutor executor, Runnable onDeliveryReady) {
+        this.executor = executor;
+        this.onDeliveryReady = onDeliveryReady;
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private int count;
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Loader-" + (count++));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // don't keep idle threads once the scene is loaded
+        // 场景加载完后不保留空闲线程
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public LoaderTask submit(LoaderTask task) {
+        return submit(task, PRIORITY_NORMAL);
+    }
+
+    /**
+     * Schedule the loading of the model
+     * 计划加载模型
+     *
+     * @param task     the task, not submitted before
+     * @param priority tasks with higher priority are started first
+     * @return the task, to cancel it
+     */
+    public LoaderTask submit(LoaderTask task, int priority) {
+        if (task.job != null) {
+            throw new IllegalStateException("Task already submitted: " + task.getUri());
+        }
+        Job job;
+        synchronized (this) {
+            job = new Job(task, priority, sequence++);
+            task.job = job;
+            pending.add(job);
+        }
+        if (task.isCancelled()) {
+            job.finish(null, null);
+        } else {
+            executor.execute(job);
+        }
+        return task;
+    }
+
+    /**
+     * Notify the callbacks of the tasks finished since the last call. Tasks are delivered in submission order,
+     * so a finished task waits for the tasks submitted before it.
+     * 通知自上次调用以来完成的任务的回调。任务按提交顺序交付
+     */
+    public void deliver() {
+        for (Runnable partial = partials.poll(); partial != null; partial = partials.poll()) {
+            partial.run();
+        }
+        while (true) {
+            Job job;
+            synchronized (this) {
+                job = pending.peek();
+                if (job == null || !job.finished) {
+                    return;
+                }
+                pending.poll();
+            }
+            job.deliver();
+        }
+    }
+
+    /**
+     * @return number of tasks submitted and not delivered yet
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Cancel all the tasks not delivered yet
+     * 取消所有尚未交付的任务
+     */
+    public void cancelAll() {
+        List<Job> jobs;
+        synchronized (this) {
+            jobs = new ArrayList<>(pending);
+        }
+        for (Job job : jobs) {
+            job.task.cancel();
+        }
+    }
+
+    /**
+     * Cancel all the tasks and stop the worker threads. No more tasks can be submitted.
+     * 取消所有任务并停止工作线程
+     */
+    public void shutdown() {
+        cancelAll();
+        executor.shutdown();
+    }
+
+    private void notifyDeliveryReady() {
+        if (onDeliveryReady != null) {
+            onDeliveryReady.run();
+        }
+    }
+
+    /**
+     * Execution of a task
+     * 任务的执行
+     */
+    final class Job implements Runnable, Comparable<Job> {
+
+        private final LoaderTask task;
+        private final int priority;
+        private final long sequence;
+
+        // result, written by the worker thread before finished is set
+        // 结果，由工作线程在设置finished之前写入
+        private List<Object3DData> result;
+        private Exception error;
+        // guarded by the scheduler
+        // 由调度器保护
+        private boolean finished;
+
+        private Job(LoaderTask task, int priority, long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public void run() {
+            if (task.isCancelled()) {
+                finish(null, null);
+                return;
+            }
+            long start = System.currentTimeMillis();
+            try {
+                List<Object3DData> data = task.load();
+                Log.i("LoaderScheduler", "Loaded " + task.getUri() + " in " + (System.currentTimeMillis() - start)
+                        + " ms");
+                finish(data, null);
+            } catch (CancellationException ex) {
+                Log.i("LoaderScheduler", "Cancelled " + task.getUri());
+                finish(null, null);
+            } catch (Exception ex) {
+                finish(null, ex);
+            } catch (OutOfMemoryError ex) {
+                finish(null, new RuntimeException("Not enough memory to load " + task.getUri(), ex));
+            }
+        }
+
+        /**
+         * Called when the task is cancelled. If it is still waiting for a thread, it will never run.
+         */
+        void cancel() {
+            if (executor.remove(this)) {
+                finish(null, null);
+            }
+        }
+
+        void publishPartial(final List<Object3DData> data) {
+            partials.add(new Runnable() {
+                @Override
+                public void run() {
+                    if (!task.isCancelled()) {
+                        task.getCallback().onLoadPartial(data);
+                    }
+                }
+            });
+            notifyDeliveryReady();
+        }
+
+        private void finish(List<Object3DData> result, Exception error) {
+            synchronized (LoaderScheduler.this) {
+                if (finished) {
+                    return;
+                }
+                this.result = result;
+                this.error = error;
+                this.finished = true;
+            }
+            notifyDeliveryReady();
+        }
+
+        private void deliver() {
+            if (task.isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                task.getCallback().onLoadError(error);
+            } else if (result != null) {
+                task.getCallback().onLoadComplete(result);
+            }
+        }
+    }
+}
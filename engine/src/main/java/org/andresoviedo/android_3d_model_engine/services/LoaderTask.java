@@ -1,21 +1,40 @@
 package org.andresoviedo.android_3d_model_engine.services;
 
-import android.app.Activity;
-import android.app.ProgressDialog;
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.util.Log;
 
+import org.andresoviedo.android_3d_model_engine.collision.BVH;
+import org.andresoviedo.android_3d_model_engine.drawer.TextureDecoder;
+import org.andresoviedo.android_3d_model_engine.model.MaterialRange;
+import org.andresoviedo.android_3d_model_engine.model.MeshClusters;
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.util.android.ContentUtils;
+import org.andresoviedo.util.io.IOUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * This component allows loading the model without blocking the UI.
- * 该组件允许在不阻塞UI的情况下加载模型。
+ * This component allows loading the model without blocking the UI. Tasks are run by a {@link LoaderScheduler},
+ * so several models can be loaded at the same time.
+ * 该组件允许在不阻塞UI的情况下加载模型。任务由{@link LoaderScheduler}运行，可以同时加载多个模型。
  *
  * @author andresoviedo
  */
-public abstract class LoaderTask extends AsyncTask<Void, Integer, List<Object3DData>> {
+public abstract class LoaderTask {
+
+    /**
+     * Progress steps notified to {@link Callback#onProgress(Uri, int)}
+     * 通知给回调的进度步骤
+     */
+    public static final int PROGRESS_ANALYZING = 0;
+    public static final int PROGRESS_ALLOCATING = 1;
+    public static final int PROGRESS_LOADING = 2;
+    public static final int PROGRESS_SCALING = 3;
+    public static final int PROGRESS_BUILDING = 4;
+    public static final int PROGRESS_BUILT = 5;
 
     /**
      * URL to the 3D model
@@ -28,93 +47,326 @@ public abstract class LoaderTask extends AsyncTask<Void, Integer, List<Object3DD
      */
     private final Callback callback;
     /**
-     * The dialog that will show the progress of the loading
-     * 显示加载进度的对话框
+     * Cache of built models, or null to always parse the model
+     * 已构建模型的缓存，为null时总是解析模型
+     */
+    private ModelCache cache;
+    /**
+     * Whether to build the triangle hierarchy for picking once the model is loaded
+     * 模型加载后是否构建用于拾取的三角形层次结构
+     */
+    private boolean prebuildBVH = true;
+    /**
+     * Maximum triangles of the spatial clusters of big meshes, or 0 to draw them whole
+     * 大网格空间簇的最大三角形数，为0时整体绘制
+     */
+    private int clusterSize = 0;
+    /**
+     * Minimum triangles of the coarsest level of detail, or 0 to not build them
+     * 最粗细节级别的最少三角形数，为0时不构建
+     */
+    private int lodMinTriangles = 0;
+    /**
+     * Width of the page where the textures of the material ranges are packed, or 0 to not pack them
+     * 打包材质范围纹理的页面宽度，为0时不打包
+     */
+    private int atlasPageSize = 0;
+    /**
+     * Whether the result is no longer wanted
+     * 是否不再需要结果
+     */
+    private volatile boolean cancelled;
+    /**
+     * The scheduled execution of this task, or null if it was not submitted yet
+     * 此任务的计划执行，未提交时为null
      */
-    private final ProgressDialog dialog;
+    volatile LoaderScheduler.Job job;
 
     /**
-     * Build a new progress dialog for loading the data model asynchronously
-     * 构建一个新的进度对话框，用于异步加载数据模型
-     *
-     * @param uri the URL pointing to the 3d model 3D模型URL
+     * @param uri      the URL pointing to the 3d model 3D模型URL
+     * @param callback the callback to notify of events 通知事件的回调
      */
-    public LoaderTask(Activity parent, Uri uri, Callback callback) {
+    public LoaderTask(Uri uri, Callback callback) {
         this.uri = uri;
-        // this.dialog = ProgressDialog.show(this.parent, "Please wait ...", "Loading model data...", true);
-        // this.dialog.setTitle(modelId);
-        this.dialog = new ProgressDialog(parent);
         this.callback = callback;
     }
 
+    /**
+     * Use the cache to skip parsing models already opened before
+     * 使用缓存跳过之前打开过的模型的解析
+     *
+     * @param cache the cache, or null
+     * @return this task
+     */
+    public LoaderTask setCache(ModelCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Build the triangle hierarchy used by {@link org.andresoviedo.android_3d_model_engine.collision.CollisionDetection}
+     * in the loader thread, so the first tap on the model doesn't wait for it. Enabled by default.
+     * 在加载线程中构建三角形层次结构，使第一次点击模型时不必等待。默认启用
+     *
+     * @param prebuildBVH false to build it on the first tap
+     * @return this task
+     */
+    public LoaderTask setPrebuildBVH(boolean prebuildBVH) {
+        this.prebuildBVH = prebuildBVH;
+        return this;
+    }
+
+    /**
+     * Split big meshes into spatial clusters, so the renderer only draws the parts in the view. Disabled by
+     * default. The draw buffers are reordered, so the order of the triangles of the loaded objects changes.
+     * 将大网格划分为空间簇，使渲染器只绘制视图中的部分。默认禁用
+     *
+     * @param clusterSize maximum triangles of a cluster (i.e. {@link MeshClusters#DEFAULT_CLUSTER_SIZE}),
+     *                    or 0 to disable it
+     * @return this task
+     */
+    public LoaderTask setClusterSize(int clusterSize) {
+        this.clusterSize = clusterSize;
+        return this;
+    }
+
+    /**
+     * Build simplified copies of the big meshes, drawn instead of them when they are far away. They are built in
+     * the background once the model is loaded, so the model is shown meanwhile at full detail. Disabled by
+     * default.
+     * 构建大网格的简化副本，在其较远时代替绘制。模型加载后在后台构建，期间模型以完整细节显示。默认禁用
+     *
+     * @param minTriangles minimum triangles of the coarsest copy (e.g. 5000), or 0 to disable it. Meshes with
+     *                     less than twice these triangles are not simplified
+     * @return this task
+     */
+    public LoaderTask setLevelsOfDetail(int minTriangles) {
+        this.lodMinTriangles = minTriangles;
+        return this;
+    }
+
+    /**
+     * Pack the small textures of the models with several textured materials into a single texture, so they are
+     * drawn with less draw calls and texture switches. Disabled by default.
+     * 将具有多个纹理材质的模型的小纹理打包为单个纹理，以减少绘制调用和纹理切换。默认禁用
+     *
+     * @param pageSize width of the packed texture (i.e. {@link TextureAtlas#DEFAULT_PAGE_SIZE}), or 0 to
+     *                 disable it
+     * @return this task
+     */
+    public LoaderTask setTextureAtlas(int pageSize) {
+        this.atlasPageSize = pageSize;
+        return this;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    Callback getCallback() {
+        return callback;
+    }
 
-    @Override
-    protected void onPreExecute() {
-        super.onPreExecute();
-        this.dialog.setMessage("加载中...");
-        this.dialog.setCancelable(false);
-        this.dialog.show();
+    /**
+     * Cancel the loading. A task not started yet is never run, and the result of a running task is discarded.
+     * Objects already delivered by {@link Callback#onLoadPartial(List)} must be removed by the caller.
+     * 取消加载。尚未开始的任务不会运行，正在运行的任务的结果将被丢弃
+     */
+    public void cancel() {
+        cancelled = true;
+        LoaderScheduler.Job job = this.job;
+        if (job != null) {
+            job.cancel();
+        }
     }
 
+    public boolean isCancelled() {
+        return cancelled;
+    }
 
-    @Override
-    protected List<Object3DData> doInBackground(Void... params) {
+    /**
+     * Load the model. Called from a loader thread.
+     * 加载模型（从加载线程调用）
+     */
+    List<Object3DData> load() throws Exception {
         try {
             callback.onStart();
-            List<Object3DData> data = build();
-            build(data);
-            callback.onLoadComplete(data);
+            ModelCache.Key key = cache != null ? cache.key(uri) : null;
+            List<Object3DData> data = key != null ? cache.read(key) : null;
+            if (data == null) {
+                data = build();
+                build(data);
+                if (key != null && !cancelled) {
+                    cache.write(key, data);
+                }
+            }
+            loadTextures(data);
+            if (clusterSize > 0) {
+                buildClusters(data);
+            }
+            if (prebuildBVH) {
+                buildBVH(data);
+            }
+            if (lodMinTriangles > 0) {
+                buildLevelsOfDetail(data);
+            }
             return data;
-        } catch (Exception ex) {
-            callback.onLoadError(ex);
-            return null;
+        } finally {
+            // loader threads are pooled, so don't keep the activity set by the callback
+            // 加载线程是池化的，所以不要保留回调设置的activity
+            ContentUtils.setThreadActivity(null);
         }
     }
 
-    protected abstract List<Object3DData> build() throws Exception;
+    /**
+     * Read the textures referenced by the objects and start decoding them, so the OpenGL thread doesn't wait for
+     * the storage or the decoding
+     * 读取对象引用的纹理并开始解码，使OpenGL线程不必等待存储或解码
+     */
+    private void loadTextures(List<Object3DData> data) {
+        for (Object3DData obj : data) {
+            if (obj.getTextureData() == null && obj.getTextureFile() != null) {
+                obj.setTextureData(readTexture(obj, obj.getTextureFile()));
+            }
+            List<MaterialRange> ranges = obj.getMaterialRanges();
+            if (ranges != null) {
+                for (MaterialRange range : ranges) {
+                    if (range.getTextureData() == null && range.getTextureFile() != null) {
+                        // the texture of the object is the one of the first textured range
+                        // 对象的纹理是第一个带纹理范围的纹理
+                        range.setTextureData(range.getTextureFile().equals(obj.getTextureFile()) ?
+                                obj.getTextureData() : readTexture(obj, range.getTextureFile()));
+                    }
+                }
+                if (atlasPageSize > 0 && !cancelled) {
+                    try {
+                        TextureAtlas.build(obj, atlasPageSize);
+                    } catch (OutOfMemoryError ex) {
+                        Log.e("LoaderTask", "Not enough memory to pack the textures of " + obj.getId());
+                    }
+                }
+            }
+            // decode them in the background while the rest of the model is prepared
+            // 在准备模型其余部分时在后台解码
+            TextureDecoder.decode(obj.getTextureData());
+            TextureDecoder.decode(obj.getEmissiveTextureData());
+            ranges = obj.getMaterialRanges();
+            if (ranges != null) {
+                for (MaterialRange range : ranges) {
+                    TextureDecoder.decode(range.getTextureData());
+                }
+            }
+        }
+    }
 
-    protected abstract void build(List<Object3DData> data) throws Exception;
+    private static byte[] readTexture(Object3DData obj, String file) {
+        Log.i("LoaderTask", "Loading texture... " + file);
+        try (InputStream stream = ContentUtils.getInputStream(file)) {
+            if (stream != null) {
+                return IOUtils.read(stream);
+            }
+        } catch (IOException ex) {
+            obj.addError("Problem loading texture " + file);
+        }
+        return null;
+    }
 
-    @Override
-    protected void onProgressUpdate(Integer... values) {
-        super.onProgressUpdate(values);
-        switch (values[0]) {
-            case 0:
-                this.dialog.setMessage("分析模型……");
-                break;
-            case 1:
-                this.dialog.setMessage("分配内存……");
-                break;
-            case 2:
-                this.dialog.setMessage("加载数据…");
-                break;
-            case 3:
-                this.dialog.setMessage("缩放对象……");
-                break;
-            case 4:
-                this.dialog.setMessage("建筑三维模型……");
-                break;
-            case 5:
-                // Toast.makeText(parent, modelId + " Build!", Toast.LENGTH_LONG).show();
-                break;
+    private void buildClusters(List<Object3DData> data) {
+        for (Object3DData obj : data) {
+            if (cancelled) {
+                return;
+            }
+            if (obj.getMeshClusters() == null) {
+                obj.setMeshClusters(MeshClusters.build(obj, clusterSize));
+            }
         }
     }
 
-    @Override
-    protected void onPostExecute(List<Object3DData> data) {
-        super.onPostExecute(data);
-        if (dialog.isShowing()) {
-            dialog.dismiss();
+    private void buildLevelsOfDetail(final List<Object3DData> data) {
+        ForkJoinPool.commonPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Object3DData obj : data) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (obj.getLevelOfDetail() == null) {
+                        try {
+                            obj.setLevelOfDetail(MeshSimplifier.buildLevelsOfDetail(obj, lodMinTriangles));
+                        } catch (OutOfMemoryError ex) {
+                            Log.e("LoaderTask", "Not enough memory to simplify " + obj.getId());
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private void buildBVH(List<Object3DData> data) {
+        for (Object3DData obj : data) {
+            if (cancelled) {
+                return;
+            }
+            if (obj.getBVH() == null) {
+                obj.setBVH(BVH.build(obj));
+            }
         }
     }
 
+    protected abstract List<Object3DData> build() throws Exception;
+
+    protected abstract void build(List<Object3DData> data) throws Exception;
+
+    /**
+     * Notify the progress of the loading
+     * 通知加载进度
+     *
+     * @param step one of the <code>PROGRESS_</code> constants
+     */
+    protected void publishProgress(int step) {
+        callback.onProgress(uri, step);
+    }
 
+    /**
+     * Deliver the objects before they are completely loaded, so they are drawn progressively. The objects must
+     * have a {@link org.andresoviedo.android_3d_model_engine.model.GeometryStream} where the loader publishes
+     * the vertices as they are written.
+     * 在对象完全加载之前交付，以便逐步绘制。对象必须有GeometryStream
+     *
+     * @param data the objects being loaded
+     */
+    protected void publishPartial(List<Object3DData> data) {
+        LoaderScheduler.Job job = this.job;
+        if (job != null) {
+            job.publishPartial(data);
+        }
+    }
+
+    /**
+     * Callback of the loading. {@link #onStart()} and {@link #onProgress(Uri, int)} are called from the loader
+     * thread. The rest of the methods are called from the thread delivering the results of the
+     * {@link LoaderScheduler}, normally the OpenGL thread.
+     * 加载回调。onStart和onProgress从加载线程调用，其余方法从交付结果的线程（通常是OpenGL线程）调用
+     */
     public interface Callback {
 
         void onStart();
 
+        /**
+         * @param uri  the model being loaded
+         * @param step one of the <code>PROGRESS_</code> constants of {@link LoaderTask}
+         */
+        void onProgress(Uri uri, int step);
+
         void onLoadError(Exception ex);
 
+        /**
+         * Called when the objects can be drawn while they are still being loaded. The same objects are
+         * delivered later to {@link #onLoadComplete(List)}
+         * 对象仍在加载但已可以绘制时调用
+         */
+        void onLoadPartial(List<Object3DData> data);
+
         void onLoadComplete(List<Object3DData> data);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,800 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.LevelOfDetail;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.util.collections.IntArrayList;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mesh simplification by edge collapse driven by the quadric error metric (Garland &amp; Heckbert). Edges are
+ * collapsed into one of their vertices (half-edge collapse), so no new vertex is created and the normals, colors
+ * and texture coordinates of the remaining vertices are kept as they are. Vertices on a seam (same position but
+ * different attributes) or on a border can only slide along it, and corners of seams are never moved, so the
+ * seams are preserved. Collapses are done in passes of increasing error threshold (as in "Fast Quadric Mesh
+ * Simplification" by Sven Forstmann) instead of a priority queue.
+ * <p>
+ * 基于二次误差度量的边折叠网格简化。边折叠到其中一个顶点，不创建新顶点，剩余顶点的法线、颜色和纹理坐标保持不变。
+ * 接缝（相同位置但属性不同）或边界上的顶点只能沿其滑动，接缝的角永远不会移动，因此接缝得以保留。
+ *
+ * @author andresoviedo
+ */
+public final class MeshSimplifier {
+
+    /**
+     * Maximum number of coarser levels built by {@link #buildLevelsOfDetail(Object3DData, int)}
+     * 构建的最大较粗级别数
+     */
+    public static final int MAX_LEVELS = 6;
+
+    private static final int MAX_ITERATIONS = 100;
+    // the error threshold grows with (iteration + 3) ^ AGGRESSIVENESS 误差阈值随迭代增长
+    private static final double AGGRESSIVENESS = 7;
+    // minimum cosine between the normal of a triangle before and after a collapse 折叠前后三角形法线的最小余弦
+    private static final double FLIP_THRESHOLD = 0.2;
+    // maximum different attributes at a vertex that can be collapsed 可折叠顶点的最大不同属性数
+    private static final int MAX_ATTRIBUTES = 8;
+    // maximum error of a level, relative to the bounding box diagonal 级别的最大误差，相对于包围盒对角线
+    private static final double MAX_RELATIVE_ERROR = 0.1;
+
+    // source of the attributes of the vertices 顶点属性的来源
+    private final FloatBuffer[] attributes;
+    private final int[] attributeSizes;
+
+    // vertices with the same position share the quadric 具有相同位置的顶点共享二次误差
+    private final float[] positions;
+    private final double[] quadrics;
+    // attribute vertex -> position vertex, and -> vertex of the source buffers 属性顶点到位置顶点、到源顶点的映射
+    private final int[] positionOf;
+    private final int[] sourceOf;
+    private final double scale;
+
+    // triangles: position vertex and attribute vertex of every corner 三角形：每个角的位置顶点和属性顶点
+    private int triangleCount;
+    private int liveTriangles;
+    private int[] tv;
+    private int[] ta;
+    private float[] normals;
+    // error and direction of the collapse of the edge from every corner to the next one 每个角到下一个角的边的折叠误差和方向
+    private double[] errors;
+    private boolean[] reversed;
+    private boolean[] deleted;
+    private boolean[] dirty;
+
+    // triangles of every position vertex, as triangle * 3 + corner 每个位置顶点的三角形
+    private int[] refStart;
+    private int[] refCount;
+    private int[] refs = new int[0];
+    private int refSize;
+
+    // scratch 临时数据
+    private final int[] stamps;
+    private int stamp;
+    private final int[] pairFrom = new int[MAX_ATTRIBUTES];
+    private final int[] pairTo = new int[MAX_ATTRIBUTES];
+    private int pairCount;
+
+    private double maxError;
+
+    private MeshSimplifier(FloatBuffer vertices, Buffer indices, FloatBuffer[] attributes, int[] attributeSizes) {
+        this.attributes = attributes;
+        this.attributeSizes = attributeSizes;
+        int vertexCount = vertices.capacity() / 3;
+
+        // weld the vertices by position, and by position and attributes 按位置、按位置和属性合并顶点
+        FloatBuffer[] positionOnly = {vertices};
+        int[] positionSize = {3};
+        int[] positionIds = new int[vertexCount];
+        int positionCount = weld(positionOnly, positionSize, vertexCount, positionIds);
+        FloatBuffer[] all = new FloatBuffer[attributes.length + 1];
+        int[] allSizes = new int[attributes.length + 1];
+        all[0] = vertices;
+        allSizes[0] = 3;
+        System.arraycopy(attributes, 0, all, 1, attributes.length);
+        System.arraycopy(attributeSizes, 0, allSizes, 1, attributes.length);
+        int[] attributeIds = new int[vertexCount];
+        int attributeCount = weld(all, allSizes, vertexCount, attributeIds);
+
+        positions = new float[positionCount * 3];
+        positionOf = new int[attributeCount];
+        sourceOf = new int[attributeCount];
+        float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int v = 0; v < vertexCount; v++) {
+            int p = positionIds[v];
+            positionOf[attributeIds[v]] = p;
+            sourceOf[attributeIds[v]] = v;
+            for (int j = 0; j < 3; j++) {
+                float value = vertices.get(v * 3 + j);
+                positions[p * 3 + j] = value;
+                if (value < min[j]) min[j] = value;
+                if (value > max[j]) max[j] = value;
+            }
+        }
+        double dx = max[0] - min[0], dy = max[1] - min[1], dz = max[2] - min[2];
+        scale = Math.max(dx * dx + dy * dy + dz * dz, 1e-12);
+
+        triangleCount = (indices != null ? indices.capacity() : vertexCount) / 3;
+        tv = new int[triangleCount * 3];
+        ta = new int[triangleCount * 3];
+        for (int i = 0; i < triangleCount * 3; i++) {
+            int v = indices == null ? i : indices instanceof IntBuffer ? ((IntBuffer) indices).get(i)
+                    : ((ShortBuffer) indices).get(i) & 0xFFFF;
+            ta[i] = attributeIds[v];
+            tv[i] = positionIds[v];
+        }
+        normals = new float[triangleCount * 3];
+        errors = new double[triangleCount * 3];
+        reversed = new boolean[triangleCount * 3];
+        deleted = new boolean[triangleCount];
+        dirty = new boolean[triangleCount];
+        liveTriangles = triangleCount;
+        for (int t = 0; t < triangleCount; t++) {
+            if (tv[t * 3] == tv[t * 3 + 1] || tv[t * 3 + 1] == tv[t * 3 + 2] || tv[t * 3] == tv[t * 3 + 2]) {
+                deleted[t] = true;
+                liveTriangles--;
+            }
+        }
+        stamps = new int[positionCount];
+        quadrics = new double[positionCount * 10];
+        refStart = new int[positionCount];
+        refCount = new int[positionCount];
+
+        compact();
+        initQuadrics();
+        for (int t = 0; t < triangleCount; t++) {
+            updateErrors(t);
+        }
+    }
+
+    /**
+     * @param obj the object to simplify 要简化的对象
+     * @return the simplifier, or null if the object is not a plain list of triangles (or it's split in material
+     * ranges, which the simplified copy wouldn't keep)
+     */
+    public static MeshSimplifier create(Object3DData obj) {
+        if (obj.getDrawMode() != GLES20.GL_TRIANGLES || obj.getDrawModeList() != null || obj.getDrawSize() > 0
+                || obj.getMaterialRanges() != null || obj instanceof AnimatedModel) {
+            return null;
+        }
+        FloatBuffer vertices = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
+                : obj.getVertexBuffer();
+        if (vertices == null || vertices.capacity() < 9) {
+            return null;
+        }
+        int vertexCount = vertices.capacity() / 3;
+        Buffer indices = obj.isDrawUsingArrays() ? null : obj.getDrawOrderBuffer();
+        FloatBuffer[] candidates = {obj.getVertexNormalsArrayBuffer(), obj.getVertexColorsArrayBuffer(),
+                obj.getTextureCoordsArrayBuffer(), obj.getEmissiveTextureCoordsArrayBuffer()};
+        int[] sizes = {3, 4, 2, 2};
+        List<FloatBuffer> attributes = new ArrayList<>();
+        IntArrayList attributeSizes = new IntArrayList();
+        for (int i = 0; i < candidates.length; i++) {
+            if (candidates[i] != null) {
+                if (candidates[i].capacity() != vertexCount * sizes[i]) {
+                    // not a per vertex array 不是逐顶点数组
+                    return null;
+                }
+                attributes.add(candidates[i]);
+                attributeSizes.add(sizes[i]);
+            }
+        }
+        return new MeshSimplifier(vertices, indices, attributes.toArray(new FloatBuffer[0]),
+                attributeSizes.toArray());
+    }
+
+    /**
+     * Build a chain of simplified copies of the object, each one with about half the triangles of the previous
+     * one. The copies share the material of the object.
+     * 构建对象的简化副本链，每个副本约有前一个的一半三角形。副本共享对象的材质
+     *
+     * @param obj          the object 对象
+     * @param minTriangles the coarsest level has at least these triangles 最粗级别至少有这些三角形
+     * @return the levels, or null if the object can't be simplified or is too small
+     */
+    public static LevelOfDetail buildLevelsOfDetail(Object3DData obj, int minTriangles) {
+        MeshSimplifier simplifier = create(obj);
+        if (simplifier == null || simplifier.getTriangleCount() < minTriangles * 2) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        List<Object3DData> levels = new ArrayList<>();
+        float[] errors = new float[MAX_LEVELS];
+        int target = simplifier.getTriangleCount() / 2;
+        while (levels.size() < MAX_LEVELS && target >= minTriangles) {
+            int before = simplifier.getTriangleCount();
+            float error = simplifier.simplify(target);
+            if (simplifier.getTriangleCount() > before * 0.9) {
+                // the rest of the vertices are locked by seams 其余顶点被接缝锁定
+                break;
+            }
+            if (error > MAX_RELATIVE_ERROR * Math.sqrt(simplifier.scale)) {
+                // the shape is lost 形状已丢失
+                break;
+            }
+            errors[levels.size()] = error;
+            levels.add(simplifier.toObject3D(obj, obj.getId() + "_lod" + (levels.size() + 1)));
+            target = simplifier.getTriangleCount() / 2;
+        }
+        Log.i("MeshSimplifier", "Levels of detail for '" + obj.getId() + "': " + levels.size()
+                + ", triangles: " + simplifier.getTriangleCount() + ", time(ms): "
+                + (System.currentTimeMillis() - start));
+        if (levels.isEmpty()) {
+            return null;
+        }
+        return new LevelOfDetail(levels, Arrays.copyOf(errors, levels.size()));
+    }
+
+    /**
+     * @return number of triangles left 剩余三角形数
+     */
+    public int getTriangleCount() {
+        return liveTriangles;
+    }
+
+    /**
+     * Collapse edges until there are no more triangles than the target, or no edge can be collapsed.
+     * It can be called again with a lower target to continue the simplification.
+     * 折叠边直到三角形数不超过目标，或没有边可以折叠。可以用更低的目标再次调用以继续简化
+     *
+     * @param targetTriangles the number of triangles wanted 期望的三角形数
+     * @return the error of the mesh: an estimation of the maximum distance to the original surface
+     */
+    public float simplify(int targetTriangles) {
+        for (int iteration = 0; iteration < MAX_ITERATIONS && liveTriangles > targetTriangles; iteration++) {
+            if (iteration % 5 == 0) {
+                compact();
+            }
+            Arrays.fill(dirty, 0, triangleCount, false);
+            double threshold = 1e-9 * Math.pow(iteration + 3, AGGRESSIVENESS) * scale;
+            for (int t = 0; t < triangleCount && liveTriangles > targetTriangles; t++) {
+                if (deleted[t] || dirty[t]) {
+                    continue;
+                }
+                for (int j = 0; j < 3; j++) {
+                    if (errors[t * 3 + j] <= threshold && collapse(t, j, threshold)) {
+                        break;
+                    }
+                }
+            }
+        }
+        return (float) Math.sqrt(maxError);
+    }
+
+    /**
+     * Try to collapse the edge of the triangle starting at the corner
+     *
+     * @return whether the edge was collapsed 是否折叠了边
+     */
+    private boolean collapse(int t, int corner, double threshold) {
+        int v0 = tv[t * 3 + corner], v1 = tv[t * 3 + (corner + 1) % 3];
+        // try the direction with less error first 先尝试误差较小的方向
+        int from = reversed[t * 3 + corner] ? v1 : v0;
+        int to = from == v0 ? v1 : v0;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            double error = collapseError(from, to);
+            if (error <= threshold && canCollapse(from, to)) {
+                doCollapse(from, to);
+                if (error > maxError) {
+                    maxError = error;
+                }
+                return true;
+            }
+            int swap = from;
+            from = to;
+            to = swap;
+        }
+        return false;
+    }
+
+    private boolean canCollapse(int from, int to) {
+        if (isFlipped(from, to)) {
+            return false;
+        }
+        // every attribute vertex moved needs a partner at the destination 每个移动的属性顶点在目标处都需要一个对应顶点
+        pairCount = 0;
+        for (int r = refStart[from], end = r + refCount[from]; r < end; r++) {
+            int ref = refs[r];
+            int t = ref / 3;
+            if (deleted[t]) {
+                continue;
+            }
+            int k = cornerOf(t, to);
+            if (k < 0) {
+                continue;
+            }
+            int va = ta[ref], vb = ta[t * 3 + k];
+            int pair = findPair(va);
+            if (pair >= 0) {
+                if (pairTo[pair] != vb) {
+                    return false;
+                }
+            } else {
+                if (pairCount == MAX_ATTRIBUTES) {
+                    return false;
+                }
+                pairFrom[pairCount] = va;
+                pairTo[pairCount++] = vb;
+            }
+        }
+        if (pairCount == 0) {
+            return false;
+        }
+        boolean seam = pairCount > 1;
+        for (int r = refStart[from], end = r + refCount[from]; r < end; r++) {
+            int ref = refs[r];
+            if (!deleted[ref / 3] && findPair(ta[ref]) < 0) {
+                return false;
+            }
+        }
+        // vertices on seams or borders only slide along them 接缝或边界上的顶点只能沿其滑动
+        int constrained = countConstrainedEdges(from);
+        if (constrained < 0) {
+            return false;
+        }
+        if (seam || constrained > 0) {
+            return constrained == 2 && isConstrainedEdge(from, to);
+        }
+        return true;
+    }
+
+    private int findPair(int va) {
+        for (int i = 0; i < pairCount; i++) {
+            if (pairFrom[i] == va) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int cornerOf(int t, int v) {
+        return tv[t * 3] == v ? 0 : tv[t * 3 + 1] == v ? 1 : tv[t * 3 + 2] == v ? 2 : -1;
+    }
+
+    /**
+     * @return whether moving the vertex to the other one turns any of its triangles too far from its original
+     * orientation, which would fold the surface
+     */
+    private boolean isFlipped(int from, int to) {
+        float px = positions[to * 3], py = positions[to * 3 + 1], pz = positions[to * 3 + 2];
+        for (int r = refStart[from], end = r + refCount[from]; r < end; r++) {
+            int ref = refs[r];
+            int t = ref / 3, s = ref % 3;
+            if (deleted[t]) {
+                continue;
+            }
+            int n1 = tv[t * 3 + (s + 1) % 3], n2 = tv[t * 3 + (s + 2) % 3];
+            if (n1 == to || n2 == to) {
+                // removed by the collapse 被折叠删除
+                continue;
+            }
+            float ax = positions[n1 * 3] - px, ay = positions[n1 * 3 + 1] - py, az = positions[n1 * 3 + 2] - pz;
+            float bx = positions[n2 * 3] - px, by = positions[n2 * 3 + 1] - py, bz = positions[n2 * 3 + 2] - pz;
+            float la = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+            float lb = (float) Math.sqrt(bx * bx + by * by + bz * bz);
+            if (la == 0 || lb == 0 || Math.abs((ax * bx + ay * by + az * bz) / (la * lb)) > 0.999f) {
+                return true;
+            }
+            float nx = ay * bz - az * by, ny = az * bx - ax * bz, nz = ax * by - ay * bx;
+            float ln = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (ln == 0 || (nx * normals[t * 3] + ny * normals[t * 3 + 1] + nz * normals[t * 3 + 2]) / ln
+                    < FLIP_THRESHOLD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of edges of the vertex on a seam or a border, or -1 if any edge is not manifold
+     */
+    private int countConstrainedEdges(int v) {
+        stamp++;
+        int count = 0;
+        for (int r = refStart[v], end = r + refCount[v]; r < end; r++) {
+            int ref = refs[r];
+            int t = ref / 3, s = ref % 3;
+            if (deleted[t]) {
+                continue;
+            }
+            for (int k = 1; k <= 2; k++) {
+                int n = tv[t * 3 + (s + k) % 3];
+                if (stamps[n] == stamp) {
+                    continue;
+                }
+                stamps[n] = stamp;
+                int type = edgeType(v, n);
+                if (type < 0) {
+                    return -1;
+                }
+                count += type;
+            }
+        }
+        return count;
+    }
+
+    private boolean isConstrainedEdge(int v, int n) {
+        return edgeType(v, n) == 1;
+    }
+
+    /**
+     * @return 1 if the edge is on a seam or a border, 0 if not, -1 if it is shared by more than 2 triangles
+     */
+    private int edgeType(int v, int n) {
+        int count = 0;
+        int va = -1, vn = -1;
+        boolean seam = false;
+        for (int r = refStart[v], end = r + refCount[v]; r < end; r++) {
+            int ref = refs[r];
+            int t = ref / 3;
+            if (deleted[t]) {
+                continue;
+            }
+            int k = cornerOf(t, n);
+            if (k < 0) {
+                continue;
+            }
+            if (++count > 2) {
+                return -1;
+            }
+            if (count == 1) {
+                va = ta[ref];
+                vn = ta[t * 3 + k];
+            } else if (va != ta[ref] || vn != ta[t * 3 + k]) {
+                seam = true;
+            }
+        }
+        return count == 1 || seam ? 1 : 0;
+    }
+
+    private void doCollapse(int from, int to) {
+        for (int i = 0; i < 10; i++) {
+            quadrics[to * 10 + i] += quadrics[from * 10 + i];
+        }
+        int start = refSize;
+        ensureRefs(refCount[from] + refCount[to]);
+        for (int r = refStart[from], end = r + refCount[from]; r < end; r++) {
+            int ref = refs[r];
+            int t = ref / 3;
+            if (deleted[t]) {
+                continue;
+            }
+            if (cornerOf(t, to) >= 0) {
+                deleted[t] = true;
+                liveTriangles--;
+                continue;
+            }
+            tv[ref] = to;
+            ta[ref] = pairTo[findPair(ta[ref])];
+            dirty[t] = true;
+            updateErrors(t);
+            refs[refSize++] = ref;
+        }
+        for (int r = refStart[to], end = r + refCount[to]; r < end; r++) {
+            int ref = refs[r];
+            int t = ref / 3;
+            if (deleted[t]) {
+                continue;
+            }
+            dirty[t] = true;
+            updateErrors(t);
+            refs[refSize++] = ref;
+        }
+        refStart[to] = start;
+        refCount[to] = refSize - start;
+        refCount[from] = 0;
+    }
+
+    /**
+     * Remove the deleted triangles and rebuild the triangles of every vertex
+     * 删除已删除的三角形并重建每个顶点的三角形
+     */
+    private void compact() {
+        int live = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            if (deleted[t]) {
+                continue;
+            }
+            if (live != t) {
+                System.arraycopy(tv, t * 3, tv, live * 3, 3);
+                System.arraycopy(ta, t * 3, ta, live * 3, 3);
+                System.arraycopy(normals, t * 3, normals, live * 3, 3);
+                System.arraycopy(errors, t * 3, errors, live * 3, 3);
+                System.arraycopy(reversed, t * 3, reversed, live * 3, 3);
+                deleted[live] = false;
+            }
+            live++;
+        }
+        triangleCount = live;
+        Arrays.fill(deleted, live, deleted.length, false);
+
+        Arrays.fill(refCount, 0);
+        for (int i = 0; i < triangleCount * 3; i++) {
+            refCount[tv[i]]++;
+        }
+        int offset = 0;
+        for (int v = 0; v < refCount.length; v++) {
+            refStart[v] = offset;
+            offset += refCount[v];
+            refCount[v] = 0;
+        }
+        refSize = 0;
+        ensureRefs(offset);
+        for (int i = 0; i < triangleCount * 3; i++) {
+            int v = tv[i];
+            refs[refStart[v] + refCount[v]++] = i;
+        }
+        refSize = offset;
+    }
+
+    private void ensureRefs(int more) {
+        if (refSize + more > refs.length) {
+            refs = Arrays.copyOf(refs, Math.max(refSize + more, refs.length + (refs.length >> 1)));
+        }
+    }
+
+    /**
+     * Sum the planes of the triangles into the quadrics of their vertices, and add a perpendicular plane at the
+     * seams and borders so they keep their shape
+     * 将三角形的平面加入其顶点的二次误差，并在接缝和边界处添加垂直平面以保持其形状
+     */
+    private void initQuadrics() {
+        for (int t = 0; t < triangleCount; t++) {
+            updateNormal(t);
+            float nx = normals[t * 3], ny = normals[t * 3 + 1], nz = normals[t * 3 + 2];
+            int p0 = tv[t * 3];
+            double d = -(nx * positions[p0 * 3] + ny * positions[p0 * 3 + 1] + nz * positions[p0 * 3 + 2]);
+            for (int k = 0; k < 3; k++) {
+                addPlane(tv[t * 3 + k], nx, ny, nz, d);
+            }
+        }
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                int a = tv[t * 3 + k], b = tv[t * 3 + (k + 1) % 3];
+                if (edgeType(a, b) == 0) {
+                    continue;
+                }
+                float ex = positions[b * 3] - positions[a * 3], ey = positions[b * 3 + 1] - positions[a * 3 + 1],
+                        ez = positions[b * 3 + 2] - positions[a * 3 + 2];
+                float nx = ey * normals[t * 3 + 2] - ez * normals[t * 3 + 1];
+                float ny = ez * normals[t * 3] - ex * normals[t * 3 + 2];
+                float nz = ex * normals[t * 3 + 1] - ey * normals[t * 3];
+                float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                if (length == 0) {
+                    continue;
+                }
+                nx /= length;
+                ny /= length;
+                nz /= length;
+                double d = -(nx * positions[a * 3] + ny * positions[a * 3 + 1] + nz * positions[a * 3 + 2]);
+                addPlane(a, nx, ny, nz, d);
+                addPlane(b, nx, ny, nz, d);
+            }
+        }
+    }
+
+    private void addPlane(int v, double a, double b, double c, double d) {
+        int q = v * 10;
+        quadrics[q] += a * a;
+        quadrics[q + 1] += a * b;
+        quadrics[q + 2] += a * c;
+        quadrics[q + 3] += a * d;
+        quadrics[q + 4] += b * b;
+        quadrics[q + 5] += b * c;
+        quadrics[q + 6] += b * d;
+        quadrics[q + 7] += c * c;
+        quadrics[q + 8] += c * d;
+        quadrics[q + 9] += d * d;
+    }
+
+    /**
+     * @return error of the sum of the quadrics of both vertices at the position of the destination
+     */
+    private double collapseError(int from, int to) {
+        int a = from * 10, b = to * 10;
+        double x = positions[to * 3], y = positions[to * 3 + 1], z = positions[to * 3 + 2];
+        double[] q = quadrics;
+        double error = (q[a] + q[b]) * x * x + 2 * (q[a + 1] + q[b + 1]) * x * y
+                + 2 * (q[a + 2] + q[b + 2]) * x * z + 2 * (q[a + 3] + q[b + 3]) * x
+                + (q[a + 4] + q[b + 4]) * y * y + 2 * (q[a + 5] + q[b + 5]) * y * z
+                + 2 * (q[a + 6] + q[b + 6]) * y + (q[a + 7] + q[b + 7]) * z * z
+                + 2 * (q[a + 8] + q[b + 8]) * z + (q[a + 9] + q[b + 9]);
+        return Math.max(0, error);
+    }
+
+    private void updateErrors(int t) {
+        for (int j = 0; j < 3; j++) {
+            int v0 = tv[t * 3 + j], v1 = tv[t * 3 + (j + 1) % 3];
+            double forward = collapseError(v0, v1);
+            double backward = collapseError(v1, v0);
+            errors[t * 3 + j] = Math.min(forward, backward);
+            reversed[t * 3 + j] = backward < forward;
+        }
+    }
+
+    private void updateNormal(int t) {
+        int p0 = tv[t * 3] * 3, p1 = tv[t * 3 + 1] * 3, p2 = tv[t * 3 + 2] * 3;
+        float ax = positions[p1] - positions[p0], ay = positions[p1 + 1] - positions[p0 + 1],
+                az = positions[p1 + 2] - positions[p0 + 2];
+        float bx = positions[p2] - positions[p0], by = positions[p2 + 1] - positions[p0 + 1],
+                bz = positions[p2 + 2] - positions[p0 + 2];
+        float nx = ay * bz - az * by, ny = az * bx - ax * bz, nz = ax * by - ay * bx;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length > 0) {
+            nx /= length;
+            ny /= length;
+            nz /= length;
+        }
+        normals[t * 3] = nx;
+        normals[t * 3 + 1] = ny;
+        normals[t * 3 + 2] = nz;
+    }
+
+    /**
+     * Build an indexed object with the triangles left. The vertices keep the attributes of the source object.
+     * 用剩余的三角形构建索引对象。顶点保留源对象的属性
+     *
+     * @param source the object simplified, to copy the material from 被简化的对象，从中复制材质
+     * @param id     id of the new object 新对象的id
+     */
+    public Object3DData toObject3D(Object3DData source, String id) {
+        int[] newIndex = new int[positionOf.length];
+        Arrays.fill(newIndex, -1);
+        int vertexCount = 0;
+        int indexCount = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            if (deleted[t]) {
+                continue;
+            }
+            indexCount += 3;
+            for (int k = 0; k < 3; k++) {
+                if (newIndex[ta[t * 3 + k]] < 0) {
+                    newIndex[ta[t * 3 + k]] = vertexCount++;
+                }
+            }
+        }
+        FloatBuffer vertexBuffer = createFloatBuffer(vertexCount * 3);
+        FloatBuffer[] attributeBuffers = new FloatBuffer[attributes.length];
+        for (int i = 0; i < attributes.length; i++) {
+            attributeBuffers[i] = createFloatBuffer(vertexCount * attributeSizes[i]);
+        }
+        for (int v = 0; v < newIndex.length; v++) {
+            int n = newIndex[v];
+            if (n < 0) {
+                continue;
+            }
+            int p = positionOf[v];
+            vertexBuffer.put(n * 3, positions[p * 3]);
+            vertexBuffer.put(n * 3 + 1, positions[p * 3 + 1]);
+            vertexBuffer.put(n * 3 + 2, positions[p * 3 + 2]);
+            for (int i = 0; i < attributes.length; i++) {
+                int size = attributeSizes[i];
+                for (int j = 0; j < size; j++) {
+                    attributeBuffers[i].put(n * size + j, attributes[i].get(sourceOf[v] * size + j));
+                }
+            }
+        }
+
+        Object3DData obj = new Object3DData().setId(id).setDrawMode(GLES20.GL_TRIANGLES);
+        final Buffer drawOrderBuffer;
+        if (vertexCount <= 65536) {
+            ShortBuffer shortBuffer = ByteBuffer.allocateDirect(indexCount * 2).order(ByteOrder.nativeOrder())
+                    .asShortBuffer();
+            for (int t = 0, i = 0; t < triangleCount; t++) {
+                if (!deleted[t]) {
+                    for (int k = 0; k < 3; k++) {
+                        shortBuffer.put(i++, (short) newIndex[ta[t * 3 + k]]);
+                    }
+                }
+            }
+            drawOrderBuffer = shortBuffer;
+            obj.setDrawOrderBufferType(GLES20.GL_UNSIGNED_SHORT);
+        } else {
+            IntBuffer intBuffer = ByteBuffer.allocateDirect(indexCount * 4).order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+            for (int t = 0, i = 0; t < triangleCount; t++) {
+                if (!deleted[t]) {
+                    for (int k = 0; k < 3; k++) {
+                        intBuffer.put(i++, newIndex[ta[t * 3 + k]]);
+                    }
+                }
+            }
+            drawOrderBuffer = intBuffer;
+            obj.setDrawOrderBufferType(GLES20.GL_UNSIGNED_INT);
+        }
+        obj.setVertexArrayBuffer(vertexBuffer);
+        int i = 0;
+        if (source.getVertexNormalsArrayBuffer() != null) obj.setVertexNormalsArrayBuffer(attributeBuffers[i++]);
+        if (source.getVertexColorsArrayBuffer() != null) obj.setVertexColorsArrayBuffer(attributeBuffers[i++]);
+        if (source.getTextureCoordsArrayBuffer() != null) obj.setTextureCoordsArrayBuffer(attributeBuffers[i++]);
+        if (source.getEmissiveTextureCoordsArrayBuffer() != null) {
+            obj.setEmissiveTextureCoordsArrayBuffer(attributeBuffers[i]);
+        }
+        obj.setDrawOrder(drawOrderBuffer);
+        obj.setDrawUsingArrays(false);
+
+        // material 材质
+        obj.setColor(source.getColor());
+        obj.setTextureData(source.getTextureData());
+        obj.setTextureWrap(source.getTextureWrapS(), source.getTextureWrapT());
+        obj.setFilter(source.getTextureMinFilter(), source.getTextureMagFilter());
+        obj.setEmissiveTextureData(source.getEmissiveTextureData());
+        obj.setEmissiveTextureWrap(source.getEmissiveTextureWrapS(), source.getEmissiveTextureWrapT());
+        obj.setEmissiveFilter(source.getEmissiveTextureMinFilter(), source.getEmissiveTextureMagFilter());
+        obj.setIsDoubleSided(source.getIsDoubleSided() ? 1 : 0);
+        return obj;
+    }
+
+    private static FloatBuffer createFloatBuffer(int length) {
+        return ByteBuffer.allocateDirect(length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * Give the same id to the vertices with the same values in all the buffers
+     * 为所有缓冲区中值相同的顶点赋予相同的id
+     *
+     * @param ids out: id of every vertex, consecutive from 0 输出：每个顶点的id，从0开始连续
+     * @return number of different vertices 不同顶点的数量
+     */
+    private static int weld(FloatBuffer[] buffers, int[] sizes, int vertexCount, int[] ids) {
+        int capacity = Integer.highestOneBit(Math.max(vertexCount, 1) * 2 - 1) << 1;
+        int mask = capacity - 1;
+        // first vertex + 1 of every slot 每个槽的第一个顶点+1
+        int[] table = new int[capacity];
+        int count = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            int hash = 0;
+            for (int b = 0; b < buffers.length; b++) {
+                for (int j = 0; j < sizes[b]; j++) {
+                    hash = hash * 31 + bits(buffers[b].get(v * sizes[b] + j));
+                }
+            }
+            hash ^= hash >>> 16;
+            hash *= 0x45d9f3b;
+            hash ^= hash >>> 16;
+            int slot = hash & mask;
+            while (true) {
+                int other = table[slot] - 1;
+                if (other < 0) {
+                    table[slot] = v + 1;
+                    ids[v] = count++;
+                    break;
+                }
+                if (same(buffers, sizes, v, other)) {
+                    ids[v] = ids[other];
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return count;
+    }
+
+    private static boolean same(FloatBuffer[] buffers, int[] sizes, int a, int b) {
+        for (int i = 0; i < buffers.length; i++) {
+            for (int j = 0; j < sizes[i]; j++) {
+                if (bits(buffers[i].get(a * sizes[i] + j)) != bits(buffers[i].get(b * sizes[i] + j))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int bits(float value) {
+        // -0 and 0 are the same vertex -0和0是同一个顶点
+        return value == 0 ? 0 : Float.floatToIntBits(value);
+    }
+}
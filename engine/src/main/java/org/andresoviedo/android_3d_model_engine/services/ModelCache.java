@@ -0,0 +1,814 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.net.Uri;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.animation.Animation;
+import org.andresoviedo.android_3d_model_engine.animation.JointTransform;
+import org.andresoviedo.android_3d_model_engine.animation.KeyFrame;
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.BoundingBox;
+import org.andresoviedo.android_3d_model_engine.model.GeometryStream;
+import org.andresoviedo.android_3d_model_engine.model.MaterialRange;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.collada.entities.Joint;
+import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
+import org.andresoviedo.util.android.ContentUtils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+/**
+ * Binary cache of fully built models, so a model is parsed only the first time it's opened.
+ * <p>
+ * Every entry is a single file named after the content of the source model (length and checksums), so
+ * renamed or copied files still hit the cache and modified files miss it. The file has a header, the
+ * description of every object (ids, draw modes, transformations, joints, animation, etc) and then the buffers
+ * (positions, normals, colors, texture coordinates, indices, joints, weights and textures), each one aligned
+ * to 16 bytes. Reading an entry maps the file into memory and hands slices of the mapping to the objects, so
+ * the buffers are not copied and they can be uploaded to the GPU straight away.
+ * <p>
+ * The buffers are written in the native byte order. Entries written with another format version or byte order
+ * are ignored and written again. Referenced files (materials, external textures) are not part of the key.
+ * 完整构建模型的二进制缓存，模型只在第一次打开时解析。读取时将文件映射到内存，缓冲区不复制
+ *
+ * @author andresoviedo
+ */
+public final class ModelCache {
+
+    // "M3DC"
+    private static final int MAGIC = 0x4D334443;
+    // increase when the format changes, so old entries are ignored
+    // 格式变化时增加，旧条目将被忽略
+    private static final int FORMAT_VERSION = 2;
+    private static final int BYTE_ORDER_MARK = 0x01020304;
+    private static final int HEADER_SIZE = 32;
+    private static final int ALIGNMENT = 16;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int TYPE_OBJECT = 0;
+    private static final int TYPE_ANIMATED = 1;
+
+    private static final int SECTION_BYTE = 0;
+    private static final int SECTION_SHORT = 1;
+    private static final int SECTION_INT = 2;
+    private static final int SECTION_FLOAT = 3;
+    private static final int SECTION_BYTES = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final long maxSize;
+
+    /**
+     * @param directory the cache directory, i.e. a folder in {@code Context#getCacheDir()}
+     * @param maxSize   maximum size of the cache in bytes. The least recently used entries are deleted first
+     */
+    public ModelCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Calculate the key of the model. The whole source is read, which is much faster than parsing it.
+     * 计算模型的键。读取整个源文件，这比解析它快得多
+     *
+     * @param uri the model
+     * @return the key
+     * @throws IOException if the model can't be read
+     */
+    public Key key(Uri uri) throws IOException {
+        CRC32 crc = new CRC32();
+        Adler32 adler = new Adler32();
+        long length = 0;
+        byte[] chunk = new byte[64 * 1024];
+        try (InputStream stream = ContentUtils.getInputStream(uri)) {
+            int read;
+            while ((read = stream.read(chunk)) != -1) {
+                crc.update(chunk, 0, read);
+                adler.update(chunk, 0, read);
+                length += read;
+            }
+        }
+        return new Key(length, crc.getValue() << 32 | adler.getValue());
+    }
+
+    /**
+     * Read the model from the cache
+     * 从缓存读取模型
+     *
+     * @param key the key of the model
+     * @return the objects, or null if the model is not in the cache or the entry can't be read
+     */
+    public List<Object3DData> read(Key key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        ByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            // private mapping: buffers are writable but changes are never written back to the file
+            // 私有映射：缓冲区可写，但修改不会写回文件
+            mapped = channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size()).order(ByteOrder.nativeOrder());
+        } catch (IOException ex) {
+            Log.e("ModelCache", "Problem mapping " + file + ": " + ex.getMessage(), ex);
+            return null;
+        }
+        try {
+            List<Object3DData> objects = new Reader(mapped).read(key);
+            if (objects == null) {
+                Log.i("ModelCache", "Outdated cache entry " + file);
+                return null;
+            }
+            // most recently used
+            // 最近使用
+            file.setLastModified(System.currentTimeMillis());
+            Log.i("ModelCache", "Read " + objects.size() + " objects from " + file + " in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            return objects;
+        } catch (RuntimeException ex) {
+            Log.e("ModelCache", "Corrupted cache entry " + file + ": " + ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Write the model into the cache. Errors are logged and ignored, since the model has already been loaded.
+     * 将模型写入缓存。错误只记录，因为模型已经加载
+     *
+     * @param key     the key of the model
+     * @param objects the fully built objects
+     */
+    public void write(Key key, List<Object3DData> objects) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e("ModelCache", "Couldn't create cache directory " + directory);
+            return;
+        }
+        File file = getFile(key);
+        File temp;
+        try {
+            // unique name, as several loaders may write the same model at the same time
+            // 唯一的名称，因为多个加载器可能同时写入同一模型
+            temp = File.createTempFile(file.getName(), TEMP_SUFFIX, directory);
+        } catch (IOException ex) {
+            Log.e("ModelCache", "Couldn't create temporary file for " + file + ": " + ex.getMessage(), ex);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try (FileOutputStream stream = new FileOutputStream(temp); FileChannel channel = stream.getChannel()) {
+            new Writer().write(key, objects, channel);
+        } catch (IOException | RuntimeException ex) {
+            Log.e("ModelCache", "Problem writing " + file + ": " + ex.getMessage(), ex);
+            temp.delete();
+            return;
+        }
+        // rename, so readers never see a partial entry
+        // 重命名，读取时不会看到不完整的条目
+        if (!temp.renameTo(file)) {
+            Log.e("ModelCache", "Couldn't rename " + temp + " to " + file);
+            temp.delete();
+            return;
+        }
+        Log.i("ModelCache", "Wrote " + file + " (" + file.length() + " bytes) in "
+                + (System.currentTimeMillis() - start) + " ms");
+        trim();
+    }
+
+    private File getFile(Key key) {
+        return new File(directory, Long.toHexString(key.length) + "-" + Long.toHexString(key.hash) + ".m3d");
+    }
+
+    /**
+     * Delete the least recently used entries until the cache fits in the maximum size
+     */
+    private synchronized void trim() {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return !file.getName().endsWith(TEMP_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        final Map<File, Long> lastModified = new HashMap<>();
+        for (File file : files) {
+            lastModified.put(file, file.lastModified());
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(lastModified.get(o1), lastModified.get(o2));
+            }
+        });
+        for (int i = 0; i < files.length - 1 && size > maxSize; i++) {
+            size -= files[i].length();
+            Log.i("ModelCache", "Deleting " + files[i]);
+            files[i].delete();
+        }
+    }
+
+    /**
+     * Identity of the content of a model
+     * 模型内容的标识
+     */
+    public static final class Key {
+        private final long length;
+        private final long hash;
+
+        Key(long length, long hash) {
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Writes the description of the objects into a metadata block, and collects the buffers into sections that
+     * are written afterwards. Buffers shared by several objects are written once.
+     */
+    private static final class Writer {
+
+        private ByteBuffer meta = ByteBuffer.allocate(4096).order(ByteOrder.nativeOrder());
+        private final List<Object> sections = new ArrayList<>();
+        private final Map<Object, Integer> sectionIndices = new IdentityHashMap<>();
+
+        private void write(Key key, List<Object3DData> objects, FileChannel channel) throws IOException {
+            putInt(objects.size());
+            for (Object3DData obj : objects) {
+                putObject(obj);
+            }
+            meta.flip();
+
+            // section table: type, offset and size of every section
+            // 段表：每个段的类型、偏移和大小
+            int tableSize = 4 + sections.size() * 16;
+            long offset = align(HEADER_SIZE + meta.limit() + tableSize);
+            ByteBuffer table = ByteBuffer.allocate(tableSize).order(ByteOrder.nativeOrder());
+            table.putInt(sections.size());
+            for (Object section : sections) {
+                int size = sizeInBytes(section);
+                table.putInt(sectionType(section));
+                table.putInt(size);
+                table.putLong(offset);
+                offset = align(offset + size);
+            }
+            table.flip();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(BYTE_ORDER_MARK).putInt(meta.limit());
+            header.putLong(key.length).putLong(key.hash);
+            header.flip();
+
+            writeFully(channel, header);
+            writeFully(channel, meta);
+            writeFully(channel, table);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.nativeOrder());
+            for (Object section : sections) {
+                pad(channel);
+                writeSection(channel, section, chunk);
+            }
+        }
+
+        private void putObject(Object3DData obj) {
+            boolean animated = obj instanceof AnimatedModel;
+            putInt(animated ? TYPE_ANIMATED : TYPE_OBJECT);
+            putString(obj.getId());
+            putInt(obj.getVersion());
+            putInt(obj.isVisible() ? 1 : 0);
+            putInt(obj.getDrawMode());
+            putInt(obj.isDrawUsingArrays() ? 1 : 0);
+            putInt(obj.isFlipTextCoords() ? 1 : 0);
+            putInt(obj.getDrawOrderBufferType());
+            putFloats(obj.getColor());
+
+            // transformation. The one of a streamed object is applied by the OpenGL thread, so the object may
+            // still have the one of the partial model: write the final one, and let the reader calculate the matrix
+            // 变换。流式对象的变换由OpenGL线程应用，对象可能仍是部分模型的变换：写入最终变换，由读取时计算矩阵
+            GeometryStream stream = obj.getGeometryStream();
+            putFloats(obj.getTranslation());
+            if (stream != null && (stream.getFinalPosition() != null || stream.getFinalScale() != null)) {
+                putFloats(stream.getFinalPosition() != null ? stream.getFinalPosition() : obj.getPosition());
+                putFloats(obj.getRotation());
+                putFloats(stream.getFinalScale() != null ? stream.getFinalScale() : obj.getScale());
+                putFloats(null);
+            } else {
+                putFloats(obj.getPosition());
+                putFloats(obj.getRotation());
+                putFloats(obj.getScale());
+                putFloats(obj.getModelMatrix());
+            }
+
+            // dimensions and bounding box
+            // 尺寸和边界框
+            WavefrontLoader.ModelDimensions dimensions = obj.getDimensions();
+            putFloats(dimensions == null ? null : new float[]{dimensions.leftPt, dimensions.rightPt,
+                    dimensions.topPt, dimensions.bottomPt, dimensions.farPt, dimensions.nearPt});
+            BoundingBox boundingBox = null;
+            if (obj.getVertexBuffer() != null || obj.getVertexArrayBuffer() != null) {
+                boundingBox = obj.getBoundingBox();
+            }
+            putFloats(boundingBox == null ? null : new float[]{boundingBox.getxMin(), boundingBox.getxMax(),
+                    boundingBox.getyMin(), boundingBox.getyMax(), boundingBox.getzMin(), boundingBox.getzMax()});
+
+            // geometry
+            // 几何
+            putSection(obj.getVertexBuffer());
+            putSection(obj.getVertexNormalsBuffer());
+            putSection(obj.getVertexArrayBuffer());
+            putSection(obj.getVertexNormalsArrayBuffer());
+            putSection(obj.getVertexColorsArrayBuffer());
+            putSection(obj.getTextureCoordsArrayBuffer());
+            putSection(obj.getEmissiveTextureCoordsArrayBuffer());
+            putSection(obj.getDrawOrderBuffer());
+            WavefrontLoader.Faces faces = obj.getFaces();
+            putInt(faces != null ? faces.getSize() : -1);
+            putSection(faces != null ? faces.getIndexBuffer() : null);
+            List<int[]> drawModeList = obj.getDrawModeList();
+            putInt(drawModeList != null ? drawModeList.size() : -1);
+            if (drawModeList != null) {
+                for (int[] drawMode : drawModeList) {
+                    putInts(drawMode);
+                }
+            }
+
+            // textures
+            // 纹理
+            putString(obj.getTextureFile());
+            putSection(obj.getTextureData());
+            putInt(obj.getTextureWrapS());
+            putInt(obj.getTextureWrapT());
+            putInt(obj.getTextureMinFilter());
+            putInt(obj.getTextureMagFilter());
+            putInt(obj.getIsDoubleSided() ? 1 : 0);
+            putSection(obj.getEmissiveTextureData());
+            putInt(obj.getEmissiveTextureWrapS());
+            putInt(obj.getEmissiveTextureWrapT());
+            putInt(obj.getEmissiveTextureMinFilter());
+            putInt(obj.getEmissiveTextureMagFilter());
+            List<MaterialRange> ranges = obj.getMaterialRanges();
+            putInt(ranges != null ? ranges.size() : -1);
+            if (ranges != null) {
+                for (MaterialRange range : ranges) {
+                    putString(range.getMaterial());
+                    putString(range.getTextureFile());
+                    putInt(range.getFirst());
+                    putInt(range.getCount());
+                }
+            }
+
+            if (animated) {
+                putAnimation((AnimatedModel) obj);
+            }
+        }
+
+        private void putAnimation(AnimatedModel model) {
+            putInt(model.getJointCount());
+            putInt(model.getBoneCount());
+            putSection(model.getJointIds());
+            putSection(model.getVertexWeights());
+            putInt(model.getRootJoint() != null ? 1 : 0);
+            if (model.getRootJoint() != null) {
+                putJoint(model.getRootJoint());
+            }
+            Animation animation = model.getAnimation();
+            putInt(animation != null ? animation.getKeyFrames().length : -1);
+            if (animation != null) {
+                putFloat(animation.getLength());
+                for (KeyFrame keyFrame : animation.getKeyFrames()) {
+                    putFloat(keyFrame.getTimeStamp());
+                    putInt(keyFrame.getJointKeyFrames().size());
+                    for (Map.Entry<String, JointTransform> entry : keyFrame.getJointKeyFrames().entrySet()) {
+                        putString(entry.getKey());
+                        putFloats(entry.getValue().getLocalTransform());
+                    }
+                }
+            }
+        }
+
+        private void putJoint(Joint joint) {
+            putInt(joint.getIndex());
+            putString(joint.getName());
+            putFloats(joint.getBindLocalTransform());
+            putFloats(joint.getInverseBindTransform());
+            putInt(joint.getChildren().size());
+            for (Joint child : joint.getChildren()) {
+                putJoint(child);
+            }
+        }
+
+        private void ensure(int bytes) {
+            if (meta.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(meta.capacity() * 2, meta.position() + bytes))
+                        .order(ByteOrder.nativeOrder());
+                meta.flip();
+                grown.put(meta);
+                meta = grown;
+            }
+        }
+
+        private void putInt(int value) {
+            ensure(4);
+            meta.putInt(value);
+        }
+
+        private void putFloat(float value) {
+            ensure(4);
+            meta.putFloat(value);
+        }
+
+        private void putFloats(float[] values) {
+            putInt(values != null ? values.length : -1);
+            if (values != null) {
+                ensure(values.length * 4);
+                for (float value : values) {
+                    meta.putFloat(value);
+                }
+            }
+        }
+
+        private void putInts(int[] values) {
+            putInt(values.length);
+            ensure(values.length * 4);
+            for (int value : values) {
+                meta.putInt(value);
+            }
+        }
+
+        private void putString(String value) {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            putInt(bytes.length);
+            ensure(bytes.length);
+            meta.put(bytes);
+        }
+
+        /**
+         * @param section a buffer or a byte array, or null
+         */
+        private void putSection(Object section) {
+            if (section == null) {
+                putInt(-1);
+                return;
+            }
+            Integer index = sectionIndices.get(section);
+            if (index == null) {
+                index = sections.size();
+                sections.add(section);
+                sectionIndices.put(section, index);
+            }
+            putInt(index);
+        }
+
+        private static int sectionType(Object section) {
+            if (section instanceof byte[]) {
+                return SECTION_BYTES;
+            } else if (section instanceof FloatBuffer) {
+                return SECTION_FLOAT;
+            } else if (section instanceof IntBuffer) {
+                return SECTION_INT;
+            } else if (section instanceof ShortBuffer) {
+                return SECTION_SHORT;
+            } else if (section instanceof ByteBuffer) {
+                return SECTION_BYTE;
+            }
+            throw new IllegalArgumentException("Unsupported buffer: " + section.getClass());
+        }
+
+        private static int sizeInBytes(Object section) {
+            switch (sectionType(section)) {
+                case SECTION_BYTES:
+                    return ((byte[]) section).length;
+                case SECTION_BYTE:
+                    return ((Buffer) section).capacity();
+                case SECTION_SHORT:
+                    return ((Buffer) section).capacity() * 2;
+                default:
+                    return ((Buffer) section).capacity() * 4;
+            }
+        }
+
+        /**
+         * Write the whole buffer (from 0 to its capacity) through the chunk, converting it to bytes
+         */
+        private static void writeSection(FileChannel channel, Object section, ByteBuffer chunk) throws IOException {
+            if (section instanceof byte[]) {
+                writeFully(channel, ByteBuffer.wrap((byte[]) section));
+                return;
+            }
+            Buffer buffer = (Buffer) section;
+            int elementSize = sizeInBytes(section) / Math.max(1, buffer.capacity());
+            int chunkElements = chunk.capacity() / Math.max(1, elementSize);
+            for (int start = 0; start < buffer.capacity(); start += chunkElements) {
+                int count = Math.min(chunkElements, buffer.capacity() - start);
+                chunk.clear();
+                if (buffer instanceof FloatBuffer) {
+                    FloatBuffer source = ((FloatBuffer) buffer).duplicate();
+                    source.limit(start + count);
+                    source.position(start);
+                    chunk.asFloatBuffer().put(source);
+                } else if (buffer instanceof IntBuffer) {
+                    IntBuffer source = ((IntBuffer) buffer).duplicate();
+                    source.limit(start + count);
+                    source.position(start);
+                    chunk.asIntBuffer().put(source);
+                } else if (buffer instanceof ShortBuffer) {
+                    ShortBuffer source = ((ShortBuffer) buffer).duplicate();
+                    source.limit(start + count);
+                    source.position(start);
+                    chunk.asShortBuffer().put(source);
+                } else {
+                    ByteBuffer source = ((ByteBuffer) buffer).duplicate();
+                    source.limit(start + count);
+                    source.position(start);
+                    chunk.put(source);
+                }
+                chunk.position(0);
+                chunk.limit(count * elementSize);
+                writeFully(channel, chunk);
+            }
+        }
+
+        private static void pad(FileChannel channel) throws IOException {
+            long position = channel.position();
+            int padding = (int) (align(position) - position);
+            if (padding > 0) {
+                writeFully(channel, ByteBuffer.allocate(padding));
+            }
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Builds the objects from a mapped cache entry
+     */
+    private static final class Reader {
+
+        private final ByteBuffer mapped;
+        private ByteBuffer meta;
+        private Object[] sections;
+
+        private Reader(ByteBuffer mapped) {
+            this.mapped = mapped;
+        }
+
+        /**
+         * @return the objects, or null if the entry was written with another format or for another content
+         */
+        private List<Object3DData> read(Key key) {
+            ByteBuffer header = mapped.duplicate().order(ByteOrder.nativeOrder());
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION || header.getInt() != BYTE_ORDER_MARK) {
+                return null;
+            }
+            int metaSize = header.getInt();
+            if (header.getLong() != key.length || header.getLong() != key.hash) {
+                return null;
+            }
+
+            meta = slice(HEADER_SIZE, metaSize);
+            ByteBuffer table = mapped.duplicate().order(ByteOrder.nativeOrder());
+            table.position(HEADER_SIZE + metaSize);
+            sections = new Object[table.getInt()];
+            for (int i = 0; i < sections.length; i++) {
+                int type = table.getInt();
+                int size = table.getInt();
+                long offset = table.getLong();
+                sections[i] = toSection(type, slice((int) offset, size));
+            }
+
+            int count = meta.getInt();
+            List<Object3DData> objects = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                objects.add(getObject());
+            }
+            return objects;
+        }
+
+        private ByteBuffer slice(int offset, int size) {
+            ByteBuffer duplicate = mapped.duplicate();
+            duplicate.position(offset);
+            duplicate.limit(offset + size);
+            return duplicate.slice().order(ByteOrder.nativeOrder());
+        }
+
+        private static Object toSection(int type, ByteBuffer bytes) {
+            switch (type) {
+                case SECTION_BYTES:
+                    byte[] array = new byte[bytes.remaining()];
+                    bytes.get(array);
+                    return array;
+                case SECTION_FLOAT:
+                    return bytes.asFloatBuffer();
+                case SECTION_INT:
+                    return bytes.asIntBuffer();
+                case SECTION_SHORT:
+                    return bytes.asShortBuffer();
+                default:
+                    return bytes;
+            }
+        }
+
+        private Object3DData getObject() {
+            int type = meta.getInt();
+            Object3DData obj = type == TYPE_ANIMATED ? new AnimatedModel() : new Object3DData();
+            obj.setId(getString());
+            obj.setVersion(meta.getInt());
+            obj.setVisible(meta.getInt() == 1);
+            obj.setDrawMode(meta.getInt());
+            obj.setDrawUsingArrays(meta.getInt() == 1);
+            obj.setFlipTextCoords(meta.getInt() == 1);
+            obj.setDrawOrderBufferType(meta.getInt());
+            obj.setColor(getFloats());
+
+            // the model matrix goes last, since the other setters calculate it again
+            // 模型矩阵最后设置，因为其他setter会重新计算它
+            obj.setTranslation(getFloats());
+            obj.setPosition(getFloats());
+            obj.setRotation(getFloats());
+            obj.setScale(getFloats());
+            obj.setModelMatrix(getFloats());
+
+            float[] dimensions = getFloats();
+            if (dimensions != null) {
+                WavefrontLoader.ModelDimensions modelDimensions = new WavefrontLoader.ModelDimensions();
+                modelDimensions.leftPt = dimensions[0];
+                modelDimensions.rightPt = dimensions[1];
+                modelDimensions.topPt = dimensions[2];
+                modelDimensions.bottomPt = dimensions[3];
+                modelDimensions.farPt = dimensions[4];
+                modelDimensions.nearPt = dimensions[5];
+                obj.setDimensions(modelDimensions);
+            }
+            float[] boundingBox = getFloats();
+            if (boundingBox != null) {
+                obj.setBoundingBox(new BoundingBox(obj.getId() + "_BoundingBox", boundingBox[0], boundingBox[1],
+                        boundingBox[2], boundingBox[3], boundingBox[4], boundingBox[5]));
+            }
+
+            obj.setVertexBuffer((FloatBuffer) getSection());
+            obj.setVertexNormalsBuffer((FloatBuffer) getSection());
+            obj.setVertexArrayBuffer((FloatBuffer) getSection());
+            obj.setVertexNormalsArrayBuffer((FloatBuffer) getSection());
+            obj.setVertexColorsArrayBuffer((FloatBuffer) getSection());
+            obj.setTextureCoordsArrayBuffer((FloatBuffer) getSection());
+            obj.setEmissiveTextureCoordsArrayBuffer((FloatBuffer) getSection());
+            Buffer drawOrder = (Buffer) getSection();
+            int totalFaces = meta.getInt();
+            IntBuffer faceIndices = (IntBuffer) getSection();
+            if (totalFaces >= 0) {
+                WavefrontLoader.Faces faces = new WavefrontLoader.Faces(totalFaces);
+                faces.facesVertIdxs = faceIndices;
+                obj.setFaces(faces);
+            }
+            obj.setDrawOrder(drawOrder);
+            int drawModeCount = meta.getInt();
+            if (drawModeCount >= 0) {
+                List<int[]> drawModeList = new ArrayList<>(drawModeCount);
+                for (int i = 0; i < drawModeCount; i++) {
+                    drawModeList.add(getInts());
+                }
+                obj.setDrawModeList(drawModeList);
+            }
+
+            obj.setTextureFile(getString());
+            obj.setTextureData((byte[]) getSection());
+            obj.setTextureWrap(meta.getInt(), meta.getInt());
+            obj.setFilter(meta.getInt(), meta.getInt());
+            obj.setIsDoubleSided(meta.getInt());
+            obj.setEmissiveTextureData((byte[]) getSection());
+            obj.setEmissiveTextureWrap(meta.getInt(), meta.getInt());
+            obj.setEmissiveFilter(meta.getInt(), meta.getInt());
+            int rangeCount = meta.getInt();
+            if (rangeCount >= 0) {
+                List<MaterialRange> ranges = new ArrayList<>(rangeCount);
+                for (int i = 0; i < rangeCount; i++) {
+                    String material = getString();
+                    String textureFile = getString();
+                    ranges.add(new MaterialRange(material, meta.getInt(), meta.getInt(), textureFile));
+                }
+                obj.setMaterialRanges(ranges);
+            }
+
+            if (type == TYPE_ANIMATED) {
+                getAnimation((AnimatedModel) obj);
+            }
+            return obj;
+        }
+
+        private void getAnimation(AnimatedModel model) {
+            int jointCount = meta.getInt();
+            int boneCount = meta.getInt();
+            model.setJointCount(jointCount);
+            model.setJointIds((FloatBuffer) getSection());
+            model.setVertexWeights((FloatBuffer) getSection());
+            if (meta.getInt() == 1) {
+                // the inverse bind transforms are already calculated
+                // 逆绑定变换已经计算过
+                model.setRootJoint(getJoint(), jointCount, boneCount, false);
+            }
+            int keyFrameCount = meta.getInt();
+            if (keyFrameCount >= 0) {
+                float length = meta.getFloat();
+                KeyFrame[] keyFrames = new KeyFrame[keyFrameCount];
+                for (int i = 0; i < keyFrameCount; i++) {
+                    float timeStamp = meta.getFloat();
+                    int poseSize = meta.getInt();
+                    Map<String, JointTransform> pose = new HashMap<>();
+                    for (int j = 0; j < poseSize; j++) {
+                        String jointName = getString();
+                        pose.put(jointName, new JointTransform(getFloats()));
+                    }
+                    keyFrames[i] = new KeyFrame(timeStamp, pose);
+                }
+                model.doAnimation(new Animation(length, keyFrames));
+            }
+        }
+
+        private Joint getJoint() {
+            int index = meta.getInt();
+            String name = getString();
+            float[] bindLocalTransform = getFloats();
+            float[] inverseBindTransform = getFloats();
+            Joint joint = new Joint(index, name, bindLocalTransform, inverseBindTransform);
+            int children = meta.getInt();
+            for (int i = 0; i < children; i++) {
+                joint.addChild(getJoint());
+            }
+            return joint;
+        }
+
+        private Object getSection() {
+            int index = meta.getInt();
+            return index >= 0 ? sections[index] : null;
+        }
+
+        private float[] getFloats() {
+            int length = meta.getInt();
+            if (length < 0) {
+                return null;
+            }
+            float[] values = new float[length];
+            meta.asFloatBuffer().get(values);
+            meta.position(meta.position() + length * 4);
+            return values;
+        }
+
+        private int[] getInts() {
+            int length = meta.getInt();
+            int[] values = new int[length];
+            meta.asIntBuffer().get(values);
+            meta.position(meta.position() + length * 4);
+            return values;
+        }
+
+        private String getString() {
+            int length = meta.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            meta.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
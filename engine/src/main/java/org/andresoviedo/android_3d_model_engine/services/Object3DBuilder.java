@@ -7,6 +7,7 @@ import android.opengl.Matrix;
 import android.util.Log;
 
 import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.MaterialRange;
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
 import org.andresoviedo.android_3d_model_engine.services.collada.entities.Joint;
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
@@ -14,8 +15,8 @@ import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoad
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader.Faces;
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader.Material;
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader.Materials;
-import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader.Tuple3;
 import org.andresoviedo.util.android.ContentUtils;
+import org.andresoviedo.util.collections.IntTupleIndex;
 import org.andresoviedo.util.math.Math3DUtils;
 
 import java.io.BufferedReader;
@@ -23,12 +24,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.nio.Buffer;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 3D 对象构造器
@@ -419,12 +426,6 @@ public final class Object3DBuilder {
 
 			InputStream is = new URL(modelUri.toString()).openStream();
 			WavefrontLoader wfl = new WavefrontLoader(modelUri.toString());
-			wfl.analyzeModel(is);
-			is.close();
-
-			wfl.allocateBuffers();
-
-			is = new URL(modelUri.toString()).openStream();
 			wfl.loadModel(is);
 			is.close();
 
@@ -459,6 +460,12 @@ public final class Object3DBuilder {
 			return obj;
 		}
 
+		// faces sorted by texture, so the faces of every texture are drawn at once
+		// 按纹理排序的面，使每个纹理的面一次绘制
+		readMaterials(obj);
+		final FaceGroups groups = new FaceGroups(obj, faces.getSize());
+		final int[] faceOrder = groups.faceOrder;
+
 		Log.i("Object3DBuilder", "Allocating vertex array buffer... Vertices ("+faces.getVerticesReferencesCount()+")");
 		final FloatBuffer vertexArrayBuffer = createNativeByteBuffer(faces.getVerticesReferencesCount() * 3 * 4).asFloatBuffer();
 		obj.setVertexArrayBuffer(vertexArrayBuffer);
@@ -468,46 +475,51 @@ public final class Object3DBuilder {
 		final FloatBuffer vertexBuffer = obj.getVerts();
 		final IntBuffer indexBuffer = faces.getIndexBuffer();
 		for (int i = 0; i < faces.getVerticesReferencesCount(); i++) {
-			vertexArrayBuffer.put(i*3,vertexBuffer.get(indexBuffer.get(i) * 3));
-			vertexArrayBuffer.put(i*3+1,vertexBuffer.get(indexBuffer.get(i) * 3 + 1));
-			vertexArrayBuffer.put(i*3+2,vertexBuffer.get(indexBuffer.get(i) * 3 + 2));
+			int vertex = indexBuffer.get(getFaceCorner(faceOrder, i));
+			vertexArrayBuffer.put(i*3,vertexBuffer.get(vertex * 3));
+			vertexArrayBuffer.put(i*3+1,vertexBuffer.get(vertex * 3 + 1));
+			vertexArrayBuffer.put(i*3+2,vertexBuffer.get(vertex * 3 + 2));
 		}
 
-		Log.i("Object3DBuilder", "Allocating vertex normals buffer... Total normals ("+faces.facesNormIdxs.size()+")");
+		Log.i("Object3DBuilder", "Allocating vertex normals buffer... Total normals ("+faces.getVerticesReferencesCount()+")");
 		// Normals buffer size = Number_of_faces X 3 (vertices_per_face) X 3 (coords_per_normal) X 4 (bytes_per_float)
 		final FloatBuffer vertexNormalsArrayBuffer = createNativeByteBuffer(faces.getSize() * 3 * 3 * 4).asFloatBuffer();;
 		obj.setVertexNormalsArrayBuffer(vertexNormalsArrayBuffer);
 
 		// build file normals
 		final FloatBuffer vertexNormalsBuffer = obj.getNormals();
-		if (vertexNormalsBuffer != null && vertexNormalsBuffer.capacity() > 0) {
+		final IntBuffer normalIdxs = faces.facesNormIdxs;
+		if (vertexNormalsBuffer != null && vertexNormalsBuffer.capacity() > 0 && normalIdxs != null) {
 			Log.i("Object3DBuilder", "Populating normals buffer...");
-			for (int n=0; n<faces.facesNormIdxs.size(); n++) {
-				int[] normal = faces.facesNormIdxs.get(n);
-				for (int i = 0; i < normal.length; i++) {
-					vertexNormalsArrayBuffer.put(n*9+i*3,vertexNormalsBuffer.get(normal[i] * 3));
-					vertexNormalsArrayBuffer.put(n*9+i*3+1,vertexNormalsBuffer.get(normal[i] * 3 + 1));
-					vertexNormalsArrayBuffer.put(n*9+i*3+2,vertexNormalsBuffer.get(normal[i] * 3 + 2));
+			for (int i = 0; i < faces.getVerticesReferencesCount(); i++) {
+				int normal = normalIdxs.get(getFaceCorner(faceOrder, i));
+				if (normal < 0 || normal * 3 + 2 >= vertexNormalsBuffer.capacity()) {
+					// missing normal. leave it to (0,0,0)
+					continue;
 				}
+				vertexNormalsArrayBuffer.put(i*3,vertexNormalsBuffer.get(normal * 3));
+				vertexNormalsArrayBuffer.put(i*3+1,vertexNormalsBuffer.get(normal * 3 + 1));
+				vertexNormalsArrayBuffer.put(i*3+2,vertexNormalsBuffer.get(normal * 3 + 2));
 			}
 		} else {
 			// calculate normals for all triangles
-			Log.i("Object3DBuilder", "Model without normals. Calculating [" + faces.getIndexBuffer().capacity() / 3 + "] normals...");
+			Log.i("Object3DBuilder", "Model without normals. Calculating [" + faces.getSize() + "] normals...");
 
 			final float[] v0 = new float[3], v1 = new float[3], v2 = new float[3];
-			for (int i = 0; i < faces.getIndexBuffer().capacity(); i += 3) {
+			for (int i = 0; i < faces.getVerticesReferencesCount(); i += 3) {
 				try {
-					v0[0] = vertexBuffer.get(faces.getIndexBuffer().get(i) * 3);
-					v0[1] = vertexBuffer.get(faces.getIndexBuffer().get(i) * 3 + 1);
-					v0[2] = vertexBuffer.get(faces.getIndexBuffer().get(i) * 3 + 2);
+					final int face = faceOrder[i / 3] * 3;
+					v0[0] = vertexBuffer.get(indexBuffer.get(face) * 3);
+					v0[1] = vertexBuffer.get(indexBuffer.get(face) * 3 + 1);
+					v0[2] = vertexBuffer.get(indexBuffer.get(face) * 3 + 2);
 
-					v1[0] = vertexBuffer.get(faces.getIndexBuffer().get(i + 1) * 3);
-					v1[1] = vertexBuffer.get(faces.getIndexBuffer().get(i + 1) * 3 + 1);
-					v1[2] = vertexBuffer.get(faces.getIndexBuffer().get(i + 1) * 3 + 2);
+					v1[0] = vertexBuffer.get(indexBuffer.get(face + 1) * 3);
+					v1[1] = vertexBuffer.get(indexBuffer.get(face + 1) * 3 + 1);
+					v1[2] = vertexBuffer.get(indexBuffer.get(face + 1) * 3 + 2);
 
-					v2[0] = vertexBuffer.get(faces.getIndexBuffer().get(i + 2) * 3);
-					v2[1] = vertexBuffer.get(faces.getIndexBuffer().get(i + 2) * 3 + 1);
-					v2[2] = vertexBuffer.get(faces.getIndexBuffer().get(i + 2) * 3 + 2);
+					v2[0] = vertexBuffer.get(indexBuffer.get(face + 2) * 3);
+					v2[1] = vertexBuffer.get(indexBuffer.get(face + 2) * 3 + 1);
+					v2[2] = vertexBuffer.get(indexBuffer.get(face + 2) * 3 + 2);
 
 					float[] normal = Math3DUtils.calculateFaceNormal2(v0, v1, v2);
 
@@ -521,13 +533,86 @@ public final class Object3DBuilder {
 					vertexNormalsArrayBuffer.put(i*3+7,normal[1]);
 					vertexNormalsArrayBuffer.put(i*3+8,normal[2]);
 				} catch (BufferOverflowException ex) {
-					throw new RuntimeException("Error calculating normal for face ["+i/3+"]");
+					throw new RuntimeException("Error calculating normal for face ["+faceOrder[i/3]+"]");
 				}
 			}
 		}
 
 
 		FloatBuffer colorArrayBuffer = null;
+
+		if (materials != null && !faceMats.isEmpty()) {
+			Log.i("Object3DBuilder", "Processing face materials...");
+			// the color of a face is the last color found in the file order
+			// 面的颜色是按文件顺序找到的最后一个颜色
+			final float[][] faceColors = new float[faces.getSize()][];
+			boolean anyOk = false;
+			float[] currentColor = DEFAULT_COLOR;
+			for (int i = 0; i < faces.getSize(); i++) {
+				if (groups.faceMaterials[i] != null) {
+					Material mat = materials.getMaterial(groups.faceMaterials[i]);
+					if (mat != null) {
+						currentColor = mat.getKdColor() != null ? mat.getKdColor() : currentColor;
+						anyOk = anyOk || mat.getKdColor() != null;
+					}
+				}
+				faceColors[i] = currentColor;
+			}
+			if (anyOk) {
+				colorArrayBuffer = createNativeByteBuffer(4 * faces.getVerticesReferencesCount() * 4)
+						.asFloatBuffer();
+				for (int i = 0; i < faces.getSize(); i++) {
+					float[] color = faceColors[faceOrder[i]];
+					colorArrayBuffer.put(color);
+					colorArrayBuffer.put(color);
+					colorArrayBuffer.put(color);
+				}
+			} else {
+				Log.i("Object3DBuilder", "Using single color.");
+			}
+		}
+		obj.setVertexColorsArrayBuffer(colorArrayBuffer);
+
+
+		final FloatBuffer textureCoordsBuffer = obj.getTexCoords();
+		final IntBuffer texIdxs = faces.facesTexIdxs;
+		if (textureCoordsBuffer != null && textureCoordsBuffer.capacity() > 0 && texIdxs != null) {
+
+			Log.i("Object3DBuilder", "Populating texture buffer (flipTexCoord:"+obj.isFlipTextCoords()+")...");
+			final boolean flip = obj.isFlipTextCoords();
+
+			Log.i("Object3DBuilder", "Populating texture array buffer...");
+			FloatBuffer textureCoordsArraysBuffer = createNativeByteBuffer(2 * faces.getVerticesReferencesCount() * 4).asFloatBuffer();
+			obj.setTextureCoordsArrayBuffer(textureCoordsArraysBuffer);
+
+			// every face keeps its coordinates, since every texture is drawn with its own range
+			// 每个面保留其坐标，因为每个纹理使用自己的范围绘制
+			for (int i = 0; i < faces.getVerticesReferencesCount(); i++) {
+				int text = texIdxs.get(getFaceCorner(faceOrder, i));
+				if (text >= 0 && text * 2 + 1 < textureCoordsBuffer.limit()) {
+					float v = textureCoordsBuffer.get(text * 2 + 1);
+					textureCoordsArraysBuffer.put(i * 2, textureCoordsBuffer.get(text * 2));
+					textureCoordsArraysBuffer.put(i * 2 + 1, flip ? 1 - v : v);
+				} else {
+					// missing coordinate. leave it to (0,0)
+					Log.v("Object3DBuilder","Wrong texture for face "+faceOrder[i / 3]);
+				}
+			}
+		}
+		groups.apply(obj, 3);
+
+		return obj;
+	}
+
+	/**
+	 * @return the index of the face corner drawn at the position <code>i</code> 在位置i绘制的面角的索引
+	 */
+	private static int getFaceCorner(int[] faceOrder, int i) {
+		return faceOrder[i / 3] * 3 + i % 3;
+	}
+
+	private static void readMaterials(Object3DData obj) {
+		Materials materials = obj.getMaterials();
 		if (materials != null) {
 			Log.i("Object3DBuilder", "Reading materials...");
 			try(InputStream inputStream = ContentUtils.getInputStream(materials.mfnm)) {
@@ -540,38 +625,113 @@ public final class Object3DBuilder {
 			    obj.addError(materials.mfnm+":"+ex.getMessage());
             }
 		}
+	}
 
-		if (materials != null && !faceMats.isEmpty()) {
-			Log.i("Object3DBuilder", "Processing face materials...");
-			colorArrayBuffer = createNativeByteBuffer(4 * faces.getVerticesReferencesCount() * 4)
-					.asFloatBuffer();
-			boolean anyOk = false;
-			float[] currentColor = DEFAULT_COLOR;
-			for (int i = 0; i < faces.getSize(); i++) {
-				if (faceMats.findMaterial(i) != null) {
-					Material mat = materials.getMaterial(faceMats.findMaterial(i));
-					if (mat != null) {
-						currentColor = mat.getKdColor() != null ? mat.getKdColor() : currentColor;
-						anyOk = anyOk || mat.getKdColor() != null;
-					}
+	/**
+	 * Faces of the model grouped by the texture of their material, so every texture is bound once. The faces
+	 * without texture go first, and then the textures in the order they are first used.
+	 * 按材质纹理分组的模型面，使每个纹理只绑定一次
+	 */
+	static final class FaceGroups {
+		// material of every face, looked up once 每个面的材质（只查找一次）
+		final String[] faceMaterials;
+		// group of every face. group 0 is for the faces without texture 每个面的组，组0为无纹理的面
+		final int[] faceGroups;
+		// texture of every group 每个组的纹理
+		final List<String> textures = new ArrayList<>();
+		// faces in drawing order 绘制顺序的面
+		final int[] faceOrder;
+		// first face of every group in the drawing order, and the total at the end 每个组在绘制顺序中的第一个面
+		final int[] groupStarts;
+
+		FaceGroups(Object3DData obj, int faceCount) {
+			final FaceMaterials faceMats = obj.getFaceMats();
+			final Materials materials = obj.getMaterials();
+			faceMaterials = materials != null && faceMats != null && !faceMats.isEmpty() ?
+					faceMats.getMaterialsPerFace(faceCount) : new String[faceCount];
+			faceGroups = new int[faceCount];
+			textures.add(null);
+			final Map<String, Integer> textureGroups = new HashMap<>();
+			for (int i = 0; i < faceCount; i++) {
+				Material mat = faceMaterials[i] != null ? materials.getMaterial(faceMaterials[i]) : null;
+				String texture = mat != null ? mat.getTexture() : null;
+				if (texture == null) {
+					continue;
+				}
+				Integer group = textureGroups.get(texture);
+				if (group == null) {
+					group = textures.size();
+					textures.add(texture);
+					textureGroups.put(texture, group);
 				}
-				colorArrayBuffer.put(currentColor);
-				colorArrayBuffer.put(currentColor);
-				colorArrayBuffer.put(currentColor);
+				faceGroups[i] = group;
 			}
-			if (!anyOk) {
-				Log.i("Object3DBuilder", "Using single color.");
-				colorArrayBuffer = null;
+
+			// stable counting sort, so the faces keep their order inside the group 稳定计数排序
+			groupStarts = new int[textures.size() + 1];
+			for (int i = 0; i < faceCount; i++) {
+				groupStarts[faceGroups[i] + 1]++;
+			}
+			for (int g = 1; g < groupStarts.length; g++) {
+				groupStarts[g] += groupStarts[g - 1];
+			}
+			faceOrder = new int[faceCount];
+			final int[] next = Arrays.copyOf(groupStarts, textures.size());
+			for (int i = 0; i < faceCount; i++) {
+				faceOrder[next[faceGroups[i]]++] = i;
 			}
 		}
-		obj.setVertexColorsArrayBuffer(colorArrayBuffer);
 
+		int getGroupCount() {
+			return textures.size();
+		}
 
+		/**
+		 * Set the texture of the model and, if there are several, its ranges
+		 * 设置模型的纹理，如果有多个纹理则设置其范围
+		 *
+		 * @param obj         the model
+		 * @param vertsPerFace number of vertices (or indices) of every face in the draw buffers
+		 */
+		void apply(Object3DData obj, int vertsPerFace) {
+			if (textures.size() == 1) {
+				// no face with texture. apply the first one found, if any, to the whole model
+				// 没有带纹理的面，将找到的第一个纹理（如有）应用于整个模型
+				if (obj.getFaceMats() == null || obj.getFaceMats().isEmpty()) {
+					findTexture(obj);
+				}
+				return;
+			}
+			final List<MaterialRange> ranges = new ArrayList<>();
+			for (int g = 0; g < textures.size(); g++) {
+				int count = groupStarts[g + 1] - groupStarts[g];
+				if (count > 0) {
+					String material = faceMaterials[faceOrder[groupStarts[g]]];
+					ranges.add(new MaterialRange(material, groupStarts[g] * vertsPerFace, count * vertsPerFace,
+							textures.get(g)));
+				}
+			}
+			// the textured shader is selected by the texture of the model 带纹理的着色器由模型纹理选择
+			obj.setTextureFile(textures.get(1));
+			if (ranges.size() > 1) {
+				Log.i("Object3DBuilder", "Material ranges: " + ranges);
+				obj.setMaterialRanges(ranges);
+			} else {
+				Log.i("Object3DBuilder", "Texture " + textures.get(1));
+			}
+		}
+	}
+
+	/**
+	 * Texture of a model whose faces don't reference any material (no <code>usemtl</code>). The faces with
+	 * material are grouped by {@link FaceGroups}, so this is only a fallback: the first texture of the MTL file,
+	 * in file order, is applied to the whole model.
+	 * 面未引用任何材质的模型的纹理（后备方案）：按文件顺序使用MTL文件的第一个纹理
+	 */
+	private static String findTexture(Object3DData obj) {
+		Materials materials = obj.getMaterials();
 		String texture = null;
-		byte[] textureData = null;
 		if (materials != null && !materials.materials.isEmpty()) {
-
-			// TODO: process all textures
 			for (Material mat : materials.materials.values()) {
 				if (mat.getTexture() != null) {
 					texture = mat.getTexture();
@@ -587,84 +747,206 @@ public final class Object3DBuilder {
 		} else{
 			Log.i("Object3DBuilder", "No materials -> No texture");
 		}
+		return texture;
+	}
 
+	/**
+	 * Alternative to {@link #generateArrays(Object3DData)} that doesn't expand every face corner. Vertices
+	 * sharing the same position, texture coordinate, normal and material are merged, so the model is drawn
+	 * using an index buffer (16 bit indices if there are no more than 65536 vertices). The indices are sorted
+	 * by texture, like the vertices of {@link #generateArrays(Object3DData)}.
+	 * <p>
+	 * If the model has no normals, smooth normals are calculated for the merged vertices.
+	 * 生成带索引的去重顶点数组（而不是为每个面展开顶点）
+	 *
+	 * @param obj the model loaded by the {@link WavefrontLoader}
+	 * @return the same model
+	 */
+	public static Object3DData generateIndexedArrays(Object3DData obj) {
 
-		//if (textureData != null) {
-			ArrayList<Tuple3> texCoords = obj.getTexCoords();
-			if (texCoords != null && texCoords.size() > 0) {
+		Log.i("Object3DBuilder","Generating indexed arrays for "+obj.getId());
 
-				Log.i("Object3DBuilder", "Allocating/populating texture buffer (flipTexCoord:"+obj.isFlipTextCoords()+")...");
-				FloatBuffer textureCoordsBuffer = createNativeByteBuffer(texCoords.size() * 2 * 4).asFloatBuffer();
-				for (Tuple3 texCor : texCoords) {
-					textureCoordsBuffer.put(texCor.getX());
-					textureCoordsBuffer.put(obj.isFlipTextCoords() ? 1 - texCor.getY() : texCor.getY());
-				}
+		Faces faces = obj.getFaces(); // model faces
+		FaceMaterials faceMats = obj.getFaceMats();
+		Materials materials = obj.getMaterials();
 
-				Log.i("Object3DBuilder", "Populating texture array buffer...");
-				FloatBuffer textureCoordsArraysBuffer = createNativeByteBuffer(2 * faces.getVerticesReferencesCount() * 4).asFloatBuffer();
-				obj.setTextureCoordsArrayBuffer(textureCoordsArraysBuffer);
+		if (faces == null)  {
+			Log.i("Object3DBuilder", "No faces. Not generating arrays");
+			return obj;
+		}
 
-				try {
+		// faces sorted by texture, so the faces of every texture are drawn at once
+		// 按纹理排序的面，使每个纹理的面一次绘制
+		readMaterials(obj);
+		final FaceGroups groups = new FaceGroups(obj, faces.getSize());
+		final int groupCount = groups.getGroupCount();
 
-					boolean anyTextureOk = false;
-					String currentTexture = null;
-
-					Log.i("Object3DBuilder", "Populating texture array buffer...");
-					int counter = 0;
-					for (int i = 0; i < faces.facesTexIdxs.size(); i++) {
-
-						// get current texture
-						if (!faceMats.isEmpty() && faceMats.findMaterial(i) != null) {
-							Material mat = materials.getMaterial(faceMats.findMaterial(i));
-							if (mat != null && mat.getTexture() != null) {
-								currentTexture = mat.getTexture();
-							}
-						}
-
-						// check if texture is ok (Because we only support 1 texture currently)
-						boolean textureOk = false;
-						if (currentTexture != null && currentTexture.equals(texture)) {
-							textureOk = true;
-						}
-
-						// populate texture coords if ok (in case we have more than 1 texture and 1 is missing. see face.obj example)
-						int[] text = faces.facesTexIdxs.get(i);
-						for (int j = 0; j < text.length; j++) {
-							if (textureData == null || textureOk) {
-								if (text[j] * 2 >= 0 && text[j] * 2 < textureCoordsBuffer.limit()) {
-									anyTextureOk = true;
-									textureCoordsArraysBuffer.put(counter++, textureCoordsBuffer.get(text[j] * 2));
-									textureCoordsArraysBuffer.put(counter++, textureCoordsBuffer.get(text[j] * 2 + 1));
-								} else{
-									Log.v("Object3DBuilder","Wrong texture for face "+i);
-									textureCoordsArraysBuffer.put(counter++, 0f);
-									textureCoordsArraysBuffer.put(counter++, 0f);
-								}
-							} else {
-								textureCoordsArraysBuffer.put(counter++, 0f);
-								textureCoordsArraysBuffer.put(counter++, 0f);
-							}
-						}
+		final FloatBuffer vertexBuffer = obj.getVerts();
+		final FloatBuffer normalsBuffer = obj.getNormals();
+		final FloatBuffer texCoordsBuffer = obj.getTexCoords();
+		final IntBuffer indexBuffer = faces.getIndexBuffer();
+		final IntBuffer normalIdxs = normalsBuffer != null && normalsBuffer.capacity() > 0 ? faces.facesNormIdxs : null;
+		final IntBuffer texIdxs = texCoordsBuffer != null && texCoordsBuffer.capacity() > 0 ? faces.facesTexIdxs : null;
+		final int normalsCount = normalIdxs != null ? normalsBuffer.capacity() / 3 : 0;
+		final int texCoordsCount = texIdxs != null ? texCoordsBuffer.capacity() / 2 : 0;
+
+		// materials colors. slot 0 is the default color
+		final List<float[]> colors = new ArrayList<>();
+		colors.add(DEFAULT_COLOR);
+		final Map<String, Integer> colorSlots = new HashMap<>();
+		final boolean useMaterials = materials != null && !faceMats.isEmpty();
+
+		Log.i("Object3DBuilder", "Merging vertices... Vertices ("+faces.getVerticesReferencesCount()+")");
+		// the color of a face is the last color found in the file order
+		// 面的颜色是按文件顺序找到的最后一个颜色
+		final int[] faceColorSlots = new int[faces.getSize()];
+		int colorSlot = 0;
+		for (int i = 0; i < faces.getSize(); i++) {
+			final String matName = useMaterials ? groups.faceMaterials[i] : null;
+			if (matName != null) {
+				Material mat = materials.getMaterial(matName);
+				if (mat != null && mat.getKdColor() != null) {
+					Integer slot = colorSlots.get(matName);
+					if (slot == null) {
+						slot = colors.size();
+						colors.add(mat.getKdColor());
+						colorSlots.put(matName, slot);
 					}
+					colorSlot = slot;
+				}
+			}
+			faceColorSlots[i] = colorSlot;
+		}
+		final IntTupleIndex index = new IntTupleIndex(faces.getVerticesReferencesCount() / 4);
+		final int[] drawOrder = new int[faces.getVerticesReferencesCount()];
+		for (int i = 0; i < faces.getSize(); i++) {
+			final int face = groups.faceOrder[i];
+			// the group is part of the key, so the vertices are not shared between ranges
+			// 组是键的一部分，使顶点不在范围之间共享
+			final int material = faceColorSlots[face] * groupCount + groups.faceGroups[face];
+			for (int j = 0; j < 3; j++) {
+				final int corner = face * 3 + j;
+				int normal = normalIdxs != null ? normalIdxs.get(corner) : -1;
+				if (normal >= normalsCount) {
+					normal = -1;
+				}
+				int text = texIdxs != null ? texIdxs.get(corner) : -1;
+				if (text >= texCoordsCount) {
+					text = -1;
+				}
+				drawOrder[i * 3 + j] = index.add(indexBuffer.get(corner), text, normal, material);
+			}
+		}
+		final int vertexCount = index.size();
+		Log.i("Object3DBuilder", "Unique vertices: "+vertexCount);
+
+		// positions
+		final FloatBuffer vertexArrayBuffer = createNativeByteBuffer(vertexCount * 3 * 4).asFloatBuffer();
+		for (int i = 0; i < vertexCount; i++) {
+			int v = index.get(i, 0) * 3;
+			vertexArrayBuffer.put(i * 3, vertexBuffer.get(v));
+			vertexArrayBuffer.put(i * 3 + 1, vertexBuffer.get(v + 1));
+			vertexArrayBuffer.put(i * 3 + 2, vertexBuffer.get(v + 2));
+		}
 
-					if (!anyTextureOk) {
-						Log.i("Object3DBuilder", "Texture is wrong. Applying global texture");
-						counter = 0;
-						for (int j=0; j<faces.facesTexIdxs.size(); j++) {
-							int[] text = faces.facesTexIdxs.get(j);
-							for (int i = 0; i < text.length; i++) {
-								textureCoordsArraysBuffer.put(counter++, textureCoordsBuffer.get(text[i] * 2));
-								textureCoordsArraysBuffer.put(counter++, textureCoordsBuffer.get(text[i] * 2 + 1));
-							}
-						}
-					}
-				} catch (Exception ex) {
-					Log.e("Object3DBuilder", "Failure to load texture coordinates", ex);
+		// normals
+		final FloatBuffer vertexNormalsArrayBuffer = createNativeByteBuffer(vertexCount * 3 * 4).asFloatBuffer();
+		if (normalIdxs != null) {
+			Log.i("Object3DBuilder", "Populating normals buffer...");
+			for (int i = 0; i < vertexCount; i++) {
+				int n = index.get(i, 2);
+				if (n < 0) {
+					continue;
 				}
+				vertexNormalsArrayBuffer.put(i * 3, normalsBuffer.get(n * 3));
+				vertexNormalsArrayBuffer.put(i * 3 + 1, normalsBuffer.get(n * 3 + 1));
+				vertexNormalsArrayBuffer.put(i * 3 + 2, normalsBuffer.get(n * 3 + 2));
 			}
-		//}
-		obj.setTextureData(textureData);
+		} else {
+			Log.i("Object3DBuilder", "Model without normals. Calculating smooth normals...");
+			final float[] v0 = new float[3], v1 = new float[3], v2 = new float[3];
+			final float[] normals = new float[vertexCount * 3];
+			for (int i = 0; i < drawOrder.length; i += 3) {
+				vertexArrayBuffer.position(drawOrder[i] * 3);
+				vertexArrayBuffer.get(v0);
+				vertexArrayBuffer.position(drawOrder[i + 1] * 3);
+				vertexArrayBuffer.get(v1);
+				vertexArrayBuffer.position(drawOrder[i + 2] * 3);
+				vertexArrayBuffer.get(v2);
+				float[] normal = Math3DUtils.calculateFaceNormal2(v0, v1, v2);
+				for (int j = i; j < i + 3; j++) {
+					normals[drawOrder[j] * 3] += normal[0];
+					normals[drawOrder[j] * 3 + 1] += normal[1];
+					normals[drawOrder[j] * 3 + 2] += normal[2];
+				}
+			}
+			vertexArrayBuffer.position(0);
+			for (int i = 0; i < normals.length; i += 3) {
+				float length = (float) Math.sqrt(normals[i] * normals[i] + normals[i + 1] * normals[i + 1]
+						+ normals[i + 2] * normals[i + 2]);
+				if (length > 0) {
+					normals[i] /= length;
+					normals[i + 1] /= length;
+					normals[i + 2] /= length;
+				}
+			}
+			vertexNormalsArrayBuffer.put(normals).position(0);
+		}
 
+		// colors
+		FloatBuffer colorArrayBuffer = null;
+		if (colors.size() > 1) {
+			Log.i("Object3DBuilder", "Populating colors buffer...");
+			colorArrayBuffer = createNativeByteBuffer(vertexCount * 4 * 4).asFloatBuffer();
+			for (int i = 0; i < vertexCount; i++) {
+				colorArrayBuffer.put(colors.get(index.get(i, 3) / groupCount));
+			}
+			colorArrayBuffer.position(0);
+		} else {
+			Log.i("Object3DBuilder", "Using single color.");
+		}
+
+		// texture coordinates
+		FloatBuffer textureCoordsArrayBuffer = null;
+		if (texIdxs != null) {
+			Log.i("Object3DBuilder", "Populating texture buffer (flipTexCoord:"+obj.isFlipTextCoords()+")...");
+			final boolean flip = obj.isFlipTextCoords();
+			textureCoordsArrayBuffer = createNativeByteBuffer(vertexCount * 2 * 4).asFloatBuffer();
+			for (int i = 0; i < vertexCount; i++) {
+				int t = index.get(i, 1);
+				if (t < 0) {
+					continue;
+				}
+				float v = texCoordsBuffer.get(t * 2 + 1);
+				textureCoordsArrayBuffer.put(i * 2, texCoordsBuffer.get(t * 2));
+				textureCoordsArrayBuffer.put(i * 2 + 1, flip ? 1 - v : v);
+			}
+		}
+
+		// indices
+		final Buffer drawOrderBuffer;
+		if (vertexCount <= 65536) {
+			ShortBuffer shortBuffer = createNativeByteBuffer(drawOrder.length * 2).asShortBuffer();
+			for (int i = 0; i < drawOrder.length; i++) {
+				shortBuffer.put(i, (short) drawOrder[i]);
+			}
+			drawOrderBuffer = shortBuffer;
+			obj.setDrawOrderBufferType(GLES20.GL_UNSIGNED_SHORT);
+		} else {
+			drawOrderBuffer = createNativeByteBuffer(drawOrder.length * 4).asIntBuffer().put(drawOrder);
+			drawOrderBuffer.position(0);
+			obj.setDrawOrderBufferType(GLES20.GL_UNSIGNED_INT);
+		}
+		Log.i("Object3DBuilder", "Indexed arrays: "+vertexCount+" vertices, "+drawOrder.length+" indices ("
+				+(obj.getDrawOrderBufferType() == GLES20.GL_UNSIGNED_SHORT? "16":"32")+" bit)");
+
+		obj.setVertexArrayBuffer(vertexArrayBuffer);
+		obj.setVertexNormalsArrayBuffer(vertexNormalsArrayBuffer);
+		obj.setVertexColorsArrayBuffer(colorArrayBuffer);
+		obj.setTextureCoordsArrayBuffer(textureCoordsArrayBuffer);
+		obj.setDrawOrder(drawOrderBuffer);
+		obj.setDrawUsingArrays(false);
+		groups.apply(obj, 3);
 		return obj;
 	}
 
@@ -719,6 +1001,8 @@ public final class Object3DBuilder {
 					object3DData.setRootJoint(((AnimatedModel) objData).getRootJoint(), ((AnimatedModel) objData)
 							.getJointCount(), ((AnimatedModel) objData).getBoneCount(), false);
 					object3DData.doAnimation(((AnimatedModel) objData).getAnimation());
+					// the wireframe is drawn with the pose of the model
+					object3DData.setAnimationState(((AnimatedModel) objData).getAnimationState());
 					return object3DData;
 				}
 				else {
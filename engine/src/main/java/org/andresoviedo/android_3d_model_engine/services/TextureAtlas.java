@@ -0,0 +1,393 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.MaterialRange;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.ktx.KtxTexture;
+import org.andresoviedo.util.android.GLUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs the small textures of the {@link MaterialRange}s of an object into a single page, and remaps the texture
+ * coordinates of the ranges to it, so they are merged into one range (one draw call and no texture switch).
+ * <p>
+ * Only the textures that are not repeated (all the coordinates of the range in [0,1]) and not bigger than half
+ * the page are packed. The ranges without texture are packed as a small white patch. The rest of the ranges are
+ * kept as they are, after the merged range.
+ * <p>
+ * 将对象材质范围的小纹理打包到一个页面中，并将范围的纹理坐标重新映射到该页面，使其合并为一个范围（一次绘制调用且无纹理切换）。
+ * 只打包不重复（范围的所有坐标在[0,1]内）且不大于半个页面的纹理。没有纹理的范围作为白色小块打包。
+ *
+ * @author andresoviedo
+ */
+public final class TextureAtlas {
+
+    /**
+     * Default width of the page, in pixels
+     * 页面的默认宽度（像素）
+     */
+    public static final int DEFAULT_PAGE_SIZE = 2048;
+
+    // pixels around every texture, copied from its edges, so the filtering doesn't mix the textures
+    // 每个纹理周围从其边缘复制的像素，使过滤不会混合纹理
+    static final int PADDING = 2;
+    // size of the patch of the ranges without texture 无纹理范围的色块大小
+    private static final int BLANK_SIZE = 4;
+    // tolerance of the coordinates outside [0,1] 坐标超出[0,1]的容差
+    private static final float EPSILON = 1e-3f;
+
+    private TextureAtlas() {
+    }
+
+    /**
+     * Pack the textures of the material ranges of the object. The draw buffers are modified in place (the index
+     * buffer when the object is indexed, or every per vertex array otherwise), so it must be called before they
+     * are uploaded to the GPU, i.e. from the loader thread. The texture data of the ranges must be loaded.
+     * 打包对象材质范围的纹理。绘制缓冲区被就地修改，因此必须在上传到GPU之前调用（例如在加载线程中）
+     *
+     * @param obj      the object 对象
+     * @param pageSize width of the page, and maximum height 页面宽度及最大高度
+     * @return whether some ranges were merged
+     */
+    public static boolean build(Object3DData obj, int pageSize) {
+        List<MaterialRange> ranges = obj.getMaterialRanges();
+        FloatBuffer texCoords = obj.getTextureCoordsArrayBuffer();
+        if (ranges == null || ranges.size() < 2 || texCoords == null
+                || (obj.isDrawUsingArrays() && obj instanceof AnimatedModel)) {
+            return false;
+        }
+        Buffer indices = obj.isDrawUsingArrays() ? null : obj.getDrawOrderBuffer();
+
+        // the textures that fit 适合的纹理
+        List<Tile> tiles = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            MaterialRange range = ranges.get(i);
+            Tile tile = createTile(i, range, texCoords, indices, pageSize);
+            if (tile != null) {
+                tiles.add(tile);
+            }
+        }
+        if (tiles.size() < 2) {
+            return false;
+        }
+
+        List<Tile> packed = new ArrayList<>();
+        int pageHeight = pack(tiles, pageSize, packed);
+        if (packed.size() < 2) {
+            for (Tile tile : packed) {
+                tile.recycle();
+            }
+            return false;
+        }
+
+        byte[] page = compose(packed, pageSize, pageHeight);
+        if (page == null) {
+            return false;
+        }
+
+        remap(packed, ranges, texCoords, indices, pageSize, pageHeight);
+
+        // move the packed ranges together, and merge them 将打包的范围移到一起并合并
+        List<MaterialRange> order = getOrder(ranges, packed);
+        if (indices != null) {
+            reorderIndices(indices, order);
+        } else {
+            int vertexCount = obj.getVertexArrayBuffer().capacity() / 3;
+            FloatBuffer[] arrays = {obj.getVertexArrayBuffer(), obj.getVertexNormalsArrayBuffer(),
+                    obj.getVertexColorsArrayBuffer(), texCoords, obj.getEmissiveTextureCoordsArrayBuffer()};
+            for (FloatBuffer array : arrays) {
+                if (array != null && array.capacity() % vertexCount == 0) {
+                    reorderFloats(array, array.capacity() / vertexCount, order);
+                }
+            }
+        }
+
+        MaterialRange merged = new MaterialRange(order.get(0).getMaterial(), 0, 0, null);
+        merged.setTextureData(page);
+        List<MaterialRange> result = new ArrayList<>();
+        result.add(merged);
+        int first = 0;
+        for (int i = 0; i < order.size(); i++) {
+            MaterialRange range = order.get(i);
+            if (i < packed.size()) {
+                merged.setRange(0, merged.getCount() + range.getCount());
+            } else {
+                result.add(range);
+            }
+            range.setRange(first, range.getCount());
+            first += range.getCount();
+        }
+        Log.i("TextureAtlas", "Packed " + packed.size() + " of " + ranges.size() + " textures of '" + obj.getId()
+                + "' in " + pageSize + "x" + pageHeight);
+        if (result.size() == 1) {
+            obj.setTextureData(page);
+            obj.setMaterialRanges(null);
+        } else {
+            obj.setMaterialRanges(result);
+        }
+        return true;
+    }
+
+    /**
+     * Place the tiles in shelves, highest first. The tiles that don't fit in the page are recycled
+     * 将纹理块按货架放置，最高的优先。放不下的纹理块被回收
+     *
+     * @param tiles    the textures to pack, sorted by this method 要打包的纹理
+     * @param pageSize width of the page, and maximum height 页面宽度及最大高度
+     * @param packed   the tiles placed in the page are added here 放入页面的纹理块
+     * @return height of the page, the next power of two of the used height 页面高度
+     */
+    static int pack(List<Tile> tiles, int pageSize, List<Tile> packed) {
+        Collections.sort(tiles, new Comparator<Tile>() {
+            @Override
+            public int compare(Tile a, Tile b) {
+                return b.height - a.height;
+            }
+        });
+        int x = 0, y = 0, shelfHeight = 0;
+        for (Tile tile : tiles) {
+            int width = tile.width + PADDING * 2;
+            int height = tile.height + PADDING * 2;
+            if (x + width > pageSize) {
+                x = 0;
+                y += shelfHeight;
+                shelfHeight = 0;
+            }
+            if (y + height > pageSize) {
+                // the page is full. the rest are drawn with their own textures 页面已满，其余使用自己的纹理绘制
+                tile.recycle();
+                continue;
+            }
+            tile.x = x + PADDING;
+            tile.y = y + PADDING;
+            x += width;
+            shelfHeight = Math.max(shelfHeight, height);
+            packed.add(tile);
+        }
+        int pageHeight = 1;
+        while (pageHeight < y + shelfHeight) {
+            pageHeight *= 2;
+        }
+        return pageHeight;
+    }
+
+    /**
+     * Remap the texture coordinates of the packed ranges to their place in the page. The vertices shared by
+     * several indices are remapped once. The ranges without texture point to the center of their patch.
+     * 将打包范围的纹理坐标重新映射到页面中的位置。共享顶点只映射一次
+     */
+    static void remap(List<Tile> packed, List<MaterialRange> ranges, FloatBuffer texCoords, Buffer indices,
+                      int pageSize, int pageHeight) {
+        BitSet remapped = indices != null ? new BitSet() : null;
+        for (Tile tile : packed) {
+            MaterialRange range = ranges.get(tile.range);
+            for (int i = range.getFirst(); i < range.getFirst() + range.getCount(); i++) {
+                int vertex = indices != null ? getIndex(indices, i) : i;
+                if (remapped != null) {
+                    if (remapped.get(vertex)) {
+                        continue;
+                    }
+                    remapped.set(vertex);
+                }
+                float u = tile.blank ? 0.5f : texCoords.get(vertex * 2);
+                float v = tile.blank ? 0.5f : texCoords.get(vertex * 2 + 1);
+                texCoords.put(vertex * 2, (tile.x + u * tile.width) / pageSize);
+                texCoords.put(vertex * 2 + 1, (tile.y + v * tile.height) / pageHeight);
+            }
+        }
+    }
+
+    /**
+     * @return the packed ranges, and then the rest, both in their original order
+     * 先是打包的范围，然后是其余范围，均保持原顺序
+     */
+    static List<MaterialRange> getOrder(List<MaterialRange> ranges, List<Tile> packed) {
+        boolean[] isPacked = new boolean[ranges.size()];
+        for (Tile tile : packed) {
+            isPacked[tile.range] = true;
+        }
+        List<MaterialRange> order = new ArrayList<>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            if (isPacked[i]) {
+                order.add(ranges.get(i));
+            }
+        }
+        for (int i = 0; i < ranges.size(); i++) {
+            if (!isPacked[i]) {
+                order.add(ranges.get(i));
+            }
+        }
+        return order;
+    }
+
+    /**
+     * @return the texture of the range, or null if it doesn't fit in the page
+     */
+    private static Tile createTile(int index, MaterialRange range, FloatBuffer texCoords, Buffer indices,
+                                   int pageSize) {
+        if (range.getTextureData() == null) {
+            if (range.getTextureFile() != null) {
+                // the texture couldn't be loaded 纹理无法加载
+                return null;
+            }
+            return new Tile(index, true, BLANK_SIZE, BLANK_SIZE);
+        }
+        if (KtxTexture.isKtx(range.getTextureData())) {
+            // compressed textures are uploaded as they are 压缩纹理按原样上传
+            return null;
+        }
+        // repeated textures can't be packed 重复的纹理无法打包
+        for (int i = range.getFirst(); i < range.getFirst() + range.getCount(); i++) {
+            int vertex = indices != null ? getIndex(indices, i) : i;
+            if (vertex * 2 + 1 >= texCoords.capacity()) {
+                return null;
+            }
+            float u = texCoords.get(vertex * 2);
+            float v = texCoords.get(vertex * 2 + 1);
+            if (u < -EPSILON || u > 1 + EPSILON || v < -EPSILON || v > 1 + EPSILON) {
+                return null;
+            }
+        }
+        Bitmap bitmap = GLUtil.decodeBitmap(range.getTextureData());
+        if (bitmap == null) {
+            return null;
+        }
+        if (bitmap.getWidth() > pageSize / 2 || bitmap.getHeight() > pageSize / 2) {
+            bitmap.recycle();
+            return null;
+        }
+        Tile tile = new Tile(index, false, bitmap.getWidth(), bitmap.getHeight());
+        tile.bitmap = bitmap;
+        return tile;
+    }
+
+    /**
+     * Draw the textures in the page, with their edges extended over the padding
+     * 在页面中绘制纹理，其边缘延伸到填充区域
+     *
+     * @return the page as PNG, or null if it couldn't be encoded
+     */
+    private static byte[] compose(List<Tile> tiles, int width, int height) {
+        Bitmap page = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        try {
+            for (Tile tile : tiles) {
+                int paddedWidth = tile.width + PADDING * 2;
+                int paddedHeight = tile.height + PADDING * 2;
+                int[] pixels = new int[paddedWidth * paddedHeight];
+                if (tile.blank) {
+                    Arrays.fill(pixels, 0xFFFFFFFF);
+                } else {
+                    int[] source = new int[tile.width * tile.height];
+                    tile.bitmap.getPixels(source, 0, tile.width, 0, 0, tile.width, tile.height);
+                    tile.recycle();
+                    for (int py = 0; py < paddedHeight; py++) {
+                        int sy = Math.min(Math.max(py - PADDING, 0), tile.height - 1);
+                        for (int px = 0; px < paddedWidth; px++) {
+                            int sx = Math.min(Math.max(px - PADDING, 0), tile.width - 1);
+                            pixels[py * paddedWidth + px] = source[sy * tile.width + sx];
+                        }
+                    }
+                }
+                page.setPixels(pixels, 0, paddedWidth, tile.x - PADDING, tile.y - PADDING, paddedWidth,
+                        paddedHeight);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!page.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                Log.e("TextureAtlas", "Couldn't encode the page");
+                return null;
+            }
+            return out.toByteArray();
+        } finally {
+            page.recycle();
+        }
+    }
+
+    private static int getIndex(Buffer indices, int i) {
+        if (indices instanceof IntBuffer) {
+            return ((IntBuffer) indices).get(i);
+        }
+        return ((ShortBuffer) indices).get(i) & 0xFFFF;
+    }
+
+    /**
+     * Write the index ranges one after the other, in the given order
+     * 按给定顺序依次写入索引范围
+     */
+    static void reorderIndices(Buffer indices, List<MaterialRange> order) {
+        int[] copy = new int[indices.capacity()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = getIndex(indices, i);
+        }
+        int position = 0;
+        for (MaterialRange range : order) {
+            for (int i = range.getFirst(); i < range.getFirst() + range.getCount(); i++) {
+                if (indices instanceof IntBuffer) {
+                    ((IntBuffer) indices).put(position++, copy[i]);
+                } else {
+                    ((ShortBuffer) indices).put(position++, (short) copy[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #reorderIndices(Buffer, List)} for a per vertex array
+     *
+     * @param stride floats per vertex 每个顶点的浮点数
+     */
+    static void reorderFloats(FloatBuffer array, int stride, List<MaterialRange> order) {
+        float[] copy = new float[array.capacity()];
+        array.position(0);
+        array.get(copy);
+        array.position(0);
+        int position = 0;
+        for (MaterialRange range : order) {
+            array.position(position);
+            array.put(copy, range.getFirst() * stride, range.getCount() * stride);
+            position += range.getCount() * stride;
+        }
+        array.position(0);
+    }
+
+    static final class Tile {
+        // index of the range 范围索引
+        final int range;
+        // whether it's the white patch of a range without texture 是否为无纹理范围的白色块
+        final boolean blank;
+        // the texture 纹理
+        private Bitmap bitmap;
+        final int width;
+        final int height;
+        // position in the page, inside the padding 在页面中的位置（填充内）
+        int x;
+        int y;
+
+        Tile(int range, boolean blank, int width, int height) {
+            this.range = range;
+            this.blank = blank;
+            this.width = width;
+            this.height = height;
+        }
+
+        private void recycle() {
+            if (bitmap != null) {
+                bitmap.recycle();
+                bitmap = null;
+            }
+        }
+    }
+}
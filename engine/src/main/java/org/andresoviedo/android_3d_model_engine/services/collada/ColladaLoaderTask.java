@@ -1,6 +1,5 @@
 package org.andresoviedo.android_3d_model_engine.services.collada;
 
-import android.app.Activity;
 import android.net.Uri;
 
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
@@ -21,8 +20,8 @@ public class ColladaLoaderTask extends LoaderTask {
 
     AnimatedModelData modelData;
 
-    public ColladaLoaderTask(Activity parent, Uri uri, Callback callback) {
-        super(parent, uri, callback);
+    public ColladaLoaderTask(Uri uri, Callback callback) {
+        super(uri, callback);
     }
 
     @SuppressWarnings("unchecked")
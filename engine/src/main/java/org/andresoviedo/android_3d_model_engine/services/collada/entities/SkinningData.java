@@ -4,6 +4,9 @@ import java.util.List;
 
 /**
  * 蒙皮数据
+ * The joints and weights of every vertex position are stored in flat arrays, {@link #weightsPerVertex}
+ * per position.
+ * 每个顶点位置的关节和权重存储在扁平数组中，每个位置weightsPerVertex个
  *
  * @author mogoauto
  */
@@ -11,15 +14,25 @@ public class SkinningData {
 
     public final float[] bindShapeMatrix;
     public final List<String> jointOrder;
-    public final List<VertexSkinData> verticesSkinData;
+    public final int weightsPerVertex;
+    public final int[] jointIds;
+    public final float[] weights;
     public final float[] inverseBindMatrix;
 
-    public SkinningData(float[] bindShapeMatrix, List<String> jointOrder, List<VertexSkinData> verticesSkinData, float[] inverseBindMatrix) {
+    public SkinningData(float[] bindShapeMatrix, List<String> jointOrder, int weightsPerVertex, int[] jointIds,
+                        float[] weights, float[] inverseBindMatrix) {
         this.bindShapeMatrix = bindShapeMatrix;
         this.jointOrder = jointOrder;
-        this.verticesSkinData = verticesSkinData;
+        this.weightsPerVertex = weightsPerVertex;
+        this.jointIds = jointIds;
+        this.weights = weights;
         this.inverseBindMatrix = inverseBindMatrix;
     }
 
-
+    /**
+     * @return number of vertex positions with skin data
+     */
+    public int getVertexCount() {
+        return jointIds.length / weightsPerVertex;
+    }
 }
@@ -1,75 +1,80 @@
 package org.andresoviedo.android_3d_model_engine.services.collada.entities;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * 顶点蒙皮数据
+ * Joints affecting a vertex, sorted by weight. It keeps primitive arrays and can be reused for every vertex
+ * with {@link #clear()}, so loading the skin doesn't allocate per vertex.
+ * 影响顶点的关节，按权重排序。使用基本类型数组，可以通过clear()为每个顶点重用。
  *
  * @author mogoauto
  */
 public class VertexSkinData {
 
-    public final List<Integer> jointIds = new ArrayList<Integer>();
-    public final List<Float> weights = new ArrayList<Float>();
+    private int[] jointIds = new int[4];
+    private float[] weights = new float[4];
+    private int size;
 
-    public void addJointEffect(int jointId, float weight) {
-        for (int i = 0; i < weights.size(); i++) {
-            if (weight > weights.get(i)) {
-                jointIds.add(i, jointId);
-                weights.add(i, weight);
-                return;
-            }
-        }
-        jointIds.add(jointId);
-        weights.add(weight);
+    public void clear() {
+        size = 0;
     }
 
-    public void limitJointNumber(int max) {
-        if (jointIds.size() > max) {
-            float[] topWeights = new float[max];
-            float total = saveTopWeights(topWeights);
-            refillWeightList(topWeights, total);
-            removeExcessJointIds(max);
-        } else if (jointIds.size() < max) {
-            fillEmptyWeights(max);
+    public void addJointEffect(int jointId, float weight) {
+        if (size == weights.length) {
+            jointIds = Arrays.copyOf(jointIds, size * 2);
+            weights = Arrays.copyOf(weights, size * 2);
+        }
+        int i = 0;
+        while (i < size && weight <= weights[i]) {
+            i++;
         }
+        System.arraycopy(jointIds, i, jointIds, i + 1, size - i);
+        System.arraycopy(weights, i, weights, i + 1, size - i);
+        jointIds[i] = jointId;
+        weights[i] = weight;
+        size++;
     }
 
-    private void fillEmptyWeights(int max) {
-        while (jointIds.size() < max) {
-            jointIds.add(0);
-            weights.add(0f);
+    /**
+     * Keep the <code>max</code> joints with more weight, normalizing their weights, or fill with empty
+     * joints up to <code>max</code>
+     * 保留权重最大的max个关节并归一化，或用空关节填充到max个
+     */
+    public void limitJointNumber(int max) {
+        if (size > max) {
+            float total = 0;
+            for (int i = 0; i < max; i++) {
+                total += weights[i];
+            }
+            for (int i = 0; i < max; i++) {
+                weights[i] = Math.min(weights[i] / total, 1);
+            }
+            size = max;
+        } else {
+            while (size < max) {
+                addJointEffect(0, 0);
+            }
         }
     }
 
-    private float saveTopWeights(float[] topWeightsArray) {
-        float total = 0;
-        for (int i = 0; i < topWeightsArray.length; i++) {
-            topWeightsArray[i] = weights.get(i);
-            total += topWeightsArray[i];
-        }
-        return total;
+    public int size() {
+        return size;
     }
 
-    private void refillWeightList(float[] topWeights, float total) {
-        weights.clear();
-        for (int i = 0; i < topWeights.length; i++) {
-            weights.add(Math.min(topWeights[i] / total, 1));
-        }
+    public int getJointId(int index) {
+        return jointIds[index];
     }
 
-    private void removeExcessJointIds(int max) {
-        while (jointIds.size() > max) {
-            jointIds.remove(jointIds.size() - 1);
-        }
+    public float getWeight(int index) {
+        return weights[index];
     }
 
     @Override
     public String toString() {
         return "VertexSkinData{" +
-                "jointIds=" + jointIds +
-                ", weights=" + weights +
+                "jointIds=" + Arrays.toString(Arrays.copyOf(jointIds, size)) +
+                ", weights=" + Arrays.toString(Arrays.copyOf(weights, size)) +
                 '}';
     }
 }
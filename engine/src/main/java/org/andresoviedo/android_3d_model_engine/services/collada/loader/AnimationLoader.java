@@ -63,9 +63,8 @@ public class AnimationLoader {
                 animation = animation.getChild("animation");
             }
             XmlNode timeData = animation.getChild("source").getChild("float_array");
-            String[] rawTimes = timeData.getData().trim().split("\\s+");
-            for (String rawTime : rawTimes) {
-                ret.add(Float.parseFloat(rawTime));
+            for (float rawTime : timeData.getFloatData()) {
+                ret.add(rawTime);
             }
         }
         return ret;
@@ -101,9 +100,9 @@ public class AnimationLoader {
         String timeId = getTimeId(animationNode);
         try {
             XmlNode timeData = animationNode.getChildWithAttribute("source", "id", timeId);
-            String[] rawTimes = timeData.getChild("float_array").getData().trim().split("\\s+");
+            float[] rawTimes = timeData.getChild("float_array").getFloatData();
             XmlNode transformData = animationNode.getChildWithAttribute("source", "id", dataId);
-            String[] rawData = transformData.getChild("float_array").getData().trim().split("\\s+");
+            float[] rawData = transformData.getChild("float_array").getFloatData();
             XmlNode technique_common = transformData.getChild("technique_common");
             XmlNode accessor = technique_common.getChild("accessor");
             if (accessor.getAttribute("stride").equals("16")) {
@@ -169,12 +168,12 @@ public class AnimationLoader {
      * @param keyTimes
      * @param keyFrames
      */
-    private void processTransforms(String jointName, String[] rawTimes, String[] rawData, List<Float> keyTimes, KeyFrameData[] keyFrames) {
+    private void processTransforms(String jointName, float[] rawTimes, float[] rawData, List<Float> keyTimes, KeyFrameData[] keyFrames) {
         float[] matrixData = new float[16];
         for (int i = 0; i < rawTimes.length; i++) {
-            Float keyTime = Float.parseFloat(rawTimes[i]);
+            Float keyTime = rawTimes[i];
             for (int j = 0; j < 16; j++) {
-                matrixData[j] = Float.parseFloat(rawData[i * 16 + j]);
+                matrixData[j] = rawData[i * 16 + j];
             }
             float[] transpose = new float[16];
             Matrix.transposeM(transpose, 0, matrixData, 0);
@@ -191,12 +190,12 @@ public class AnimationLoader {
      * @param keyTimes
      * @param keyFrames
      */
-    private void processXYTransforms(String jointName, String[] rawTimes, String[] rawData, List<Float> keyTimes, KeyFrameData[] keyFrames) {
+    private void processXYTransforms(String jointName, float[] rawTimes, float[] rawData, List<Float> keyTimes, KeyFrameData[] keyFrames) {
         for (int i = 0; i < rawTimes.length; i++) {
-            Float keyTime = Float.parseFloat(rawTimes[i]);
+            Float keyTime = rawTimes[i];
             float[] matrixData = new float[16];
             Matrix.setIdentityM(matrixData, 0);
-            Matrix.translateM(matrixData, 0, matrixData, 0, Float.parseFloat(rawData[i * 2 + 0]), Float.parseFloat(rawData[i * 2 + 1]), 0);
+            Matrix.translateM(matrixData, 0, matrixData, 0, rawData[i * 2 + 0], rawData[i * 2 + 1], 0);
             keyFrames[keyTimes.indexOf(keyTime)].addJointTransform(new JointTransformData(jointName, matrixData));
         }
     }
@@ -208,12 +207,12 @@ public class AnimationLoader {
      * @param keyTimes
      * @param keyFrames
      */
-    private void processXTransforms(String jointName, String[] rawTimes, String[] rawData, List<Float> keyTimes, KeyFrameData[] keyFrames) {
+    private void processXTransforms(String jointName, float[] rawTimes, float[] rawData, List<Float> keyTimes, KeyFrameData[] keyFrames) {
         for (int i = 0; i < rawTimes.length; i++) {
-            Float keyTime = Float.parseFloat(rawTimes[i]);
+            Float keyTime = rawTimes[i];
             float[] matrixData = new float[16];
             Matrix.setIdentityM(matrixData, 0);
-            Matrix.translateM(matrixData, 0, matrixData, 0, Float.parseFloat(rawData[i]), 0, 0);
+            Matrix.translateM(matrixData, 0, matrixData, 0, rawData[i], 0, 0);
             keyFrames[keyTimes.indexOf(keyTime)].addJointTransform(new JointTransformData(jointName, matrixData));
         }
     }
@@ -225,12 +224,12 @@ public class AnimationLoader {
      * @param keyTimes
      * @param keyFrames
      */
-    private void processZTransforms(String jointName, String[] rawTimes, String[] rawData, List<Float> keyTimes, KeyFrameData[] keyFrames) {
+    private void processZTransforms(String jointName, float[] rawTimes, float[] rawData, List<Float> keyTimes, KeyFrameData[] keyFrames) {
         for (int i = 0; i < rawTimes.length; i++) {
-            Float keyTime = Float.parseFloat(rawTimes[i]);
+            Float keyTime = rawTimes[i];
             float[] matrixData = new float[16];
             Matrix.setIdentityM(matrixData, 0);
-            Matrix.translateM(matrixData, 0, matrixData, 0, 0, 0, Float.parseFloat(rawData[i]));
+            Matrix.translateM(matrixData, 0, matrixData, 0, 0, 0, rawData[i]);
             keyFrames[keyTimes.indexOf(keyTime)].addJointTransform(new JointTransformData(jointName, matrixData));
         }
     }
@@ -242,12 +241,12 @@ public class AnimationLoader {
      * @param keyTimes
      * @param keyFrames
      */
-    private void processRotationZTransforms(String jointName, String[] rawTimes, String[] rawData, List<Float> keyTimes, KeyFrameData[] keyFrames) {
+    private void processRotationZTransforms(String jointName, float[] rawTimes, float[] rawData, List<Float> keyTimes, KeyFrameData[] keyFrames) {
         for (int i = 0; i < rawTimes.length; i++) {
-            Float keyTime = Float.parseFloat(rawTimes[i]);
+            Float keyTime = rawTimes[i];
             float[] matrixData = new float[16];
             Matrix.setIdentityM(matrixData, 0);
-            Matrix.rotateM(matrixData, 0, matrixData, 0, Float.parseFloat(rawData[i]), 0, 1, 0);
+            Matrix.rotateM(matrixData, 0, matrixData, 0, rawData[i], 0, 1, 0);
             keyFrames[keyTimes.indexOf(keyTime)].addJointTransform(new JointTransformData(jointName, matrixData));
         }
     }
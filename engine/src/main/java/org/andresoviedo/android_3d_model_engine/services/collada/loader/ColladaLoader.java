@@ -32,8 +32,10 @@ import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 交互式3D 应用程序的基于 XML 的数字资产交换方案 装载器
@@ -42,6 +44,13 @@ import java.util.Map;
  */
 public class ColladaLoader {
 
+    /**
+     * Libraries needed to load the animation
+     * 加载动画所需的库
+     */
+    private static final Set<String> ANIMATION_LIBRARIES = new HashSet<>(Arrays.asList("library_animations",
+            "library_visual_scenes"));
+
     /**
      * 创建本机字节缓冲区
      *
@@ -244,7 +253,9 @@ public class ColladaLoader {
      * @return
      */
     static AnimationData loadColladaAnimation(InputStream colladaFile) {
-        XmlNode node = XmlParser.parse(colladaFile);
+        // skip the geometries, the heaviest part of the file
+        // 跳过几何体，文件中最大的部分
+        XmlNode node = XmlParser.parse(colladaFile, ANIMATION_LIBRARIES);
         XmlNode animNode = node.getChild("library_animations");
         if (animNode == null) {
             return null;
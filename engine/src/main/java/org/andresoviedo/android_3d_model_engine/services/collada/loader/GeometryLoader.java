@@ -7,8 +7,8 @@ import org.andresoviedo.android_3d_model_engine.services.collada.entities.JointD
 import org.andresoviedo.android_3d_model_engine.services.collada.entities.MeshData;
 import org.andresoviedo.android_3d_model_engine.services.collada.entities.SkeletonData;
 import org.andresoviedo.android_3d_model_engine.services.collada.entities.SkinningData;
-import org.andresoviedo.android_3d_model_engine.services.collada.entities.Vertex;
-import org.andresoviedo.android_3d_model_engine.services.collada.entities.VertexSkinData;
+import org.andresoviedo.util.collections.IntArrayList;
+import org.andresoviedo.util.collections.IntTupleIndex;
 import org.andresoviedo.util.xml.XmlNode;
 
 import java.nio.ByteBuffer;
@@ -21,11 +21,22 @@ import java.util.Map;
 /**
  * Loads the mesh data for a model from a collada XML file.
  * 从collada XML文件加载模型的网格数据。
+ * <p>
+ * Every corner of a primitive references a position, and optionally a normal, a texture coordinate and a
+ * color. Corners with the same 4 indices are merged into one vertex using an {@link IntTupleIndex}, and all the
+ * data is kept in primitive arrays, so there is no allocation per vertex.
+ * 图元的每个角引用一个位置，以及可选的法线、纹理坐标和颜色。具有相同4个索引的角通过IntTupleIndex合并为一个顶点，所有数据保存在基本类型数组中。
  *
  * @author Karl
  */
 public class GeometryLoader {
 
+    private static final int NO_INDEX = -1;
+
+    // joints per vertex when the mesh is attached to a joint instead of having a skin
+    // 网格附加到关节而不是蒙皮时每个顶点的关节数
+    private static final int ATTACHED_JOINTS = 3;
+
     private final XmlNode geometryNode;//几何体节点
     private final XmlNode materialsData;//材料数据
     private final XmlNode effectsData;//效果数据
@@ -33,21 +44,25 @@ public class GeometryLoader {
     private Map<String, SkinningData> skinningDataMap;//蒙皮数据映射
     private SkeletonData skeletonData;//骨架数据
 
-    private float[] verticesArray;//顶点数组
-    private float[] normalsArray;//法线数组
-    private float[] texturesArray;//纹理数组
-    private int[] indicesArray;//索引数组
-    private int[] jointIdsArray;//联合ID阵列
-    private float[] weightsArray;//权重数组
-    private FloatBuffer colorsBuffer;//颜色缓冲区
-
-    List<Vertex> vertices = new ArrayList<>();//顶点
-
-    List<float[]> vertex = new ArrayList<>();//角顶
-    List<float[]> textures = new ArrayList<>();//纹理
-    List<float[]> normals = new ArrayList<>();//常态
-    List<Integer> indices = new ArrayList<>();//指数
-    List<float[]> colors = new ArrayList<>();//颜色
+    // source data of the current geometry, flat arrays
+    // 当前几何体的源数据，扁平数组
+    private float[] positions;//位置 (xyz)
+    private float[] normals;//法线 (xyz)
+    private float[] textures;//纹理 (uv)
+    private float[] colors;//颜色 (rgba)
+    // index of the first element with the same value, so corners sharing the values share the vertex
+    // 具有相同值的第一个元素的索引，使值相同的角共享顶点
+    private int[] normalsRemap;
+    private int[] texturesRemap;
+    private int[] colorsRemap;
+    // whether the normals are indexed by position (declared in <vertices>)
+    // 法线是否按位置索引（在<vertices>中声明）
+    private boolean normalsByPosition;
+
+    // unique corners (position, normal, texture, color) and the corners of the triangles
+    // 唯一的角（位置、法线、纹理、颜色）和三角形的角
+    private IntTupleIndex corners;
+    private final IntArrayList indices = new IntArrayList();//指数
 
     public GeometryLoader(XmlNode geometryNode, XmlNode materialsNode,
                           XmlNode effectsNode, XmlNode imagesNode,
@@ -70,12 +85,12 @@ public class GeometryLoader {
         List<MeshData> ret = new ArrayList<MeshData>();
         for (XmlNode geometry : geometryNode.getChildren("geometry")) {
 
-            vertices.clear();
-            vertex.clear();
-            normals.clear();
-            textures.clear();
+            positions = null;
+            normals = null;
+            textures = null;
+            colors = null;
+            normalsByPosition = false;
             indices.clear();
-            colors.clear();
 
             String geometryId = geometry.getAttribute("id");
             Log.i("GeometryLoader", "Loading geometry '" + geometryId + "'");
@@ -84,49 +99,47 @@ public class GeometryLoader {
             XmlNode meshData = geometry.getChild("mesh");
 
             // read vertices and normals 读取顶点和法线
-            loadVertices(meshData, geometryId);
+            loadVertices(meshData);
+            corners = new IntTupleIndex(positions.length / 3);
 
-            // link skin weights to vertices 将蒙皮权重链接到顶点
-            loadSkinningData(geometryId);
+            // transform vertices according to the skin 根据蒙皮变换顶点
+            SkinningData skin = skinningDataMap != null ? skinningDataMap.get(geometryId) : null;
+            if (skin != null) {
+                applyBindShapeMatrix(skin.bindShapeMatrix);
+            }
 
             // read texture and normals 读取纹理和法线
-            XmlNode primitive = loadPrimitiveData(meshData);
+            loadPrimitiveData(meshData);
 
-            // get all primitives 获取所有原语
-            List<XmlNode> polys = meshData.getChildren("polylist");
+            normalsRemap = remapDuplicates(normals, 3);
+            texturesRemap = remapDuplicates(textures, 2);
+            colorsRemap = remapDuplicates(colors, 4);
 
             // default is no color, no texture 默认设置为没有颜色，没有纹理
             Object[] colorAndTexture = new Object[2];
 
-            // TODO: process vcount
-            // this only works if poly is vcount=3 (trooper uses it)
-            for (XmlNode poly : polys) {
+            // polygons, split in triangles 多边形，分割为三角形
+            for (XmlNode poly : meshData.getChildren("polylist")) {
                 String material = poly.getAttribute("material");
                 colorAndTexture = getMaterialColorAndTexture(material);
                 assembleVertices(poly);
             }
 
             // triangle mesh
-            List<XmlNode> triangless = meshData.getChildren("triangles");
-            for (XmlNode triangles : triangless) {
+            for (XmlNode triangles : meshData.getChildren("triangles")) {
                 String material = triangles.getAttribute("material");
                 colorAndTexture = getMaterialColorAndTexture(material);
                 assembleVertices(triangles);
             }
 
-            initArrays(geometryId);
-            convertDataToArrays();
-            convertIndicesListToArray();
-
             float[] color = (float[]) colorAndTexture[0];
             String texture = (String) colorAndTexture[1];
-            ret.add(new MeshData(geometryId, verticesArray, texturesArray, normalsArray, color, colorsBuffer,
-                    texture, indicesArray, jointIdsArray, weightsArray));
+            ret.add(buildMeshData(geometryId, skin, color, texture));
         }
         return ret;
     }
 
-    private XmlNode loadPrimitiveData(XmlNode meshData) {
+    private void loadPrimitiveData(XmlNode meshData) {
 
         // get actual primitive
         XmlNode primitiveNode = null;
@@ -139,14 +152,15 @@ public class GeometryLoader {
         // load primitive data
         if (primitiveNode != null) {
             XmlNode inputNormal = primitiveNode.getChildWithAttribute("input", "semantic", "NORMAL");
-            loadData(normals, meshData, inputNormal, 3);
+            if (inputNormal != null) {
+                normals = loadData(meshData, inputNormal, 3);
+                normalsByPosition = false;
+            }
             XmlNode inputCoord = primitiveNode.getChildWithAttribute("input", "semantic", "TEXCOORD");
-            loadData(textures, meshData, inputCoord, 2);
+            textures = loadData(meshData, inputCoord, 2);
             XmlNode inputColor = primitiveNode.getChildWithAttribute("input", "semantic", "COLOR");
-            loadData(colors, meshData, inputColor, 4);
+            colors = loadData(meshData, inputColor, 4);
         }
-
-        return primitiveNode;
     }
 
     private JointData getJointData(JointData jointData, String geometryId) {
@@ -162,93 +176,62 @@ public class GeometryLoader {
 
     // <vertices> - may contain "VERTEX" and "NORMAL" semantics
     //  读取顶点和法线
-    private void loadVertices(XmlNode meshData, String geometryId) {
+    private void loadVertices(XmlNode meshData) {
 
         // get position & normal source ids 获取位置和正常源ID
         XmlNode verticesNode = meshData.getChild("vertices");
         for (XmlNode node : verticesNode.getChildren("input")) {
             String semanticId = node.getAttribute("semantic");
             if ("POSITION".equals(semanticId)) {
-                loadData(vertex, meshData, node, 3);
+                positions = loadData(meshData, node, 3);
             } else if ("NORMAL".equals(semanticId)) {
-                loadData(normals, meshData, node, 3);
+                normals = loadData(meshData, node, 3);
+                normalsByPosition = true;
             }
         }
-
-        // load vertices 加载顶点
-        for (int i = 0; vertex != null && i < vertex.size(); i++) {
-            vertices.add(new Vertex(vertex.get(i)));
-        }
-
-        // load normals 加载法线
-        for (int i = 0; normals != null && i < vertices.size(); i++) {
-            vertices.get(i).setNormalIndex(i);
+        if (positions == null) {
+            positions = new float[0];
         }
     }
 
     /**
-     * 加载蒙皮数据
-     *
-     * @param geometryId 几何体Id
+     * Transform the positions according to the bind_shape_matrix
+     * 根据bind_shape_matrix变换顶点
      */
-    private void loadSkinningData(String geometryId) {
-        // link vertex to weight data 将顶点链接到权重数据
-        for (int i = 0; i < this.vertices.size(); i++) {
-
-            Vertex vertex = this.vertices.get(i);
-            float[] positionV = new float[]{vertex.getPosition()[0], vertex.getPosition()[1], vertex.getPosition()[2], 1};
-
-            // skinning data 蒙皮数据
-            VertexSkinData weightsData = null;
-            if (skinningDataMap != null) {
-                weightsData = skinningDataMap.containsKey(geometryId) ?
-                        skinningDataMap.get(geometryId).verticesSkinData.get(i) : null;
-
-                // Log.v("GeometryLoader","weightsData: "+weightsData);
-
-                // transform vertex according to bind_shape_matrix 根据bind_-shape_矩阵变换顶点
-                if (skinningDataMap.containsKey(geometryId)) {
-                    float[] bindShapeMatrix = skinningDataMap.get(geometryId).bindShapeMatrix;
-                    float[] bindShaped = new float[16];
-                    Matrix.multiplyMV(bindShaped, 0, bindShapeMatrix, 0, positionV, 0);
-                    positionV = bindShaped;
-                }
-
-                // TODO: review this. meshId is never set on skeleton data so this will probably never work
-                // 回顾一下。meshId永远不会设置在骨架数据上，因此这可能永远不会起作用
-                if (weightsData == null && skeletonData != null) {
-                    JointData jointData = getJointData(skeletonData.headJoint, geometryId);
-                    if (jointData != null) {
-                        weightsData = new VertexSkinData();
-                        weightsData.addJointEffect(jointData.index, 1);
-                        weightsData.limitJointNumber(3);
-                    }
-                }
-            }
-            vertex.setPosition(new float[]{positionV[0], positionV[1], positionV[2]});
-            vertex.setWeightsData(weightsData);
+    private void applyBindShapeMatrix(float[] bindShapeMatrix) {
+        float[] position = new float[4];
+        float[] bindShaped = new float[4];
+        for (int i = 0; i < positions.length; i += 3) {
+            position[0] = positions[i];
+            position[1] = positions[i + 1];
+            position[2] = positions[i + 2];
+            position[3] = 1;
+            Matrix.multiplyMV(bindShaped, 0, bindShapeMatrix, 0, position, 0);
+            positions[i] = bindShaped[0];
+            positions[i + 1] = bindShaped[1];
+            positions[i + 2] = bindShaped[2];
         }
     }
 
     /**
      * 加载数据
      *
-     * @param list  列表
      * @param node  节点
      * @param input 输入节点
-     * @param size  大小
+     * @param size  components per element. Missing components are set to 1 每个元素的分量数
+     * @return the elements, <code>size</code> floats each, or null if there is no input
      */
-    private static void loadData(List<float[]> list, XmlNode node, XmlNode input, int size) {
+    private static float[] loadData(XmlNode node, XmlNode input, int size) {
         // no input, no data
         if (input == null) {
-            return;
+            return null;
         }
 
         // get source data 获取源数据
         String sourceId = input.getAttribute("source").substring(1);
         XmlNode source = node.getChildWithAttribute("source", "id", sourceId);
-        XmlNode data = source.getChild("float_array");
-        int count = Integer.parseInt(data.getAttribute("count"));
+        float[] floatData = source.getChild("float_array").getFloatData();
+        int count = floatData.length;
 
         // accessor 存取器
         int stride = 4;
@@ -257,20 +240,16 @@ public class GeometryLoader {
             stride = Integer.parseInt(technique.getChild("accessor").getAttribute("stride"));
         }
 
-        // parse floats 解析浮动
+        // copy floats 复制数据
         Log.i("GeometryLoader", "Loading data. count: " + count + ", stride: " + stride);
-        String[] floatData = data.getData().trim().split("\\s+");
-        for (int i = 0; i < count; i += stride) {
-            float[] f = new float[size];
+        int elements = (count + stride - 1) / stride;
+        float[] ret = new float[elements * size];
+        for (int e = 0, i = 0; i < count; e++, i += stride) {
             for (int j = 0; j < size; j++) {
-                float val = 1;
-                if (j < stride) {
-                    val = Float.parseFloat(floatData[i + j]);
-                }
-                f[j] = val;
+                ret[e * size + j] = j < stride ? floatData[i + j] : 1;
             }
-            list.add(f);
         }
+        return ret;
     }
 
     /**
@@ -290,7 +269,7 @@ public class GeometryLoader {
         int maxOffset = 0;
         for (XmlNode input : primitive.getChildren("input")) {
             String semantic = input.getAttribute("semantic");
-            int offset = Integer.valueOf(input.getAttribute("offset"));
+            int offset = Integer.parseInt(input.getAttribute("offset"));
             if ("VERTEX".equals(semantic)) {
                 vertexOffset = offset;
             } else if ("COLOR".equals(semantic)) {
@@ -313,38 +292,83 @@ public class GeometryLoader {
         Log.i("GeometryLoader", "Loading primitive. Stride: " + stride);
         Log.i("GeometryLoader", "Primitive offsets " + vertexOffset + "," + normalOffset + "," + texOffset);
 
-        // update vertex info 更新顶点信息
-        String[] indexData = primitive.getChild("p").getData().trim().split("\\s+");
-        for (int i = 0; i < indexData.length; i += stride) {
+        // corners of every polygon (all triangles if not specified)
+        // 每个多边形的角数（未指定时全部为三角形）
+        int[] indexData = primitive.getChild("p").getIntData();
+        XmlNode vcountNode = primitive.getChild("vcount");
+        int[] vcount = vcountNode != null ? vcountNode.getIntData() : null;
+
+        int cornerCount = indexData.length / stride;
+        int polygonCount = vcount != null ? vcount.length : cornerCount / 3;
+        indices.ensureCapacity(indices.size() + cornerCount * 2);
+        for (int p = 0, corner = 0; p < polygonCount && corner < cornerCount; p++) {
+            int sides = vcount != null ? vcount[p] : 3;
+            int first = getVertex(indexData, corner * stride, vertexOffset, normalOffset, texOffset, colorOffset);
+            int previous = NO_INDEX;
+            for (int i = 1; i < sides && corner + i < cornerCount; i++) {
+                int current = getVertex(indexData, (corner + i) * stride, vertexOffset, normalOffset, texOffset,
+                        colorOffset);
+                // triangle fan 三角扇
+                if (previous != NO_INDEX) {
+                    indices.add(first, previous, current);
+                }
+                previous = current;
+            }
+            corner += sides;
+        }
+    }
 
-            // get vertex
-            int positionIndex = Integer.parseInt(indexData[i + vertexOffset]);
-            Vertex currentVertex = vertices.get(positionIndex);
+    /**
+     * @return the id of the vertex of the corner, shared with all the corners with the same data
+     */
+    private int getVertex(int[] indexData, int offset, int vertexOffset, int normalOffset, int texOffset,
+                          int colorOffset) {
+        int positionIndex = indexData[offset + vertexOffset];
+        int normalIndex = NO_INDEX;
+        if (normalOffset >= 0 && !normalsByPosition) {
+            normalIndex = indexData[offset + normalOffset];
+        } else if (normals != null) {
+            normalIndex = positionIndex;
+        }
+        int texCoordIndex = texOffset >= 0 ? indexData[offset + texOffset] : NO_INDEX;
+        int colorIndex = colorOffset >= 0 ? indexData[offset + colorOffset] : NO_INDEX;
+        return corners.add(positionIndex, remap(normalsRemap, normalIndex), remap(texturesRemap, texCoordIndex),
+                remap(colorsRemap, colorIndex));
+    }
 
-            // parse normal if available 解析正常（如果可用）
-            int normalIndex = -1;
-            if (normalOffset >= 0) {
-                normalIndex = Integer.parseInt(indexData[i + normalOffset]);
-                currentVertex.setNormalIndex(normalIndex);
-            }
+    private static int remap(int[] remap, int index) {
+        return remap != null && index >= 0 && index < remap.length ? remap[index] : index;
+    }
 
-            // parse color if available 分析颜色（如果可用）
-            int colorIndex = -1;
-            if (colorOffset >= 0) {
-                colorIndex = Integer.parseInt(indexData[i + colorOffset]);
-                currentVertex.setColorIndex(colorIndex);
+    /**
+     * Exporters usually write one normal (or texture coordinate) per corner, even if it's the same for all the
+     * corners of a vertex. Find the duplicated values so they don't split the vertex.
+     * 导出器通常为每个角写一个法线（或纹理坐标），即使顶点的所有角都相同。找出重复的值，避免拆分顶点。
+     *
+     * @param data flat array of elements, or null
+     * @param size components per element (up to 4)
+     * @return for every element, the index of the first element with the same value, or null if there is no data
+     */
+    private static int[] remapDuplicates(float[] data, int size) {
+        if (data == null) {
+            return null;
+        }
+        int count = data.length / size;
+        IntTupleIndex values = new IntTupleIndex(count);
+        IntArrayList firsts = new IntArrayList(count);
+        int[] bits = new int[4];
+        int[] ret = new int[count];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < size; j++) {
+                bits[j] = Float.floatToIntBits(data[i * size + j]);
             }
-
-            // parse texture if available 分析纹理（如果可用）
-            int texCoordIndex = -1;
-            if (texOffset >= 0) {
-                texCoordIndex = Integer.parseInt(indexData[i + texOffset]);
-                currentVertex.setTextureIndex(texCoordIndex);
+            int id = values.add(bits[0], bits[1], bits[2], bits[3]);
+            if (id == firsts.size()) {
+                firsts.add(i);
             }
-
-            // update vertex info 更新顶点信息
-            indices.add(positionIndex);
+            ret[i] = firsts.get(id);
         }
+        return ret;
     }
 
     /**
@@ -443,83 +467,71 @@ public class GeometryLoader {
     }
 
     /**
-     * 将索引列表转换为数组
-     *
-     * @return 结果数组
+     * Build the arrays of the unique vertices
+     * 构建唯一顶点的数组
      */
-    private int[] convertIndicesListToArray() {
-        this.indicesArray = new int[indices.size()];
-        for (int i = 0; i < indicesArray.length; i++) {
-            indicesArray[i] = indices.get(i);
+    private MeshData buildMeshData(String geometryId, SkinningData skin, float[] color, String texture) {
+        int vertexCount = corners.size();
+        Log.i("GeometryLoader", "vertices: " + vertexCount + " (positions: " + positions.length / 3 + ")" +
+                ", textures: " + (textures != null ? textures.length / 2 : 0) +
+                ", colors: " + (colors != null ? colors.length / 4 : 0));
+
+        float[] verticesArray = new float[vertexCount * 3];
+        float[] normalsArray = new float[vertexCount * 3];
+        float[] texturesArray = textures != null ? new float[vertexCount * 2] : null;
+        FloatBuffer colorsBuffer = colors != null ? createNativeByteBuffer(vertexCount * 4 * 4).asFloatBuffer() : null;
+
+        // joints: from the skin, or the joint the mesh is attached to
+        // 关节：来自蒙皮，或网格所附加的关节
+        JointData attachedJoint = null;
+        if (skin == null && skinningDataMap != null && skeletonData != null) {
+            // TODO: review this. meshId is never set on skeleton data so this will probably never work
+            // 回顾一下。meshId永远不会设置在骨架数据上，因此这可能永远不会起作用
+            attachedJoint = getJointData(skeletonData.headJoint, geometryId);
         }
-        return indicesArray;
-    }
-
-    /**
-     * 将数据转换为数组
-     *
-     * @return 结果数组
-     */
-    private float convertDataToArrays() {
-
-        Log.i("GeometryLoader", "vertices: " + vertices.size() +
-                ", textures: " + (textures != null ? textures.size() : 0) +
-                ", colors: " + (colors != null ? colors.size() : 0));
-
-        float furthestPoint = 0;
-        int gw = 0, gj = 0; // global weights, global joints
-        for (int i = 0; i < vertices.size(); i++) {
-            Vertex currentVertex = vertices.get(i);
-            if (currentVertex.getLength() > furthestPoint) {
-                furthestPoint = currentVertex.getLength();
-            }
-            float[] position = currentVertex.getPosition();
-            if (textures != null && !textures.isEmpty()) {
-                float[] textureCoord = textures.get(currentVertex.getTextureIndex());
-                texturesArray[i * 2] = textureCoord[0];
-                texturesArray[i * 2 + 1] = 1 - textureCoord[1];
+        int weightsPerVertex = skin != null ? skin.weightsPerVertex : attachedJoint != null ? ATTACHED_JOINTS : 0;
+        int[] jointIdsArray = weightsPerVertex > 0 ? new int[vertexCount * weightsPerVertex] : null;
+        float[] weightsArray = weightsPerVertex > 0 ? new float[vertexCount * weightsPerVertex] : null;
+
+        for (int i = 0; i < vertexCount; i++) {
+            int positionIndex = corners.get(i, 0);
+            int normalIndex = corners.get(i, 1);
+            int texCoordIndex = corners.get(i, 2);
+            int colorIndex = corners.get(i, 3);
+
+            System.arraycopy(positions, positionIndex * 3, verticesArray, i * 3, 3);
+            if (normals != null && normalIndex != NO_INDEX) {
+                System.arraycopy(normals, normalIndex * 3, normalsArray, i * 3, 3);
             }
-            verticesArray[i * 3] = position[0];
-            verticesArray[i * 3 + 1] = position[1];
-            verticesArray[i * 3 + 2] = position[2];
-
-            if (normals != null && !normals.isEmpty()) {
-                float[] normalVector = normals.get(currentVertex.getNormalIndex());
-                normalsArray[i * 3] = normalVector[0];
-                normalsArray[i * 3 + 1] = normalVector[1];
-                normalsArray[i * 3 + 2] = normalVector[2];
+            if (texturesArray != null && texCoordIndex != NO_INDEX) {
+                texturesArray[i * 2] = textures[texCoordIndex * 2];
+                texturesArray[i * 2 + 1] = 1 - textures[texCoordIndex * 2 + 1];
             }
-            if (colors != null && currentVertex.getColorIndex() >= 0) {
-                float[] color = colors.get(currentVertex.getColorIndex());
-                colorsBuffer.put(color);
-            }
-
-            VertexSkinData weights = currentVertex.getWeightsData();
-            if (weights != null) {
-                for (int j = 0; j < weights.jointIds.size(); j++) {
-                    jointIdsArray[gj++] = weights.jointIds.get(j);
+            if (colorsBuffer != null) {
+                if (colorIndex != NO_INDEX) {
+                    colorsBuffer.put(colors, colorIndex * 4, 4);
+                } else {
+                    colorsBuffer.put(1).put(1).put(1).put(1);
                 }
-                for (int w = 0; w < weights.weights.size(); w++) {
-                    weightsArray[gw++] = weights.weights.get(w);
+            }
+            if (skin != null) {
+                if (positionIndex < skin.getVertexCount()) {
+                    System.arraycopy(skin.jointIds, positionIndex * weightsPerVertex, jointIdsArray,
+                            i * weightsPerVertex, weightsPerVertex);
+                    System.arraycopy(skin.weights, positionIndex * weightsPerVertex, weightsArray,
+                            i * weightsPerVertex, weightsPerVertex);
                 }
+            } else if (attachedJoint != null) {
+                jointIdsArray[i * weightsPerVertex] = attachedJoint.index;
+                weightsArray[i * weightsPerVertex] = 1;
             }
         }
-        return furthestPoint;
-    }
-
-    private void initArrays(String geometryId) {
-        this.verticesArray = new float[vertices.size() * 3];
-        if (textures != null && !textures.isEmpty()) {
-            this.texturesArray = new float[vertices.size() * 2];
-        }
-        this.normalsArray = new float[vertices.size() * 3];
-        if (skinningDataMap != null && skinningDataMap.containsKey(geometryId) || vertices.get(0).getWeightsData() != null) {
-            this.jointIdsArray = new int[vertices.size() * vertices.get(0).getWeightsData().jointIds.size()];
-            this.weightsArray = new float[vertices.size() * vertices.get(0).getWeightsData().weights.size()];
-        }
-        if (!colors.isEmpty()) {
-            this.colorsBuffer = createNativeByteBuffer(colors.size() * 4 * 4).asFloatBuffer();
+        if (colorsBuffer != null) {
+            colorsBuffer.position(0);
         }
+
+        return new MeshData(geometryId, verticesArray, texturesArray, normalsArray, color, colorsBuffer,
+                texture, indices.toArray(), jointIdsArray, weightsArray);
     }
 
     /**
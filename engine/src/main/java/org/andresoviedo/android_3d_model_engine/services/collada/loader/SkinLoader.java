@@ -58,24 +58,26 @@ public class SkinLoader {
             XmlNode weightsDataNode = skinningData.getChild("vertex_weights");
             int[] effectorJointCounts = getEffectiveJointsCounts(weightsDataNode);
 
-            // load skin data for every vertex
-            List<VertexSkinData> vertexWeights = loadSkinData(weightsDataNode, effectorJointCounts, weights);
+            // load skin data for every vertex, maxWeights per vertex
+            int[] jointIds = new int[effectorJointCounts.length * maxWeights];
+            float[] vertexWeights = new float[effectorJointCounts.length * maxWeights];
+            loadSkinData(weightsDataNode, effectorJointCounts, weights, jointIds, vertexWeights);
 
             // inverse bind matrix
             float[] inverseBindMatrix = null;
             try {
                 XmlNode joints = skinningData.getChild("joints");
                 XmlNode inverseBindMatrixNode = joints.getChildWithAttribute("input", "semantic", "INV_BIND_MATRIX");
-                String invMatrixString = skinningData.getChildWithAttribute("source",
+                inverseBindMatrix = skinningData.getChildWithAttribute("source",
                         "id", inverseBindMatrixNode.getAttribute("source").substring(1))
-                        .getChild("float_array").getData();
-                Log.d("SkinLoader", "invMatrix: " + invMatrixString.trim());
-                inverseBindMatrix = Math3DUtils.parseFloat(invMatrixString.trim().split("\\s+"));
+                        .getChild("float_array").getFloatData();
+                Log.d("SkinLoader", "invMatrix: " + inverseBindMatrix.length + " floats");
                 Log.d("SkinLoader", "Inverse bind matrix available");
             } catch (Exception e) {
                 Log.d("SkinLoader", "No inverse bind matrix available");
             }
-            ret.put(source, new SkinningData(bindShapeMatrix, jointNames, vertexWeights, inverseBindMatrix));
+            ret.put(source, new SkinningData(bindShapeMatrix, jointNames, maxWeights, jointIds, vertexWeights,
+                    inverseBindMatrix));
         }
         Log.d("SkinLoader", "Skinning datas '" + ret.keySet() + "'");
         return ret;
@@ -86,7 +88,7 @@ public class SkinLoader {
         String jointDataId = inputNode.getChildWithAttribute("input", "semantic", "JOINT").getAttribute("source")
                 .substring(1);
         XmlNode jointsNode = skinningData.getChildWithAttribute("source", "id", jointDataId).getChild("Name_array");
-        String[] names = jointsNode.getData().trim().split("\\s+");
+        String[] names = jointsNode.getNamesData();
         List<String> jointsList = new ArrayList<>();
         Collections.addAll(jointsList, names);
         return jointsList;
@@ -97,37 +99,30 @@ public class SkinLoader {
         String weightsDataId = inputNode.getChildWithAttribute("input", "semantic", "WEIGHT").getAttribute("source")
                 .substring(1);
         XmlNode weightsNode = skinningData.getChildWithAttribute("source", "id", weightsDataId).getChild("float_array");
-        String[] rawData = weightsNode.getData().trim().split("\\s+");
-        float[] weights = new float[rawData.length];
-        for (int i = 0; i < weights.length; i++) {
-            weights[i] = Float.parseFloat(rawData[i]);
-        }
-        return weights;
+        return weightsNode.getFloatData();
     }
 
     private int[] getEffectiveJointsCounts(XmlNode weightsDataNode) {
-        String[] rawData = weightsDataNode.getChild("vcount").getData().trim().split("\\s+");
-        int[] counts = new int[rawData.length];
-        for (int i = 0; i < rawData.length; i++) {
-            counts[i] = Integer.parseInt(rawData[i]);
-        }
-        return counts;
+        return weightsDataNode.getChild("vcount").getIntData();
     }
 
-    private List<VertexSkinData> loadSkinData(XmlNode weightsDataNode, int[] counts, float[] weights) {
-        String[] rawData = weightsDataNode.getChild("v").getData().trim().split("\\s+");
-        List<VertexSkinData> skinningData = new ArrayList<VertexSkinData>();
+    private void loadSkinData(XmlNode weightsDataNode, int[] counts, float[] weights, int[] jointIds,
+                              float[] vertexWeights) {
+        int[] rawData = weightsDataNode.getChild("v").getIntData();
+        VertexSkinData skinData = new VertexSkinData();
         int pointer = 0;
-        for (int count : counts) {
-            VertexSkinData skinData = new VertexSkinData();
-            for (int i = 0; i < count; i++) {
-                int jointId = Integer.parseInt(rawData[pointer++]);
-                int weightId = Integer.parseInt(rawData[pointer++]);
+        for (int v = 0; v < counts.length; v++) {
+            skinData.clear();
+            for (int i = 0; i < counts[v]; i++) {
+                int jointId = rawData[pointer++];
+                int weightId = rawData[pointer++];
                 skinData.addJointEffect(jointId, weights[weightId]);
             }
             skinData.limitJointNumber(maxWeights);
-            skinningData.add(skinData);
+            for (int i = 0; i < maxWeights; i++) {
+                jointIds[v * maxWeights + i] = skinData.getJointId(i);
+                vertexWeights[v * maxWeights + i] = skinData.getWeight(i);
+            }
         }
-        return skinningData;
     }
 }
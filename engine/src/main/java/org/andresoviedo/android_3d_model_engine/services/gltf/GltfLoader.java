@@ -3,6 +3,7 @@ package org.andresoviedo.android_3d_model_engine.services.gltf;
 import android.opengl.Matrix;
 import android.util.Log;
 
+import org.andresoviedo.android_3d_model_engine.drawer.TextureDecoder;
 import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
 import org.andresoviedo.android_3d_model_engine.services.gltf.jgltf_model.AccessorModel;
@@ -21,6 +22,7 @@ import java.net.URI;
 import java.net.URL;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
@@ -123,11 +125,7 @@ public class GltfLoader {
 
 //                    FloatBuffer dataFB = accessor.getCorrBufferData();
                     if (key.equals("POSITION")) {
-                        transformVertices(data3D, node, dataFB);
-                        data3D.setVertexArrayBuffer(dataFB);
-                        float[] test = new float[dataFB.capacity()];
-                        dataFB.get(test);
-                        data3D.setVertices(test);
+                        data3D.setVertexArrayBuffer(transformVertices(data3D, node, dataFB));
                     } else if (key.equals("NORMAL")) {
                         data3D.setVertexNormalsArrayBuffer(dataFB);
                     } else if (key.startsWith("TEXCOORD_")) {
@@ -193,16 +191,18 @@ public class GltfLoader {
 
             WavefrontLoader.ModelDimensions modelDimensions = data.getDimensions();
 
+            // update model dimensions, reading straight from the vertex buffer
+            // 直接从顶点缓冲区读取，更新模型尺寸
             boolean first = true;
-            for (int counter = 0; counter < data.getVertices().length - 3; counter += 3) {
-
-                // update model dimensions
+            for (int counter = 0; counter + 2 < vertexBuffer.capacity(); counter += 3) {
+                float x = vertexBuffer.get(counter);
+                float y = vertexBuffer.get(counter + 1);
+                float z = vertexBuffer.get(counter + 2);
                 if (first) {
-                    modelDimensions.set(data.getVertices()[counter], data.getVertices()[counter + 1], data.getVertices()[counter + 2]);
+                    modelDimensions.set(x, y, z);
                     first = false;
                 }
-                modelDimensions.update(data.getVertices()[counter], data.getVertices()[counter + 1], data.getVertices()[counter + 2]);
-
+                modelDimensions.update(x, y, z);
             }
 
             bindTexture(data, modelData);
@@ -234,12 +234,9 @@ public class GltfLoader {
             String texCordKey = (String) materialValueMap.get("baseColorTexCoord");
             data.setTextureCoordsArrayBuffer(data.getTextureCoords(texCordKey));
             TextureModel baseColorTexture = textures.get(index);
-            ImageModel image = baseColorTexture.getImageModel();
             // Faster way
             data.setTextureFile(null);
-            ByteBuffer imageByteBuffer = image.getImageData();
-            byte[] imageByte = byteBufferToByte(imageByteBuffer);
-            data.setTextureData(imageByte);
+            data.setTextureData(getImageData(baseColorTexture));
             data.setFilter(baseColorTexture.getMinFilter(), baseColorTexture.getMagFilter());
             data.setTextureWrap(baseColorTexture.getWrapS(), baseColorTexture.getWrapT());
         }
@@ -250,11 +247,8 @@ public class GltfLoader {
             String texCordKey = (String) materialValueMap.get("emissiveTexCoord");
             data.setEmissiveTextureCoordsArrayBuffer(data.getTextureCoords(texCordKey));
             TextureModel emissiveTexture = textures.get(index);
-            ImageModel image = emissiveTexture.getImageModel();
             // Faster way
-            ByteBuffer imageByteBuffer = image.getImageData();
-            byte[] imageByte = byteBufferToByte(imageByteBuffer);
-            data.setEmissiveTextureData(imageByte);
+            data.setEmissiveTextureData(getImageData(emissiveTexture));
             data.setEmissiveFilter(emissiveTexture.getMinFilter(), emissiveTexture.getMagFilter());
             data.setEmissiveTextureWrap(emissiveTexture.getWrapS(), emissiveTexture.getWrapT());
         }
@@ -284,15 +278,44 @@ public class GltfLoader {
 
         float[] modelMatrix = obj.getModelMatrix();
 
+        // the accessor buffer is a view of the glTF buffer (shared by the nodes using the same mesh),
+        // so it's only copied when there is something to transform
+        // 访问器缓冲区是glTF缓冲区的视图，只有在需要变换时才复制
+        if (isIdentity(modelMatrix)) {
+            return dataFB;
+        }
+
+        FloatBuffer ret = createNativeByteBuffer(dataFB.capacity() * 4).asFloatBuffer();
+        float[] ver = new float[4];
         for (int i = 0; i < dataFB.capacity(); i += 3) {
-            float[] ver = {dataFB.get(i), dataFB.get(i + 1), dataFB.get(i + 2), 1};
+            ver[0] = dataFB.get(i);
+            ver[1] = dataFB.get(i + 1);
+            ver[2] = dataFB.get(i + 2);
+            ver[3] = 1;
             Matrix.multiplyMV(ver, 0, modelMatrix, 0, ver, 0);
-            dataFB.put(i, ver[0]);
-            dataFB.put(i + 1, ver[1]);
-            dataFB.put(i + 2, ver[2]);
+            ret.put(i, ver[0]);
+            ret.put(i + 1, ver[1]);
+            ret.put(i + 2, ver[2]);
+        }
+
+        return ret;
+    }
+
+    private static boolean isIdentity(float[] matrix) {
+        for (int i = 0; i < 16; i++) {
+            if (matrix[i] != (i % 5 == 0 ? 1f : 0f)) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        return dataFB;
+    private static ByteBuffer createNativeByteBuffer(int length) {
+        // initialize vertex byte buffer for shape coordinates
+        ByteBuffer bb = ByteBuffer.allocateDirect(length);
+        // use the device hardware's native byte order
+        bb.order(ByteOrder.nativeOrder());
+        return bb;
     }
 
     private static boolean isKeyValid(String key) {
@@ -302,6 +325,23 @@ public class GltfLoader {
     }
 
 
+    /**
+     * Get the image of the texture: the KTX2 image of KHR_texture_basisu if the device can load it, or the plain one
+     * 获取纹理的图像：设备能加载时使用KHR_texture_basisu的KTX2图像，否则使用普通图像
+     */
+    private static byte[] getImageData(TextureModel texture) {
+        ImageModel compressed = texture.getCompressedImageModel();
+        if (compressed != null) {
+            byte[] imageByte = byteBufferToByte(compressed.getImageData());
+            if (TextureDecoder.canLoad(imageByte)) {
+                return imageByte;
+            }
+            Log.i("GltfLoader", "Compressed texture not supported. Using the fallback image: " + compressed.getUri());
+        }
+        ImageModel image = texture.getImageModel();
+        return image != null ? byteBufferToByte(image.getImageData()) : null;
+    }
+
     private static byte[] byteBufferToByte(ByteBuffer byteBuffer) {
         if (byteBuffer == null) {
             return null;
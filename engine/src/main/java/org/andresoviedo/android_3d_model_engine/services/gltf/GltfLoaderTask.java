@@ -1,6 +1,5 @@
 package org.andresoviedo.android_3d_model_engine.services.gltf;
 
-import android.app.Activity;
 import android.net.Uri;
 
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
@@ -25,8 +24,8 @@ public class GltfLoaderTask extends LoaderTask {
 
     GltfModel modelData;
 
-    public GltfLoaderTask(Activity parent, Uri uri, Callback callback) {
-        super(parent, uri, callback);
+    public GltfLoaderTask(Uri uri, Callback callback) {
+        super(uri, callback);
     }
 
     @Override
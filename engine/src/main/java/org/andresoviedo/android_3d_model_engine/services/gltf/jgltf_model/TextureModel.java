@@ -65,4 +65,13 @@ public interface TextureModel extends NamedModelElement
      * @return The {@link ImageModel}
      */
     ImageModel getImageModel();
+    
+    /**
+     * Returns the {@link ImageModel} of the KHR_texture_basisu extension,
+     * which is a KTX2 image with compressed levels, or <code>null</code>
+     * if the texture doesn't have one. 
+     * 
+     * @return The {@link ImageModel}
+     */
+    ImageModel getCompressedImageModel();
 }
\ No newline at end of file
@@ -39,9 +39,6 @@ import org.andresoviedo.android_3d_model_engine.services.gltf.jgltf_model.Elemen
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
 
 /**
  * Implementation of an {@link AccessorModel}
@@ -228,96 +225,134 @@ public final class  DefaultAccessorModel extends AbstractNamedModelElement
         return max.clone();
     }
 
+    /**
+     * Returns a view of the accessor elements, typed according to the
+     * component type (<code>FloatBuffer</code>, <code>IntBuffer</code>,
+     * <code>ShortBuffer</code> or <code>ByteBuffer</code>).<br>
+     * <br>
+     * When the elements are tightly packed the returned buffer shares the
+     * memory of the {@link BufferModel}, so no data is copied. Interleaved
+     * elements (a byte stride bigger than the element size) are packed
+     * into a new buffer, because the renderer expects tightly packed
+     * attributes.<br>
+     * 返回访问器数据的视图，紧密排列时不复制数据
+     * 
+     * @return The buffer, with position 0 and little endian byte order
+     */
     @Override
-    public Buffer getCorrBufferData(){
-        BufferViewModel bufferView = this.getBufferViewModel();
-        BufferModel buffer = bufferView.getBufferModel();
-        int size = this.getElementType().getNumComponents();
-        int count = this.getCount();
-        int type = this.getComponentType();
-        int offset = this.getByteOffset() + bufferView.getByteOffset();
-        int stride = this.getByteStride();
-        if(bufferView.getByteStride() != null) {
-            stride += bufferView.getByteStride();
-        }
-        int compSize = this.getComponentSizeInBytes();
-        int length = this.getCount() * size * compSize;
-        ByteBuffer bBuffer = buffer.getBufferData();
-        ByteBuffer tempbuf = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
-        byte[] byte2 = subBytes(bBuffer.array(),offset + 4,length);
-
-        Buffer retBuffer = null;
+    public Buffer getCorrBufferData()
+    {
+        BufferViewModel bufferView = getBufferViewModel();
+        ByteBuffer bufferData = getDirectBufferData(
+            bufferView.getBufferModel());
+        int elementSize = getElementSizeInBytes();
+        int stride = byteStride > 0 ? byteStride : elementSize;
+        int offset = bufferView.getByteOffset() + byteOffset;
+        int length = count * elementSize;
 
-        if (type == GLES20.GL_UNSIGNED_SHORT){
-            short[] ver = bytesToShort(byte2);
-            retBuffer = tempbuf.asShortBuffer();
-            ((ShortBuffer)retBuffer).put(ver);
-//            tempbuf.asShortBuffer().put(ver);
-        } else if (type == GLES20.GL_UNSIGNED_INT) {
-            int[] ver = bytesToInt(byte2);
-            retBuffer = tempbuf.asIntBuffer();
-            ((IntBuffer)retBuffer).put(ver);
-//            tempbuf.asIntBuffer().put(ver);
-        } else if (type == GLES20.GL_UNSIGNED_BYTE){
-            retBuffer = tempbuf;
-            ((ByteBuffer)retBuffer).put(byte2);
-//            tempbuf.put(byte2);
-        } else if (type == GLES20.GL_FLOAT){
-            float[] ver = byteToFloat(byte2);
-            retBuffer = tempbuf.asFloatBuffer();
-            ((FloatBuffer)retBuffer).put(ver);
-//            float[] ver = byteToFloat(byte2);
-//            tempbuf.asFloatBuffer().put(ver);
+        ByteBuffer view;
+        if (stride == elementSize || count <= 1)
+        {
+            view = slice(bufferData, offset, length);
+        }
+        else
+        {
+            view = pack(slice(bufferData, offset, 
+                (count - 1) * stride + elementSize), elementSize, stride);
         }
-//        tempbuf.position(0);
-        retBuffer.position(0);
-
-        return retBuffer;
-    }
-
-    private static float byte2float(byte[] b, int index) {
-        int l;
-        l = b[index + 0];
-        l &= 0xff;
-        l |= ((long) b[index + 1] << 8);
-        l &= 0xffff;
-        l |= ((long) b[index + 2] << 16);
-        l &= 0xffffff;
-        l |= ((long) b[index + 3] << 24);
-        return Float.intBitsToFloat(l);
-    }
 
-    private static short[] bytesToShort(byte[] bytes) {
-        if(bytes==null){
-            return null;
+        switch (componentType)
+        {
+            case GLES20.GL_FLOAT:
+                return view.asFloatBuffer();
+            case GLES20.GL_UNSIGNED_INT:
+                return view.asIntBuffer();
+            case GLES20.GL_SHORT:
+            case GLES20.GL_UNSIGNED_SHORT:
+                return view.asShortBuffer();
+            default:
+                return view;
         }
-        short[] shorts = new short[bytes.length/2];
-        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(shorts);
-        return shorts;
     }
 
-    private static int[] bytesToInt(byte[] bytes) {
-        if (bytes == null) {
-            return null;
+    /**
+     * Returns the data of the given buffer model as a direct buffer. If the
+     * data lives in the java heap (i.e. it was read from a binary glTF), it
+     * is copied once and set back into the model, so all the accessors of
+     * the buffer share the same direct memory
+     * 
+     * @param bufferModel The {@link BufferModel}
+     * @return The direct buffer
+     */
+    private static ByteBuffer getDirectBufferData(BufferModel bufferModel)
+    {
+        ByteBuffer bufferData = bufferModel.getBufferData();
+        if (bufferData.isDirect())
+        {
+            return bufferData;
+        }
+        synchronized (bufferModel)
+        {
+            bufferData = bufferModel.getBufferData();
+            if (bufferData.isDirect())
+            {
+                return bufferData;
+            }
+            ByteBuffer direct = ByteBuffer.allocateDirect(
+                bufferData.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+            // copy the whole buffer without moving the position of the
+            // source, which may still be used by other accessors
+            ByteBuffer source = bufferData.duplicate();
+            source.clear();
+            direct.put(source);
+            direct.position(0);
+            if (bufferModel instanceof DefaultBufferModel)
+            {
+                ((DefaultBufferModel) bufferModel).setBufferData(direct);
+            }
+            return direct;
         }
-        int[] ints = new int[bytes.length / 4];
-        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(ints);
-        return ints;
     }
 
-    private static float[] byteToFloat(byte[] input) {
-        float[] ret = new float[input.length/4];
-        for (int x = 0; x < input.length; x+=4) {
-//            ret[x/4] = ByteBuffer.wrap(input, x, 4).getFloat();
-            ret[x/4] = byte2float(input,x);
-        }
-        return ret;
+    /**
+     * Creates a view of the given range of the buffer, in the byte order
+     * of the glTF binary data (little endian)
+     * 
+     * @param byteBuffer The byte buffer
+     * @param offset The offset in bytes
+     * @param length The length in bytes
+     * @return The view
+     */
+    private static ByteBuffer slice(
+        ByteBuffer byteBuffer, int offset, int length)
+    {
+        ByteBuffer duplicate = byteBuffer.duplicate();
+        duplicate.limit(offset + length);
+        duplicate.position(offset);
+        return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
     }
 
-    private static byte[] subBytes(byte[] src, int offset, int count) {
-        byte[] bs = new byte[count];
-        for (int i=0;i<count; i++) bs[i] = src[i+offset];
-        return bs;
+    /**
+     * Copies interleaved elements into a new, tightly packed, buffer
+     * 
+     * @param source The source data, starting at the first element
+     * @param elementSize The size of each element, in bytes
+     * @param stride The distance between elements in the source, in bytes
+     * @return The packed buffer
+     */
+    private ByteBuffer pack(ByteBuffer source, int elementSize, int stride)
+    {
+        ByteBuffer packed = ByteBuffer.allocateDirect(count * elementSize)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++)
+        {
+            int position = i * stride;
+            source.limit(position + elementSize);
+            source.position(position);
+            packed.put(source);
+        }
+        packed.position(0);
+        return packed;
     }
     
 }
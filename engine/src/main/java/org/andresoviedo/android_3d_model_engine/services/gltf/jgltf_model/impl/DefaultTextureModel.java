@@ -60,6 +60,11 @@ public final class DefaultTextureModel extends AbstractNamedModelElement
      */
     private ImageModel imageModel;
     
+    /**
+     * The {@link ImageModel} of the KHR_texture_basisu extension
+     */
+    private ImageModel compressedImageModel;
+    
     /**
      * Creates a new instance
      * 
@@ -87,6 +92,16 @@ public final class DefaultTextureModel extends AbstractNamedModelElement
         this.imageModel = imageModel;
     }
     
+    /**
+     * Set the {@link ImageModel} of the KHR_texture_basisu extension
+     * 
+     * @param compressedImageModel The {@link ImageModel}
+     */
+    public void setCompressedImageModel(ImageModel compressedImageModel)
+    {
+        this.compressedImageModel = compressedImageModel;
+    }
+    
     @Override
     public Integer getMagFilter()
     {
@@ -116,4 +131,10 @@ public final class DefaultTextureModel extends AbstractNamedModelElement
     {
         return imageModel;
     }
+
+    @Override
+    public ImageModel getCompressedImageModel()
+    {
+        return compressedImageModel;
+    }
 }
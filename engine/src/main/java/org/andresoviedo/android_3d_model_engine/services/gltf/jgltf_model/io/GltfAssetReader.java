@@ -94,7 +94,11 @@ public final class GltfAssetReader
     }
     
     /**
-     * Read the {@link GltfAsset} from the given URI
+     * Read the {@link GltfAsset} from the given URI.<br>
+     * <br>
+     * If the URI refers to a local file, the file (and the external
+     * buffers that are local files as well) will be memory-mapped, so the
+     * binary data is not copied into the java heap.
      * 
      * @param uri The URI
      * @return The {@link GltfModel}
@@ -102,14 +106,11 @@ public final class GltfAssetReader
      */
     public GltfAsset read(URI uri) throws IOException
     {
-        try (InputStream inputStream = uri.toURL().openStream())
-        {
-            readWithoutReferences(inputStream);
-            URI baseUri = IO.getParent(uri);
-            GltfReferenceResolver.resolveAll(
-                gltfAsset.getReferences(), baseUri);
-            return gltfAsset;
-        }
+        readWithoutReferences(uri);
+        URI baseUri = IO.getParent(uri);
+        GltfReferenceResolver.resolveAll(
+            gltfAsset.getReferences(), baseUri);
+        return gltfAsset;
     }
     
     /**
@@ -127,6 +128,10 @@ public final class GltfAssetReader
      */
     public GltfAsset readWithoutReferences(URI uri) throws IOException
     {
+        if (IO.isFileUri(uri))
+        {
+            return read(RawGltfDataReader.read(IO.map(uri)));
+        }
         try (InputStream inputStream = uri.toURL().openStream())
         {
             readWithoutReferences(inputStream);
@@ -154,7 +159,18 @@ public final class GltfAssetReader
     public GltfAsset readWithoutReferences(InputStream inputStream) 
         throws IOException
     {
-        RawGltfData rawGltfData = RawGltfDataReader.read(inputStream);
+        return read(RawGltfDataReader.read(inputStream));
+    }
+    
+    /**
+     * Read the glTF asset from the given {@link RawGltfData}
+     * 
+     * @param rawGltfData The {@link RawGltfData}
+     * @return The {@link GltfAsset}
+     * @throws IOException If an IO error occurred
+     */
+    private GltfAsset read(RawGltfData rawGltfData) throws IOException
+    {
         ByteBuffer jsonData = rawGltfData.getJsonData();
         try (InputStream jsonInputStream =
             Buffers.createByteBufferInputStream(jsonData))
@@ -31,12 +31,16 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.Base64;
 
 /**
@@ -255,6 +259,46 @@ public class IO
     }
 
 
+    /**
+     * Returns whether the given URI refers to a local file, so that its
+     * data may be obtained with {@link #map(URI)}
+     * 
+     * @param uri The URI
+     * @return Whether the URI is a file URI
+     */
+    public static boolean isFileUri(URI uri)
+    {
+        return "file".equalsIgnoreCase(uri.getScheme());
+    }
+    
+    /**
+     * Map the file that is referred to by the given file URI into memory.
+     * The returned buffer is read-only, has little-endian byte order,
+     * and its contents are paged in by the operating system on demand,
+     * so they do not occupy space in the java heap.
+     * 
+     * @param uri The file URI
+     * @return The mapped byte buffer
+     * @throws IOException If the file can not be mapped
+     */
+    public static ByteBuffer map(URI uri) throws IOException
+    {
+        // java.nio.file is not available before Android 8, so the channel
+        // is obtained from a RandomAccessFile
+        try (RandomAccessFile file = new RandomAccessFile(new File(uri), "r");
+            FileChannel fileChannel = file.getChannel())
+        {
+            ByteBuffer byteBuffer = fileChannel.map(
+                FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+            return byteBuffer;
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException("Invalid file URI: " + uri, e);
+        }
+    }
+    
     /**
      * Read the base 64 encoded data from the given data URI string.
      * The data is assumed to start after the <code>base64,</code> part
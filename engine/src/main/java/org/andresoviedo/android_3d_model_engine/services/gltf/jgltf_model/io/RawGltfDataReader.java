@@ -77,10 +77,23 @@ class RawGltfDataReader
     public static RawGltfData read(InputStream inputStream) throws IOException
     {
         byte rawData[] = IO.readStream(inputStream);
-        if (rawData.length >= 8)
+        return read(ByteBuffer.wrap(rawData));
+    }
+    
+    /**
+     * Read the raw glTF data from the given buffer. The returned JSON data
+     * and binary data will be slices of the given buffer, so if the buffer
+     * is memory-mapped, the binary data will not be copied into the heap.
+     * 
+     * @param data The glTF data
+     * @return The {@link RawGltfData}
+     * @throws IOException If the data is not valid
+     */
+    public static RawGltfData read(ByteBuffer data) throws IOException
+    {
+        data = Buffers.createSlice(data).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.capacity() >= 8)
         {
-            ByteBuffer data = 
-                ByteBuffer.wrap(rawData).order(ByteOrder.LITTLE_ENDIAN);
             IntBuffer intData = data.asIntBuffer();
             int magic = intData.get(0);
             if (magic == MAGIC_BINARY_GLTF_HEADER)
@@ -98,8 +111,7 @@ class RawGltfDataReader
                     "Unknown binary glTF version: " + version);
             }
         }
-        ByteBuffer jsonData = Buffers.create(rawData);
-        return new RawGltfData(jsonData, null);
+        return new RawGltfData(data, null);
     }
     
     /**
@@ -50,7 +50,8 @@ public class UriResolvers
      * base URI, and returns a byte buffer containing the data from 
      * the resulting URI.<br>
      * <br>
-     * The given URI strings may either be standard URI or data URI.<br>
+     * The given URI strings may either be standard URI or data URI.
+     * URIs of local files will be memory-mapped.<br>
      * <br>
      * If the returned function cannot read the data, then it will print a
      * warning and return <code>null</code>.
@@ -81,7 +82,30 @@ public class UriResolvers
                 }
             }
         };
-        return reading(inputStreamFunction);
+        Function<String, ByteBuffer> readingFunction = 
+            reading(inputStreamFunction);
+        return new Function<String, ByteBuffer>()
+        {
+            @Override
+            public ByteBuffer apply(String uriString)
+            {
+                // Local files are mapped instead of being read into the heap
+                try
+                {
+                    URI absoluteUri = IO.makeAbsolute(baseUri, uriString);
+                    if (IO.isFileUri(absoluteUri))
+                    {
+                        return IO.map(absoluteUri);
+                    }
+                }
+                catch (IOException e)
+                {
+                    logger.warning("Could not map URI "
+                        + uriString + ":  " + e.getMessage());
+                }
+                return readingFunction.apply(uriString);
+            }
+        };
     }
     
     /**
@@ -1047,9 +1047,26 @@ public final class GltfModelV2 implements GltfModel
             DefaultTextureModel textureModel = textureModels.get(i);
             textureModel.setName(texture.getName());
             
+            // the source is optional when an extension provides the image
             Integer imageIndex = texture.getSource();
-            DefaultImageModel imageModel = imageModels.get(imageIndex);
-            textureModel.setImageModel(imageModel);
+            if (imageIndex != null)
+            {
+                DefaultImageModel imageModel = imageModels.get(imageIndex);
+                textureModel.setImageModel(imageModel);
+            }
+            
+            Map<String, Object> extensions = texture.getExtensions();
+            Object basisu = extensions == null ? null : 
+                extensions.get("KHR_texture_basisu");
+            if (basisu instanceof Map)
+            {
+                Object source = ((Map<?, ?>) basisu).get("source");
+                if (source instanceof Number)
+                {
+                    textureModel.setCompressedImageModel(
+                        imageModels.get(((Number) source).intValue()));
+                }
+            }
         }
     }
     
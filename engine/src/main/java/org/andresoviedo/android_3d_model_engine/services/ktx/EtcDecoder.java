@@ -0,0 +1,244 @@
+package org.andresoviedo.android_3d_model_engine.services.ktx;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Software decoder of ETC1 and ETC2 (RGB8 and RGBA8 with EAC alpha) blocks, for the devices that can't sample the
+ * format (i.e. ETC2 on OpenGL ES 2.0 devices). Each 4x4 block is 64 bits, read as big endian, in one of the 5
+ * modes of ETC2: individual, differential, T, H and planar. ETC1 is the individual and differential modes only.
+ * <p>
+ * ETC1和ETC2块的软件解码器，用于无法采样该格式的设备。每个4x4块为64位（大端序），使用ETC2的5种模式之一。
+ *
+ * @author andresoviedo
+ */
+public final class EtcDecoder {
+
+    // intensity modifiers, by table and pixel index (msb << 1 | lsb) 亮度修正表
+    private static final int[][] MODIFIERS = {{2, 8, -2, -8}, {5, 17, -5, -17}, {9, 29, -9, -29},
+            {13, 42, -13, -42}, {18, 60, -18, -60}, {24, 80, -24, -80}, {33, 106, -33, -106}, {47, 183, -47, -183}};
+
+    // distances of the T and H modes T和H模式的距离
+    private static final int[] DISTANCES = {3, 6, 11, 16, 23, 32, 41, 64};
+
+    // alpha modifiers of EAC EAC的alpha修正表
+    private static final int[][] ALPHA_MODIFIERS = {
+            {-3, -6, -9, -15, 2, 5, 8, 14}, {-3, -7, -10, -13, 2, 6, 9, 12},
+            {-2, -5, -8, -13, 1, 4, 7, 12}, {-2, -4, -6, -13, 1, 3, 5, 12},
+            {-3, -6, -8, -12, 2, 5, 7, 11}, {-3, -7, -9, -11, 2, 6, 8, 10},
+            {-4, -7, -8, -11, 3, 6, 7, 10}, {-3, -5, -8, -11, 2, 4, 7, 10},
+            {-2, -6, -8, -10, 1, 5, 7, 9}, {-2, -5, -8, -10, 1, 4, 7, 9},
+            {-2, -4, -8, -10, 1, 3, 7, 9}, {-2, -5, -7, -10, 1, 4, 6, 9},
+            {-3, -4, -7, -10, 2, 3, 6, 9}, {-1, -2, -3, -10, 0, 1, 2, 9},
+            {-4, -6, -8, -9, 3, 5, 7, 8}, {-3, -5, -7, -9, 2, 4, 6, 8}};
+
+    private EtcDecoder() {
+    }
+
+    /**
+     * @return whether the format can be decoded 是否可以解码该格式
+     */
+    public static boolean canDecode(int format) {
+        switch (format) {
+            case KtxTexture.GL_ETC1_RGB8_OES:
+            case KtxTexture.GL_COMPRESSED_RGB8_ETC2:
+            case KtxTexture.GL_COMPRESSED_SRGB8_ETC2:
+            case KtxTexture.GL_COMPRESSED_RGBA8_ETC2_EAC:
+            case KtxTexture.GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Decode a level. sRGB formats are decoded as they are, without conversion to linear.
+     * 解码一个级别。sRGB格式按原样解码
+     *
+     * @param format the format, see {@link #canDecode(int)}
+     * @param data   the blocks, from position 0 块数据
+     * @param width  width of the level in pixels
+     * @param height height of the level in pixels
+     * @param rgba   where to write the pixels, rows from the top, 4 bytes per pixel 写入像素的位置
+     */
+    public static void decode(int format, ByteBuffer data, int width, int height, ByteBuffer rgba) {
+        if (!canDecode(format)) {
+            throw new IllegalArgumentException("Format not supported: 0x" + Integer.toHexString(format));
+        }
+        ByteBuffer blocks = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+        boolean alpha = KtxTexture.getBlockBytes(format) == 16;
+        int[] pixels = new int[16];
+        int offset = 0;
+        for (int by = 0; by < height; by += 4) {
+            for (int bx = 0; bx < width; bx += 4) {
+                long alphaBlock = 0;
+                if (alpha) {
+                    alphaBlock = blocks.getLong(offset);
+                    offset += 8;
+                }
+                decodeColor(blocks.getLong(offset), pixels);
+                offset += 8;
+                for (int i = 0; i < 16; i++) {
+                    int x = bx + (i >> 2);
+                    int y = by + (i & 3);
+                    if (x >= width || y >= height) {
+                        continue;
+                    }
+                    int p = (y * width + x) * 4;
+                    int color = pixels[i];
+                    rgba.put(p, (byte) (color >> 16));
+                    rgba.put(p + 1, (byte) (color >> 8));
+                    rgba.put(p + 2, (byte) color);
+                    rgba.put(p + 3, alpha ? (byte) decodeAlpha(alphaBlock, i) : (byte) 255);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode the colors of a block, indexed by x * 4 + y 解码块的颜色
+     */
+    private static void decodeColor(long block, int[] pixels) {
+        int high = (int) (block >>> 32);
+        int indices = (int) block;
+        if ((high & 2) == 0) {
+            // individual mode: two 4-bit colors 独立模式
+            int c1 = rgb(extend4(bits(high, 28, 4)), extend4(bits(high, 20, 4)), extend4(bits(high, 12, 4)));
+            int c2 = rgb(extend4(bits(high, 24, 4)), extend4(bits(high, 16, 4)), extend4(bits(high, 8, 4)));
+            decodeSubblocks(high, indices, c1, c2, pixels);
+            return;
+        }
+        int r = bits(high, 27, 5);
+        int g = bits(high, 19, 5);
+        int b = bits(high, 11, 5);
+        int r2 = r + signed3(bits(high, 24, 3));
+        int g2 = g + signed3(bits(high, 16, 3));
+        int b2 = b + signed3(bits(high, 8, 3));
+        if (r2 < 0 || r2 > 31) {
+            decodeT(high, indices, pixels);
+        } else if (g2 < 0 || g2 > 31) {
+            decodeH(high, indices, pixels);
+        } else if (b2 < 0 || b2 > 31) {
+            decodePlanar(block, pixels);
+        } else {
+            // differential mode: a 5-bit color and a 3-bit difference 差分模式
+            int c1 = rgb(extend5(r), extend5(g), extend5(b));
+            int c2 = rgb(extend5(r2), extend5(g2), extend5(b2));
+            decodeSubblocks(high, indices, c1, c2, pixels);
+        }
+    }
+
+    private static void decodeSubblocks(int high, int indices, int c1, int c2, int[] pixels) {
+        int[] table1 = MODIFIERS[bits(high, 5, 3)];
+        int[] table2 = MODIFIERS[bits(high, 2, 3)];
+        boolean flip = (high & 1) != 0;
+        for (int i = 0; i < 16; i++) {
+            int x = i >> 2;
+            int y = i & 3;
+            boolean first = flip ? y < 2 : x < 2;
+            int modifier = (first ? table1 : table2)[index(indices, i)];
+            pixels[i] = add(first ? c1 : c2, modifier);
+        }
+    }
+
+    private static void decodeT(int high, int indices, int[] pixels) {
+        int c1 = rgb(extend4(bits(high, 27, 2) << 2 | bits(high, 24, 2)), extend4(bits(high, 20, 4)),
+                extend4(bits(high, 16, 4)));
+        int c2 = rgb(extend4(bits(high, 12, 4)), extend4(bits(high, 8, 4)), extend4(bits(high, 4, 4)));
+        int d = DISTANCES[bits(high, 2, 2) << 1 | (high & 1)];
+        int[] paint = {c1, add(c2, d), c2, add(c2, -d)};
+        for (int i = 0; i < 16; i++) {
+            pixels[i] = paint[index(indices, i)];
+        }
+    }
+
+    private static void decodeH(int high, int indices, int[] pixels) {
+        int r1 = bits(high, 27, 4);
+        int g1 = bits(high, 24, 3) << 1 | bits(high, 20, 1);
+        int b1 = bits(high, 19, 1) << 3 | bits(high, 15, 3);
+        int r2 = bits(high, 11, 4);
+        int g2 = bits(high, 7, 4);
+        int b2 = bits(high, 3, 4);
+        int order = (r1 << 8 | g1 << 4 | b1) >= (r2 << 8 | g2 << 4 | b2) ? 1 : 0;
+        int d = DISTANCES[bits(high, 2, 1) << 2 | (high & 1) << 1 | order];
+        int c1 = rgb(extend4(r1), extend4(g1), extend4(b1));
+        int c2 = rgb(extend4(r2), extend4(g2), extend4(b2));
+        int[] paint = {add(c1, d), add(c1, -d), add(c2, d), add(c2, -d)};
+        for (int i = 0; i < 16; i++) {
+            pixels[i] = paint[index(indices, i)];
+        }
+    }
+
+    private static void decodePlanar(long block, int[] pixels) {
+        // origin, horizontal and vertical colors 原点、水平和垂直颜色
+        int ro = extend6(bits(block, 57, 6));
+        int go = extend7(bits(block, 56, 1) << 6 | bits(block, 49, 6));
+        int bo = extend6(bits(block, 48, 1) << 5 | bits(block, 43, 2) << 3 | bits(block, 39, 3));
+        int rh = extend6(bits(block, 34, 5) << 1 | bits(block, 32, 1));
+        int gh = extend7(bits(block, 25, 7));
+        int bh = extend6(bits(block, 19, 6));
+        int rv = extend6(bits(block, 13, 6));
+        int gv = extend7(bits(block, 6, 7));
+        int bv = extend6(bits(block, 0, 6));
+        for (int i = 0; i < 16; i++) {
+            int x = i >> 2;
+            int y = i & 3;
+            pixels[i] = rgb(clamp((x * (rh - ro) + y * (rv - ro) + 4 * ro + 2) >> 2),
+                    clamp((x * (gh - go) + y * (gv - go) + 4 * go + 2) >> 2),
+                    clamp((x * (bh - bo) + y * (bv - bo) + 4 * bo + 2) >> 2));
+        }
+    }
+
+    private static int decodeAlpha(long block, int i) {
+        int base = (int) (block >>> 56) & 0xFF;
+        int multiplier = (int) (block >>> 52) & 0xF;
+        int[] table = ALPHA_MODIFIERS[(int) (block >>> 48) & 0xF];
+        int index = (int) (block >>> (45 - 3 * i)) & 7;
+        return clamp(base + table[index] * multiplier);
+    }
+
+    private static int index(int indices, int i) {
+        return (indices >>> (16 + i) & 1) << 1 | (indices >>> i & 1);
+    }
+
+    private static int bits(int value, int shift, int count) {
+        return (value >>> shift) & ((1 << count) - 1);
+    }
+
+    private static int bits(long value, int shift, int count) {
+        return (int) (value >>> shift) & ((1 << count) - 1);
+    }
+
+    private static int signed3(int value) {
+        return value >= 4 ? value - 8 : value;
+    }
+
+    private static int extend4(int value) {
+        return value << 4 | value;
+    }
+
+    private static int extend5(int value) {
+        return value << 3 | value >> 2;
+    }
+
+    private static int extend6(int value) {
+        return value << 2 | value >> 4;
+    }
+
+    private static int extend7(int value) {
+        return value << 1 | value >> 6;
+    }
+
+    private static int rgb(int r, int g, int b) {
+        return r << 16 | g << 8 | b;
+    }
+
+    private static int add(int color, int modifier) {
+        return rgb(clamp((color >> 16 & 0xFF) + modifier), clamp((color >> 8 & 0xFF) + modifier),
+                clamp((color & 0xFF) + modifier));
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+}
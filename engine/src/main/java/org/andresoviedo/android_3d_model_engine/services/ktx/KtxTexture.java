@@ -0,0 +1,411 @@
+package org.andresoviedo.android_3d_model_engine.services.ktx;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Texture read from a KTX (1.1) or KTX2 container, whose mip levels are compressed in a GPU format (ETC1, ETC2,
+ * EAC or ASTC) and can be uploaded as they are with glCompressedTexImage2D, so they take 4 to 8 times less memory
+ * than the decoded RGBA pixels.
+ * <p>
+ * Only 2D textures are supported: no cube maps, arrays or 3D textures. KTX2 levels may be supercompressed with
+ * zlib. Basis Universal payloads (BasisLZ or UASTC, as used by KHR_texture_basisu) and Zstandard supercompression
+ * are not supported, because they need a transcoder. This class doesn't depend on Android or OpenGL.
+ * <p>
+ * 从KTX或KTX2容器读取的纹理，其mip级别以GPU格式（ETC1、ETC2、EAC或ASTC）压缩，可以直接用glCompressedTexImage2D上传，
+ * 内存比解码后的RGBA像素少4到8倍。只支持2D纹理。KTX2级别可以用zlib超压缩。不支持Basis Universal和Zstandard。
+ *
+ * @author andresoviedo
+ */
+public final class KtxTexture {
+
+    // OpenGL compressed formats OpenGL压缩格式
+    public static final int GL_ETC1_RGB8_OES = 0x8D64;
+    public static final int GL_COMPRESSED_R11_EAC = 0x9270;
+    public static final int GL_COMPRESSED_SIGNED_R11_EAC = 0x9271;
+    public static final int GL_COMPRESSED_RG11_EAC = 0x9272;
+    public static final int GL_COMPRESSED_SIGNED_RG11_EAC = 0x9273;
+    public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+    public static final int GL_COMPRESSED_SRGB8_ETC2 = 0x9275;
+    public static final int GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2 = 0x9276;
+    public static final int GL_COMPRESSED_SRGB8_PUNCHTHROUGH_ALPHA1_ETC2 = 0x9277;
+    public static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+    public static final int GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC = 0x9279;
+    // first of the 14 ASTC block sizes, from 4x4 to 12x12 14种ASTC块大小中的第一种
+    public static final int GL_COMPRESSED_RGBA_ASTC_4x4_KHR = 0x93B0;
+    public static final int GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4_KHR = 0x93D0;
+
+    private static final int[][] ASTC_BLOCKS = {{4, 4}, {5, 4}, {5, 5}, {6, 5}, {6, 6}, {8, 5}, {8, 6}, {8, 8},
+            {10, 5}, {10, 6}, {10, 8}, {10, 10}, {12, 10}, {12, 12}};
+
+    // Vulkan formats of KTX2 KTX2的Vulkan格式
+    private static final int VK_FORMAT_UNDEFINED = 0;
+    private static final int VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK = 147;
+    private static final int VK_FORMAT_EAC_R11G11_SNORM_BLOCK = 156;
+    private static final int VK_FORMAT_ASTC_4x4_UNORM_BLOCK = 157;
+    private static final int VK_FORMAT_ASTC_12x12_SRGB_BLOCK = 184;
+
+    private static final int SUPERCOMPRESSION_NONE = 0;
+    private static final int SUPERCOMPRESSION_ZLIB = 3;
+
+    private static final byte[] KTX1_IDENTIFIER = {(byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r',
+            '\n', 0x1A, '\n'};
+    private static final byte[] KTX2_IDENTIFIER = {(byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r',
+            '\n', 0x1A, '\n'};
+
+    private final int format;
+    private final int width;
+    private final int height;
+    // the levels, largest first 各级别，最大的在前
+    private final ByteBuffer[] levels;
+
+    private KtxTexture(int format, int width, int height, ByteBuffer[] levels) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+    }
+
+    /**
+     * @return whether the data starts with the identifier of a KTX or KTX2 file 数据是否以KTX或KTX2文件标识符开头
+     */
+    public static boolean isKtx(byte[] data) {
+        return startsWith(data, KTX1_IDENTIFIER) || startsWith(data, KTX2_IDENTIFIER);
+    }
+
+    /**
+     * Read the format from the header, without reading the levels
+     * 从文件头读取格式，不读取级别
+     *
+     * @return the OpenGL compressed format, or 0 if the file is not a supported KTX or KTX2 file
+     */
+    public static int readFormat(byte[] data) {
+        if (startsWith(data, KTX1_IDENTIFIER) && data.length >= 64) {
+            ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(12) == 0x01020304) {
+                buffer.order(ByteOrder.BIG_ENDIAN);
+            }
+            int format = buffer.getInt(28);
+            return buffer.getInt(16) == 0 && getBlockBytes(format) != 0 ? format : 0;
+        }
+        if (startsWith(data, KTX2_IDENTIFIER) && data.length >= 80) {
+            ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            int supercompression = buffer.getInt(44);
+            if (supercompression != SUPERCOMPRESSION_NONE && supercompression != SUPERCOMPRESSION_ZLIB) {
+                return 0;
+            }
+            return toGLFormat(buffer.getInt(12));
+        }
+        return 0;
+    }
+
+    /**
+     * Read the container. The levels are not copied, except when they have to be inflated.
+     * 读取容器。除非需要解压，否则不复制级别数据
+     *
+     * @param data the KTX or KTX2 file
+     * @return the texture
+     * @throws IOException if the file is malformed or its format is not supported 如果文件格式错误或不受支持
+     */
+    public static KtxTexture parse(byte[] data) throws IOException {
+        if (startsWith(data, KTX1_IDENTIFIER)) {
+            return parseKtx1(data);
+        }
+        if (startsWith(data, KTX2_IDENTIFIER)) {
+            return parseKtx2(data);
+        }
+        throw new IOException("Not a KTX file");
+    }
+
+    private static KtxTexture parseKtx1(byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        check(data.length >= 64, "Truncated KTX header");
+        int endianness = buffer.getInt(12);
+        if (endianness == 0x01020304) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            check(endianness == 0x04030201, "Bad KTX endianness");
+        }
+        int glType = buffer.getInt(16);
+        int glInternalFormat = buffer.getInt(28);
+        int width = buffer.getInt(36);
+        int height = buffer.getInt(40);
+        int depth = buffer.getInt(44);
+        int arrayElements = buffer.getInt(48);
+        int faces = buffer.getInt(52);
+        int levelCount = Math.max(1, buffer.getInt(56));
+        int keyValueBytes = buffer.getInt(60);
+        check(glType == 0, "KTX texture is not compressed");
+        checkFormat(glInternalFormat);
+        check(depth <= 1 && arrayElements == 0 && faces == 1, "Only 2D KTX textures are supported");
+        checkSize(width, height, levelCount);
+
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        long position = 64L + (keyValueBytes & 0xFFFFFFFFL);
+        for (int i = 0; i < levelCount; i++) {
+            check(position + 4 <= data.length, "Truncated KTX level " + i);
+            int size = buffer.getInt((int) position);
+            position += 4;
+            check(size >= 0 && position + size <= data.length, "Truncated KTX level " + i);
+            levels[i] = slice(data, (int) position, size);
+            // levels are aligned to 4 bytes 级别按4字节对齐
+            position += (size + 3) & ~3;
+        }
+        return validate(new KtxTexture(glInternalFormat, width, height, levels));
+    }
+
+    private static KtxTexture parseKtx2(byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        check(data.length >= 80, "Truncated KTX2 header");
+        int vkFormat = buffer.getInt(12);
+        int width = buffer.getInt(20);
+        int height = buffer.getInt(24);
+        int depth = buffer.getInt(28);
+        int layers = buffer.getInt(32);
+        int faces = buffer.getInt(36);
+        int levelCount = Math.max(1, buffer.getInt(40));
+        int supercompression = buffer.getInt(44);
+        check(vkFormat != VK_FORMAT_UNDEFINED, "Basis Universal KTX2 textures are not supported");
+        check(supercompression == SUPERCOMPRESSION_NONE || supercompression == SUPERCOMPRESSION_ZLIB,
+                "KTX2 supercompression not supported: " + supercompression);
+        check(depth <= 1 && layers <= 1 && faces == 1, "Only 2D KTX2 textures are supported");
+        int format = toGLFormat(vkFormat);
+        check(format != 0, "KTX2 format not supported: " + vkFormat);
+        checkSize(width, height, levelCount);
+
+        // level index: offset, length and uncompressed length of every level 级别索引
+        check(80 + levelCount * 24L <= data.length, "Truncated KTX2 level index");
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            long offset = buffer.getLong(80 + i * 24);
+            long length = buffer.getLong(88 + i * 24);
+            long uncompressedLength = buffer.getLong(96 + i * 24);
+            check(offset >= 0 && length >= 0 && offset + length <= data.length, "Truncated KTX2 level " + i);
+            if (supercompression == SUPERCOMPRESSION_ZLIB) {
+                // the length is checked before allocating the level, as it's read from the file
+                // 长度从文件读取，因此在分配级别之前检查
+                int expected = getLevelSize(format, Math.max(1, width >> i), Math.max(1, height >> i));
+                check(expected > 0 && uncompressedLength == expected, "Bad size of level " + i + ": "
+                        + uncompressedLength + ", expected: " + expected);
+                levels[i] = inflate(data, (int) offset, (int) length, expected);
+            } else {
+                levels[i] = slice(data, (int) offset, (int) length);
+            }
+        }
+        return validate(new KtxTexture(format, width, height, levels));
+    }
+
+    private static ByteBuffer inflate(byte[] data, int offset, int length, int uncompressedLength)
+            throws IOException {
+        byte[] level = new byte[uncompressedLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, length);
+            int read = 0;
+            while (read < level.length && !inflater.finished()) {
+                int count = inflater.inflate(level, read, level.length - read);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += count;
+            }
+            check(read == level.length, "Truncated KTX2 zlib level");
+        } catch (DataFormatException ex) {
+            throw new IOException("Bad KTX2 zlib level", ex);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(level);
+    }
+
+    /**
+     * Check that every level has the size of its blocks 检查每个级别的大小与其块一致
+     */
+    private static KtxTexture validate(KtxTexture texture) throws IOException {
+        for (int i = 0; i < texture.levels.length; i++) {
+            int expected = getLevelSize(texture.format, texture.getLevelWidth(i), texture.getLevelHeight(i));
+            check(texture.levels[i].remaining() == expected, "Bad size of level " + i + ": "
+                    + texture.levels[i].remaining() + ", expected: " + expected);
+        }
+        return texture;
+    }
+
+    /**
+     * @return the OpenGL compressed format 的OpenGL压缩格式
+     */
+    public int getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public int getLevelWidth(int level) {
+        return Math.max(1, width >> level);
+    }
+
+    public int getLevelHeight(int level) {
+        return Math.max(1, height >> level);
+    }
+
+    /**
+     * @return the compressed blocks of the level, from position 0 to the limit 该级别的压缩块
+     */
+    public ByteBuffer getLevel(int level) {
+        return levels[level].duplicate();
+    }
+
+    /**
+     * @return size of all the levels from the specified one, in bytes 从指定级别开始所有级别的大小（字节）
+     */
+    public long getSize(int baseLevel) {
+        long size = 0;
+        for (int i = baseLevel; i < levels.length; i++) {
+            size += levels[i].remaining();
+        }
+        return size;
+    }
+
+    /**
+     * Choose the first level to upload, skipping the ones bigger than the maximum size (i.e. the device limit, or
+     * a lower one to save memory). If all the levels are bigger, the smallest one is chosen.
+     * 选择要上传的第一个级别，跳过大于最大尺寸的级别
+     *
+     * @param maxSize maximum width and height, or 0 for no limit 最大宽度和高度，0表示无限制
+     * @return the base level 基础级别
+     */
+    public int selectBaseLevel(int maxSize) {
+        if (maxSize <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < levels.length; i++) {
+            if (getLevelWidth(i) <= maxSize && getLevelHeight(i) <= maxSize) {
+                return i;
+            }
+        }
+        return levels.length - 1;
+    }
+
+    /**
+     * @return width of the blocks of the format in pixels, or 0 if the format is not known 格式块的宽度
+     */
+    public static int getBlockWidth(int format) {
+        if (isAstc(format)) {
+            return ASTC_BLOCKS[(format & 0xF)][0];
+        }
+        return getBlockBytes(format) != 0 ? 4 : 0;
+    }
+
+    public static int getBlockHeight(int format) {
+        if (isAstc(format)) {
+            return ASTC_BLOCKS[(format & 0xF)][1];
+        }
+        return getBlockBytes(format) != 0 ? 4 : 0;
+    }
+
+    /**
+     * @return bytes of every block of the format, or 0 if the format is not known 格式每个块的字节数
+     */
+    public static int getBlockBytes(int format) {
+        switch (format) {
+            case GL_ETC1_RGB8_OES:
+            case GL_COMPRESSED_R11_EAC:
+            case GL_COMPRESSED_SIGNED_R11_EAC:
+            case GL_COMPRESSED_RGB8_ETC2:
+            case GL_COMPRESSED_SRGB8_ETC2:
+            case GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2:
+            case GL_COMPRESSED_SRGB8_PUNCHTHROUGH_ALPHA1_ETC2:
+                return 8;
+            case GL_COMPRESSED_RG11_EAC:
+            case GL_COMPRESSED_SIGNED_RG11_EAC:
+            case GL_COMPRESSED_RGBA8_ETC2_EAC:
+            case GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC:
+                return 16;
+            default:
+                return isAstc(format) ? 16 : 0;
+        }
+    }
+
+    /**
+     * @return bytes of a level of the format 该格式一个级别的字节数
+     */
+    public static int getLevelSize(int format, int width, int height) {
+        int blockWidth = getBlockWidth(format);
+        int blockHeight = getBlockHeight(format);
+        return ((width + blockWidth - 1) / blockWidth) * ((height + blockHeight - 1) / blockHeight)
+                * getBlockBytes(format);
+    }
+
+    private static boolean isAstc(int format) {
+        return (format >= GL_COMPRESSED_RGBA_ASTC_4x4_KHR && format < GL_COMPRESSED_RGBA_ASTC_4x4_KHR + 14)
+                || (format >= GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4_KHR
+                && format < GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4_KHR + 14);
+    }
+
+    /**
+     * @return the OpenGL format of the Vulkan format, or 0 if it's not supported Vulkan格式对应的OpenGL格式
+     */
+    static int toGLFormat(int vkFormat) {
+        if (vkFormat >= VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK && vkFormat <= VK_FORMAT_EAC_R11G11_SNORM_BLOCK) {
+            // ETC2 RGB, RGB A1, RGBA and EAC R11, RG11, in pairs unorm/srgb or unorm/snorm
+            // ETC2和EAC格式，成对排列
+            int i = vkFormat - VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK;
+            return i < 6 ? GL_COMPRESSED_RGB8_ETC2 + i : GL_COMPRESSED_R11_EAC + (i - 6);
+        }
+        if (vkFormat >= VK_FORMAT_ASTC_4x4_UNORM_BLOCK && vkFormat <= VK_FORMAT_ASTC_12x12_SRGB_BLOCK) {
+            int i = vkFormat - VK_FORMAT_ASTC_4x4_UNORM_BLOCK;
+            return (i % 2 == 0 ? GL_COMPRESSED_RGBA_ASTC_4x4_KHR : GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4_KHR) + i / 2;
+        }
+        return 0;
+    }
+
+    private static void checkFormat(int format) throws IOException {
+        check(getBlockBytes(format) != 0, "KTX format not supported: 0x" + Integer.toHexString(format));
+    }
+
+    private static void checkSize(int width, int height, int levelCount) throws IOException {
+        check(width > 0 && height > 0 && width <= 1 << 16 && height <= 1 << 16, "Bad KTX size: " + width + "x"
+                + height);
+        check(levelCount <= 17, "Bad KTX level count: " + levelCount);
+    }
+
+    private static ByteBuffer slice(byte[] data, int offset, int length) {
+        return ByteBuffer.wrap(data, offset, length).slice();
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        if (data == null || data.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void check(boolean condition, String message) throws IOException {
+        if (!condition) {
+            throw new IOException(message);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "KtxTexture{format=0x" + Integer.toHexString(format) + ", size=" + width + "x" + height
+                + ", levels=" + levels.length + "}";
+    }
+}
@@ -1,10 +1,10 @@
 package org.andresoviedo.android_3d_model_engine.services.stl;
 
-import android.app.Activity;
 import android.net.Uri;
 import android.opengl.GLES20;
 import android.util.Log;
 
+import org.andresoviedo.android_3d_model_engine.model.GeometryStream;
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
 import org.andresoviedo.android_3d_model_engine.services.LoaderTask;
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
@@ -16,6 +16,7 @@ import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 /**
  * + STL loader supported by the org.j3d STL parser
@@ -27,8 +28,8 @@ public final class STLLoaderTask extends LoaderTask {
 
     private STLFileReader stlFileReader;
 
-    public STLLoaderTask(Activity parent, Uri uri, Callback callback) {
-        super(parent, uri, callback);
+    public STLLoaderTask(Uri uri, Callback callback) {
+        super(uri, callback);
     }
 
     @Override
@@ -59,6 +60,10 @@ public final class STLLoaderTask extends LoaderTask {
             data3D.setFaces(new WavefrontLoader.Faces(totalFaces));
         }
         data3D.setId(uri.toString());
+
+        // the facets are drawn as they are parsed
+        // 面在解析时即被绘制
+        data3D.setGeometryStream(new GeometryStream(totalFaces * 3));
         return Collections.singletonList(data3D);
     }
 
@@ -79,6 +84,8 @@ public final class STLLoaderTask extends LoaderTask {
             WavefrontLoader.ModelDimensions modelDimensions = data.getDimensions();
 
             int totalFaces = stlFileReader.getNumOfFacets()[0];
+            GeometryStream stream = data.getGeometryStream();
+            publishPartial(datas);
             boolean first = true;
             while (stlFileReader.getNextFacet(normal, vertices) && counter++ < totalFaces) {
                 normalsBuffer.put(normalCounter++, (float) normal[0]);
@@ -109,10 +116,23 @@ public final class STLLoaderTask extends LoaderTask {
                 modelDimensions.update((float) vertices[0][0], (float) vertices[0][1], (float) vertices[0][2]);
                 modelDimensions.update((float) vertices[1][0], (float) vertices[1][1], (float) vertices[1][2]);
                 modelDimensions.update((float) vertices[2][0], (float) vertices[2][1], (float) vertices[2][2]);
+
+                // publish the facets parsed so far, centered with the dimensions known so far
+                // 发布目前解析的面，用目前已知的尺寸居中
+                if (counter % GeometryStream.BATCH_TRIANGLES == 0) {
+                    if (isCancelled()) {
+                        throw new CancellationException("Cancelled at face '" + counter + "'");
+                    }
+                    // the object is being drawn, so the transform is applied by the OpenGL thread
+                    // 对象正在绘制，变换由OpenGL线程应用
+                    stream.publish(vertexCounter / 3, getScale(modelDimensions), getPosition(modelDimensions));
+                }
             }
 
+            // the bounds calculated with the partial model, if any, are reset once the stream is complete
+            // 用部分模型计算的边界在流完成后重置
             Log.i("STLLoaderTask", "Building 3D object...");
-            data.centerAndScale(5, new float[]{0, 0, 0});
+            stream.finish(getScale(modelDimensions), getPosition(modelDimensions));
 
         } catch (Exception e) {
             Log.e("STLLoaderTask", "Face '" + counter + "'" + e.getMessage(), e);
@@ -126,6 +146,23 @@ public final class STLLoaderTask extends LoaderTask {
         }
     }
 
+    /**
+     * @return the scale to fit the model in a size 5 cube, as {@link Object3DData#centerAndScale(float, float[])}
+     */
+    private static float[] getScale(WavefrontLoader.ModelDimensions modelDimensions) {
+        float largest = modelDimensions.getLargest();
+        float scale = largest != 0.0f ? 5 / largest : 5;
+        return new float[]{scale, scale, scale};
+    }
+
+    /**
+     * @return the position to center the model, as {@link Object3DData#centerAndScale(float, float[])}
+     */
+    private static float[] getPosition(WavefrontLoader.ModelDimensions modelDimensions) {
+        WavefrontLoader.Tuple3 center = modelDimensions.getCenter();
+        return new float[]{-center.getX(), -center.getY(), -center.getZ()};
+    }
+
     private static ByteBuffer createNativeByteBuffer(int length) {
         // initialize vertex byte buffer for shape coordinates
         // 初始化形状坐标的顶点字节缓冲区
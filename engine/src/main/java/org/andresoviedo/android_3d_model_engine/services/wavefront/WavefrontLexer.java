@@ -0,0 +1,668 @@
+package org.andresoviedo.android_3d_model_engine.services.wavefront;
+
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader.ModelDimensions;
+import org.andresoviedo.util.collections.FloatArrayList;
+import org.andresoviedo.util.collections.IntArrayList;
+import org.andresoviedo.util.io.NumberParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Streaming tokenizer for Wavefront OBJ files.
+ * <p>
+ * The lexer works directly on the raw bytes of the file: there is no {@link String} per line, no
+ * {@code split()} and no boxing. Numbers are parsed by hand and the data is appended to growable
+ * primitive arrays, so the whole model is read in a single pass without knowing its size in advance.
+ * <p>
+ * Polygons are converted to triangles (fan) and all the indices are converted to 0-based indices.
+ * Missing texture or normal indices are stored as -1.
+ * 流式OBJ文件词法分析器：单次读取，不为每一行创建字符串
+ *
+ * @author andresoviedo
+ */
+public final class WavefrontLexer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // files smaller than this are not worth splitting
+    private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int NO_INDEX = Integer.MIN_VALUE;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // parsed data
+    final FloatArrayList vertices = new FloatArrayList(64 * 1024);
+    final FloatArrayList normals = new FloatArrayList(1024);
+    final FloatArrayList texCoords = new FloatArrayList(1024);
+    final IntArrayList vertIdxs = new IntArrayList(64 * 1024);
+    // these are only allocated when some face references texture coordinates or normals
+    IntArrayList texIdxs;
+    IntArrayList normIdxs;
+    final ModelDimensions dimensions = new ModelDimensions();
+
+    // materials
+    String materialLib;
+    final IntArrayList materialFaces = new IntArrayList(16);
+    final List<String> materialNames = new ArrayList<>();
+
+    // positions in the index lists holding relative indices. These are fixed when chunks are merged
+    private final IntArrayList relativeVertIdxs = new IntArrayList(16);
+    private final IntArrayList relativeTexIdxs = new IntArrayList(16);
+    private final IntArrayList relativeNormIdxs = new IntArrayList(16);
+
+    // stats
+    int numPolygons;
+    int numTriangles;
+    int errors;
+    private int lineNum;
+
+    // current line
+    private byte[] line;
+    private int pos;
+    private int end;
+    private boolean numberOk;
+
+    // scratch memory for the corners of the polygon being parsed
+    private int[] cornerV = new int[16];
+    private int[] cornerT = new int[16];
+    private int[] cornerN = new int[16];
+    // bit mask telling which of the corner indices are relative (1: vertex, 2: texture, 4: normal)
+    private int[] cornerRelative = new int[16];
+
+    /**
+     * Parse the whole stream. The stream is not closed.
+     *
+     * @param is the OBJ data
+     * @throws IOException if there is a problem reading the stream
+     */
+    public void parse(InputStream is) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length = 0;
+        int read;
+        while ((read = is.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            int lastEol = length - 1;
+            while (lastEol >= 0 && buffer[lastEol] != '\n') {
+                lastEol--;
+            }
+            if (lastEol < 0) {
+                if (length == buffer.length) {
+                    // line longer than the buffer
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                continue;
+            }
+            parse(buffer, 0, lastEol + 1);
+            length -= lastEol + 1;
+            System.arraycopy(buffer, lastEol + 1, buffer, 0, length);
+        }
+        if (length > 0) {
+            parse(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Parse all the lines found in the specified range. The last line doesn't need to be terminated.
+     *
+     * @param buffer the OBJ data
+     * @param from   the first byte to parse
+     * @param to     the end of the range (exclusive)
+     */
+    public void parse(byte[] buffer, int from, int to) {
+        int start = from;
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == '\n') {
+                parseLine(buffer, start, i);
+                start = i + 1;
+            }
+        }
+        if (start < to) {
+            parseLine(buffer, start, to);
+        }
+    }
+
+    /**
+     * Parse the whole stream splitting the data in line aligned chunks that are parsed in parallel using the
+     * fork-join pool. The result is the same as parsing the data with {@link #parse(InputStream)}.
+     * 将数据分成多个块并行解析
+     *
+     * @param is the OBJ data. The stream is not closed.
+     * @return the lexer with all the data
+     * @throws IOException if there is a problem reading the stream
+     */
+    public static WavefrontLexer parseParallel(InputStream is) throws IOException {
+        // read whole file
+        byte[] data = new byte[BUFFER_SIZE * 16];
+        int length = 0;
+        int read;
+        while ((read = is.read(data, length, data.length - length)) != -1) {
+            length += read;
+            if (length == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+        }
+        return parseParallel(data, 0, length, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parse the data splitting it in line aligned chunks that are parsed in parallel.
+     *
+     * @param data the OBJ data
+     * @param from first byte
+     * @param to   end of the data (exclusive)
+     * @param pool the pool where to run the parsing tasks
+     * @return the lexer with all the data
+     */
+    public static WavefrontLexer parseParallel(byte[] data, int from, int to, ForkJoinPool pool) {
+        int chunks = Math.min(pool.getParallelism() * 2, (to - from) / MIN_CHUNK_SIZE);
+        return parseParallel(data, from, to, pool, chunks);
+    }
+
+    /**
+     * Parse the data splitting it in the specified number of line aligned chunks
+     *
+     * @param chunks number of chunks. There may be less of them if there are not enough lines
+     */
+    static WavefrontLexer parseParallel(final byte[] data, int from, int to, ForkJoinPool pool, int chunks) {
+        if (chunks <= 1) {
+            WavefrontLexer lexer = new WavefrontLexer();
+            lexer.parse(data, from, to);
+            return lexer;
+        }
+
+        // split at line boundaries
+        final List<RecursiveTask<WavefrontLexer>> tasks = new ArrayList<>(chunks);
+        int start = from;
+        for (int i = 1; i <= chunks && start < to; i++) {
+            int end = i == chunks ? to : Math.max(start, from + (int) ((long) (to - from) * i / chunks));
+            while (end < to && data[end - 1] != '\n') {
+                end++;
+            }
+            final int chunkStart = start, chunkEnd = end;
+            tasks.add(new RecursiveTask<WavefrontLexer>() {
+                @Override
+                protected WavefrontLexer compute() {
+                    WavefrontLexer lexer = new WavefrontLexer();
+                    lexer.parse(data, chunkStart, chunkEnd);
+                    return lexer;
+                }
+            });
+            start = end;
+        }
+        Log.i("WavefrontLexer", "Parsing " + (to - from) + " bytes in " + tasks.size() + " chunks...");
+
+        List<WavefrontLexer> results = pool.invoke(new RecursiveTask<List<WavefrontLexer>>() {
+            @Override
+            protected List<WavefrontLexer> compute() {
+                invokeAll(tasks);
+                List<WavefrontLexer> ret = new ArrayList<>(tasks.size());
+                for (RecursiveTask<WavefrontLexer> task : tasks) {
+                    ret.add(task.join());
+                }
+                return ret;
+            }
+        });
+        return merge(results);
+    }
+
+    /**
+     * Stitch the chunks together in order. Relative indices and the faces where materials are used are
+     * moved so they point to the same elements as if the file was parsed sequentially.
+     * 按顺序合并各个块，并修正相对索引和材料的面索引
+     *
+     * @param chunks the lexers of consecutive chunks of the same file
+     * @return the merged data
+     */
+    static WavefrontLexer merge(List<WavefrontLexer> chunks) {
+        WavefrontLexer ret = new WavefrontLexer();
+        int totalVertices = 0, totalNormals = 0, totalTexCoords = 0, totalIndices = 0;
+        boolean anyTex = false, anyNormals = false;
+        for (WavefrontLexer chunk : chunks) {
+            totalVertices += chunk.vertices.size();
+            totalNormals += chunk.normals.size();
+            totalTexCoords += chunk.texCoords.size();
+            totalIndices += chunk.vertIdxs.size();
+            anyTex |= chunk.texIdxs != null;
+            anyNormals |= chunk.normIdxs != null;
+        }
+        ret.vertices.ensureCapacity(totalVertices);
+        ret.normals.ensureCapacity(totalNormals);
+        ret.texCoords.ensureCapacity(totalTexCoords);
+        ret.vertIdxs.ensureCapacity(totalIndices);
+        if (anyTex) {
+            ret.texIdxs = new IntArrayList(totalIndices);
+        }
+        if (anyNormals) {
+            ret.normIdxs = new IntArrayList(totalIndices);
+        }
+
+        for (WavefrontLexer chunk : chunks) {
+            final int vertexBase = ret.getVertexCount();
+            final int texBase = ret.getTexCoordCount();
+            final int normalBase = ret.getNormalCount();
+            final int faceBase = ret.getFaceCount();
+            final int indexBase = ret.vertIdxs.size();
+
+            // dimensions
+            if (!chunk.vertices.isEmpty()) {
+                ModelDimensions dims = chunk.dimensions;
+                if (ret.vertices.isEmpty()) {
+                    ret.dimensions.set(dims.leftPt, dims.bottomPt, dims.farPt);
+                } else {
+                    ret.dimensions.update(dims.leftPt, dims.bottomPt, dims.farPt);
+                }
+                ret.dimensions.update(dims.rightPt, dims.topPt, dims.nearPt);
+            }
+
+            ret.vertices.addAll(chunk.vertices);
+            ret.normals.addAll(chunk.normals);
+            ret.texCoords.addAll(chunk.texCoords);
+
+            ret.vertIdxs.addAll(chunk.vertIdxs);
+            fixRelative(ret.vertIdxs, indexBase, chunk.relativeVertIdxs, vertexBase);
+            if (ret.texIdxs != null) {
+                appendIndices(ret.texIdxs, chunk.texIdxs, chunk.vertIdxs.size());
+                fixRelative(ret.texIdxs, indexBase, chunk.relativeTexIdxs, texBase);
+            }
+            if (ret.normIdxs != null) {
+                appendIndices(ret.normIdxs, chunk.normIdxs, chunk.vertIdxs.size());
+                fixRelative(ret.normIdxs, indexBase, chunk.relativeNormIdxs, normalBase);
+            }
+
+            // materials
+            if (ret.materialLib == null) {
+                ret.materialLib = chunk.materialLib;
+            }
+            for (int i = 0; i < chunk.materialNames.size(); i++) {
+                ret.materialFaces.add(faceBase + chunk.materialFaces.get(i));
+                ret.materialNames.add(chunk.materialNames.get(i));
+            }
+
+            // stats
+            ret.numPolygons += chunk.numPolygons;
+            ret.numTriangles += chunk.numTriangles;
+            ret.errors += chunk.errors;
+            ret.lineNum += chunk.lineNum;
+        }
+        return ret;
+    }
+
+    private static void appendIndices(IntArrayList target, IntArrayList source, int count) {
+        if (source != null) {
+            target.addAll(source);
+        } else {
+            for (int i = 0; i < count; i++) {
+                target.add(-1);
+            }
+        }
+    }
+
+    private static void fixRelative(IntArrayList indices, int indexBase, IntArrayList positions, int base) {
+        for (int i = 0; i < positions.size(); i++) {
+            int position = indexBase + positions.get(i);
+            indices.set(position, indices.get(position) + base);
+        }
+    }
+
+    /**
+     * @return number of triangles parsed so far
+     */
+    public int getFaceCount() {
+        return vertIdxs.size() / 3;
+    }
+
+    public int getVertexCount() {
+        return vertices.size() / 3;
+    }
+
+    public int getNormalCount() {
+        return normals.size() / 3;
+    }
+
+    public int getTexCoordCount() {
+        return texCoords.size() / 2;
+    }
+
+    public ModelDimensions getDimensions() {
+        return dimensions;
+    }
+
+    private void parseLine(byte[] buffer, int start, int stop) {
+        lineNum++;
+
+        // trim
+        while (start < stop && isSpace(buffer[start])) {
+            start++;
+        }
+        while (stop > start && (isSpace(buffer[stop - 1]) || buffer[stop - 1] == '\r')) {
+            stop--;
+        }
+        if (start == stop) {
+            return;
+        }
+
+        this.line = buffer;
+        this.pos = start;
+        this.end = stop;
+
+        byte c1 = start + 1 < stop ? buffer[start + 1] : (byte) ' ';
+        switch (buffer[start]) {
+            case 'v':
+                if (isSpace(c1)) {
+                    pos += 1;
+                    parseVertex();
+                } else if (c1 == 't' && isKeywordEnd(start + 2)) {
+                    pos += 2;
+                    parseTexCoord();
+                } else if (c1 == 'n' && isKeywordEnd(start + 2)) {
+                    pos += 2;
+                    parseNormal();
+                } else {
+                    ignoreLine();
+                }
+                break;
+            case 'f':
+                if (isSpace(c1)) {
+                    pos += 1;
+                    parseFace();
+                } else {
+                    ignoreLine();
+                }
+                break;
+            case '#':
+                // comment line
+                break;
+            case 'm':
+                if (isKeyword("mtllib") && pos < end) {
+                    materialLib = restOfLine();
+                } else {
+                    ignoreLine();
+                }
+                break;
+            case 'u':
+                if (isKeyword("usemtl") && pos < end) {
+                    materialFaces.add(getFaceCount());
+                    materialNames.add(restOfLine());
+                } else {
+                    ignoreLine();
+                }
+                break;
+            case 'g': // group name
+            case 's': // smoothing group
+            case 'o': // object group
+            case 'l': // lines
+                // not implemented
+                break;
+            default:
+                ignoreLine();
+        }
+    }
+
+    private void parseVertex() {
+        numberOk = true;
+        float x = nextFloat();
+        float y = nextFloat();
+        float z = nextFloat();
+        if (!numberOk) {
+            errors++;
+        }
+        if (vertices.isEmpty()) {
+            dimensions.set(x, y, z);
+        } else {
+            dimensions.update(x, y, z);
+        }
+        vertices.add(x, y, z);
+    }
+
+    private void parseNormal() {
+        numberOk = true;
+        float x = nextFloat();
+        float y = nextFloat();
+        float z = nextFloat();
+        if (!numberOk) {
+            errors++;
+        }
+        normals.add(x, y, z);
+    }
+
+    private void parseTexCoord() {
+        numberOk = true;
+        float u = nextFloat();
+        float v = nextFloat();
+        if (!numberOk) {
+            errors++;
+        }
+        // the optional w coordinate is not used
+        texCoords.add(u, v);
+    }
+
+    /**
+     * Parse the line "f v/vt/vn ..." with vt or vn index values perhaps being absent.
+     */
+    private void parseFace() {
+        final byte[] b = line;
+        int corners = 0;
+        boolean withTex = false, withNormals = false, anyRelative = false;
+        while (true) {
+            skipSpaces();
+            if (pos >= end) {
+                break;
+            }
+            int v = nextIndex();
+            if (v == NO_INDEX) {
+                errors++;
+                Log.e("WavefrontLexer", "Problem parsing face at line " + lineNum);
+                return;
+            }
+            int t = NO_INDEX, n = NO_INDEX;
+            if (pos < end && b[pos] == '/') {
+                pos++;
+                withTex = true;
+                t = nextIndex();
+                if (pos < end && b[pos] == '/') {
+                    pos++;
+                    withNormals = true;
+                    n = nextIndex();
+                }
+            }
+            // skip anything else attached to this token
+            while (pos < end && !isSpace(b[pos])) {
+                pos++;
+            }
+
+            if (corners == cornerV.length) {
+                cornerV = Arrays.copyOf(cornerV, corners * 2);
+                cornerT = Arrays.copyOf(cornerT, corners * 2);
+                cornerN = Arrays.copyOf(cornerN, corners * 2);
+                cornerRelative = Arrays.copyOf(cornerRelative, corners * 2);
+            }
+            int relative = (v < 0 ? 1 : 0) | (t < 0 && t != NO_INDEX ? 2 : 0) | (n < 0 && n != NO_INDEX ? 4 : 0);
+            anyRelative |= relative != 0;
+            cornerRelative[corners] = relative;
+            cornerV[corners] = resolveIndex(v, vertices.size() / 3);
+            cornerT[corners] = resolveIndex(t, texCoords.size() / 2);
+            cornerN[corners] = resolveIndex(n, normals.size() / 3);
+            corners++;
+        }
+
+        if (corners < 3) {
+            errors++;
+            Log.e("WavefrontLexer", "Face with less than 3 vertices at line " + lineNum);
+            return;
+        }
+
+        if (withTex && texIdxs == null) {
+            texIdxs = newMissingIndices();
+        }
+        if (withNormals && normIdxs == null) {
+            normIdxs = newMissingIndices();
+        }
+
+        // convert to triangles all polygons. In FAN mode all faces shares the initial vertex
+        for (int i = 1; i < corners - 1; i++) {
+            if (anyRelative) {
+                recordRelative(vertIdxs.size(), i);
+            }
+            vertIdxs.add(cornerV[0], cornerV[i], cornerV[i + 1]);
+            if (texIdxs != null) {
+                texIdxs.add(cornerT[0], cornerT[i], cornerT[i + 1]);
+            }
+            if (normIdxs != null) {
+                normIdxs.add(cornerN[0], cornerN[i], cornerN[i + 1]);
+            }
+        }
+        if (corners == 3) {
+            numTriangles++;
+        } else {
+            numPolygons++;
+        }
+    }
+
+    private void recordRelative(int position, int corner) {
+        recordRelativeCorner(position, cornerRelative[0]);
+        recordRelativeCorner(position + 1, cornerRelative[corner]);
+        recordRelativeCorner(position + 2, cornerRelative[corner + 1]);
+    }
+
+    private void recordRelativeCorner(int position, int relative) {
+        if ((relative & 1) != 0) {
+            relativeVertIdxs.add(position);
+        }
+        if ((relative & 2) != 0) {
+            relativeTexIdxs.add(position);
+        }
+        if ((relative & 4) != 0) {
+            relativeNormIdxs.add(position);
+        }
+    }
+
+    /**
+     * Faces parsed so far didn't have this attribute, so they get a -1 index
+     */
+    private IntArrayList newMissingIndices() {
+        IntArrayList ret = new IntArrayList(Math.max(vertIdxs.size() * 2, 1024));
+        for (int i = 0; i < vertIdxs.size(); i++) {
+            ret.add(-1);
+        }
+        return ret;
+    }
+
+    /**
+     * Convert the OBJ index to a 0-based index. Negative indices are relative to the elements read so far.
+     *
+     * @return the index or -1 if there is no index
+     */
+    private static int resolveIndex(int index, int count) {
+        if (index == NO_INDEX || index == 0) {
+            return -1;
+        }
+        if (index > 0) {
+            return index - 1;
+        }
+        return count + index;
+    }
+
+    private int nextIndex() {
+        final byte[] b = line;
+        int p = pos;
+        boolean negative = false;
+        if (p < end && (b[p] == '-' || b[p] == '+')) {
+            negative = b[p] == '-';
+            p++;
+        }
+        int value = 0;
+        boolean any = false;
+        byte c;
+        while (p < end && (c = b[p]) >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            any = true;
+            p++;
+        }
+        pos = p;
+        if (!any) {
+            return NO_INDEX;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse the next float in the line. If there is no float or it can't be parsed, then 0 is returned and
+     * {@link #numberOk} is set to false.
+     */
+    private float nextFloat() {
+        skipSpaces();
+        if (pos >= end) {
+            numberOk = false;
+            return 0;
+        }
+        final int start = pos;
+        while (pos < end && !isSpace(line[pos])) {
+            pos++;
+        }
+        float value = NumberParser.parseFloat(line, start, pos);
+        if (Float.isNaN(value)) {
+            // unusual number (i.e. "nan", "inf", "1.#QNAN")
+            return parseFloatSlow(start);
+        }
+        return value;
+    }
+
+    private float parseFloatSlow(int start) {
+        pos = start;
+        while (pos < end && !isSpace(line[pos])) {
+            pos++;
+        }
+        String token = new String(line, start, pos - start, UTF_8);
+        try {
+            return Float.parseFloat(token);
+        } catch (NumberFormatException ex) {
+            Log.e("WavefrontLexer", "Problem parsing number '" + token + "' at line " + lineNum);
+            numberOk = false;
+            return 0;
+        }
+    }
+
+    private void skipSpaces() {
+        while (pos < end && isSpace(line[pos])) {
+            pos++;
+        }
+    }
+
+    private boolean isKeyword(String keyword) {
+        int length = keyword.length();
+        if (pos + length > end || !isKeywordEnd(pos + length)) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line[pos + i] != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        pos += length;
+        return true;
+    }
+
+    private boolean isKeywordEnd(int index) {
+        return index >= end || isSpace(line[index]);
+    }
+
+    private String restOfLine() {
+        skipSpaces();
+        return new String(line, pos, end - pos, UTF_8);
+    }
+
+    private void ignoreLine() {
+        Log.v("WavefrontLexer", "Ignoring line " + lineNum + " : " + new String(line, pos, end - pos, UTF_8));
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t';
+    }
+}
@@ -42,12 +42,10 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -63,16 +61,6 @@ import java.util.StringTokenizer;
  */
 public class WavefrontLoader {
 
-    private static final float DUMMY_Z_TC = -5.0f;
-    static final boolean INDEXES_START_AT_1 = true;
-    private boolean hasTCs3D = false;
-
-    private ArrayList<Tuple3> texCoords;
-    // whether the model uses 3D or 2D tex coords
-    // 模型是否使用3D或2D tex线
-    // whether tex coords should be flipped around the y-axis
-    // Tex线是否应该绕y轴翻转
-
     private Faces faces; // model faces 模型的面
     private FaceMaterials faceMats; // materials used by faces 面部使用的材料
     private Materials materials; // materials defined in MTL file 在MTL文件中定义的材料
@@ -93,19 +81,13 @@ public class WavefrontLoader {
     // buffers
     private FloatBuffer vertsBuffer;
     private FloatBuffer normalsBuffer;
-    // TODO: build texture data directly into this buffer
+    // texture coordinates (u,v)
     private FloatBuffer textureCoordsBuffer;
 
-    // flags
-    private static final int triangleMode = GLES20.GL_TRIANGLE_FAN;
-
     public WavefrontLoader(String nm) {
         modelNm = nm;
         maxSize = 1.0F;
 
-        texCoords = new ArrayList<Tuple3>();
-
-
         faceMats = new FaceMaterials();
         modelDims = new ModelDimensions();
     } // end of initModelData()
@@ -118,8 +100,8 @@ public class WavefrontLoader {
         return normalsBuffer;
     }
 
-    public ArrayList<Tuple3> getTexCoords() {
-        return texCoords;
+    public FloatBuffer getTexCoords() {
+        return textureCoordsBuffer;
     }
 
     public Faces getFaces() {
@@ -166,312 +148,83 @@ public class WavefrontLoader {
     }
 
     /**
-     * Count verts, normals, faces etc and reserve buffers to save the data.
-     * 计数vert，法线，面等，并保留缓冲区保存数据。
+     * Parse the whole model in a single pass and build the buffers with the data.
+     * 单次解析整个模型并构建缓冲区。The stream is not closed.
      *
      * @param is data source 数据源
      */
-    public void analyzeModel(InputStream is) {
-        int lineNum = 0;
-        String line;
-
-        BufferedReader br = null;
-        try {
-            br = new BufferedReader(new InputStreamReader(is));
-
-            while ((line = br.readLine()) != null) {
-                lineNum++;
-                line = line.trim();
-                if (line.length() > 0) {
-
-                    if (line.startsWith("v ")) { // vertex
-                        numVerts++;
-                    } else if (line.startsWith("vt")) { // tex coord
-                        numTextures++;
-                    } else if (line.startsWith("vn")) {// normal
-                        numNormals++;
-                    } else if (line.startsWith("f ")) { // face
-                        final int faceSize;
-                        if (line.contains("  ")) {
-                            faceSize = line.split(" +").length - 1;
-                        } else {
-                            faceSize = line.split(" ").length - 1;
-                        }
-                        numFaces += (faceSize - 2);
-                        // (faceSize-2)x3 = converting polygon to triangles
-                        numVertsReferences += (faceSize - 2) * 3;
-                        numPolygon += (faceSize > 3) ? 1 : 0;
-                        numTriangles += (faceSize == 3) ? 1 : 0;
-                    } else if (line.startsWith("mtllib ")) // build material 建筑材料
-                    {
-                        materials = new Materials(line.substring(7));
-                    } else if (line.startsWith("usemtl ")) {// use material 使用材料
-
-                    } else if (line.charAt(0) == 'g') { // group name
-                        // not implemented
-                    } else if (line.charAt(0) == 's') { // smoothing group
-                        // not implemented
-                    } else if (line.charAt(0) == '#') // comment line
-                    {
-                        continue;
-                    } else if (line.charAt(0) == 'o') // object group
-                    {
-                        continue;
-                    } else {
-                        System.out.println("Ignoring line " + lineNum + " : " + line);
-                    }
-                }
-            }
-        } catch (IOException e) {
-            Log.e("WavefrontLoader", "Problem reading line '" + (++lineNum) + "'");
-            Log.e("WavefrontLoader", e.getMessage(), e);
-            throw new RuntimeException(e);
-        } finally {
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    Log.e("WavefrontLoader", e.getMessage(), e);
-                }
-            }
-        }
-
-        Log.i("WavefrontLoader", "Number of vertices:" + numVerts);
-        Log.i("WavefrontLoader", "Number of faces:" + numFaces);
-        Log.i("WavefrontLoader", "- Number of polygons:" + numPolygon);
-        Log.i("WavefrontLoader", "- Number of triangles:" + numTriangles);
-    }
-
-    /**
-     * Allocate buffers for pushing the model data
-     * 分配用于推送模型数据的缓冲区
-     * TODO: use textureCoordsBuffer
-     */
-    public void allocateBuffers() {
-        // size = 3 (x,y,z) * 4 (bytes per float)
-        vertsBuffer = createNativeByteBuffer(numVerts * 3 * 4).asFloatBuffer();
-        if (numNormals > 0) {
-            normalsBuffer = createNativeByteBuffer(numNormals * 3 * 4).asFloatBuffer();
-        }
-        textureCoordsBuffer = createNativeByteBuffer(numTextures * 3 * 4).asFloatBuffer();
-        if (numFaces > 0) {
-            IntBuffer buffer = createNativeByteBuffer(numFaces * 3 * 4).asIntBuffer();
-            faces = new Faces(numFaces, buffer, vertsBuffer, normalsBuffer, texCoords);
-        }
-    }
-
     public void loadModel(InputStream is) {
-        // String fnm = MODEL_DIR + modelNm + ".obj";
-        BufferedReader br = null;
-        try {
-            br = new BufferedReader(new InputStreamReader(is));
-            readModel(br);
-        } finally {
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-    }
-
-    private static ByteBuffer createNativeByteBuffer(int length) {
-        // initialize vertex byte buffer for shape coordinates
-        ByteBuffer bb = ByteBuffer.allocateDirect(length);
-        // use the device hardware's native byte order
-        bb.order(ByteOrder.nativeOrder());
-        return bb;
+        loadModel(is, false);
     }
 
     /**
-     * 解析OBJ文件模型
+     * Parse the whole model and build the buffers with the data.
+     * 解析整个模型并构建缓冲区。The stream is not closed.
      *
-     * @param br OBJ文件
+     * @param is       data source 数据源
+     * @param parallel <code>true</code> to parse chunks of the file in parallel, <code>false</code> to parse it
+     *                 sequentially (reference implementation)
      */
-    private void readModel(BufferedReader br)
-    // parse the OBJ file line-by-line
-    {
-        boolean isLoaded = true; // hope things will go okay
-
-        int lineNum = 0;
-        String line;
-        boolean isFirstCoord = true;
-        boolean isFirstTC = true;
-        int numFaces = 0;
-
-        int vertNumber = 0;
-        int normalNumber = 0;
-
-
+    public void loadModel(InputStream is, boolean parallel) {
+        WavefrontLexer lexer;
         try {
-            while (((line = br.readLine()) != null)) {
-                lineNum++;
-                line = line.trim();
-                if (line.length() > 0) {
-
-                    if (line.startsWith("v ")) { // vertex
-                        isLoaded = addVert(vertsBuffer, vertNumber++ * 3, line, isFirstCoord, modelDims) && isLoaded;
-                        if (isFirstCoord) {
-                            isFirstCoord = false;
-                        }
-                    } else if (line.startsWith("vt")) { // tex coord
-                        isLoaded = addTexCoord(line, isFirstTC) && isLoaded;
-                        if (isFirstTC) {
-                            isFirstTC = false;
-                        }
-                    } else if (line.startsWith("vn")) // normal
-                    {
-                        isLoaded = addVert(normalsBuffer, normalNumber++ * 3, line, isFirstCoord, null) && isLoaded;
-                    } else if (line.startsWith("f ")) { // face
-                        isLoaded = faces.addFace(line) && isLoaded;
-                        numFaces++;
-                    } else if (line.startsWith("mtllib ")) // build material，加载obj，对应的纹理信息
-                    {
-                        // materials = new Materials(new File(modelFile.getParent(),
-                        // line.substring(7)).getAbsolutePath());
-                        // materials = new Materials(line.substring(7));
-                    } else if (line.startsWith("usemtl ")) // use material
-                    {
-                        faceMats.addUse(numFaces, line.substring(7));
-                    } else if (line.charAt(0) == 'g') { // group name
-                        // not implemented
-                    } else if (line.charAt(0) == 's') { // smoothing group
-                        // not implemented
-                    } else if (line.charAt(0) == '#') // comment line
-                    {
-                        continue;
-                    } else if (line.charAt(0) == 'o') // object group
-                    {
-                        continue;
-                    } else {
-                        System.out.println("Ignoring line " + lineNum + " : " + line);
-                    }
-                }
+            if (parallel) {
+                lexer = WavefrontLexer.parseParallel(is);
+            } else {
+                lexer = new WavefrontLexer();
+                lexer.parse(is);
             }
         } catch (IOException e) {
             Log.e("WavefrontLoader", e.getMessage(), e);
             throw new RuntimeException(e);
         }
-
-        if (!isLoaded) {
-            Log.e("WavefrontLoader", "Error loading model");
-            // throw new RuntimeException("Error loading model");
-        }
-    } // end of readModel()
+        loadModel(lexer);
+    }
 
     /**
-     * Parse the vertex and add it to the buffer. If the vertex cannot be parsed,
-     * then a default (0,0,0) vertex is added instead.
-     * 解析顶点并将其添加到缓冲区。如果无法解析顶点，则添加一个默认(0,0,0)顶点。
+     * Build the model buffers from the data parsed by the lexer
      *
-     * @param buffer       the buffer where the vertex is to be added
-     * @param offset       the offset of the buffer
-     * @param line         the vertex to parse
-     * @param isFirstCoord if this is the first vertex to be parsed
-     * @param dimensions   the model dimesions so they are updated (TODO move this out of this method)
-     * @return <code>true</code> if the vertex could be parsed, <code>false</code> otherwise
+     * @param lexer the lexer after parsing the model
      */
-    private boolean addVert(FloatBuffer buffer, int offset, String line, boolean isFirstCoord, ModelDimensions dimensions)
-    /*
-     * Add vertex from line "v x y z" to vert ArrayList, and update the model dimension's info.
-     * 从“v x y z”线添加顶点到vert ArrayList，并更新模型维度的信息。
-     */ {
-        float x = 0, y = 0, z = 0;
-        try {
-            String[] tokens = null;
-            if (line.contains("  ")) {
-                tokens = line.split(" +");
-            } else {
-                tokens = line.split(" ");
-            }
-            x = Float.parseFloat(tokens[1]);
-            y = Float.parseFloat(tokens[2]);
-            z = Float.parseFloat(tokens[3]);
-
-            if (dimensions != null) {
-                if (isFirstCoord) {
-                    modelDims.set(x, y, z);
-                } else {
-                    modelDims.update(x, y, z);
-                }
-            }
-
-            return true;
-
-        } catch (NumberFormatException ex) {
-            Log.e("WavefrontLoader", ex.getMessage());
-        } finally {
-            // try to build even with errors
-            // 尝试在有错误的情况下进行构建
-            buffer.put(offset, x).put(offset + 1, y).put(offset + 2, z);
+    void loadModel(WavefrontLexer lexer) {
+        numVerts = lexer.getVertexCount();
+        numNormals = lexer.getNormalCount();
+        numTextures = lexer.getTexCoordCount();
+        numFaces = lexer.getFaceCount();
+        numPolygon = lexer.numPolygons;
+        numTriangles = lexer.numTriangles;
+        numVertsReferences = numFaces * 3;
+
+        // buffers
+        vertsBuffer = lexer.vertices.toFloatBuffer();
+        if (numNormals > 0) {
+            normalsBuffer = lexer.normals.toFloatBuffer();
         }
-
-        return false;
-    } // end of addVert()
-
-    /**
-     * 将“vt u v w”这一行的纹理坐标添加到texcord的数组列表中
-     *
-     * @param line
-     * @param isFirstTC
-     * @return
-     */
-    private boolean addTexCoord(String line, boolean isFirstTC)
-    /*
-     * Add the texture coordinate from the line "vt u v w" to the texCoords ArrayList. There may only be two tex coords
-     * on the line, which is determined by looking at the first tex coord line.
-     * 将“vt u v w”这一行的纹理坐标添加到texcord的数组列表中。这条线上可能只有两条特克斯线，这是通过观察第一条特克斯线确定的。
-     */ {
-        if (isFirstTC) {
-            hasTCs3D = checkTC3D(line);
-            System.out.println("Using 3D tex coords: " + hasTCs3D);
+        textureCoordsBuffer = lexer.texCoords.toFloatBuffer();
+        if (numFaces > 0) {
+            faces = new Faces(numFaces, lexer.vertIdxs.toIntBuffer(),
+                    lexer.texIdxs != null ? lexer.texIdxs.toIntBuffer() : null,
+                    lexer.normIdxs != null ? lexer.normIdxs.toIntBuffer() : null);
         }
+        modelDims = lexer.getDimensions();
 
-        Tuple3 texCoord = readTCTuple(line);
-        if (texCoord != null) {
-            texCoords.add(texCoord);
-            return true;
+        // materials
+        if (lexer.materialLib != null) {
+            materials = new Materials(lexer.materialLib);
+        }
+        for (int i = 0; i < lexer.materialNames.size(); i++) {
+            faceMats.addUse(lexer.materialFaces.get(i), lexer.materialNames.get(i));
         }
 
-        return false;
-    } // end of addTexCoord()
-
-    private boolean checkTC3D(String line)
-        /*
-         * Check if the line has 4 tokens, which will be the "vt" token and 3 tex coords in this case.
-         * 检查行是否有4个标记，在本例中为“vt”标记和3个tex线。
-         */ {
-        String[] tokens = line.split("\\s+");
-        return (tokens.length == 4);
-    } // end of checkTC3D()
-
-    private Tuple3 readTCTuple(String line)
-        /*
-         * The line starts with a "vt" OBJ word and two or three floats (x, y, z) for the tex coords separated by spaces. If
-         * there are only two coords, then the z-value is assigned a dummy value, DUMMY_Z_TC.
-         * 该行以一个“vt”OBJ单词开始，两个或三个浮点数(x, y, z)表示由空格分隔的tex线。如果只有两个坐标，那么z值被分配一个哑值DUMMY_Z_TC。
-         */ {
-        StringTokenizer tokens = new StringTokenizer(line, " ");
-        tokens.nextToken(); // skip "vt" OBJ word
-
-        try {
-            float x = Float.parseFloat(tokens.nextToken());
-            float y = Float.parseFloat(tokens.nextToken());
-
-            float z = DUMMY_Z_TC;
-            if (hasTCs3D) {
-                z = Float.parseFloat(tokens.nextToken());
-            }
-            return new Tuple3(x, y, z);
-        } catch (NumberFormatException e) {
-            System.out.println(e.getMessage());
+        if (lexer.errors > 0) {
+            Log.e("WavefrontLoader", "Error loading model. Errors: " + lexer.errors);
         }
 
-        return null; // means an error occurred
-    } // end of readTCTuple()
+        Log.i("WavefrontLoader", "Number of vertices:" + numVerts);
+        Log.i("WavefrontLoader", "Number of faces:" + numFaces);
+        Log.i("WavefrontLoader", "- Number of polygons:" + numPolygon);
+        Log.i("WavefrontLoader", "- Number of triangles:" + numTriangles);
+    }
 
     public void reportOnModel() {
         Log.i("WavefrontLoader", "No. of vertices: " + vertsBuffer.capacity() / 3);
@@ -656,9 +409,9 @@ public class WavefrontLoader {
         public String mfnm;
 
         private Materials(String mtlFnm) {
-            // TODO: this map is now linked because we want to get only the first texture
-            // when multiple textures are supported, change this to be a simple HashMap
-            // 当支持多个纹理时，将其改为一个简单的HashMap
+            // linked, so the materials keep the order of the MTL file. The models without usemtl are
+            // textured with the first texture of the file
+            // 保持MTL文件的顺序，没有usemtl的模型使用文件中的第一个纹理
             materials = new LinkedHashMap<>();
 
             this.mfnm = mtlFnm;
@@ -924,7 +677,6 @@ public class WavefrontLoader {
      * 面
      */
     public static class Faces {
-        private static final float DUMMY_Z_TC = -5.0f;
 
         public final int totalFaces;
         /**
@@ -933,43 +685,28 @@ public class WavefrontLoader {
          */
         public IntBuffer facesVertIdxs;
         /**
-         * indices for tex coords used by each face
+         * indices for tex coords used by each face (3 per face, -1 if missing) or null if there is none
          * 每个面使用的Tex线索引
          */
-        public ArrayList<int[]> facesTexIdxs;
+        public IntBuffer facesTexIdxs;
         /**
-         * indices for normals used by each face
+         * indices for normals used by each face (3 per face, -1 if missing) or null if there is none
          * 每个面使用的法线的索引
          */
-        public ArrayList<int[]> facesNormIdxs;
-
-        private FloatBuffer vertex;
-        private FloatBuffer normals;
-        private ArrayList<Tuple3> texCoords;
+        public IntBuffer facesNormIdxs;
 
-        // Total number of vertices references. That is, each face references 3 or more vectors. This is the sum for all  faces
-        // 顶点引用的总数。也就是说，每个面引用3个或更多向量。这是所有面的总和
         private int facesLoadCounter;
-        private int faceVertexLoadCounter = 0;
-        private int verticesReferencesCount;
-
-        // for reporting
-        // private DecimalFormat df = new DecimalFormat("0.##"); // 2 dp
 
         public Faces(int numFaces) {
             this.totalFaces = numFaces;
             this.facesLoadCounter = numFaces;
         }
 
-        Faces(int totalFaces, IntBuffer buffer, FloatBuffer vs, FloatBuffer ns, ArrayList<Tuple3> ts) {
-            this.totalFaces = totalFaces;
-            vertex = vs;
-            normals = ns;
-            texCoords = ts;
-
-            facesVertIdxs = buffer;
-            facesTexIdxs = new ArrayList<int[]>();
-            facesNormIdxs = new ArrayList<int[]>();
+        Faces(int totalFaces, IntBuffer vertIdxs, IntBuffer texIdxs, IntBuffer normIdxs) {
+            this(totalFaces);
+            this.facesVertIdxs = vertIdxs;
+            this.facesTexIdxs = texIdxs;
+            this.facesNormIdxs = normIdxs;
         } // end of Faces()
 
         public int getSize() {
@@ -983,133 +720,6 @@ public class WavefrontLoader {
             return facesLoadCounter == totalFaces;
         }
 
-        /**
-         * get this face's indicies from line "f v/vt/vn ..." with vt or vn index values perhaps being absent.
-         * 从“f v/vt/vn…”行获得这个面的索引，vt或vn索引值可能不存在。
-         */
-        public boolean addFace(String line) {
-            try {
-                line = line.substring(2); // skip the "f "
-                String[] tokens = null;
-
-                // cpu optimization
-                if (line.contains("  ")) {
-                    tokens = line.split(" +");
-                } else {
-                    tokens = line.split(" ");
-                }
-
-                int numTokens = tokens.length; // number of v/vt/vn tokens
-                // create arrays to hold the v, vt, vn indicies
-
-                int vt[] = null;
-                int vn[] = null;
-
-
-                for (int i = 0, faceIndex = 0; i < numTokens; i++, faceIndex++) {
-
-                    // convert to triangles all polygons
-                    if (faceIndex > 2) {
-                        // Converting polygon to triangle
-                        faceIndex = 0;
-
-                        facesLoadCounter++;
-                        verticesReferencesCount += 3;
-                        if (vt != null) {
-                            facesTexIdxs.add(vt);
-                        }
-                        if (vn != null) {
-                            facesNormIdxs.add(vn);
-                        }
-
-                        vt = null;
-                        vn = null;
-
-                        i -= 2;
-                    }
-
-                    // convert to triangles all polygons
-                    String faceToken = null;
-                    if (WavefrontLoader.triangleMode == GLES20.GL_TRIANGLE_FAN) {
-                        if (faceIndex == 0) {
-                            // In FAN mode all faces shares the initial vertex
-                            faceToken = tokens[0];// get a v/vt/vn
-                        } else {
-                            faceToken = tokens[i]; // get a v/vt/vn
-                        }
-                    } else {
-                        // GL.GL_TRIANGLES | GL.GL_TRIANGLE_STRIP
-                        faceToken = tokens[i]; // get a v/vt/vn
-                    }
-                    // token
-                    // System.out.println(faceToken);
-
-                    String[] faceTokens = faceToken.split("/");
-                    int numSeps = faceTokens.length; // how many '/'s are there in
-                    // the token
-
-                    int vertIdx = Integer.parseInt(faceTokens[0]);
-                    if (numSeps > 1) {
-                        if (vt == null) {
-                            vt = new int[3];
-                        }
-                        try {
-                            vt[faceIndex] = Integer.parseInt(faceTokens[1]);
-                        } catch (NumberFormatException ex) {
-                            vt[faceIndex] = 0;
-                        }
-                    }
-                    if (numSeps > 2) {
-                        if (vn == null) {
-                            vn = new int[3];
-                        }
-                        try {
-                            vn[faceIndex] = Integer.parseInt(faceTokens[2]);
-                        } catch (NumberFormatException ex) {
-                            vn[faceIndex] = 0;
-                        }
-                    }
-                    // add 0's if the vt or vn index values are missing;
-                    // 0 is a good choice since real indices start at 1
-
-                    if (vertIdx < 0) {
-                        vertIdx = this.vertex.capacity() / 3 + vertIdx;
-                        if (vt != null) {
-                            vt[faceIndex] = texCoords.size() + vt[faceIndex];
-                        }
-                        if (vn != null) {
-                            vn[faceIndex] = normals.capacity() / 3 + vn[faceIndex];
-                        }
-                    } else if (WavefrontLoader.INDEXES_START_AT_1) {
-                        vertIdx--;
-                        if (vt != null) {
-                            vt[faceIndex] = vt[faceIndex] - 1;
-                        }
-                        if (vn != null) {
-                            vn[faceIndex] = vn[faceIndex] - 1;
-                        }
-                    }
-                    // store the indices for this face
-                    facesVertIdxs.put(faceVertexLoadCounter++, vertIdx);
-                }
-                if (vt != null) {
-                    facesTexIdxs.add(vt);
-                }
-                if (vn != null) {
-                    facesNormIdxs.add(vn);
-                }
-
-                facesLoadCounter++;
-                verticesReferencesCount += 3;
-
-            } catch (NumberFormatException e) {
-                Log.e("WavefrontLoader", e.getMessage(), e);
-                return false;
-            }
-            return true;
-        }
-
-
         public int getVerticesReferencesCount() {
             // we have only triangles
             return getSize() * 3;
@@ -1162,6 +772,26 @@ public class WavefrontLoader {
             return (String) faceMats.get(faceIdx);
         }
 
+        /**
+         * Get the material of every face at once: the last one used at or before the face
+         * 一次获取每个面的材质：在该面或之前最后使用的材质
+         *
+         * @param faceCount number of faces
+         * @return the material names, null for the faces before the first material
+         */
+        public String[] getMaterialsPerFace(int faceCount) {
+            String[] materials = new String[faceCount];
+            Integer[] starts = faceMats.keySet().toArray(new Integer[0]);
+            Arrays.sort(starts);
+            for (int i = 0; i < starts.length; i++) {
+                int end = i + 1 < starts.length ? Math.min(starts[i + 1], faceCount) : faceCount;
+                if (starts[i] < end) {
+                    Arrays.fill(materials, Math.max(0, starts[i]), end, faceMats.get(starts[i]));
+                }
+            }
+            return materials;
+        }
+
         public void showUsedMaterials()
             /*
              * List all the materials used by faces, and the number of faces that have used them.
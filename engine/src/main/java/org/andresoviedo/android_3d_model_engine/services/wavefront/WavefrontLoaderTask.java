@@ -1,6 +1,5 @@
 package org.andresoviedo.android_3d_model_engine.services.wavefront;
 
-import android.app.Activity;
 import android.net.Uri;
 import android.opengl.GLES20;
 import android.util.Log;
@@ -24,23 +23,48 @@ import java.util.List;
 
 public class WavefrontLoaderTask extends LoaderTask {
 
-    public WavefrontLoaderTask(final Activity parent, final Uri uri, final Callback callback) {
-        super(parent, uri, callback);
+    /**
+     * Whether to parse the file in parallel chunks 是否并行解析文件
+     */
+    private final boolean parallel;
+    /**
+     * Whether to build indexed arrays with deduplicated vertices 是否生成带索引的去重顶点
+     */
+    private final boolean indexed;
+
+    public WavefrontLoaderTask(final Uri uri, final Callback callback) {
+        this(uri, callback, false);
+    }
+
+    /**
+     * @param parallel <code>true</code> to split the file in chunks that are parsed in parallel.
+     *                 The sequential parser is the reference implementation.
+     */
+    public WavefrontLoaderTask(final Uri uri, final Callback callback, boolean parallel) {
+        this(uri, callback, parallel, false);
+    }
+
+    /**
+     * @param parallel <code>true</code> to split the file in chunks that are parsed in parallel.
+     * @param indexed  <code>true</code> to merge the duplicated vertices and draw the model using indices,
+     *                 <code>false</code> to expand every face corner and draw using arrays.
+     */
+    public WavefrontLoaderTask(final Uri uri, final Callback callback, boolean parallel,
+                               boolean indexed) {
+        super(uri, callback);
+        this.parallel = parallel;
+        this.indexed = indexed;
     }
 
     @Override
     protected List<Object3DData> build() throws IOException {
-        InputStream params0 = ContentUtils.getInputStream(uri);
         WavefrontLoader wfl = new WavefrontLoader("");
 
-        // allocate memory
-        publishProgress(0);
-        wfl.analyzeModel(params0);
-        params0.close();
-
-        // Allocate memory
-        publishProgress(1);
-        wfl.allocateBuffers();
+        // parse model (single pass)
+        publishProgress(PROGRESS_LOADING);
+        try (InputStream stream = ContentUtils.getInputStream(uri)) {
+            wfl.loadModel(stream, parallel);
+        }
         wfl.reportOnModel();
 
         // create the 3D object
@@ -57,17 +81,11 @@ public class WavefrontLoaderTask extends LoaderTask {
 
     @Override
     protected void build(List<Object3DData> datas) throws Exception {
-        InputStream stream = ContentUtils.getInputStream(uri);
         try {
             Object3DData data = datas.get(0);
 
-            // parse model
-            publishProgress(2);
-            data.getLoader().loadModel(stream);
-            stream.close();
-
             // scale object
-            publishProgress(3);
+            publishProgress(PROGRESS_SCALING);
             data.centerScale();
             data.setScale(new float[]{5, 5, 5});
 
@@ -75,9 +93,13 @@ public class WavefrontLoaderTask extends LoaderTask {
             data.setDrawMode(GLES20.GL_TRIANGLES);
 
             // build 3D object buffers
-            publishProgress(4);
-            Object3DBuilder.generateArrays(data);
-            publishProgress(5);
+            publishProgress(PROGRESS_BUILDING);
+            if (indexed) {
+                Object3DBuilder.generateIndexedArrays(data);
+            } else {
+                Object3DBuilder.generateArrays(data);
+            }
+            publishProgress(PROGRESS_BUILT);
 
         } catch (Exception e) {
             Log.e("Object3DBuilder", e.getMessage(), e);
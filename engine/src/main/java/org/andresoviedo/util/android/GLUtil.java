@@ -7,12 +7,17 @@ import android.opengl.GLUtils;
 import android.util.Log;
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
 
-import java.io.InputStream;
-
 public final class GLUtil {
 
 	private static final String TAG = "GLUtil";
 
+	/**
+	 * Whether to check for errors after the OpenGL calls. Disabled by default because glGetError() stalls the
+	 * pipeline.
+	 * 是否在OpenGL调用后检查错误，默认禁用
+	 */
+	private static boolean debug = false;
+
 	private GLUtil() {
 
 	}
@@ -103,45 +108,20 @@ public final class GLUtil {
 		return shader;
 	}
 
-	public static int[] loadTexture(final InputStream is, final InputStream emissiveIs) {
-		Log.v("GLUtil", "Loading texture from stream...");
-		// TODO: refactor code to support more than 2 textures
-//		final int[] textureHandle = new int[1];
-//
-//		GLES20.glGenTextures(1, textureHandle, 0);
-//		GLUtil.checkGlError("glGenTextures");
-//		if (textureHandle[0] == 0) {
-//			throw new RuntimeException("Error loading texture.");
-//		}
-//
-//		Log.v("GLUtil", "Handler: " + textureHandle[0]);
-//
-//		final BitmapFactory.Options options = new BitmapFactory.Options();
-//		// By default, Android applies pre-scaling to bitmaps depending on the resolution of your device and which
-//		// resource folder you placed the image in. We don’t want Android to scale our bitmap at all, so to be sure,
-//		// we set inScaled to false.
-//		options.inScaled = false;
-//
-//		// Read in the resource
-//		final Bitmap bitmap = BitmapFactory.decodeStream(is, null, options);
-//		if (bitmap == null) {
-//			throw new RuntimeException("couldnt load bitmap");
-//		}
-//
-//		// Bind to the texture in OpenGL
-//		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
-//		GLUtil.checkGlError("glBindTexture");
-//		GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-//		GLUtil.checkGlError("texImage2D");
-//		bitmap.recycle();
-//		GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-//
-//		Log.v("GLUtil", "Loaded texture ok");
-//		return textureHandle[0];
-
-		final int[] textureHandle = new int[2];
-
-		GLES20.glGenTextures(2, textureHandle, 0);
+	/**
+	 * Upload the bitmap into a new texture object, and leave it bound to GL_TEXTURE_2D
+	 * 将位图上传到新的纹理对象，并保持其绑定
+	 * 
+	 * @param bitmap
+	 *            - the image, not recycled here.
+	 * @param mipmaps
+	 *            - whether to generate the mipmaps, only needed by the mipmap minification filters.
+	 * @return the name of the texture
+	 */
+	public static int loadTexture(final Bitmap bitmap, final boolean mipmaps) {
+		final int[] textureHandle = new int[1];
+
+		GLES20.glGenTextures(1, textureHandle, 0);
 		GLUtil.checkGlError("glGenTextures");
 		if (textureHandle[0] == 0) {
 			throw new RuntimeException("Error loading texture.");
@@ -149,38 +129,54 @@ public final class GLUtil {
 
 		Log.v("GLUtil", "Handler: " + textureHandle[0]);
 
-		final BitmapFactory.Options options = new BitmapFactory.Options();
-		// By default, Android applies pre-scaling to bitmaps depending on the resolution of your device and which
-		// resource folder you placed the image in. We don’t want Android to scale our bitmap at all, so to be sure,
-		// we set inScaled to false.
-		options.inScaled = false;
-
-		// Read in the resource
-		final Bitmap bitmap = BitmapFactory.decodeStream(is, null, options);
-		if (bitmap == null) {
-			throw new RuntimeException("couldnt load bitmap");
-		}
-
 		// Bind to the texture in OpenGL
 		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
 		GLUtil.checkGlError("glBindTexture");
 		GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
 		GLUtil.checkGlError("texImage2D");
-		bitmap.recycle();
-		GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-
-		if (emissiveIs != null){
-			final Bitmap emissiveBitmap = BitmapFactory.decodeStream(emissiveIs, null, options);
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[1]);
-			GLUtil.checkGlError("glBindTexture");
-			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, emissiveBitmap, 0);
-			GLUtil.checkGlError("texImage2D");
-			emissiveBitmap.recycle();
+		if (mipmaps) {
 			GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
 		}
 
 		Log.v("GLUtil", "Loaded texture ok");
-		return textureHandle;
+		return textureHandle[0];
+	}
+
+	/**
+	 * Decode an image without the pre-scaling Android applies to resources
+	 * 解码图像，不进行Android对资源的预缩放
+	 * 
+	 * @return the bitmap or null if the data is not a supported image
+	 */
+	public static Bitmap decodeBitmap(final byte[] data) {
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		// By default, Android applies pre-scaling to bitmaps depending on the resolution of your device and which
+		// resource folder you placed the image in. We don’t want Android to scale our bitmap at all, so to be sure,
+		// we set inScaled to false.
+		options.inScaled = false;
+		options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+		return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+	}
+
+	/**
+	 * Create an RGBA texture object without uploading its pixels, and leave it bound to GL_TEXTURE_2D. The pixels
+	 * can be uploaded later in parts with glTexSubImage2D.
+	 * 创建RGBA纹理对象但不上传像素，并保持其绑定。像素可以稍后用glTexSubImage2D分块上传
+	 * 
+	 * @return the name of the texture
+	 */
+	public static int createTexture(final int width, final int height) {
+		final int[] textureHandle = new int[1];
+		GLES20.glGenTextures(1, textureHandle, 0);
+		GLUtil.checkGlError("glGenTextures");
+		if (textureHandle[0] == 0) {
+			throw new RuntimeException("Error creating texture.");
+		}
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
+		GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA,
+				GLES20.GL_UNSIGNED_BYTE, null);
+		GLUtil.checkGlError("glTexImage2D");
+		return textureHandle[0];
 	}
 
 	/**
@@ -206,4 +202,29 @@ public final class GLUtil {
 		}
 		return error;
 	}
+
+	/**
+	 * Enable or disable the error checks of {@link #debugGlError(String)}
+	 * 
+	 * @param debug
+	 *            - true to check for errors after the OpenGL calls.
+	 */
+	public static void setDebug(boolean debug) {
+		GLUtil.debug = debug;
+	}
+
+	public static boolean isDebug() {
+		return debug;
+	}
+
+	/**
+	 * Same as {@link #checkGlError(String)}, but only when the debug mode is enabled.
+	 * 
+	 * @param glOperation
+	 *            - Name of the OpenGL call to check.
+	 * @return true if there was an error
+	 */
+	public static boolean debugGlError(String glOperation) {
+		return debug && checkGlError(glOperation);
+	}
 }
@@ -0,0 +1,113 @@
+package org.andresoviedo.util.collections;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive floats. Unlike {@code ArrayList<Float>} it does not box the values,
+ * so it can hold millions of coordinates without putting pressure on the garbage collector.
+ *
+ * @author andresoviedo
+ */
+public final class FloatArrayList {
+
+    private float[] data;
+    private int size;
+
+    public FloatArrayList() {
+        this(1024);
+    }
+
+    public FloatArrayList(int initialCapacity) {
+        this.data = new float[Math.max(initialCapacity, 16)];
+    }
+
+    public void add(float value) {
+        if (size == data.length) {
+            grow(size + 1);
+        }
+        data[size++] = value;
+    }
+
+    public void add(float x, float y) {
+        if (size + 2 > data.length) {
+            grow(size + 2);
+        }
+        data[size++] = x;
+        data[size++] = y;
+    }
+
+    public void add(float x, float y, float z) {
+        if (size + 3 > data.length) {
+            grow(size + 3);
+        }
+        data[size++] = x;
+        data[size++] = y;
+        data[size++] = z;
+    }
+
+    public void addAll(FloatArrayList other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size += other.size;
+    }
+
+    public float get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, float value) {
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            grow(capacity);
+        }
+    }
+
+    /**
+     * @return the backing array. Only the first {@link #size()} elements are valid
+     */
+    public float[] array() {
+        return data;
+    }
+
+    public float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * Copy the contents into a new direct buffer using the native byte order, ready to be used by OpenGL
+     *
+     * @return the new buffer, rewound
+     */
+    public FloatBuffer toFloatBuffer() {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        buffer.put(data, 0, size);
+        buffer.position(0);
+        return buffer;
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = data.length + (data.length >> 1);
+        if (newCapacity < minCapacity) {
+            newCapacity = minCapacity;
+        }
+        data = Arrays.copyOf(data, newCapacity);
+    }
+}
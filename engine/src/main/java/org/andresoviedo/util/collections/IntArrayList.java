@@ -0,0 +1,105 @@
+package org.andresoviedo.util.collections;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive ints. Unlike {@code ArrayList<Integer>} it does not box the values,
+ * so it can hold millions of indices without putting pressure on the garbage collector.
+ *
+ * @author andresoviedo
+ */
+public final class IntArrayList {
+
+    private int[] data;
+    private int size;
+
+    public IntArrayList() {
+        this(1024);
+    }
+
+    public IntArrayList(int initialCapacity) {
+        this.data = new int[Math.max(initialCapacity, 16)];
+    }
+
+    public void add(int value) {
+        if (size == data.length) {
+            grow(size + 1);
+        }
+        data[size++] = value;
+    }
+
+    public void add(int a, int b, int c) {
+        if (size + 3 > data.length) {
+            grow(size + 3);
+        }
+        data[size++] = a;
+        data[size++] = b;
+        data[size++] = c;
+    }
+
+    public void addAll(IntArrayList other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size += other.size;
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, int value) {
+        data[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            grow(capacity);
+        }
+    }
+
+    /**
+     * @return the backing array. Only the first {@link #size()} elements are valid
+     */
+    public int[] array() {
+        return data;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * Copy the contents into a new direct buffer using the native byte order, ready to be used by OpenGL
+     *
+     * @return the new buffer, rewound
+     */
+    public IntBuffer toIntBuffer() {
+        IntBuffer buffer = ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        buffer.put(data, 0, size);
+        buffer.position(0);
+        return buffer;
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = data.length + (data.length >> 1);
+        if (newCapacity < minCapacity) {
+            newCapacity = minCapacity;
+        }
+        data = Arrays.copyOf(data, newCapacity);
+    }
+}
@@ -0,0 +1,115 @@
+package org.andresoviedo.util.collections;
+
+import java.util.Arrays;
+
+/**
+ * Assigns consecutive ids (0, 1, 2...) to unique tuples of 4 ints. Used to deduplicate vertices made of
+ * several attribute indices (i.e. position, texture, normal and material).
+ * <p>
+ * It's an open addressing hash table (linear probing) backed by primitive arrays, so there is no boxing
+ * and no allocation per entry.
+ * 为唯一的4元组整数分配连续的id，用于顶点去重
+ *
+ * @author andresoviedo
+ */
+public final class IntTupleIndex {
+
+    private static final int ARITY = 4;
+    private static final int EMPTY = -1;
+
+    // tuple components, 4 per id
+    private int[] tuples;
+    // hash table of ids
+    private int[] table;
+    private int mask;
+    private int size;
+
+    /**
+     * @param expectedSize expected number of unique tuples
+     */
+    public IntTupleIndex(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        this.table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        this.mask = capacity - 1;
+        this.tuples = new int[Math.max(expectedSize, 16) * ARITY];
+    }
+
+    /**
+     * Get the id for the tuple, registering it if it's the first time it's seen
+     *
+     * @return the id of the tuple
+     */
+    public int add(int a, int b, int c, int d) {
+        int slot = hash(a, b, c, d) & mask;
+        int id;
+        while ((id = table[slot]) != EMPTY) {
+            int offset = id * ARITY;
+            if (tuples[offset] == a && tuples[offset + 1] == b && tuples[offset + 2] == c && tuples[offset + 3] == d) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        id = size++;
+        if (id * ARITY + ARITY > tuples.length) {
+            tuples = Arrays.copyOf(tuples, tuples.length * 2);
+        }
+        int offset = id * ARITY;
+        tuples[offset] = a;
+        tuples[offset + 1] = b;
+        tuples[offset + 2] = c;
+        tuples[offset + 3] = d;
+        table[slot] = id;
+
+        // keep load factor under 0.5
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * @param id        tuple id
+     * @param component component index (0-3)
+     * @return the component of the tuple
+     */
+    public int get(int id, int component) {
+        return tuples[id * ARITY + component];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int offset = id * ARITY;
+            int slot = hash(tuples[offset], tuples[offset + 1], tuples[offset + 2], tuples[offset + 3]) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id;
+        }
+    }
+
+    private static int hash(int a, int b, int c, int d) {
+        int h = a;
+        h = h * 0x9E3779B1 + b;
+        h = h * 0x9E3779B1 + c;
+        h = h * 0x9E3779B1 + d;
+        // murmur3 finalizer
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
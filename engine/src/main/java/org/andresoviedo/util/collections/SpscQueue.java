@@ -0,0 +1,69 @@
+package org.andresoviedo.util.collections;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer thread. The producer publishes an
+ * element by advancing the tail with an ordered write, so the consumer always sees the element fully written
+ * once it sees the new tail. Neither side ever blocks.
+ * 单生产者单消费者的有界无锁队列，两端都不会阻塞
+ *
+ * @author andresoviedo
+ */
+public final class SpscQueue<E> {
+
+    private final Object[] items;
+    private final int mask;
+    // next index to read (written by the consumer only)
+    // 下一个读取的索引（只由消费者写入）
+    private final AtomicLong head = new AtomicLong();
+    // next index to write (written by the producer only)
+    // 下一个写入的索引（只由生产者写入）
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of elements, rounded up to a power of 2
+     */
+    public SpscQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.items = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Producer only
+     *
+     * @return false if the queue is full
+     */
+    public boolean offer(E item) {
+        long t = tail.get();
+        if (t - head.get() == items.length) {
+            return false;
+        }
+        items[(int) t & mask] = item;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer only
+     *
+     * @return the oldest element, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        int index = (int) h & mask;
+        E item = (E) items[index];
+        items[index] = null;
+        head.lazySet(h + 1);
+        return item;
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+}
@@ -0,0 +1,108 @@
+package org.andresoviedo.util.io;
+
+/**
+ * Parses the decimal numbers of text model files (i.e. OBJ lines or COLLADA arrays) straight from the bytes, so
+ * no {@link String} is created for every number. The mantissa is accumulated as a long and scaled by a power of
+ * ten, so the result is the same as {@link Float#parseFloat(String)} except in the last bit of some numbers.
+ * 直接从字节解析文本模型文件中的十进制数，不为每个数字创建字符串。尾数累积为long并按10的幂缩放
+ *
+ * @author andresoviedo
+ */
+public final class NumberParser {
+
+    // significant digits kept. The rest only change the exponent
+    // 保留的有效数字，其余的只改变指数
+    private static final int MAX_DIGITS = 18;
+    private static final int MAX_EXPONENT = 10000;
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private NumberParser() {
+    }
+
+    /**
+     * Parse a decimal number like <code>-1.25e-3</code>, <code>.5</code> or <code>+7.</code>
+     * 解析十进制数
+     *
+     * @param b     ASCII text ASCII文本
+     * @param start first character of the number 数字的第一个字符
+     * @param end   end of the number: the whole range must be the number 数字的结尾：整个范围必须是数字
+     * @return the number, or {@link Float#NaN} if the text is not a plain decimal number (i.e. "nan", "INF" or
+     * "1.#QNAN"), so the caller can parse it some other way
+     */
+    public static float parseFloat(byte[] b, int start, int end) {
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (b[pos] == '-' || b[pos] == '+')) {
+            negative = b[pos] == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        byte c;
+        while (pos < end && (c = b[pos]) >= '0' && c <= '9') {
+            any = true;
+            if (digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+            }
+            pos++;
+        }
+        if (pos < end && b[pos] == '.') {
+            pos++;
+            while (pos < end && (c = b[pos]) >= '0' && c <= '9') {
+                any = true;
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    exponent--;
+                }
+                pos++;
+            }
+        }
+        if (!any) {
+            return Float.NaN;
+        }
+        if (pos < end && ((c = b[pos]) == 'e' || c == 'E')) {
+            pos++;
+            boolean negativeExp = false;
+            if (pos < end && (b[pos] == '-' || b[pos] == '+')) {
+                negativeExp = b[pos] == '-';
+                pos++;
+            }
+            if (pos == end) {
+                return Float.NaN;
+            }
+            int exp = 0;
+            while (pos < end && (c = b[pos]) >= '0' && c <= '9') {
+                if (exp < MAX_EXPONENT) {
+                    exp = exp * 10 + (c - '0');
+                }
+                pos++;
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+        if (pos < end) {
+            return Float.NaN;
+        }
+
+        double value = mantissa;
+        if (mantissa != 0 && exponent != 0) {
+            if (exponent < 0) {
+                value = -exponent < POW10.length ? value / POW10[-exponent] : value / Math.pow(10, -exponent);
+            } else {
+                value = exponent < POW10.length ? value * POW10[exponent] : value * Math.pow(10, exponent);
+            }
+        }
+        return (float) (negative ? -value : value);
+    }
+}
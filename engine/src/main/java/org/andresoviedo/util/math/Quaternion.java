@@ -41,6 +41,22 @@ public class Quaternion {
 		normalize();
 	}
 
+	public float getX() {
+		return x;
+	}
+
+	public float getY() {
+		return y;
+	}
+
+	public float getZ() {
+		return z;
+	}
+
+	public float getW() {
+		return w;
+	}
+
 	/**
 	 * Normalizes the quaternion.
 	 */
@@ -65,6 +81,20 @@ public class Quaternion {
 	 *         this quaternion.
 	 */
 	public float[] toRotationMatrix(float[] matrix) {
+		toRotationMatrix(x, y, z, w, matrix, 0);
+		return matrix;
+	}
+
+	/**
+	 * Same as {@link #toRotationMatrix(float[])}, but for a quaternion stored as
+	 * plain floats, so it can be used without allocating a Quaternion.
+	 *
+	 * @param matrix
+	 *            - the output matrix
+	 * @param offset
+	 *            - the offset of the matrix in the output array
+	 */
+	public static void toRotationMatrix(float x, float y, float z, float w, float[] matrix, int offset) {
 		final float xy = x * y;
 		final float xz = x * z;
 		final float xw = x * w;
@@ -74,23 +104,22 @@ public class Quaternion {
 		final float xSquared = x * x;
 		final float ySquared = y * y;
 		final float zSquared = z * z;
-		matrix[0] = 1 - 2 * (ySquared + zSquared);
-		matrix[1] = 2 * (xy - zw);
-		matrix[2] = 2 * (xz + yw);
-		matrix[3] = 0;
-		matrix[4] = 2 * (xy + zw);
-		matrix[5] = 1 - 2 * (xSquared + zSquared);
-		matrix[6] = 2 * (yz - xw);
-		matrix[7] = 0;
-		matrix[8] = 2 * (xz - yw);
-		matrix[9] = 2 * (yz + xw);
-		matrix[10] = 1 - 2 * (xSquared + ySquared);
-		matrix[11] = 0;
-		matrix[12] = 0;
-		matrix[13] = 0;
-		matrix[14] = 0;
-		matrix[15] = 1;
-		return matrix;
+		matrix[offset] = 1 - 2 * (ySquared + zSquared);
+		matrix[offset + 1] = 2 * (xy - zw);
+		matrix[offset + 2] = 2 * (xz + yw);
+		matrix[offset + 3] = 0;
+		matrix[offset + 4] = 2 * (xy + zw);
+		matrix[offset + 5] = 1 - 2 * (xSquared + zSquared);
+		matrix[offset + 6] = 2 * (yz - xw);
+		matrix[offset + 7] = 0;
+		matrix[offset + 8] = 2 * (xz - yw);
+		matrix[offset + 9] = 2 * (yz + xw);
+		matrix[offset + 10] = 1 - 2 * (xSquared + ySquared);
+		matrix[offset + 11] = 0;
+		matrix[offset + 12] = 0;
+		matrix[offset + 13] = 0;
+		matrix[offset + 14] = 0;
+		matrix[offset + 15] = 1;
 	}
 
 	/**
@@ -0,0 +1,153 @@
+package org.andresoviedo.util.xml;
+
+import org.andresoviedo.util.collections.FloatArrayList;
+import org.andresoviedo.util.collections.IntArrayList;
+import org.andresoviedo.util.io.NumberParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the text of a node holding a list of numbers or names separated by white space (i.e.
+ * <code>float_array</code>, <code>p</code> or <code>Name_array</code>). The text is fed in chunks as it is
+ * read, and the values are stored in primitive arrays, so no {@link String} is created for the whole text
+ * or for every number.
+ * 解析以空白分隔的数字或名称列表节点的文本。文本按块输入，值存储在基本类型数组中，不会为整个文本或每个数字创建字符串。
+ *
+ * @author andresoviedo
+ */
+final class ArrayTextParser {
+
+	static final int FLOATS = 0;
+	static final int INTS = 1;
+	static final int NAMES = 2;
+
+	private final int type;
+	private final FloatArrayList floats;
+	private final IntArrayList ints;
+	private final List<String> names;
+
+	// current token, which may span several chunks
+	// 当前标记，可能跨越多个块
+	private char[] token = new char[32];
+	private int tokenLength;
+	// the token as ASCII, for the number parser 标记的ASCII形式，供数字解析器使用
+	private byte[] bytes = new byte[32];
+
+	/**
+	 * @param type     {@link #FLOATS}, {@link #INTS} or {@link #NAMES}
+	 * @param capacity expected number of values, or 0 if unknown
+	 */
+	ArrayTextParser(int type, int capacity) {
+		this.type = type;
+		this.floats = type == FLOATS ? new FloatArrayList(capacity > 0 ? capacity : 1024) : null;
+		this.ints = type == INTS ? new IntArrayList(capacity > 0 ? capacity : 1024) : null;
+		this.names = type == NAMES ? new ArrayList<String>(capacity > 0 ? capacity : 16) : null;
+	}
+
+	void parse(char[] text, int start, int length) {
+		int end = start + length;
+		for (int i = start; i < end; i++) {
+			char c = text[i];
+			if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+				flush();
+			} else {
+				if (tokenLength == token.length) {
+					char[] newToken = new char[token.length * 2];
+					System.arraycopy(token, 0, newToken, 0, tokenLength);
+					token = newToken;
+				}
+				token[tokenLength++] = c;
+			}
+		}
+	}
+
+	float[] getFloats() {
+		flush();
+		return floats.toArray();
+	}
+
+	int[] getInts() {
+		flush();
+		return ints.toArray();
+	}
+
+	String[] getNames() {
+		flush();
+		return names.toArray(new String[names.size()]);
+	}
+
+	private void flush() {
+		if (tokenLength == 0) {
+			return;
+		}
+		switch (type) {
+			case FLOATS:
+				floats.add(parseFloat());
+				break;
+			case INTS:
+				ints.add(parseInt(token, tokenLength));
+				break;
+			default:
+				names.add(new String(token, 0, tokenLength));
+				break;
+		}
+		tokenLength = 0;
+	}
+
+	static int parseInt(char[] c, int length) {
+		int i = 0;
+		boolean negative = false;
+		if (c[0] == '-' || c[0] == '+') {
+			negative = c[0] == '-';
+			i++;
+		}
+		if (i == length || length - i > 9) {
+			return Integer.parseInt(new String(c, 0, length));
+		}
+		int value = 0;
+		for (; i < length; i++) {
+			int digit = c[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return Integer.parseInt(new String(c, 0, length));
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parse the token with the {@link NumberParser} shared with the OBJ loader. Anything else (NaN, INF, non
+	 * ASCII characters) is parsed with the JDK.
+	 * 用与OBJ加载器共享的NumberParser解析标记，其他情况用JDK解析。
+	 */
+	private float parseFloat() {
+		if (bytes.length < tokenLength) {
+			bytes = new byte[token.length];
+		}
+		for (int i = 0; i < tokenLength; i++) {
+			char c = token[i];
+			if (c > 127) {
+				return parseFloat(new String(token, 0, tokenLength));
+			}
+			bytes[i] = (byte) c;
+		}
+		float value = NumberParser.parseFloat(bytes, 0, tokenLength);
+		if (Float.isNaN(value)) {
+			return parseFloat(new String(token, 0, tokenLength));
+		}
+		return value;
+	}
+
+	/**
+	 * Parse the number with the JDK, also accepting the XML schema infinity (<code>INF</code>)
+	 */
+	private static float parseFloat(String text) {
+		if ("INF".equals(text) || "+INF".equals(text)) {
+			return Float.POSITIVE_INFINITY;
+		} else if ("-INF".equals(text)) {
+			return Float.NEGATIVE_INFINITY;
+		}
+		return Float.parseFloat(text);
+	}
+}
@@ -18,6 +18,9 @@ public class XmlNode {
 	private String name;
 	private Map<String, String> attributes;
 	private String data;
+	private float[] floatData;
+	private int[] intData;
+	private String[] namesData;
 	private Map<String, List<XmlNode>> childNodes;
 
 	protected XmlNode(String name) {
@@ -39,6 +42,32 @@ public class XmlNode {
 		return data;
 	}
 
+	/**
+	 * @return The numbers of a <code>float_array</code> node, parsed while
+	 *         reading the file, or {@code null} for any other node.
+	 */
+	public float[] getFloatData() {
+		return floatData;
+	}
+
+	/**
+	 * @return The numbers of a <code>p</code>, <code>vcount</code> or
+	 *         <code>v</code> node, parsed while reading the file, or
+	 *         {@code null} for any other node.
+	 */
+	public int[] getIntData() {
+		return intData;
+	}
+
+	/**
+	 * @return The names of a <code>Name_array</code> or
+	 *         <code>IDREF_array</code> node, or {@code null} for any other
+	 *         node.
+	 */
+	public String[] getNamesData() {
+		return namesData;
+	}
+
 	/**
 	 * Gets the value of a certain attribute of the node. Returns {@code null}
 	 * if the attribute doesn't exist.
@@ -165,4 +194,16 @@ public class XmlNode {
 		this.data = data;
 	}
 
+	protected void setFloatData(float[] floatData) {
+		this.floatData = floatData;
+	}
+
+	protected void setIntData(int[] intData) {
+		this.intData = intData;
+	}
+
+	protected void setNamesData(String[] namesData) {
+		this.namesData = namesData;
+	}
+
 }
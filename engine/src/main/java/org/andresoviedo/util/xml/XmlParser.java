@@ -7,14 +7,31 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Set;
 
 /**
  * Created by andres on 9/12/17.
+ * <p>
+ * Parses a COLLADA file into a tree of {@link XmlNode}. The tree is kept only for the structure of the file:
+ * the payload of the array nodes (<code>float_array</code>, <code>int_array</code>, <code>p</code>,
+ * <code>vcount</code>, <code>v</code>, <code>Name_array</code> and <code>IDREF_array</code>) is parsed from
+ * the text events straight into primitive arrays, see {@link XmlNode#getFloatData()}.
+ * 将COLLADA文件解析为XmlNode树。树只保存文件结构，数组节点的内容直接从文本事件解析为基本类型数组。
  */
 public class XmlParser {
 
 
 	public static XmlNode parse(InputStream in)  {
+		return parse(in, null);
+	}
+
+	/**
+	 * @param in        the COLLADA file
+	 * @param libraries name of the children of the root node to load (i.e. <code>library_animations</code>),
+	 *                  or null to load all of them. The rest are skipped without building their nodes.
+	 * @return the root node
+	 */
+	public static XmlNode parse(InputStream in, Set<String> libraries)  {
 		try {
 			XmlPullParser xpp = Xml.newPullParser();
 			xpp.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
@@ -22,7 +39,7 @@ public class XmlParser {
 			int eventType = xpp.getEventType();
 			if (eventType == XmlPullParser.START_DOCUMENT) {
 				XmlNode parent = new XmlNode("xml");
-				loadNode(xpp, parent);
+				loadNode(xpp, parent, libraries);
 				return parent.getChild("COLLADA");
 			}
 		} catch (XmlPullParserException e) {
@@ -39,16 +56,25 @@ public class XmlParser {
 		return null;
 	}
 
-	private static void loadNode(XmlPullParser xpp, XmlNode parentNode) throws XmlPullParserException, IOException {
+	private static void loadNode(XmlPullParser xpp, XmlNode parentNode, Set<String> libraries) throws XmlPullParserException, IOException {
 		int eventType = xpp.next();
 		while(eventType != XmlPullParser.END_DOCUMENT) {
 			if (eventType == XmlPullParser.START_TAG) {
-				XmlNode childNode = new XmlNode(xpp.getName());
-				for (int i=0; i<xpp.getAttributeCount(); i++){
-					childNode.addAttribute(xpp.getAttributeName(i), xpp.getAttributeValue(i));
+				if (libraries != null && xpp.getDepth() == 2 && !libraries.contains(xpp.getName())) {
+					skipNode(xpp);
+				} else {
+					XmlNode childNode = new XmlNode(xpp.getName());
+					for (int i=0; i<xpp.getAttributeCount(); i++){
+						childNode.addAttribute(xpp.getAttributeName(i), xpp.getAttributeValue(i));
+					}
+					parentNode.addChild(childNode);
+					int arrayType = getArrayType(childNode.getName());
+					if (arrayType >= 0) {
+						loadArray(xpp, childNode, arrayType);
+					} else {
+						loadNode(xpp, childNode, libraries);
+					}
 				}
-				parentNode.addChild(childNode);
-				loadNode(xpp, childNode);
 			} else if (eventType == XmlPullParser.END_TAG) {
 				return;
 			} else if (eventType == XmlPullParser.TEXT) {
@@ -57,4 +83,80 @@ public class XmlParser {
 			eventType = xpp.next();
 		}
 	}
+
+	/**
+	 * @return the type of values of the node, or -1 if it is not an array node
+	 */
+	private static int getArrayType(String name) {
+		switch (name) {
+			case "float_array":
+				return ArrayTextParser.FLOATS;
+			case "int_array":
+			case "p":
+			case "vcount":
+			case "v":
+				return ArrayTextParser.INTS;
+			case "Name_array":
+			case "IDREF_array":
+				return ArrayTextParser.NAMES;
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Parse the values of the array node from its text, without building a String for it
+	 * 从文本解析数组节点的值，不为其构建字符串
+	 */
+	private static void loadArray(XmlPullParser xpp, XmlNode node, int arrayType) throws XmlPullParserException, IOException {
+		int count = 0;
+		String countAttribute = node.getAttribute("count");
+		if (countAttribute != null) {
+			try {
+				count = Integer.parseInt(countAttribute);
+			} catch (NumberFormatException e) {
+				// size not known in advance
+			}
+		}
+		ArrayTextParser parser = new ArrayTextParser(arrayType, count);
+		int[] holder = new int[2];
+		int eventType = xpp.next();
+		while (eventType != XmlPullParser.END_TAG && eventType != XmlPullParser.END_DOCUMENT) {
+			if (eventType == XmlPullParser.TEXT) {
+				char[] text = xpp.getTextCharacters(holder);
+				parser.parse(text, holder[0], holder[1]);
+			} else if (eventType == XmlPullParser.START_TAG) {
+				skipNode(xpp);
+			}
+			eventType = xpp.next();
+		}
+		switch (arrayType) {
+			case ArrayTextParser.FLOATS:
+				node.setFloatData(parser.getFloats());
+				break;
+			case ArrayTextParser.INTS:
+				node.setIntData(parser.getInts());
+				break;
+			default:
+				node.setNamesData(parser.getNames());
+				break;
+		}
+	}
+
+	/**
+	 * Skip the node just started, with all its children
+	 */
+	private static void skipNode(XmlPullParser xpp) throws XmlPullParserException, IOException {
+		int depth = 1;
+		while (depth > 0) {
+			int eventType = xpp.next();
+			if (eventType == XmlPullParser.START_TAG) {
+				depth++;
+			} else if (eventType == XmlPullParser.END_TAG) {
+				depth--;
+			} else if (eventType == XmlPullParser.END_DOCUMENT) {
+				return;
+			}
+		}
+	}
 }
@@ -0,0 +1,237 @@
+package org.andresoviedo.android_3d_model_engine.animation;
+
+import org.andresoviedo.util.math.Quaternion;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Sampling of the per joint channels of a {@link CompiledAnimation}, compared with the interpolation of the key
+ * frames by {@link JointTransform#interpolate(JointTransform, JointTransform, float)}, whatever the order of the
+ * sampled times, and the split of the key matrices into translation, rotation and scale
+ * {@link CompiledAnimation}每关节通道的采样（无论采样时间的顺序如何，都与JointTransform的关键帧插值比较），以及关键帧矩阵到平移、旋转和缩放的分解
+ */
+public class CompiledAnimationTest {
+
+    private static final float DELTA = 1e-5f;
+    private static final String[] JOINTS = {"a", "b", "c"};
+
+    // the keys of every joint: "a" has all of them, "b" only the whole seconds and "c" only one
+    // 每个关节的关键帧："a"有全部，"b"只有整秒的，"c"只有一个
+    private final Map<String, List<Float>> times = new LinkedHashMap<>();
+    private final Map<String, List<JointTransform>> transforms = new LinkedHashMap<>();
+    private CompiledAnimation animation;
+
+    @Before
+    public void setUp() {
+        for (String joint : JOINTS) {
+            times.put(joint, new ArrayList<Float>());
+            transforms.put(joint, new ArrayList<JointTransform>());
+        }
+        float[] frameTimes = {0, 0.5f, 1, 1.5f, 2};
+        KeyFrame[] frames = new KeyFrame[frameTimes.length];
+        for (int i = 0; i < frames.length; i++) {
+            Map<String, JointTransform> pose = new LinkedHashMap<>();
+            // 0, 350 (the quaternions have opposite signs), 80, 200 and 10 degrees 四元数符号相反
+            float[] angles = {0, 350, 80, 200, 10};
+            addKey(pose, "a", frameTimes[i], angles[i], new float[]{i, 2 * i, -i});
+            if (i % 2 == 0) {
+                addKey(pose, "b", frameTimes[i], 90 * i, new float[]{0, i * i, 1});
+            }
+            if (i == 2) {
+                addKey(pose, "c", frameTimes[i], 45, new float[]{5, 5, 5});
+            }
+            frames[i] = new KeyFrame(frameTimes[i], pose);
+        }
+        animation = new Animation(2, frames).getCompiled();
+    }
+
+    @Test
+    public void channels_oneForEveryAnimatedJoint() {
+        assertEquals(3, animation.getChannelCount());
+        for (String joint : JOINTS) {
+            assertEquals(joint, animation.getJointName(animation.indexOf(joint)));
+        }
+        assertEquals(-1, animation.indexOf("not animated"));
+        assertEquals(2, animation.getLength(), 0);
+    }
+
+    @Test
+    public void sample_forward() {
+        int[] cursors = new int[animation.getChannelCount()];
+        for (int i = -10; i <= 210; i++) {
+            assertSample(i / 100f, cursors);
+        }
+    }
+
+    @Test
+    public void sample_backward() {
+        int[] cursors = new int[animation.getChannelCount()];
+        for (int i = 210; i >= -10; i--) {
+            assertSample(i / 100f, cursors);
+        }
+    }
+
+    @Test
+    public void sample_randomJumps() {
+        // every jump further than the next key is a binary search 每次超过下一个关键帧的跳跃都是二分查找
+        int[] cursors = new int[animation.getChannelCount()];
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            assertSample(random.nextFloat() * 2.2f - 0.1f, cursors);
+        }
+    }
+
+    @Test
+    public void sample_atTheKeys() {
+        int[] cursors = new int[animation.getChannelCount()];
+        float[] out = new float[CompiledAnimation.KEY_SIZE];
+        for (String joint : JOINTS) {
+            int channel = animation.indexOf(joint);
+            for (int i = 0; i < times.get(joint).size(); i++) {
+                animation.sample(channel, times.get(joint).get(i), cursors, out, 0);
+                assertKey(transforms.get(joint).get(i), out);
+            }
+        }
+    }
+
+    @Test
+    public void sample_clampedToTheFirstAndLastKeys() {
+        int[] cursors = new int[animation.getChannelCount()];
+        float[] out = new float[CompiledAnimation.KEY_SIZE + 3];
+        for (String joint : JOINTS) {
+            int channel = animation.indexOf(joint);
+            List<JointTransform> keys = transforms.get(joint);
+            animation.sample(channel, -5, cursors, out, 3);
+            assertKey(keys.get(0), Arrays.copyOfRange(out, 3, out.length));
+            animation.sample(channel, 100, cursors, out, 3);
+            assertKey(keys.get(keys.size() - 1), Arrays.copyOfRange(out, 3, out.length));
+        }
+    }
+
+    @Test
+    public void sample_staleCursor() {
+        // cursors left by another animation, out of the keys of this one 另一个动画留下的游标，超出此动画的关键帧
+        int channel = animation.indexOf("a");
+        int[] cursors = new int[animation.getChannelCount()];
+        Arrays.fill(cursors, 7);
+        assertSample(0.2f, cursors);
+        cursors[channel] = 3;
+        assertSample(0.7f, cursors);
+        assertEquals(1, cursors[channel]);
+    }
+
+    @Test
+    public void toMatrix_buildsTheDecomposedMatrix() {
+        float[] matrix = trs(new float[]{1, 2, 3}, 30, 45, 60, new float[]{2, 0.5f, 3});
+        float[] key = new float[CompiledAnimation.KEY_SIZE];
+        CompiledAnimation.decompose(matrix, key, 0);
+        assertArrayEquals(new float[]{1, 2, 3}, Arrays.copyOfRange(key, 0, 3), DELTA);
+        assertArrayEquals(new float[]{2, 0.5f, 3}, Arrays.copyOfRange(key, 7, 10), DELTA);
+
+        float[] out = new float[20];
+        CompiledAnimation.toMatrix(key, 0, out, 4);
+        assertArrayEquals(matrix, Arrays.copyOfRange(out, 4, 20), DELTA);
+    }
+
+    @Test
+    public void toMatrix_buildsTheDecomposedMirroringMatrix() {
+        // the sign of the scale can't be told from the matrix, but the matrix must be the same
+        // 无法从矩阵判断缩放的符号，但矩阵必须相同
+        for (float[] scale : new float[][]{{-2, 0.5f, 3}, {2, -0.5f, 3}, {-2, -0.5f, -3}}) {
+            float[] matrix = trs(new float[]{1, 2, 3}, 30, 45, 60, scale);
+            float[] key = new float[CompiledAnimation.KEY_SIZE];
+            CompiledAnimation.decompose(matrix, key, 0);
+            assertEquals(-2, key[7], DELTA);
+            float[] out = new float[16];
+            CompiledAnimation.toMatrix(key, 0, out, 0);
+            assertArrayEquals(matrix, out, DELTA);
+        }
+    }
+
+    private void addKey(Map<String, JointTransform> pose, String joint, float time, float degrees,
+                        float[] position) {
+        double half = Math.toRadians(degrees) / 2;
+        float[] axis = {0.6f, 0, 0.8f};
+        Quaternion rotation = new Quaternion(axis[0] * (float) Math.sin(half), axis[1] * (float) Math.sin(half),
+                axis[2] * (float) Math.sin(half), (float) Math.cos(half));
+        float[] matrix = rotation.toRotationMatrix(new float[16]);
+        matrix[12] = position[0];
+        matrix[13] = position[1];
+        matrix[14] = position[2];
+        JointTransform transform = new JointTransform(matrix);
+        pose.put(joint, transform);
+        times.get(joint).add(time);
+        transforms.get(joint).add(transform);
+    }
+
+    /**
+     * Sample every channel and compare it with the interpolation of the keys around the time
+     * 采样每个通道，并与该时间前后关键帧的插值比较
+     */
+    private void assertSample(float time, int[] cursors) {
+        float[] out = new float[CompiledAnimation.KEY_SIZE];
+        for (String joint : JOINTS) {
+            animation.sample(animation.indexOf(joint), time, cursors, out, 0);
+            assertKey(interpolate(joint, time), out);
+        }
+    }
+
+    /**
+     * @return the transform of the joint at the time, from the keys before and after it 该时间关节的变换
+     */
+    private JointTransform interpolate(String joint, float time) {
+        List<Float> jointTimes = times.get(joint);
+        List<JointTransform> keys = transforms.get(joint);
+        if (time <= jointTimes.get(0)) {
+            return keys.get(0);
+        }
+        for (int i = 1; i < jointTimes.size(); i++) {
+            if (time < jointTimes.get(i)) {
+                float progression = (time - jointTimes.get(i - 1)) / (jointTimes.get(i) - jointTimes.get(i - 1));
+                return JointTransform.interpolate(keys.get(i - 1), keys.get(i), progression);
+            }
+        }
+        return keys.get(keys.size() - 1);
+    }
+
+    private static void assertKey(JointTransform expected, float[] key) {
+        Quaternion rotation = expected.getRotation();
+        assertArrayEquals(expected.getPosition(), Arrays.copyOfRange(key, 0, 3), DELTA);
+        assertArrayEquals(new float[]{rotation.getX(), rotation.getY(), rotation.getZ(), rotation.getW()},
+                Arrays.copyOfRange(key, 3, 7), DELTA);
+        // the keys have no scale 关键帧没有缩放
+        assertArrayEquals(new float[]{1, 1, 1}, Arrays.copyOfRange(key, 7, 10), DELTA);
+    }
+
+    /**
+     * @return translation * rotation (x, then y, then z degrees) * scale, built by hand 手工构建的矩阵
+     */
+    private static float[] trs(float[] translation, float x, float y, float z, float[] scale) {
+        double ax = Math.toRadians(x), ay = Math.toRadians(y), az = Math.toRadians(z);
+        float cx = (float) Math.cos(ax), sx = (float) Math.sin(ax);
+        float cy = (float) Math.cos(ay), sy = (float) Math.sin(ay);
+        float cz = (float) Math.cos(az), sz = (float) Math.sin(az);
+        // Rz * Ry * Rx, column-major 列主序
+        float[] m = {
+                cz * cy, sz * cy, -sy, 0,
+                cz * sy * sx - sz * cx, sz * sy * sx + cz * cx, cy * sx, 0,
+                cz * sy * cx + sz * sx, sz * sy * cx - cz * sx, cy * cx, 0,
+                translation[0], translation[1], translation[2], 1};
+        for (int column = 0; column < 3; column++) {
+            for (int row = 0; row < 3; row++) {
+                m[column * 4 + row] *= scale[column];
+            }
+        }
+        return m;
+    }
+}
@@ -0,0 +1,208 @@
+package org.andresoviedo.android_3d_model_engine.collision;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The hierarchy must find the same hits as testing all the triangles one by one.
+ * 层次结构必须找到与逐个测试所有三角形相同的命中
+ */
+public class BVHTest {
+
+    @Test
+    public void intersect_axisParallelRayOnSlabPlane() {
+        BVH bvh = BVH.build(grid(8, 8, 0));
+        assertEquals(5f, bvh.intersect(new float[]{0, 0.1f, 5}, new float[]{0, 0, -1}), 0);
+    }
+
+    @Test
+    public void intersect_axisAlignedRays() {
+        float[] triangles = grid(8, 8, 0);
+        TriangleArrays bruteForce = new TriangleArrays(triangles);
+        BVH bvh = BVH.build(triangles.clone());
+        // rays on the grid lines and between them, from both sides 网格线上和网格线之间的光线，从两侧
+        for (int i = -2; i <= 36; i++) {
+            for (int j = -2; j <= 36; j++) {
+                float x = i / 4f, y = j / 4f;
+                assertSameHit(bvh, bruteForce, new float[]{x, y, 5}, new float[]{0, 0, -1});
+                assertSameHit(bvh, bruteForce, new float[]{x, y, -5}, new float[]{0, 0, 1});
+                assertSameHit(bvh, bruteForce, new float[]{x, y, 5}, new float[]{0, 0, -0f});
+                // parallel to the grid 与网格平行
+                assertSameHit(bvh, bruteForce, new float[]{-1, x, y - 4}, new float[]{1, 0, 0});
+                assertSameHit(bvh, bruteForce, new float[]{x, -1, y - 4}, new float[]{0, 1, 0});
+            }
+        }
+    }
+
+    @Test
+    public void intersect_randomRays() {
+        Random random = new Random(42);
+        float[] triangles = randomTriangles(random, 3000);
+        TriangleArrays bruteForce = new TriangleArrays(triangles);
+        BVH bvh = BVH.build(triangles.clone());
+        for (int i = 0; i < 5000; i++) {
+            float[] origin = {random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10,
+                    random.nextFloat() * 20 - 10};
+            float[] direction = {random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1};
+            // some rays parallel to an axis 一些光线与轴平行
+            if (i % 5 == 0) {
+                direction[i % 3] = 0;
+                direction[(i + 1) % 3] = 0;
+            }
+            assertSameHit(bvh, bruteForce, origin, direction);
+        }
+    }
+
+    @Test
+    public void intersect_parallelBuild() {
+        // more triangles than the threshold to build in parallel 三角形数超过并行构建阈值
+        float[] triangles = grid(80, 80, 1);
+        TriangleArrays bruteForce = new TriangleArrays(triangles);
+        BVH bvh = BVH.build(triangles.clone());
+        assertEquals(triangles.length / 9, bvh.getTriangleCount());
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            float x = random.nextInt(320) / 4f, y = random.nextInt(320) / 4f;
+            assertSameHit(bvh, bruteForce, new float[]{x, y, 10}, new float[]{0, 0, -1});
+        }
+    }
+
+    @Test
+    public void intersect_batchSameAsSingleRays() {
+        Random random = new Random(3);
+        float[] triangles = sphere(64, 128, 5);
+        BVH bvh = BVH.build(triangles);
+        // enough rays to split the batch in the fork-join pool 足够多的光线，以便在fork-join池中拆分批次
+        int count = 1000;
+        float[] origins = new float[count * 3];
+        float[] directions = new float[count * 3];
+        randomRays(random, origins, directions, count, 10);
+        float[] distances = new float[count];
+        bvh.intersect(origins, directions, distances, count);
+        int hits = 0;
+        for (int i = 0; i < count; i++) {
+            float[] origin = Arrays.copyOfRange(origins, i * 3, i * 3 + 3);
+            float[] direction = Arrays.copyOfRange(directions, i * 3, i * 3 + 3);
+            assertEquals("ray " + i, bvh.intersect(origin, direction), distances[i], 0);
+            if (distances[i] != -1) {
+                hits++;
+            }
+        }
+        assertTrue(hits > 0 && hits < count);
+    }
+
+    @Test
+    public void intersect_sphereSameHitsAsAllTriangles() {
+        // the rays the picking casts: from around the model towards its center 拾取投射的光线：从模型周围射向其中心
+        float[] triangles = sphere(32, 64, 5);
+        TriangleArrays bruteForce = new TriangleArrays(triangles);
+        BVH bvh = BVH.build(triangles.clone());
+        int count = 500;
+        float[] origins = new float[count * 3];
+        float[] directions = new float[count * 3];
+        randomRays(new Random(1), origins, directions, count, 10);
+        float[] distances = new float[count];
+        bvh.intersect(origins, directions, distances, count);
+        int hits = 0;
+        int bruteForceHits = 0;
+        for (int i = 0; i < count; i++) {
+            int r = i * 3;
+            float distance = bruteForce.nearest(0, bruteForce.size(), origins[r], origins[r + 1], origins[r + 2],
+                    directions[r], directions[r + 1], directions[r + 2], Float.MAX_VALUE);
+            bruteForceHits += distance != Float.MAX_VALUE ? 1 : 0;
+            hits += distances[i] != -1 ? 1 : 0;
+        }
+        assertEquals(bruteForceHits, hits);
+        assertTrue(hits > 0 && hits < count);
+    }
+
+    static void assertSameHit(BVH bvh, TriangleArrays bruteForce, float[] origin, float[] direction) {
+        float expected = bruteForce.nearest(0, bruteForce.size(), origin[0], origin[1], origin[2],
+                direction[0], direction[1], direction[2], Float.MAX_VALUE);
+        if (expected == Float.MAX_VALUE) {
+            expected = -1;
+        }
+        assertEquals(Arrays.toString(origin) + " -> " + Arrays.toString(direction), expected,
+                bvh.intersect(origin, direction), 0);
+    }
+
+    /**
+     * @param z the height of the quads, or a value different from 0 to make every quad at a different height
+     * @return a grid of quads (2 triangles each) of size 1 from (0,0)
+     */
+    static float[] grid(int width, int height, float z) {
+        float[] ret = new float[width * height * 18];
+        int t = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                float h = z == 0 ? 0 : (x * 7 + y * 13) % 5 * z;
+                float[] quad = {x, y, h, x + 1, y, h, x + 1, y + 1, h, x, y, h, x + 1, y + 1, h, x, y + 1, h};
+                System.arraycopy(quad, 0, ret, t, quad.length);
+                t += quad.length;
+            }
+        }
+        return ret;
+    }
+
+    static float[] randomTriangles(Random random, int count) {
+        float[] ret = new float[count * 9];
+        for (int i = 0; i < count; i++) {
+            float cx = random.nextFloat() * 16 - 8, cy = random.nextFloat() * 16 - 8, cz = random.nextFloat() * 16 - 8;
+            for (int v = 0; v < 3; v++) {
+                ret[i * 9 + v * 3] = cx + random.nextFloat() * 2 - 1;
+                ret[i * 9 + v * 3 + 1] = cy + random.nextFloat() * 2 - 1;
+                ret[i * 9 + v * 3 + 2] = cz + random.nextFloat() * 2 - 1;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the triangles of a sphere centered at the origin, 9 floats per triangle
+     */
+    static float[] sphere(int stacks, int slices, float radius) {
+        float[] ret = new float[stacks * slices * 18];
+        int t = 0;
+        for (int i = 0; i < stacks; i++) {
+            for (int j = 0; j < slices; j++) {
+                float[] a = point(i, j, stacks, slices, radius), b = point(i + 1, j, stacks, slices, radius);
+                float[] c = point(i + 1, j + 1, stacks, slices, radius), d = point(i, j + 1, stacks, slices, radius);
+                for (float[] v : new float[][]{a, b, c, a, c, d}) {
+                    System.arraycopy(v, 0, ret, t, 3);
+                    t += 3;
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static float[] point(int stack, int slice, int stacks, int slices, float radius) {
+        double phi = Math.PI * stack / stacks, theta = 2 * Math.PI * slice / slices;
+        return new float[]{(float) (radius * Math.sin(phi) * Math.cos(theta)),
+                (float) (radius * Math.cos(phi)), (float) (radius * Math.sin(phi) * Math.sin(theta))};
+    }
+
+    /**
+     * Rays from random points of a cube of the specified size, towards random points near the center
+     * 从指定大小立方体的随机点射向中心附近随机点的光线
+     */
+    static void randomRays(Random random, float[] origins, float[] directions, int count, float size) {
+        for (int i = 0; i < count * 3; i += 3) {
+            float length = 0;
+            for (int j = 0; j < 3; j++) {
+                origins[i + j] = (random.nextFloat() * 2 - 1) * size;
+                directions[i + j] = (random.nextFloat() * 2 - 1) * size / 2 - origins[i + j];
+                length += directions[i + j] * directions[i + j];
+            }
+            length = (float) Math.sqrt(length);
+            for (int j = 0; j < 3; j++) {
+                directions[i + j] /= length;
+            }
+        }
+    }
+}
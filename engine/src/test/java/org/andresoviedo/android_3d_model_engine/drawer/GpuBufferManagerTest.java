@@ -0,0 +1,90 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+/**
+ * Sharing and reference counting of the buffer objects of the {@link GpuBufferManager}. The OpenGL calls do
+ * nothing in the unit tests, so only the bookkeeping is checked
+ * {@link GpuBufferManager}缓冲区对象的共享和引用计数。单元测试中OpenGL调用不做任何事，只检查记录
+ */
+public class GpuBufferManagerTest {
+
+    private final FloatBuffer vertices = FloatBuffer.wrap(new float[]{0, 0, 0, 1, 0, 0, 0, 1, 0});
+    private final FloatBuffer normals = FloatBuffer.wrap(new float[]{0, 0, 1, 0, 0, 1, 0, 0, 1});
+
+    @Test
+    public void instancesShareTheBufferObjects() {
+        GpuBufferManager manager = new GpuBufferManager();
+        AnimatedModel model = new AnimatedModel(vertices);
+        model.setVertexNormalsArrayBuffer(normals);
+        AnimatedModel[] instances = new AnimatedModel[100];
+        for (int i = 0; i < instances.length; i++) {
+            instances[i] = model.newInstance();
+            manager.bind(instances[i], GpuBufferManager.POSITION, instances[i].getVertexArrayBuffer());
+            manager.bind(instances[i], GpuBufferManager.NORMAL, instances[i].getVertexNormalsArrayBuffer());
+        }
+        assertEquals(2, manager.size());
+
+        for (int i = 0; i < instances.length - 1; i++) {
+            manager.release(instances[i]);
+        }
+        assertEquals(2, manager.size());
+        manager.release(instances[instances.length - 1]);
+        assertEquals(0, manager.size());
+    }
+
+    @Test
+    public void replacedBufferIsReleased() {
+        GpuBufferManager manager = new GpuBufferManager();
+        AnimatedModel model = new AnimatedModel(vertices);
+        AnimatedModel other = model.newInstance();
+        manager.bind(model, GpuBufferManager.POSITION, vertices);
+        manager.bind(other, GpuBufferManager.POSITION, vertices);
+
+        FloatBuffer replaced = FloatBuffer.wrap(new float[]{0, 0, 0, 2, 0, 0, 0, 2, 0});
+        manager.bind(model, GpuBufferManager.POSITION, replaced);
+        assertEquals(2, manager.size());
+        manager.bind(other, GpuBufferManager.POSITION, replaced);
+        assertEquals(1, manager.size());
+
+        // binding the same buffer again doesn't add references 再次绑定同一缓冲区不会增加引用
+        manager.bind(model, GpuBufferManager.POSITION, replaced);
+        manager.release(model);
+        manager.release(other);
+        assertEquals(0, manager.size());
+    }
+
+    @Test
+    public void invalidateForgetsEverything() {
+        GpuBufferManager manager = new GpuBufferManager();
+        AnimatedModel model = new AnimatedModel(vertices);
+        manager.bind(model, GpuBufferManager.POSITION, vertices);
+        manager.invalidate();
+        assertEquals(0, manager.size());
+        // released objects are ignored 已释放的对象被忽略
+        manager.release(model);
+        assertEquals(0, manager.size());
+    }
+
+    @Test
+    public void instancesHaveTheirOwnWorldBounds() {
+        AnimatedModel model = new AnimatedModel(vertices);
+        AnimatedModel instance = model.newInstance();
+        instance.setPosition(new float[]{10, 0, 0});
+        model.setPosition(new float[]{0, 0, 0});
+
+        float[] modelBounds = model.getWorldBounds();
+        float[] instanceBounds = instance.getWorldBounds();
+
+        assertNotSame(modelBounds, instanceBounds);
+        assertArrayEquals(new float[]{0, 0, 0, 1, 1, 0}, modelBounds, 0);
+        assertArrayEquals(new float[]{10, 0, 0, 11, 1, 0}, instanceBounds, 0);
+    }
+}
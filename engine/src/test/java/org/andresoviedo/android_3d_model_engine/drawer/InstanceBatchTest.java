@@ -0,0 +1,177 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3D;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Routing of the objects between the {@link InstanceBatch} and the {@link RenderQueue}, and the order they are
+ * drawn in. The drawers only record the objects, so no OpenGL context is needed
+ * 对象在{@link InstanceBatch}和{@link RenderQueue}之间的分配，以及绘制顺序。抽屉只记录对象，不需要OpenGL上下文
+ */
+public class InstanceBatchTest {
+
+    private static final float[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+
+    private final FloatBuffer mesh = FloatBuffer.wrap(new float[]{-1, -1, 0, 1, -1, 0, 0, 1, 0});
+    private final List<Object3DData> drawn = new ArrayList<>();
+    private final RecordingDrawer recorder = new RecordingDrawer();
+
+    private InstanceBatch batch;
+    private RenderQueue queue;
+
+    @Before
+    public void setUp() {
+        // no shaders, so there is no instanced drawer 没有着色器，所以没有实例化抽屉
+        DrawerFactory drawerFactory = new DrawerFactory(Collections.<String, String>emptyMap()) {
+            @Override
+            public Object3D getDrawer(Object3DData obj, boolean usingTextures, boolean usingLights,
+                                      boolean usingAnimation, boolean drawColors) {
+                return recorder;
+            }
+        };
+        batch = new InstanceBatch(drawerFactory);
+        queue = new RenderQueue(drawerFactory);
+    }
+
+    @Test
+    public void add_rejectsBlendedChangedAndPoints() {
+        assertTrue(batch.add(newObject("solid", 1), -1));
+        assertFalse(batch.add(newObject("glass", 1).setColor(new float[]{1, 1, 1, 0.5f}), -1));
+        assertFalse(batch.add(newObject("changed", 1).setChanged(true), -1));
+        assertFalse(batch.add(newObject("points", 1).setDrawMode(GLES20.GL_POINTS), -1));
+        assertTrue(batch.add(newObject("opaque color", 1).setColor(new float[]{1, 0, 0, 1}), -1));
+    }
+
+    @Test
+    public void submit_singlesSortedFrontToBackWithTheQueue() {
+        queue.begin(IDENTITY);
+        Object3DData far = newObject("far", 10);
+        Object3DData near = newObject("near", 2);
+        Object3DData middle = newObject("middle", 5);
+        assertTrue(batch.add(far, -1));
+        queue.add(recorder, near, -1, null, false);
+        // a different texture, so another group 不同的纹理，所以是另一个组
+        assertTrue(batch.add(middle, 3));
+        batch.submit(queue, true, true, true);
+        assertEquals(3, queue.size());
+
+        queue.draw(RenderQueue.PASS_OPAQUE, IDENTITY, IDENTITY, null, null);
+        assertEquals(Arrays.asList(near, far, middle), drawn);
+    }
+
+    @Test
+    public void submit_copiesWithoutInstancingAreQueuedOneByOne() {
+        queue.begin(IDENTITY);
+        Object3DData a = newObject("a", 8);
+        Object3DData b = newObject("b", 1);
+        Object3DData other = newObject("other", 4);
+        assertTrue(batch.add(a, -1));
+        assertTrue(batch.add(b, -1));
+        queue.add(recorder, other, -1, null, false);
+        batch.submit(queue, true, true, true);
+
+        queue.draw(RenderQueue.PASS_OPAQUE, IDENTITY, IDENTITY, null, null);
+        assertEquals(Arrays.asList(b, other, a), drawn);
+    }
+
+    @Test
+    public void submit_groupsAreReusedByTheNextView() {
+        queue.begin(IDENTITY);
+        Object3DData first = newObject("first", 1);
+        assertTrue(batch.add(first, -1));
+        batch.submit(queue, true, true, true);
+        queue.draw(RenderQueue.PASS_OPAQUE, IDENTITY, IDENTITY, null, null);
+        assertEquals(Collections.singletonList(first), drawn);
+
+        // the objects of the previous view are not queued again 上一视图的对象不会再次入队
+        drawn.clear();
+        queue.begin(IDENTITY);
+        Object3DData second = newObject("second", 1);
+        assertTrue(batch.add(second, -1));
+        batch.submit(queue, true, true, true);
+        queue.draw(RenderQueue.PASS_OPAQUE, IDENTITY, IDENTITY, null, null);
+        assertEquals(Collections.singletonList(second), drawn);
+    }
+
+    @Test
+    public void addInstanced_sortedAsTheNearestCopy() {
+        queue.begin(IDENTITY);
+        Object3DData copyFar = newObject("copy far", 20);
+        Object3DData copyNear = newObject("copy near", 3);
+        Object3DData before = newObject("before", 2);
+        Object3DData after = newObject("after", 6);
+        queue.add(recorder, after, -1, null, false);
+        queue.addInstanced(recorder, Arrays.asList(copyFar, copyNear), -1);
+        queue.add(recorder, before, -1, null, false);
+        assertEquals(3, queue.size());
+
+        queue.draw(RenderQueue.PASS_OPAQUE, IDENTITY, IDENTITY, null, null);
+        assertEquals(Arrays.asList(before, copyFar, copyNear, after), drawn);
+    }
+
+    @Test
+    public void draw_blendedBackToFrontAfterOpaque() {
+        queue.begin(IDENTITY);
+        Object3DData glassNear = newObject("glass near", 1);
+        Object3DData glassFar = newObject("glass far", 9);
+        Object3DData solid = newObject("solid", 5);
+        queue.add(recorder, glassNear, -1, null, true);
+        queue.add(recorder, glassFar, -1, null, true);
+        assertTrue(batch.add(solid, -1));
+        batch.submit(queue, true, true, true);
+
+        queue.draw(RenderQueue.PASS_OPAQUE, IDENTITY, IDENTITY, null, null);
+        assertEquals(Collections.singletonList(solid), drawn);
+        queue.draw(RenderQueue.PASS_BLENDED, IDENTITY, IDENTITY, null, null);
+        assertEquals(Arrays.asList(solid, glassFar, glassNear), drawn);
+    }
+
+    /**
+     * @param depth distance in front of the camera, which looks down -z from the origin
+     */
+    private Object3DData newObject(String id, float depth) {
+        Object3DData obj = new Object3DData(mesh).setId(id).setDrawMode(GLES20.GL_TRIANGLES);
+        obj.setPosition(new float[]{0, 0, -depth});
+        return obj;
+    }
+
+    private final class RecordingDrawer implements Object3D {
+
+        @Override
+        public void draw(Object3DData obj, float[] pMatrix, float[] vMatrix, int textureId, float[] lightPos) {
+            drawn.add(obj);
+        }
+
+        @Override
+        public void draw(Object3DData obj, float[] pMatrix, float[] vMatrix, int textureId, float[] lightPos,
+                         float[] colorMask) {
+            drawn.add(obj);
+        }
+
+        @Override
+        public void draw(Object3DData obj, float[] pMatrix, float[] vMatrix, int drawType, int drawSize,
+                         int textureId, float[] lightPos) {
+            drawn.add(obj);
+        }
+
+        @Override
+        public void draw(Object3DData obj, float[] pMatrix, float[] vMatrix, int drawType, int drawSize,
+                         int textureId, float[] lightPos, float[] colorMask) {
+            drawn.add(obj);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3D;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Order of the draws given by the sort keys of the {@link RenderQueue}
+ * {@link RenderQueue}排序键给出的绘制顺序
+ */
+public class RenderQueueTest {
+
+    private static final float[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+
+    private final List<Object3DData> drawn = new ArrayList<>();
+
+    @Test
+    public void key_opaqueByProgramTextureAndFrontToBack() {
+        // program, texture, depth, already in the expected order 程序、纹理、深度，已按预期顺序
+        float[][] draws = {
+                {1, -1, 0.5f},
+                {1, -1, 20},
+                {1, 0, 1},
+                {1, 0, 2.5f},
+                {1, 0, 1000},
+                {1, 7, 0.1f},
+                {2, -1, 3},
+                {2, 3, 0},
+                {2, 3, 4},
+                {300, 0, 2}};
+        assertSortedAs(RenderQueue.PASS_OPAQUE, draws);
+    }
+
+    @Test
+    public void key_blendedBackToFront() {
+        // depth first, then program and texture 先深度，然后程序和纹理
+        float[][] draws = {
+                {5, 0, 1000},
+                {1, 2, 20},
+                {1, 0, 3},
+                {2, -1, 3},
+                {2, 0, 3},
+                {1, 0, 0.5f},
+                {9, 9, 0}};
+        assertSortedAs(RenderQueue.PASS_BLENDED, draws);
+    }
+
+    @Test
+    public void key_opaqueBeforeBlended() {
+        long opaque = RenderQueue.getKey(RenderQueue.PASS_OPAQUE, 0x7FFF, 0xFFFE, Float.MAX_VALUE);
+        long blended = RenderQueue.getKey(RenderQueue.PASS_BLENDED, 0, -1, Float.MAX_VALUE);
+        assertTrue(opaque > 0 && blended > 0);
+        assertTrue(opaque < blended);
+    }
+
+    @Test
+    public void key_behindCameraSortedAsZero() {
+        assertEquals(RenderQueue.getKey(RenderQueue.PASS_OPAQUE, 1, 0, 0),
+                RenderQueue.getKey(RenderQueue.PASS_OPAQUE, 1, 0, -5));
+        assertEquals(RenderQueue.getKey(RenderQueue.PASS_BLENDED, 1, 0, 0),
+                RenderQueue.getKey(RenderQueue.PASS_BLENDED, 1, 0, -5));
+    }
+
+    @Test
+    public void draw_scaledAndOffsetObjectsByTheirDrawnDepth() {
+        RecordingDrawer recorder = new RecordingDrawer();
+        RenderQueue queue = new RenderQueue(new DrawerFactory(Collections.<String, String>emptyMap()));
+        queue.begin(IDENTITY);
+        // centered by the position and scaled, as the loaders do. The model matrix would put the near glass 110 units
+        // away and the near solid 150 units away 按加载器的方式用位置居中并缩放。模型矩阵会将近处的玻璃放在110个单位外，近处的实体放在150个单位外
+        Object3DData glassNear = newObject("glass near", 100, 0.1f, 2);
+        Object3DData glassFar = newObject("glass far", 0, 1, 8);
+        Object3DData solidNear = newObject("solid near", -50, 4, 3);
+        Object3DData solidFar = newObject("solid far", 0, 1, 6);
+        queue.add(recorder, glassNear, -1, null, true);
+        queue.add(recorder, solidFar, -1, null, false);
+        queue.add(recorder, glassFar, -1, null, true);
+        queue.add(recorder, solidNear, -1, null, false);
+
+        queue.draw(RenderQueue.PASS_OPAQUE, IDENTITY, IDENTITY, null, null);
+        assertEquals(Arrays.asList(solidNear, solidFar), drawn);
+        queue.draw(RenderQueue.PASS_BLENDED, IDENTITY, IDENTITY, null, null);
+        assertEquals(Arrays.asList(solidNear, solidFar, glassFar, glassNear), drawn);
+    }
+
+    /**
+     * @param meshZ the z of the vertices 顶点的z
+     * @param depth distance where the object is drawn, in front of the camera that looks down -z from the origin
+     *              对象绘制位置在相机前的距离，相机位于原点朝-z看
+     */
+    private static Object3DData newObject(String id, float meshZ, float scale, float depth) {
+        Object3DData obj = new Object3DData(FloatBuffer.wrap(new float[]{-1, -1, meshZ, 1, -1, meshZ, 0, 1, meshZ}))
+                .setId(id).setDrawMode(GLES20.GL_TRIANGLES);
+        obj.setScale(new float[]{scale, scale, scale});
+        // drawn at (z + position) * scale 绘制在(z + position) * scale
+        obj.setPosition(new float[]{0, 0, -depth / scale - meshZ});
+        return obj;
+    }
+
+    private static void assertSortedAs(int pass, float[][] draws) {
+        long[] keys = new long[draws.length];
+        for (int i = 0; i < draws.length; i++) {
+            keys[i] = RenderQueue.getKey(pass, (int) draws[i][0], (int) draws[i][1], draws[i][2]);
+        }
+        for (int i = 1; i < keys.length; i++) {
+            assertTrue("draw " + i + " sorted before draw " + (i - 1), keys[i - 1] < keys[i]);
+        }
+    }
+
+    private final class RecordingDrawer implements Object3D {
+
+        @Override
+        public void draw(Object3DData obj, float[] pMatrix, float[] vMatrix, int textureId, float[] lightPos) {
+            drawn.add(obj);
+        }
+
+        @Override
+        public void draw(Object3DData obj, float[] pMatrix, float[] vMatrix, int textureId, float[] lightPos,
+                         float[] colorMask) {
+            drawn.add(obj);
+        }
+
+        @Override
+        public void draw(Object3DData obj, float[] pMatrix, float[] vMatrix, int drawType, int drawSize,
+                         int textureId, float[] lightPos) {
+            drawn.add(obj);
+        }
+
+        @Override
+        public void draw(Object3DData obj, float[] pMatrix, float[] vMatrix, int drawType, int drawSize,
+                         int textureId, float[] lightPos, float[] colorMask) {
+            drawn.add(obj);
+        }
+    }
+}
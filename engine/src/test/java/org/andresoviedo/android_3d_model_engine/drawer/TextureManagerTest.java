@@ -0,0 +1,196 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.ktx.KtxTexture;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Sharing, reference counting and eviction of the textures of the {@link TextureManager}. There is no OpenGL
+ * context, so the texture names are counted by the test, and the images are ETC1 files, which are decompressed
+ * without the Android bitmap decoder
+ * {@link TextureManager}纹理的共享、引用计数和淘汰。没有OpenGL上下文，所以纹理名称由测试计数，图像是无需Android位图解码器即可解压的ETC1文件
+ */
+public class TextureManagerTest {
+
+    private static final int SIZE = 64;
+    // RGBA, without mipmaps 不带mipmap的RGBA
+    private static final long TEXTURE_BYTES = SIZE * SIZE * 4;
+
+    private final List<Integer> deleted = new ArrayList<>();
+    private TextureManager manager;
+
+    @Before
+    public void setUp() {
+        manager = new TextureManager() {
+            private int names;
+
+            @Override
+            int createTexture(int width, int height) {
+                return ++names;
+            }
+
+            @Override
+            void deleteTexture(int texture) {
+                deleted.add(texture);
+            }
+        };
+        manager.beginFrame();
+    }
+
+    @Test
+    public void get_sameContentSharesTheTexture() throws Exception {
+        Object3DData a = new Object3DData();
+        Object3DData b = new Object3DData();
+        Object3DData c = new Object3DData();
+        int texture = draw(a, image(1));
+        // another array with the same image, i.e. loaded by another model 另一个相同图像的数组，例如由另一个模型加载
+        assertEquals(texture, draw(b, image(1)));
+        assertNotEquals(texture, draw(c, image(2)));
+
+        assertEquals(1, manager.getHits());
+        assertEquals(2, manager.getMisses());
+        assertEquals(2 * TEXTURE_BYTES, manager.getUsedBytes());
+    }
+
+    @Test
+    public void get_texturesDrawnInTheFrameAreNotEvicted() throws Exception {
+        manager.setBudget(TEXTURE_BYTES);
+        Object3DData a = new Object3DData();
+        Object3DData b = new Object3DData();
+        int textureA = draw(a, image(1));
+        int textureB = draw(b, image(2));
+        // over the budget, but both are needed by this frame 超出预算，但此帧需要两者
+        assertEquals(2 * TEXTURE_BYTES, manager.getUsedBytes());
+        assertEquals(0, manager.getEvictions());
+
+        // the next frame only draws b and a new one, so a goes 下一帧只绘制b和一个新纹理，所以a被淘汰
+        manager.beginFrame();
+        assertEquals(textureB, manager.get(b, TextureManager.TEXTURE, b.getTextureData(), GLES20.GL_LINEAR));
+        draw(new Object3DData(), image(3));
+        assertEquals(1, manager.getEvictions());
+        assertEquals(2 * TEXTURE_BYTES, manager.getUsedBytes());
+        assertTrue(deleted.contains(textureA));
+        assertEquals(1, deleted.size());
+    }
+
+    @Test
+    public void get_evictedTextureIsUploadedAgain() throws Exception {
+        manager.setBudget(2 * TEXTURE_BYTES);
+        Object3DData a = new Object3DData();
+        Object3DData b = new Object3DData();
+        int textureA = draw(a, image(1));
+        manager.beginFrame();
+        draw(b, image(2));
+
+        // least recently drawn first 最久未绘制的先淘汰
+        manager.beginFrame();
+        draw(new Object3DData(), image(3));
+        assertEquals(Integer.valueOf(textureA), deleted.get(0));
+        assertEquals(3, manager.getMisses());
+
+        manager.beginFrame();
+        int again = draw(a, a.getTextureData());
+        assertNotEquals(textureA, again);
+        assertEquals(4, manager.getMisses());
+        // b was drawn before the third image b在第三个图像之前绘制
+        assertEquals(2, deleted.size());
+        assertEquals(2 * TEXTURE_BYTES, manager.getUsedBytes());
+    }
+
+    @Test
+    public void release_unusedTextureStaysUntilEvicted() throws Exception {
+        Object3DData a = new Object3DData();
+        Object3DData b = new Object3DData();
+        byte[] image = image(1);
+        int texture = draw(a, image);
+        draw(b, image(1));
+        manager.release(a);
+        manager.release(b);
+        assertEquals(TEXTURE_BYTES, manager.getUsedBytes());
+
+        // loaded again: the texture is still there 再次加载：纹理仍在
+        Object3DData reloaded = new Object3DData();
+        assertEquals(texture, draw(reloaded, image(1)));
+        manager.release(reloaded);
+
+        // once evicted, it's forgotten 一旦被淘汰就被遗忘
+        manager.beginFrame();
+        manager.setBudget(0);
+        assertEquals(0, manager.getUsedBytes());
+        assertEquals(1, manager.getEvictions());
+        assertEquals(Integer.valueOf(texture), deleted.get(0));
+
+        manager.setBudget(TextureManager.DEFAULT_BUDGET);
+        int misses = manager.getMisses();
+        assertNotEquals(texture, draw(new Object3DData(), image));
+        assertEquals(misses + 1, manager.getMisses());
+    }
+
+    @Test
+    public void get_replacedImageIsUnreferenced() throws Exception {
+        Object3DData a = new Object3DData();
+        int first = draw(a, image(1));
+        int second = draw(a, image(2));
+        assertNotEquals(first, second);
+
+        // the first one is not used anymore, so it's the first evicted 第一个不再使用，所以最先被淘汰
+        manager.beginFrame();
+        manager.setBudget(TEXTURE_BYTES);
+        assertEquals(1, manager.getEvictions());
+        assertEquals(Integer.valueOf(first), deleted.get(0));
+    }
+
+    /**
+     * Draw the object until its texture is loaded
+     * 绘制对象直到其纹理加载完成
+     *
+     * @return the texture 纹理
+     */
+    private int draw(Object3DData obj, byte[] image) throws InterruptedException {
+        obj.setTextureData(image);
+        int placeholder = manager.getPlaceholder(TextureManager.TEXTURE);
+        for (int i = 0; i < 5000; i++) {
+            int texture = manager.get(obj, TextureManager.TEXTURE, image, GLES20.GL_LINEAR);
+            assertTrue(texture != -1);
+            if (texture != placeholder) {
+                return texture;
+            }
+            // the image is being decoded 图像正在解码
+            Thread.sleep(1);
+        }
+        fail("texture not loaded");
+        return -1;
+    }
+
+    /**
+     * @return a KTX file with a single ETC1 level. The seed makes the content 种子决定内容
+     */
+    private static byte[] image(int seed) {
+        int levelSize = KtxTexture.getLevelSize(KtxTexture.GL_ETC1_RGB8_OES, SIZE, SIZE);
+        ByteBuffer file = ByteBuffer.allocate(64 + 4 + levelSize).order(ByteOrder.LITTLE_ENDIAN);
+        file.put(new byte[]{(byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'});
+        file.putInt(0x04030201);
+        // type, type size, format, internal format, base internal format
+        file.putInt(0).putInt(1).putInt(0).putInt(KtxTexture.GL_ETC1_RGB8_OES).putInt(0x1907);
+        // size, depth, array elements, faces, levels and key values
+        file.putInt(SIZE).putInt(SIZE).putInt(0).putInt(0).putInt(1).putInt(1).putInt(0);
+        file.putInt(levelSize);
+        for (int i = 0; i < levelSize; i++) {
+            file.put((byte) (seed * 31 + i));
+        }
+        return file.array();
+    }
+}
@@ -0,0 +1,122 @@
+package org.andresoviedo.android_3d_model_engine.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Culling of boxes and spheres against the frustum of a known perspective projection: 90 degrees of field of view,
+ * square viewport, near plane at 1 and far plane at 100. The camera is at the origin looking down -z, so at a
+ * distance d the visible area goes from -d to d in x and y
+ * 已知透视投影的视锥体对包围盒和球体的剔除：90度视野，正方形视口，近平面为1，远平面为100。相机位于原点朝-z方向看，
+ * 所以在距离d处x和y的可见范围为-d到d
+ */
+public class FrustumTest {
+
+    private static final float NEAR = 1;
+    private static final float FAR = 100;
+
+    private final Frustum frustum = new Frustum();
+
+    @Before
+    public void setUp() {
+        frustum.set(perspective());
+    }
+
+    @Test
+    public void intersectsBox_inside() {
+        assertTrue(frustum.intersectsBox(new float[]{-1, -1, -11, 1, 1, -9}));
+        // the whole visible area at a distance of 50 距离50处的整个可见区域
+        assertTrue(frustum.intersectsBox(new float[]{-49, -49, -51, 49, 49, -50}));
+    }
+
+    @Test
+    public void intersectsBox_outsideEachPlane() {
+        // left, right, bottom, top 左、右、下、上
+        assertFalse(frustum.intersectsBox(new float[]{-30, -1, -11, -25, 1, -9}));
+        assertFalse(frustum.intersectsBox(new float[]{25, -1, -11, 30, 1, -9}));
+        assertFalse(frustum.intersectsBox(new float[]{-1, -30, -11, 1, -25, -9}));
+        assertFalse(frustum.intersectsBox(new float[]{-1, 25, -11, 1, 30, -9}));
+        // between the camera and the near plane, and behind the camera 在相机和近平面之间，以及在相机后面
+        assertFalse(frustum.intersectsBox(new float[]{-0.1f, -0.1f, -0.9f, 0.1f, 0.1f, -0.5f}));
+        assertFalse(frustum.intersectsBox(new float[]{-1, -1, 5, 1, 1, 10}));
+        // beyond the far plane 超出远平面
+        assertFalse(frustum.intersectsBox(new float[]{-1, -1, -120, 1, 1, -110}));
+    }
+
+    @Test
+    public void intersectsBox_straddlingAPlane() {
+        // across the left plane 跨越左平面
+        assertTrue(frustum.intersectsBox(new float[]{-15, -1, -11, -5, 1, -9}));
+        // across the top plane 跨越上平面
+        assertTrue(frustum.intersectsBox(new float[]{-1, 5, -11, 1, 15, -9}));
+        // across the near and the far planes 跨越近平面和远平面
+        assertTrue(frustum.intersectsBox(new float[]{-0.1f, -0.1f, -2, 0.1f, 0.1f, 2}));
+        assertTrue(frustum.intersectsBox(new float[]{-1, -1, -110, 1, 1, -90}));
+        // bigger than the frustum 比视锥体大
+        assertTrue(frustum.intersectsBox(new float[]{-500, -500, -500, 500, 500, 500}));
+    }
+
+    @Test
+    public void intersectsSphere_insideOutsideAndStraddling() {
+        assertTrue(frustum.intersectsSphere(0, 0, -10, 1));
+
+        // 7.07 units out of the left plane 在左平面外7.07个单位
+        assertFalse(frustum.intersectsSphere(-20, 0, -10, 7));
+        assertTrue(frustum.intersectsSphere(-20, 0, -10, 7.2f));
+        // 5 units beyond the far plane 超出远平面5个单位
+        assertFalse(frustum.intersectsSphere(0, 0, -105, 4.9f));
+        assertTrue(frustum.intersectsSphere(0, 0, -105, 5.1f));
+        // the camera is 1 unit before the near plane 相机在近平面前1个单位
+        assertFalse(frustum.intersectsSphere(0, 0, 0, 0.9f));
+        assertTrue(frustum.intersectsSphere(0, 0, 0, 1.1f));
+    }
+
+    @Test
+    public void set_viewProjectionOfAMovedCamera() {
+        // the camera moved to z=10, so the view matrix translates by -10 相机移到z=10，所以视图矩阵平移-10
+        float[] view = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, -10, 1};
+        frustum.set(multiply(perspective(), view));
+
+        assertTrue(frustum.intersectsBox(new float[]{-1, -1, -1, 1, 1, 1}));
+        // between the camera and its near plane 在相机和其近平面之间
+        assertFalse(frustum.intersectsBox(new float[]{-0.1f, -0.1f, 9.1f, 0.1f, 0.1f, 9.5f}));
+        assertFalse(frustum.intersectsBox(new float[]{-1, -1, -100, 1, 1, -95}));
+        assertTrue(frustum.intersectsSphere(0, 0, -85, 1));
+        assertFalse(frustum.intersectsSphere(15, 0, 0, 3));
+    }
+
+    /**
+     * @return column-major perspective matrix, as the one of <code>Matrix.frustumM(-1, 1, -1, 1, 1, 100)</code>
+     * 列主序透视矩阵
+     */
+    private static float[] perspective() {
+        float[] m = new float[16];
+        // 1 / tan(fov / 2)
+        m[0] = 1;
+        m[5] = 1;
+        m[10] = -(FAR + NEAR) / (FAR - NEAR);
+        m[11] = -1;
+        m[14] = -2 * FAR * NEAR / (FAR - NEAR);
+        return m;
+    }
+
+    /**
+     * @return a * b, both column-major 两者均为列主序
+     */
+    private static float[] multiply(float[] a, float[] b) {
+        float[] result = new float[16];
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) {
+                    sum += a[k * 4 + row] * b[column * 4 + k];
+                }
+                result[column * 4 + row] = sum;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,134 @@
+package org.andresoviedo.android_3d_model_engine.model;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Batches of a {@link GeometryStream} between a loader thread and the drawing thread, and the transform
+ * published with them
+ * {@link GeometryStream}在加载线程和绘制线程之间的批次，以及随批次发布的变换
+ */
+public class GeometryStreamTest {
+
+    private final Object3DData obj = new Object3DData(FloatBuffer.allocate(3 * 3000));
+
+    @Test
+    public void poll_batchesInOrder() {
+        GeometryStream stream = new GeometryStream(3000);
+        assertEquals(0, stream.poll(obj));
+
+        stream.publish(300);
+        stream.publish(600, null, new float[]{1, 0, 0});
+        // not more vertices, so nothing is published 没有更多顶点，所以不发布
+        stream.publish(600, null, new float[]{2, 0, 0});
+        assertEquals(600, stream.poll(obj));
+        assertArrayEquals(new float[]{1, 0, 0}, obj.getPosition(), 0);
+
+        // nothing new 没有新内容
+        assertEquals(600, stream.poll(obj));
+        assertEquals(600, stream.getVisibleVertices());
+        assertFalse(stream.isComplete());
+    }
+
+    @Test
+    public void poll_fullQueueMergesTheBatches() {
+        GeometryStream stream = new GeometryStream(3000);
+        for (int i = 1; i <= 100; i++) {
+            stream.publish(i * 3, null, new float[]{i, 0, 0});
+        }
+        // the batches that didn't fit are published with the next one 放不下的批次随下一个发布
+        assertEquals(64 * 3, stream.poll(obj));
+        assertArrayEquals(new float[]{64, 0, 0}, obj.getPosition(), 0);
+        stream.publish(1500, null, new float[]{500, 0, 0});
+        assertEquals(1500, stream.poll(obj));
+        assertArrayEquals(new float[]{500, 0, 0}, obj.getPosition(), 0);
+    }
+
+    @Test
+    public void finish_appliesTheFinalTransform() {
+        GeometryStream stream = new GeometryStream(3000);
+        stream.publish(1500, new float[]{1, 1, 1}, new float[]{5, 0, 0});
+        assertEquals(1500, stream.poll(obj));
+        BoundingBox partial = obj.getBoundingBox();
+
+        float[] scale = {2, 2, 2};
+        float[] position = {0, 1, 0};
+        stream.publish(2000, new float[]{3, 3, 3}, new float[]{6, 0, 0});
+        stream.finish(scale, position);
+        assertSame(scale, stream.getFinalScale());
+        assertSame(position, stream.getFinalPosition());
+
+        // the final transform wins over the one of the last batch 最终变换优先于最后一批的变换
+        assertEquals(3000, stream.poll(obj));
+        assertTrue(stream.isComplete());
+        assertSame(scale, obj.getScale());
+        assertSame(position, obj.getPosition());
+        // the bounds of the partial object are forgotten 部分对象的边界被丢弃
+        assertNotSame(partial, obj.getBoundingBox());
+
+        // complete streams don't touch the object 完成的流不再修改对象
+        obj.setPosition(new float[]{9, 9, 9});
+        assertEquals(3000, stream.poll(obj));
+        assertArrayEquals(new float[]{9, 9, 9}, obj.getPosition(), 0);
+    }
+
+    @Test
+    public void finish_withoutTransformKeepsTheLastOne() {
+        GeometryStream stream = new GeometryStream(3000);
+        float[] position = {4, 0, 0};
+        stream.publish(1500, null, position);
+        stream.finish();
+        assertEquals(3000, stream.poll(obj));
+        assertSame(position, obj.getPosition());
+    }
+
+    @Test(timeout = 60000)
+    public void poll_loaderAndDrawingThreads() throws Exception {
+        final int step = 3 * 7;
+        final int total = step * 100_000 + 3;
+        final GeometryStream stream = new GeometryStream(total);
+        final AtomicInteger written = new AtomicInteger();
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int count = step; count < total; count += step) {
+                    written.set(count);
+                    // the position tells the batch it came with 位置标识它所属的批次
+                    stream.publish(count, null, new float[]{count, 0, 0});
+                }
+                written.set(total);
+                stream.finish(null, new float[]{total, 0, 0});
+            }
+        });
+        loader.start();
+
+        int visible = 0;
+        int frames = 0;
+        while (!stream.isComplete()) {
+            int last = visible;
+            visible = stream.poll(obj);
+            assertTrue(visible >= last);
+            assertTrue(visible <= written.get());
+            assertTrue(visible % step == 0 || visible == total);
+            if (visible > 0) {
+                // the transform of the last batch arrives with it 最后一批的变换随其到达
+                assertEquals(visible, obj.getPosition()[0], 0);
+            }
+            frames++;
+        }
+        loader.join();
+
+        assertEquals(total, visible);
+        assertEquals(total, obj.getPosition()[0], 0);
+        assertTrue(frames > 0);
+    }
+}
@@ -0,0 +1,103 @@
+package org.andresoviedo.android_3d_model_engine.model;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Choice of the level of detail as the object gets closer and farther, with the hysteresis at the limits
+ * 对象靠近和远离时细节级别的选择，以及临界处的滞后
+ */
+public class LevelOfDetailTest {
+
+    private final FloatBuffer mesh = FloatBuffer.wrap(new float[]{0, 0, 0, 1, 0, 0, 0, 1, 0});
+    private final Object3DData source = new Object3DData(mesh).setId("source");
+    private final Object3DData level1 = new Object3DData(mesh).setId("level1");
+    private final Object3DData level2 = new Object3DData(mesh).setId("level2");
+    // errors of 0.1 and 0.4 units 误差为0.1和0.4个单位
+    private final LevelOfDetail lod = new LevelOfDetail(Arrays.asList(level1, level2), new float[]{0.1f, 0.4f});
+
+    @Test
+    public void select_coarsestLevelBelowTheError() {
+        assertSame(source, lod.select(source, 100, 1));
+        assertEquals(0, lod.getCurrent());
+        assertSame(level1, lod.select(source, 5, 1));
+        assertEquals(1, lod.getCurrent());
+        assertSame(level2, lod.select(source, 1, 1));
+        assertEquals(2, lod.getCurrent());
+    }
+
+    @Test
+    public void select_hysteresisWhenGettingCoarser() {
+        // level 1 is 0.9 pixels: below the maximum, but not clearly 1级为0.9像素：低于最大值，但不明显
+        assertSame(source, lod.select(source, 9, 1));
+        assertSame(source, lod.select(source, 8, 1));
+        // 0.6 pixels 0.6像素
+        assertSame(level1, lod.select(source, 6, 1));
+        // level 2 is 0.8 pixels 2级为0.8像素
+        assertSame(level1, lod.select(source, 2, 1));
+        assertSame(level2, lod.select(source, 1.5f, 1));
+    }
+
+    @Test
+    public void select_noHysteresisWhenGettingFiner() {
+        assertSame(level2, lod.select(source, 1, 1));
+        // back to the limit, the level is kept 回到临界处，级别保持不变
+        assertSame(level2, lod.select(source, 2.5f, 1));
+        // over the limit, more detail at once 超过临界，立即增加细节
+        assertSame(level1, lod.select(source, 2.6f, 1));
+        assertSame(level1, lod.select(source, 10, 1));
+        assertSame(source, lod.select(source, 10.5f, 1));
+    }
+
+    @Test
+    public void getPixelsPerUnit_whereTheObjectIsDrawn() {
+        // a cube of size 10 at x=100, scaled by 0.5 and centered, so it is drawn at the origin with size 5
+        // 位于x=100、边长10的立方体，缩放0.5并居中，所以绘制在原点，边长5
+        float[] corners = new float[24];
+        for (int i = 0; i < 8; i++) {
+            corners[i * 3] = (i & 1) == 0 ? 95 : 105;
+            corners[i * 3 + 1] = (i & 2) == 0 ? -5 : 5;
+            corners[i * 3 + 2] = (i & 4) == 0 ? -5 : 5;
+        }
+        Object3DData cube = new Object3DData(FloatBuffer.wrap(corners));
+        cube.setScale(new float[]{0.5f, 0.5f, 0.5f});
+        cube.setPosition(new float[]{-100, 0, 0});
+        float radius = (float) Math.sqrt(3 * 5 * 5) / 2;
+
+        // 10 units from the nearest point of the bounds, 200 pixels high, 90 degrees of field of view
+        // 距边界最近点10个单位，高200像素，90度视野
+        float pixels = LevelOfDetail.getPixelsPerUnit(cube, new float[]{0, 0, 10 + radius}, 1, 200, 0.1f);
+        assertEquals(5, pixels, 1e-3);
+        // level 1 is 0.5 pixels, level 2 is 2 pixels 1级为0.5像素，2级为2像素
+        assertSame(level1, lod.select(cube, pixels, 1));
+
+        // 40 units: level 2 is 0.5 pixels 40个单位：2级为0.5像素
+        pixels = LevelOfDetail.getPixelsPerUnit(cube, new float[]{0, 0, 40 + radius}, 1, 200, 0.1f);
+        assertEquals(1.25f, pixels, 1e-3);
+        assertSame(level2, lod.select(cube, pixels, 1));
+
+        // inside the bounds, the distance is the near plane 在边界内，距离为近平面
+        pixels = LevelOfDetail.getPixelsPerUnit(cube, new float[]{0, 0, 1}, 1, 200, 0.1f);
+        assertEquals(500, pixels, 0.1);
+        assertSame(cube, lod.select(cube, pixels, 1));
+    }
+
+    @Test
+    public void getPixelsPerUnit_fullDetailWithoutVertices() {
+        Object3DData empty = new Object3DData();
+        assertSame(empty, lod.select(empty, LevelOfDetail.getPixelsPerUnit(empty, new float[3], 1, 200, 0.1f), 1));
+    }
+
+    @Test
+    public void select_levelTakesTheMaterialOfTheSource() {
+        source.setColor(new float[]{1, 0, 0, 1});
+        lod.select(source, 1, 1);
+        assertArrayEquals(new float[]{1, 0, 0, 1}, level2.getColor(), 0);
+    }
+}
@@ -0,0 +1,248 @@
+package org.andresoviedo.android_3d_model_engine.model;
+
+import android.opengl.GLES20;
+
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sorting of the triangles of a mesh into clusters: the buffers are reordered in place, so every triangle must be
+ * still there, the clusters must not be bigger than asked, and their ranges must cover the whole buffer
+ * 将网格的三角形排序为簇：缓冲区被就地重新排序，所以每个三角形必须仍然存在，簇不能大于要求的大小，且其范围必须覆盖整个缓冲区
+ */
+public class MeshClustersTest {
+
+    // a grid of 16 x 16 squares, 512 triangles 16x16方格的网格，512个三角形
+    private static final int GRID = 16;
+    private static final int CLUSTER_SIZE = 64;
+
+    @Test
+    public void build_arraysKeepEveryTriangle() {
+        FloatBuffer vertices = FloatBuffer.wrap(shuffledTriangles());
+        // the normals tell the vertex they belong to, so they must move with it 法线标识所属的顶点，所以必须随顶点移动
+        FloatBuffer normals = FloatBuffer.wrap(vertices.array().clone());
+        Object3DData obj = new Object3DData(vertices).setDrawMode(GLES20.GL_TRIANGLES).setDrawUsingArrays(true);
+        obj.setVertexNormalsArrayBuffer(normals);
+        List<String> before = triangles(vertices, null);
+
+        MeshClusters clusters = MeshClusters.build(obj, CLUSTER_SIZE);
+        assertNotNull(clusters);
+        assertEquals(before, triangles(vertices, null));
+        assertArrayEquals(vertices.array(), normals.array(), 0);
+        assertClusters(clusters, vertices, null);
+    }
+
+    @Test
+    public void build_indicesKeepEveryTriangle() {
+        for (boolean shortIndices : new boolean[]{false, true}) {
+            float[] triangles = shuffledTriangles();
+            FloatBuffer vertices = FloatBuffer.wrap(triangles);
+            int[] order = new int[triangles.length / 3];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Buffer indices = shortIndices ? toShorts(order) : IntBuffer.wrap(order);
+            Object3DData obj = new Object3DData(vertices, null).setDrawMode(GLES20.GL_TRIANGLES);
+            obj.setDrawOrder(indices);
+            List<String> before = triangles(vertices, indices);
+
+            MeshClusters clusters = MeshClusters.build(obj, CLUSTER_SIZE);
+            assertNotNull(clusters);
+            // the vertices stay, only the indices move 顶点不变，只有索引移动
+            assertArrayEquals(triangles, vertices.array(), 0);
+            assertEquals(before, triangles(vertices, indices));
+            assertClusters(clusters, vertices, indices);
+        }
+    }
+
+    @Test
+    public void permute_triangleGoesToItsPosition() {
+        int triangleCount = 50;
+        int[] permutation = new int[triangleCount];
+        for (int i = 0; i < triangleCount; i++) {
+            permutation[i] = i;
+        }
+        shuffle(permutation, new Random(1));
+
+        int[] indices = new int[triangleCount * 3];
+        float[] floats = new float[triangleCount * 6];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = i;
+        }
+        int[] kept = permutation.clone();
+        MeshClusters.permuteFloats(FloatBuffer.wrap(floats), 6, permutation);
+        assertArrayEquals(kept, permutation);
+        MeshClusters.permuteIndices(IntBuffer.wrap(indices), permutation);
+
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                assertEquals(kept[t] * 3 + k, indices[t * 3 + k]);
+            }
+            for (int k = 0; k < 6; k++) {
+                assertEquals(kept[t] * 6 + k, floats[t * 6 + k], 0);
+            }
+        }
+    }
+
+    @Test
+    public void findSplit_whereTheHighestBitChanges() {
+        long[] order = codes(1, 1, 2, 3, 8, 9, 12);
+        assertEquals(4, MeshClusters.findSplit(order, 0, order.length));
+        // in a sub range the common prefix is longer 子范围中的公共前缀更长
+        assertEquals(2, MeshClusters.findSplit(order, 0, 4));
+        assertEquals(6, MeshClusters.findSplit(order, 4, 7));
+        // the last code is the only one 最后一个码是唯一的
+        assertEquals(6, MeshClusters.findSplit(codes(0, 0, 0, 0, 0, 0, 4), 0, 7));
+        // all the same: the middle 全部相同：中间
+        assertEquals(3, MeshClusters.findSplit(codes(5, 5, 5, 5, 5, 5, 5), 0, 7));
+        assertEquals(5, MeshClusters.findSplit(codes(5, 5, 5, 5, 5, 5, 5), 3, 7));
+    }
+
+    @Test
+    public void cull_clustersWhereTheObjectIsDrawn() {
+        // the grid goes from 100 to 116 in x 网格在x方向从100到116
+        float[] triangles = shuffledTriangles();
+        for (int i = 0; i < triangles.length; i += 3) {
+            triangles[i] += 100;
+        }
+        Object3DData obj = new Object3DData(FloatBuffer.wrap(triangles)).setDrawMode(GLES20.GL_TRIANGLES)
+                .setDrawUsingArrays(true);
+        MeshClusters clusters = MeshClusters.build(obj, CLUSTER_SIZE);
+        assertNotNull(clusters);
+        Frustum frustum = new Frustum();
+        // 90 degrees, near 1, far 100, looking down -z from the origin 90度，近平面1，远平面100，从原点朝-z看
+        frustum.set(new float[]{1, 0, 0, 0, 0, 1, 0, 0, 0, 0, -101f / 99, -1, 0, 0, -200f / 99, 0});
+
+        // centered and scaled to 4 units, 10 units in front of the camera 居中并缩放到4个单位，在相机前10个单位
+        obj.setScale(new float[]{0.25f, 0.25f, 0.25f});
+        obj.setPosition(new float[]{-108, -8, -40});
+        List<int[]> drawn = clusters.cull(frustum, obj.getDrawMatrix());
+        assertEquals(1, drawn.size());
+        assertEquals(0, drawn.get(0)[1]);
+        assertEquals(triangles.length / 3, drawn.get(0)[2]);
+
+        // 5 units in front of the camera, from 3.25 to 7.25 in x: only the left half is in the view
+        // 在相机前5个单位，x从3.25到7.25：只有左半部分在视图中
+        obj.setPosition(new float[]{-87, -8, -20});
+        drawn = clusters.cull(frustum, obj.getDrawMatrix());
+        int count = 0;
+        for (int[] range : drawn) {
+            count += range[2];
+        }
+        assertEquals(triangles.length / 3 / 2, count);
+
+        // behind the camera 在相机后面
+        obj.setPosition(new float[]{-108, -8, 40});
+        assertEquals(0, clusters.cull(frustum, obj.getDrawMatrix()).size());
+    }
+
+    /**
+     * Check that the clusters are not empty or bigger than asked, that their ranges follow each other to the end of
+     * the buffer, and that their bounds contain their triangles
+     * 检查簇不为空也不大于要求，其范围首尾相接直到缓冲区结尾，且其边界包含其三角形
+     */
+    private static void assertClusters(MeshClusters clusters, FloatBuffer vertices, Buffer indices) {
+        float[] identity = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+        float[] box = new float[6];
+        int end = 0;
+        assertTrue(clusters.size() >= GRID * GRID * 2 / CLUSTER_SIZE);
+        for (int c = 0; c < clusters.size(); c++) {
+            assertEquals(end, clusters.getFirst(c));
+            assertTrue(clusters.getCount(c) > 0 && clusters.getCount(c) <= CLUSTER_SIZE * 3);
+            assertEquals(0, clusters.getCount(c) % 3);
+            clusters.getWorldBounds(c, identity, box);
+            for (int v = clusters.getFirst(c); v < clusters.getFirst(c) + clusters.getCount(c); v++) {
+                int vertex = indices == null ? v : getIndex(indices, v);
+                for (int j = 0; j < 3; j++) {
+                    float value = vertices.get(vertex * 3 + j);
+                    assertTrue(value >= box[j] && value <= box[3 + j]);
+                }
+            }
+            end += clusters.getCount(c);
+        }
+        assertEquals(GRID * GRID * 2 * 3, end);
+    }
+
+    /**
+     * @return the triangles of the grid, in random order 随机顺序的网格三角形
+     */
+    private static float[] shuffledTriangles() {
+        List<float[]> triangles = new ArrayList<>();
+        for (int x = 0; x < GRID; x++) {
+            for (int y = 0; y < GRID; y++) {
+                triangles.add(new float[]{x, y, 0, x + 1, y, 0, x + 1, y + 1, 0});
+                triangles.add(new float[]{x, y, 0, x + 1, y + 1, 0, x, y + 1, 0});
+            }
+        }
+        Collections.shuffle(triangles, new Random(7));
+        float[] ret = new float[triangles.size() * 9];
+        for (int i = 0; i < triangles.size(); i++) {
+            System.arraycopy(triangles.get(i), 0, ret, i * 9, 9);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the triangles as text, sorted, so they can be compared whatever their order 排序后的三角形文本
+     */
+    private static List<String> triangles(FloatBuffer vertices, Buffer indices) {
+        int count = indices != null ? indices.capacity() : vertices.capacity() / 3;
+        List<String> ret = new ArrayList<>();
+        for (int t = 0; t < count; t += 3) {
+            StringBuilder triangle = new StringBuilder();
+            for (int k = 0; k < 3; k++) {
+                int vertex = indices != null ? getIndex(indices, t + k) : t + k;
+                triangle.append(vertices.get(vertex * 3)).append(',').append(vertices.get(vertex * 3 + 1))
+                        .append(',').append(vertices.get(vertex * 3 + 2)).append(' ');
+            }
+            ret.add(triangle.toString());
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+
+    private static int getIndex(Buffer indices, int i) {
+        return indices instanceof IntBuffer ? ((IntBuffer) indices).get(i) : ((ShortBuffer) indices).get(i) & 0xFFFF;
+    }
+
+    private static ShortBuffer toShorts(int[] values) {
+        short[] ret = new short[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ret[i] = (short) values[i];
+        }
+        return ShortBuffer.wrap(ret);
+    }
+
+    private static long[] codes(int... codes) {
+        long[] ret = new long[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            ret[i] = (long) codes[i] << 32 | i;
+        }
+        return ret;
+    }
+
+    private static void shuffle(int[] values, Random random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.andresoviedo.android_3d_model_engine.model;
+
+import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The matrix the objects are drawn with, and the world bounds computed from it. The bounds must cover the corners
+ * where the model is drawn, also for the models placed by {@link Object3DData#centerAndScale(float, float[])}
+ * 绘制对象所用的矩阵，以及由其计算的世界边界。边界必须覆盖模型绘制位置的角点，包括由centerAndScale放置的模型
+ */
+public class Object3DDataTest {
+
+    private static final float DELTA = 1e-4f;
+
+    @Test
+    public void getDrawMatrix_rotationScaleThenTranslation() {
+        Object3DData obj = new Object3DData(cube(0, 0, 0, 1));
+        obj.setPosition(new float[]{1, 2, 3});
+        obj.setRotation(new float[]{30, 45, 60});
+        obj.setScale(new float[]{2, 3, 4});
+
+        // Rx * Ry * Rz * S * T, as the model was always drawn 与模型一直以来的绘制方式相同
+        float[] expected = multiply(multiply(multiply(multiply(rotation(30, 0), rotation(45, 1)), rotation(60, 2)),
+                scale(2, 3, 4)), translation(1, 2, 3));
+        assertArrayEquals(expected, obj.getDrawMatrix(), DELTA);
+
+        float[] out = new float[32];
+        obj.getDrawMatrix(out, 16);
+        for (int i = 0; i < 16; i++) {
+            assertEquals(expected[i], out[16 + i], DELTA);
+        }
+    }
+
+    @Test
+    public void getWorldBounds_centerAndScaleCoversTheDrawnCorners() {
+        // a cube of size 20 far from the origin 远离原点的边长20的立方体
+        Object3DData obj = new Object3DData(cube(100, 0, 10, 20));
+        obj.setDimensions(dimensions(100, 0, 10, 20));
+        obj.centerAndScale(5, new float[]{0, 0, 0});
+
+        assertArrayEquals(new float[]{-2.5f, -2.5f, -2.5f, 2.5f, 2.5f, 2.5f}, obj.getWorldBounds(), DELTA);
+        assertArrayEquals(drawnBounds(obj), obj.getWorldBounds(), DELTA);
+    }
+
+    @Test
+    public void getWorldBounds_followRotationScaleAndPosition() {
+        Object3DData obj = new Object3DData(cube(100, 0, 10, 20));
+        obj.setDimensions(dimensions(100, 0, 10, 20));
+        obj.centerAndScale(5, new float[]{0, 0, 0});
+        obj.getWorldBounds();
+
+        // moved by 10 model units, i.e. 2.5 in the world 移动10个模型单位，即世界中的2.5
+        obj.setPosition(new float[]{-90, 0, -10});
+        assertArrayEquals(new float[]{0, -2.5f, -2.5f, 5, 2.5f, 2.5f}, obj.getWorldBounds(), DELTA);
+
+        // the rotation turns the offset too: +x goes to -z 旋转也会转动偏移：+x变为-z
+        obj.setRotation(new float[]{0, 90, 0});
+        assertArrayEquals(new float[]{-2.5f, -2.5f, -5, 2.5f, 2.5f, 0}, obj.getWorldBounds(), DELTA);
+        assertArrayEquals(drawnBounds(obj), obj.getWorldBounds(), DELTA);
+    }
+
+    /**
+     * @return bounds of the vertices transformed one by one as the drawer does: translated, scaled and rotated
+     * 按绘制器的方式逐个变换顶点后的边界：平移、缩放、旋转
+     */
+    private static float[] drawnBounds(Object3DData obj) {
+        float[] m = multiply(multiply(multiply(multiply(rotation(obj.getRotation()[0], 0),
+                rotation(obj.getRotation()[1], 1)), rotation(obj.getRotation()[2], 2)),
+                scale(obj.getScaleX(), obj.getScaleY(), obj.getScaleZ())),
+                translation(obj.getPositionX(), obj.getPositionY(), obj.getPositionZ()));
+        float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        FloatBuffer vertices = obj.getVertexArrayBuffer();
+        for (int v = 0; v < vertices.capacity(); v += 3) {
+            for (int i = 0; i < 3; i++) {
+                float value = m[i] * vertices.get(v) + m[4 + i] * vertices.get(v + 1) + m[8 + i] * vertices.get(v + 2)
+                        + m[12 + i];
+                bounds[i] = Math.min(bounds[i], value);
+                bounds[3 + i] = Math.max(bounds[3 + i], value);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * @return the 8 corners of a cube 立方体的8个角
+     */
+    private static FloatBuffer cube(float x, float y, float z, float size) {
+        float[] corners = new float[24];
+        for (int i = 0; i < 8; i++) {
+            corners[i * 3] = x + ((i & 1) == 0 ? -size / 2 : size / 2);
+            corners[i * 3 + 1] = y + ((i & 2) == 0 ? -size / 2 : size / 2);
+            corners[i * 3 + 2] = z + ((i & 4) == 0 ? -size / 2 : size / 2);
+        }
+        return FloatBuffer.wrap(corners);
+    }
+
+    private static WavefrontLoader.ModelDimensions dimensions(float x, float y, float z, float size) {
+        WavefrontLoader.ModelDimensions dimensions = new WavefrontLoader.ModelDimensions();
+        dimensions.set(x - size / 2, y - size / 2, z - size / 2);
+        dimensions.update(x + size / 2, y + size / 2, z + size / 2);
+        return dimensions;
+    }
+
+    private static float[] rotation(float degrees, int axis) {
+        float c = (float) Math.cos(Math.toRadians(degrees)), s = (float) Math.sin(Math.toRadians(degrees));
+        int a = (axis + 1) % 3, b = (axis + 2) % 3;
+        float[] m = identity();
+        m[a * 4 + a] = c;
+        m[b * 4 + b] = c;
+        m[a * 4 + b] = s;
+        m[b * 4 + a] = -s;
+        return m;
+    }
+
+    private static float[] scale(float x, float y, float z) {
+        float[] m = identity();
+        m[0] = x;
+        m[5] = y;
+        m[10] = z;
+        return m;
+    }
+
+    private static float[] translation(float x, float y, float z) {
+        float[] m = identity();
+        m[12] = x;
+        m[13] = y;
+        m[14] = z;
+        return m;
+    }
+
+    private static float[] identity() {
+        return new float[]{1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+    }
+
+    /**
+     * @return a * b, both column-major 两者均为列主序
+     */
+    private static float[] multiply(float[] a, float[] b) {
+        float[] result = new float[16];
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) {
+                    sum += a[k * 4 + row] * b[column * 4 + k];
+                }
+                result[column * 4 + row] = sum;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,260 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.net.Uri;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Order in which the {@link LoaderScheduler} starts the tasks and delivers their results, and cancellation.
+ * The tasks are run one by one from the test thread, so the order is deterministic
+ * {@link LoaderScheduler}启动任务和交付结果的顺序，以及取消。任务在测试线程中逐个运行，所以顺序是确定的
+ */
+public class LoaderSchedulerTest {
+
+    private final ManualExecutor executor = new ManualExecutor();
+    // loads and callbacks, in the order they happen 加载和回调，按发生顺序
+    private final List<String> events = new ArrayList<>();
+    private int deliveriesReady;
+    private LoaderScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new LoaderScheduler(executor, new Runnable() {
+            @Override
+            public void run() {
+                deliveriesReady++;
+            }
+        });
+    }
+
+    @Test
+    public void tasksStartedByPriorityThenSubmissionOrder() {
+        scheduler.submit(new TestTask("a"));
+        scheduler.submit(new TestTask("b"), LoaderScheduler.PRIORITY_LOW);
+        scheduler.submit(new TestTask("c"), LoaderScheduler.PRIORITY_HIGH);
+        scheduler.submit(new TestTask("d"), LoaderScheduler.PRIORITY_NORMAL);
+        scheduler.submit(new TestTask("e"), LoaderScheduler.PRIORITY_HIGH);
+        executor.runAll();
+
+        assertEquals(Arrays.asList("load c", "load e", "load a", "load d", "load b"), events);
+    }
+
+    @Test
+    public void resultsDeliveredInSubmissionOrder() {
+        scheduler.submit(new TestTask("a"));
+        scheduler.submit(new TestTask("b"), LoaderScheduler.PRIORITY_HIGH);
+        scheduler.submit(new TestTask("c"), LoaderScheduler.PRIORITY_HIGH);
+        executor.runNext();
+        assertEquals(1, deliveriesReady);
+
+        // b waits for a 等待a
+        scheduler.deliver();
+        assertEquals(Collections.singletonList("load b"), events);
+        assertEquals(3, scheduler.getPendingCount());
+
+        executor.runAll();
+        scheduler.deliver();
+        assertEquals(Arrays.asList("load b", "load c", "load a", "complete a", "complete b", "complete c"), events);
+        assertEquals(0, scheduler.getPendingCount());
+
+        // nothing is delivered twice 不会重复交付
+        scheduler.deliver();
+        assertEquals(6, events.size());
+    }
+
+    @Test
+    public void errorsDeliveredInOrder() {
+        scheduler.submit(new TestTask("a"));
+        scheduler.submit(new TestTask("broken"), LoaderScheduler.PRIORITY_HIGH);
+        scheduler.submit(new TestTask("c"));
+        executor.runAll();
+        scheduler.deliver();
+
+        assertEquals(Arrays.asList("load broken", "load a", "load c", "complete a", "error broken", "complete c"),
+                events);
+    }
+
+    @Test
+    public void cancelledWaitingTaskIsRemovedFromTheExecutor() {
+        scheduler.submit(new TestTask("a"));
+        LoaderTask b = scheduler.submit(new TestTask("b"));
+        scheduler.submit(new TestTask("c"));
+        assertEquals(3, executor.getQueue().size());
+
+        b.cancel();
+        assertTrue(b.isCancelled());
+        assertEquals(2, executor.getQueue().size());
+        assertFalse(executor.getQueue().contains(b.job));
+
+        executor.runAll();
+        scheduler.deliver();
+        assertEquals(Arrays.asList("load a", "load c", "complete a", "complete c"), events);
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void cancelledRunningTaskIsNotDelivered() {
+        scheduler.submit(new TestTask("a"));
+        scheduler.submit(new TestTask("cancel itself"));
+        scheduler.submit(new TestTask("c"));
+        executor.runAll();
+        scheduler.deliver();
+
+        assertEquals(Arrays.asList("load a", "load cancel itself", "load c", "complete a", "complete c"), events);
+    }
+
+    @Test
+    public void cancelledBeforeSubmitIsNeverRun() {
+        TestTask task = new TestTask("a");
+        task.cancel();
+        scheduler.submit(task);
+        assertEquals(0, executor.getQueue().size());
+        assertEquals(1, deliveriesReady);
+
+        scheduler.deliver();
+        assertTrue(events.isEmpty());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void cancelAll() {
+        scheduler.submit(new TestTask("a"));
+        scheduler.submit(new TestTask("b"));
+        executor.runNext();
+        scheduler.cancelAll();
+        assertEquals(0, executor.getQueue().size());
+
+        scheduler.deliver();
+        assertEquals(Collections.singletonList("load a"), events);
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void partialsDeliveredBeforeTheTasksWaiting() {
+        scheduler.submit(new TestTask("a"));
+        scheduler.submit(new TestTask("partial"), LoaderScheduler.PRIORITY_HIGH);
+        executor.runNext();
+        scheduler.deliver();
+        assertEquals(Arrays.asList("load partial", "partial partial"), events);
+
+        executor.runAll();
+        scheduler.deliver();
+        assertEquals(Arrays.asList("load partial", "partial partial", "load a", "complete a", "complete partial"),
+                events);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void submitTwice() {
+        TestTask task = new TestTask("a");
+        scheduler.submit(task);
+        scheduler.submit(task);
+    }
+
+    /**
+     * Executor that only queues the jobs, so the test runs them when it wants
+     * 只将任务入队的执行器，由测试决定何时运行
+     */
+    private static final class ManualExecutor extends ThreadPoolExecutor {
+
+        private ManualExecutor() {
+            super(1, 1, 0, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>());
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            getQueue().add(command);
+        }
+
+        private void runNext() {
+            getQueue().poll().run();
+        }
+
+        private void runAll() {
+            for (Runnable job = getQueue().poll(); job != null; job = getQueue().poll()) {
+                job.run();
+            }
+        }
+    }
+
+    /**
+     * Task that records its loading and its callbacks. The name tells what it does: "broken" fails, "cancel
+     * itself" is cancelled while it's running, and "partial" publishes its object before completing
+     * 记录其加载和回调的任务。名称说明其行为
+     */
+    private final class TestTask extends LoaderTask {
+
+        private final String name;
+
+        private TestTask(String name) {
+            super(null, new RecordingCallback(name));
+            this.name = name;
+        }
+
+        @Override
+        protected List<Object3DData> build() throws Exception {
+            events.add("load " + name);
+            List<Object3DData> data = Collections.singletonList(new Object3DData().setId(name));
+            switch (name) {
+                case "broken":
+                    throw new Exception("broken");
+                case "cancel itself":
+                    cancel();
+                    break;
+                case "partial":
+                    publishPartial(data);
+                    break;
+            }
+            return data;
+        }
+
+        @Override
+        protected void build(List<Object3DData> data) {
+        }
+    }
+
+    private final class RecordingCallback implements LoaderTask.Callback {
+
+        private final String name;
+
+        private RecordingCallback(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void onStart() {
+        }
+
+        @Override
+        public void onProgress(Uri uri, int step) {
+        }
+
+        @Override
+        public void onLoadError(Exception ex) {
+            events.add("error " + name);
+        }
+
+        @Override
+        public void onLoadPartial(List<Object3DData> data) {
+            events.add("partial " + data.get(0).getId());
+        }
+
+        @Override
+        public void onLoadComplete(List<Object3DData> data) {
+            events.add("complete " + data.get(0).getId());
+        }
+    }
+}
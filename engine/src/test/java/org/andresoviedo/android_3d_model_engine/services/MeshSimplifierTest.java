@@ -0,0 +1,360 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.LevelOfDetail;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Levels of detail built by the {@link MeshSimplifier}: size of every level, orientation of the triangles,
+ * seams and borders, and the conditions that end the chain
+ * {@link MeshSimplifier}构建的细节级别：每个级别的大小、三角形的方向、接缝和边界，以及结束级别链的条件
+ */
+public class MeshSimplifierTest {
+
+    private static final int STACKS = 24;
+    private static final int SLICES = 48;
+    private static final int GRID = 32;
+
+    @Test
+    public void levels_halveTheTriangles() {
+        Object3DData sphere = newSphere();
+        LevelOfDetail lod = MeshSimplifier.buildLevelsOfDetail(sphere, 20);
+
+        assertNotNull(lod);
+        assertTrue(lod.size() >= 2);
+        int before = triangles(sphere);
+        for (int i = 1; i <= lod.size(); i++) {
+            int count = triangles(lod.getLevel(i));
+            assertTrue("level " + i + ": " + count + " of " + before, count <= before / 2);
+            assertTrue("level " + i + ": " + count + " of " + before, count >= before * 0.4);
+            assertTrue(count >= 20);
+            before = count;
+        }
+    }
+
+    @Test
+    public void levels_keepTheOrientationOfTheTriangles() {
+        Object3DData sphere = newSphere();
+        assertOutward(sphere);
+        LevelOfDetail lod = MeshSimplifier.buildLevelsOfDetail(sphere, 20);
+        for (int i = 1; i <= lod.size(); i++) {
+            assertOutward(lod.getLevel(i));
+        }
+
+        Object3DData grid = newGrid();
+        assertUp(grid);
+        lod = MeshSimplifier.buildLevelsOfDetail(grid, 20);
+        assertNotNull(lod);
+        for (int i = 1; i <= lod.size(); i++) {
+            assertUp(lod.getLevel(i));
+        }
+    }
+
+    @Test
+    public void levels_keepTheSeams() {
+        Object3DData sphere = newSphere();
+        Set<List<Float>> source = vertices(sphere);
+        LevelOfDetail lod = MeshSimplifier.buildLevelsOfDetail(sphere, 20);
+        for (int i = 1; i <= lod.size(); i++) {
+            Object3DData level = lod.getLevel(i);
+            // no vertex is moved or gets other attributes 没有顶点被移动或获得其他属性
+            Set<List<Float>> vertices = vertices(level);
+            assertTrue(source.containsAll(vertices));
+
+            // both sides of the seam have the same vertices 接缝两侧有相同的顶点
+            Set<List<Float>> left = new HashSet<>();
+            Set<List<Float>> right = new HashSet<>();
+            for (List<Float> vertex : vertices) {
+                float y = vertex.get(1);
+                if (Math.abs(y) == 1 || !onSeam(vertex)) {
+                    continue;
+                }
+                (vertex.get(6) == 0 ? left : right).add(vertex.subList(0, 3));
+                assertTrue(vertex.get(6) == 0 || vertex.get(6) == 1);
+            }
+            assertTrue(left.size() >= 2);
+            assertEquals(left, right);
+
+            // so the surface is still closed 所以表面仍然是封闭的
+            for (int uses : edgeUses(level).values()) {
+                assertEquals(2, uses);
+            }
+        }
+    }
+
+    @Test
+    public void levels_keepTheBorders() {
+        Object3DData grid = newGrid();
+        Set<List<Float>> source = vertices(grid);
+        LevelOfDetail lod = MeshSimplifier.buildLevelsOfDetail(grid, 20);
+        for (int i = 1; i <= lod.size(); i++) {
+            Object3DData level = lod.getLevel(i);
+            assertTrue(source.containsAll(vertices(level)));
+
+            // the open edges are on the sides of the grid 开放的边在网格的边上
+            FloatBuffer positions = level.getVertexArrayBuffer();
+            Set<List<Float>> corners = new HashSet<>();
+            for (Map.Entry<List<Integer>, Integer> edge : edgeUses(level).entrySet()) {
+                if (edge.getValue() == 2) {
+                    continue;
+                }
+                assertEquals(1, (int) edge.getValue());
+                int a = edge.getKey().get(0), b = edge.getKey().get(1);
+                float ax = positions.get(a * 3), az = positions.get(a * 3 + 2);
+                float bx = positions.get(b * 3), bz = positions.get(b * 3 + 2);
+                assertTrue((ax == bx && (ax == 0 || ax == GRID)) || (az == bz && (az == 0 || az == GRID)));
+                if ((ax == 0 || ax == GRID) && (az == 0 || az == GRID)) {
+                    corners.add(Arrays.asList(ax, az));
+                }
+                if ((bx == 0 || bx == GRID) && (bz == 0 || bz == GRID)) {
+                    corners.add(Arrays.asList(bx, bz));
+                }
+            }
+            assertEquals(4, corners.size());
+        }
+    }
+
+    @Test
+    public void levels_stopAtTheThresholds() {
+        // too small 太小
+        assertNull(MeshSimplifier.buildLevelsOfDetail(newSphere(), 1500));
+
+        // the coarsest level is over the minimum, and the next one would have lost the shape or not been smaller
+        // 最粗级别高于最小值，下一个级别会丢失形状或不会更小
+        Object3DData sphere = newSphere();
+        LevelOfDetail lod = MeshSimplifier.buildLevelsOfDetail(sphere, 1);
+        assertNotNull(lod);
+        assertTrue(lod.size() < MeshSimplifier.MAX_LEVELS);
+        double maxError = 0.1 * 2 * Math.sqrt(3);
+        MeshSimplifier simplifier = MeshSimplifier.create(sphere);
+        for (int i = 1; i <= lod.size(); i++) {
+            float error = simplifier.simplify(simplifier.getTriangleCount() / 2);
+            assertEquals(triangles(lod.getLevel(i)), simplifier.getTriangleCount());
+            assertEquals(lod.getError(i), error, 0);
+            assertTrue(error <= maxError);
+        }
+        int before = simplifier.getTriangleCount();
+        float error = simplifier.simplify(before / 2);
+        assertTrue(error > maxError || simplifier.getTriangleCount() > before * 0.9);
+
+        // the corners of the seams can't be moved, and all the vertices of a flat shaded cube are corners
+        // 接缝的角不能移动，平面着色立方体的所有顶点都是角
+        assertNull(MeshSimplifier.buildLevelsOfDetail(newFlatCube(), 1));
+    }
+
+    @Test
+    public void create_onlyPlainTriangles() {
+        assertNotNull(MeshSimplifier.create(newSphere()));
+        assertNull(MeshSimplifier.create(newSphere().setDrawMode(GLES20.GL_TRIANGLE_STRIP)));
+        Object3DData sphere = newSphere();
+        sphere.setTextureCoordsArrayBuffer(FloatBuffer.allocate(2));
+        assertNull(MeshSimplifier.create(sphere));
+    }
+
+    /**
+     * Unit sphere, with the texture seam at x &gt; 0, z = 0
+     * 单位球体，纹理接缝在x &gt; 0, z = 0
+     */
+    private static Object3DData newSphere() {
+        int columns = SLICES + 1;
+        float[] vertices = new float[(STACKS + 1) * columns * 3];
+        float[] texCoords = new float[(STACKS + 1) * columns * 2];
+        for (int i = 0; i <= STACKS; i++) {
+            double phi = Math.PI * i / STACKS;
+            for (int j = 0; j <= SLICES; j++) {
+                double theta = 2 * Math.PI * (j % SLICES) / SLICES;
+                int v = i * columns + j;
+                vertices[v * 3] = i == 0 || i == STACKS ? 0 : (float) (Math.sin(phi) * Math.cos(theta));
+                vertices[v * 3 + 1] = i == 0 ? 1 : i == STACKS ? -1 : (float) Math.cos(phi);
+                vertices[v * 3 + 2] = i == 0 || i == STACKS ? 0 : (float) (-Math.sin(phi) * Math.sin(theta));
+                texCoords[v * 2] = (float) j / SLICES;
+                texCoords[v * 2 + 1] = (float) i / STACKS;
+            }
+        }
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < STACKS; i++) {
+            for (int j = 0; j < SLICES; j++) {
+                int a = i * columns + j, b = a + columns, c = b + 1, d = a + 1;
+                if (i != STACKS - 1) {
+                    indices.addAll(Arrays.asList(a, b, c));
+                }
+                if (i != 0) {
+                    indices.addAll(Arrays.asList(a, c, d));
+                }
+            }
+        }
+        // the normals of a unit sphere are the positions 单位球体的法线就是位置
+        return newObject(vertices, vertices.clone(), texCoords, indices);
+    }
+
+    /**
+     * Open height field from (0,0) to (GRID,GRID) in the xz plane, facing up
+     * xz平面上从(0,0)到(GRID,GRID)的开放高度场，朝上
+     */
+    private static Object3DData newGrid() {
+        int columns = GRID + 1;
+        float[] vertices = new float[columns * columns * 3];
+        float[] normals = new float[columns * columns * 3];
+        float[] texCoords = new float[columns * columns * 2];
+        for (int i = 0; i <= GRID; i++) {
+            for (int j = 0; j <= GRID; j++) {
+                int v = i * columns + j;
+                vertices[v * 3] = j;
+                vertices[v * 3 + 1] = (float) (0.5 * Math.sin(j * 0.3) * Math.cos(i * 0.2));
+                vertices[v * 3 + 2] = i;
+                normals[v * 3 + 1] = 1;
+                texCoords[v * 2] = (float) j / GRID;
+                texCoords[v * 2 + 1] = (float) i / GRID;
+            }
+        }
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < GRID; i++) {
+            for (int j = 0; j < GRID; j++) {
+                int a = i * columns + j, b = a + columns, c = b + 1, d = a + 1;
+                indices.addAll(Arrays.asList(a, b, c, a, c, d));
+            }
+        }
+        return newObject(vertices, normals, texCoords, indices);
+    }
+
+    private static Object3DData newFlatCube() {
+        float[][] corners = {{0, 0, 0}, {1, 0, 0}, {1, 1, 0}, {0, 1, 0}, {0, 0, 1}, {1, 0, 1}, {1, 1, 1}, {0, 1, 1}};
+        int[][] faces = {{0, 3, 2, 1}, {4, 5, 6, 7}, {0, 1, 5, 4}, {3, 7, 6, 2}, {0, 4, 7, 3}, {1, 2, 6, 5}};
+        float[] vertices = new float[faces.length * 4 * 3];
+        float[] normals = new float[faces.length * 4 * 3];
+        float[] texCoords = new float[faces.length * 4 * 2];
+        List<Integer> indices = new ArrayList<>();
+        for (int f = 0; f < faces.length; f++) {
+            for (int k = 0; k < 4; k++) {
+                int v = f * 4 + k;
+                System.arraycopy(corners[faces[f][k]], 0, vertices, v * 3, 3);
+                normals[v * 3 + 2 - f / 2] = f % 2 == 0 ? -1 : 1;
+            }
+            indices.addAll(Arrays.asList(f * 4, f * 4 + 1, f * 4 + 2, f * 4, f * 4 + 2, f * 4 + 3));
+        }
+        return newObject(vertices, normals, texCoords, indices);
+    }
+
+    private static Object3DData newObject(float[] vertices, float[] normals, float[] texCoords,
+                                          List<Integer> indices) {
+        ShortBuffer drawOrder = ShortBuffer.allocate(indices.size());
+        for (int i = 0; i < indices.size(); i++) {
+            drawOrder.put(i, indices.get(i).shortValue());
+        }
+        Object3DData obj = new Object3DData(FloatBuffer.wrap(vertices)).setId("test")
+                .setDrawMode(GLES20.GL_TRIANGLES);
+        obj.setVertexNormalsArrayBuffer(FloatBuffer.wrap(normals));
+        obj.setTextureCoordsArrayBuffer(FloatBuffer.wrap(texCoords));
+        obj.setDrawOrder(drawOrder);
+        obj.setDrawUsingArrays(false);
+        return obj;
+    }
+
+    private static int triangles(Object3DData obj) {
+        return obj.getDrawOrderBuffer().capacity() / 3;
+    }
+
+    private static boolean onSeam(List<Float> vertex) {
+        return vertex.get(0) > 0 && Math.abs(vertex.get(2)) < 1e-6;
+    }
+
+    /**
+     * @return position, normal and texture coordinates of every vertex used 每个使用的顶点的位置、法线和纹理坐标
+     */
+    private static Set<List<Float>> vertices(Object3DData obj) {
+        FloatBuffer positions = obj.getVertexArrayBuffer();
+        FloatBuffer normals = obj.getVertexNormalsArrayBuffer();
+        FloatBuffer texCoords = obj.getTextureCoordsArrayBuffer();
+        IntBuffer indices = obj.getDrawOrder();
+        Set<List<Float>> vertices = new HashSet<>();
+        for (int i = 0; i < indices.capacity(); i++) {
+            int v = indices.get(i);
+            vertices.add(Arrays.asList(positions.get(v * 3), positions.get(v * 3 + 1), positions.get(v * 3 + 2),
+                    normals.get(v * 3), normals.get(v * 3 + 1), normals.get(v * 3 + 2),
+                    texCoords.get(v * 2), texCoords.get(v * 2 + 1)));
+        }
+        return vertices;
+    }
+
+    /**
+     * @return number of triangles of every edge, with the vertices welded by position
+     * 每条边的三角形数，顶点按位置合并
+     */
+    private static Map<List<Integer>, Integer> edgeUses(Object3DData obj) {
+        FloatBuffer positions = obj.getVertexArrayBuffer();
+        Map<List<Float>, Integer> welded = new HashMap<>();
+        int[] ids = new int[positions.capacity() / 3];
+        for (int v = 0; v < ids.length; v++) {
+            List<Float> position = Arrays.asList(positions.get(v * 3), positions.get(v * 3 + 1),
+                    positions.get(v * 3 + 2));
+            Integer id = welded.get(position);
+            if (id == null) {
+                // the first vertex at the position 该位置的第一个顶点
+                id = v;
+                welded.put(position, id);
+            }
+            ids[v] = id;
+        }
+        IntBuffer indices = obj.getDrawOrder();
+        Map<List<Integer>, Integer> uses = new HashMap<>();
+        for (int t = 0; t < indices.capacity() / 3; t++) {
+            for (int k = 0; k < 3; k++) {
+                int a = ids[indices.get(t * 3 + k)], b = ids[indices.get(t * 3 + (k + 1) % 3)];
+                List<Integer> edge = Arrays.asList(Math.min(a, b), Math.max(a, b));
+                Integer count = uses.get(edge);
+                uses.put(edge, count == null ? 1 : count + 1);
+            }
+        }
+        return uses;
+    }
+
+    private static void assertOutward(Object3DData obj) {
+        FloatBuffer positions = obj.getVertexArrayBuffer();
+        IntBuffer indices = obj.getDrawOrder();
+        for (int t = 0; t < indices.capacity() / 3; t++) {
+            float[] normal = normal(positions, indices, t);
+            float[] center = new float[3];
+            for (int k = 0; k < 3; k++) {
+                for (int j = 0; j < 3; j++) {
+                    center[j] += positions.get(indices.get(t * 3 + k) * 3 + j);
+                }
+            }
+            assertTrue("triangle " + t, normal[0] * center[0] + normal[1] * center[1] + normal[2] * center[2] > 0);
+        }
+    }
+
+    private static void assertUp(Object3DData obj) {
+        FloatBuffer positions = obj.getVertexArrayBuffer();
+        IntBuffer indices = obj.getDrawOrder();
+        for (int t = 0; t < indices.capacity() / 3; t++) {
+            assertTrue("triangle " + t, normal(positions, indices, t)[1] > 0);
+        }
+    }
+
+    private static float[] normal(FloatBuffer positions, IntBuffer indices, int t) {
+        int a = indices.get(t * 3) * 3, b = indices.get(t * 3 + 1) * 3, c = indices.get(t * 3 + 2) * 3;
+        float ux = positions.get(b) - positions.get(a), uy = positions.get(b + 1) - positions.get(a + 1),
+                uz = positions.get(b + 2) - positions.get(a + 2);
+        float vx = positions.get(c) - positions.get(a), vy = positions.get(c + 1) - positions.get(a + 1),
+                vz = positions.get(c + 2) - positions.get(a + 2);
+        return new float[]{uy * vz - uz * vy, uz * vx - ux * vz, ux * vy - uy * vx};
+    }
+}
@@ -0,0 +1,253 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.animation.Animation;
+import org.andresoviedo.android_3d_model_engine.animation.JointTransform;
+import org.andresoviedo.android_3d_model_engine.animation.KeyFrame;
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.GeometryStream;
+import org.andresoviedo.android_3d_model_engine.model.MaterialRange;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.collada.entities.Joint;
+import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Write and read back entries of the {@link ModelCache}: buffers, shared sections, material ranges, joints,
+ * animation and transformations
+ * 写入并读回{@link ModelCache}的条目：缓冲区、共享段、材质范围、关节、动画和变换
+ */
+public class ModelCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ModelCache cache;
+    private final ModelCache.Key key = new ModelCache.Key(1234, 0x0123456789ABCDEFL);
+
+    @Before
+    public void setUp() {
+        cache = new ModelCache(folder.getRoot(), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void read_missingEntry() {
+        assertNull(cache.read(key));
+    }
+
+    @Test
+    public void read_otherKey() {
+        cache.write(key, Collections.singletonList(newTriangles("a")));
+        assertNull(cache.read(new ModelCache.Key(1234, 1)));
+    }
+
+    @Test
+    public void roundTrip_sectionsAndRanges() {
+        Object3DData first = newTriangles("first");
+        first.setColor(new float[]{0.1f, 0.2f, 0.3f, 0.4f});
+        first.setTextureFile("atlas.png");
+        first.setTextureData(new byte[]{1, 2, 3, 4, 5});
+        first.setMaterialRanges(Arrays.asList(new MaterialRange("red", 0, 3, null),
+                new MaterialRange("wood", 3, 6, "wood.png")));
+        // same geometry, so the buffers are written once 相同几何体，缓冲区只写一次
+        Object3DData second = new Object3DData(first.getVertexArrayBuffer()).setId("second");
+        second.setVertexNormalsArrayBuffer(first.getVertexNormalsArrayBuffer());
+        second.setDrawMode(GLES20.GL_TRIANGLES);
+
+        Object3DData indexed = new Object3DData(floats(0, 0, 0, 1, 0, 0, 0, 1, 0, 1, 1, 0),
+                ints(0, 1, 2, 2, 1, 3)).setId("indexed");
+        indexed.setDrawMode(GLES20.GL_TRIANGLES);
+        indexed.setDrawUsingArrays(false);
+        WavefrontLoader.Faces faces = new WavefrontLoader.Faces(2);
+        faces.facesVertIdxs = ints(0, 1, 2, 2, 1, 3);
+        indexed.setFaces(faces);
+        indexed.setDrawModeList(Collections.singletonList(new int[]{GLES20.GL_TRIANGLES, 0, 6}));
+
+        cache.write(key, Arrays.asList(first, second, indexed));
+        List<Object3DData> read = cache.read(key);
+
+        assertNotNull(read);
+        assertEquals(3, read.size());
+        Object3DData readFirst = read.get(0);
+        assertEquals("first", readFirst.getId());
+        assertEquals(GLES20.GL_TRIANGLES, readFirst.getDrawMode());
+        assertTrue(readFirst.isDrawUsingArrays());
+        assertArrayEquals(first.getColor(), readFirst.getColor(), 0);
+        assertBufferEquals(first.getVertexArrayBuffer(), readFirst.getVertexArrayBuffer());
+        assertBufferEquals(first.getVertexNormalsArrayBuffer(), readFirst.getVertexNormalsArrayBuffer());
+        assertEquals("atlas.png", readFirst.getTextureFile());
+        assertArrayEquals(first.getTextureData(), readFirst.getTextureData());
+
+        List<MaterialRange> ranges = readFirst.getMaterialRanges();
+        assertEquals(2, ranges.size());
+        assertEquals("red", ranges.get(0).getMaterial());
+        assertNull(ranges.get(0).getTextureFile());
+        assertEquals(0, ranges.get(0).getFirst());
+        assertEquals(3, ranges.get(0).getCount());
+        assertEquals("wood", ranges.get(1).getMaterial());
+        assertEquals("wood.png", ranges.get(1).getTextureFile());
+        assertEquals(3, ranges.get(1).getFirst());
+        assertEquals(6, ranges.get(1).getCount());
+
+        Object3DData readSecond = read.get(1);
+        assertEquals("second", readSecond.getId());
+        assertSame(readFirst.getVertexArrayBuffer(), readSecond.getVertexArrayBuffer());
+        assertSame(readFirst.getVertexNormalsArrayBuffer(), readSecond.getVertexNormalsArrayBuffer());
+        assertNull(readSecond.getMaterialRanges());
+
+        Object3DData readIndexed = read.get(2);
+        assertEquals(false, readIndexed.isDrawUsingArrays());
+        assertBufferEquals(indexed.getVertexBuffer(), readIndexed.getVertexBuffer());
+        assertBufferEquals((IntBuffer) indexed.getDrawOrderBuffer(), (IntBuffer) readIndexed.getDrawOrderBuffer());
+        assertEquals(2, readIndexed.getFaces().getSize());
+        assertBufferEquals(faces.getIndexBuffer(), readIndexed.getFaces().getIndexBuffer());
+        assertEquals(1, readIndexed.getDrawModeList().size());
+        assertArrayEquals(new int[]{GLES20.GL_TRIANGLES, 0, 6}, readIndexed.getDrawModeList().get(0));
+    }
+
+    @Test
+    public void roundTrip_transform() {
+        Object3DData obj = newTriangles("moved");
+        obj.setPosition(new float[]{1, 2, 3});
+        obj.setRotation(new float[]{0, 90, 0});
+        obj.setScale(new float[]{2, 2, 2});
+        float[] modelMatrix = {2, 0, 0, 0, 0, 2, 0, 0, 0, 0, 2, 0, 1, 2, 3, 1};
+        obj.setModelMatrix(modelMatrix);
+
+        cache.write(key, Collections.singletonList(obj));
+        Object3DData read = cache.read(key).get(0);
+
+        assertArrayEquals(new float[]{1, 2, 3}, read.getPosition(), 0);
+        assertArrayEquals(new float[]{0, 90, 0}, read.getRotation(), 0);
+        assertArrayEquals(new float[]{2, 2, 2}, read.getScale(), 0);
+        assertArrayEquals(modelMatrix, read.getModelMatrix(), 0);
+    }
+
+    @Test
+    public void roundTrip_streamedObjectHasTheFinalTransform() {
+        Object3DData obj = newTriangles("streamed");
+        GeometryStream stream = new GeometryStream(3);
+        obj.setGeometryStream(stream);
+        // the OpenGL thread has only applied the transform of the first batch 只应用了第一批的变换
+        stream.publish(3, new float[]{10, 10, 10}, new float[]{-1, -1, -1});
+        stream.poll(obj);
+        float[] partialScale = obj.getScale().clone();
+        stream.finish(new float[]{5, 5, 5}, new float[]{-4, -5, -6});
+
+        cache.write(key, Collections.singletonList(obj));
+        Object3DData read = cache.read(key).get(0);
+
+        assertArrayEquals(new float[]{10, 10, 10}, partialScale, 0);
+        assertNull(read.getGeometryStream());
+        assertArrayEquals(new float[]{5, 5, 5}, read.getScale(), 0);
+        assertArrayEquals(new float[]{-4, -5, -6}, read.getPosition(), 0);
+    }
+
+    @Test
+    public void roundTrip_jointsAndAnimation() {
+        AnimatedModel model = new AnimatedModel(floats(0, 0, 0, 1, 0, 0, 0, 1, 0));
+        model.setId("skinned");
+        model.setDrawMode(GLES20.GL_TRIANGLES);
+        model.setJointIds(floats(0, 0, 0, 1, 1, 1, 0, 1, 0));
+        model.setVertexWeights(floats(1, 0, 0, 0.5f, 0.5f, 0, 1, 0, 0));
+        Joint root = new Joint(0, "hip", translation(0, 1, 0), translation(0, -1, 0));
+        Joint child = new Joint(1, "knee", translation(0, -0.5f, 0), translation(0, -0.5f, 0));
+        root.addChild(child);
+        model.setRootJoint(root, 2, 2, false);
+        Map<String, JointTransform> pose = new HashMap<>();
+        pose.put("hip", new JointTransform(translation(0, 2, 0)));
+        pose.put("knee", new JointTransform(translation(0, -1, 0)));
+        model.doAnimation(new Animation(1.5f, new KeyFrame[]{new KeyFrame(0, pose), new KeyFrame(1.5f, pose)}));
+
+        cache.write(key, Collections.<Object3DData>singletonList(model));
+        Object3DData read = cache.read(key).get(0);
+
+        assertTrue(read instanceof AnimatedModel);
+        AnimatedModel readModel = (AnimatedModel) read;
+        assertEquals(2, readModel.getJointCount());
+        assertEquals(2, readModel.getBoneCount());
+        assertBufferEquals(model.getJointIds(), readModel.getJointIds());
+        assertBufferEquals(model.getVertexWeights(), readModel.getVertexWeights());
+
+        Joint readRoot = readModel.getRootJoint();
+        assertEquals(0, readRoot.getIndex());
+        assertEquals("hip", readRoot.getName());
+        assertArrayEquals(root.getBindLocalTransform(), readRoot.getBindLocalTransform(), 0);
+        assertArrayEquals(root.getInverseBindTransform(), readRoot.getInverseBindTransform(), 0);
+        assertEquals(1, readRoot.getChildren().size());
+        Joint readChild = readRoot.getChildren().get(0);
+        assertEquals(1, readChild.getIndex());
+        assertEquals("knee", readChild.getName());
+        assertArrayEquals(child.getInverseBindTransform(), readChild.getInverseBindTransform(), 0);
+
+        Animation animation = readModel.getAnimation();
+        assertEquals(1.5f, animation.getLength(), 0);
+        assertEquals(2, animation.getKeyFrames().length);
+        assertEquals(1.5f, animation.getKeyFrames()[1].getTimeStamp(), 0);
+        assertArrayEquals(translation(0, -1, 0),
+                animation.getKeyFrames()[1].getJointKeyFrames().get("knee").getLocalTransform(), 0);
+    }
+
+    private static Object3DData newTriangles(String id) {
+        Object3DData obj = new Object3DData(floats(0, 0, 0, 1, 0, 0, 0, 1, 0, 1, 1, 0, 2, 1, 0, 1, 2, 0,
+                0, 0, 1, 1, 0, 1, 0, 1, 1)).setId(id);
+        obj.setVertexNormalsArrayBuffer(floats(0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1,
+                0, 0, 1, 0, 0, 1, 0, 0, 1));
+        obj.setDrawMode(GLES20.GL_TRIANGLES);
+        obj.setDrawUsingArrays(true);
+        return obj;
+    }
+
+    private static float[] translation(float x, float y, float z) {
+        return new float[]{1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, x, y, z, 1};
+    }
+
+    private static FloatBuffer floats(float... values) {
+        FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+
+    private static IntBuffer ints(int... values) {
+        IntBuffer buffer = ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+
+    private static void assertBufferEquals(FloatBuffer expected, FloatBuffer actual) {
+        assertEquals(expected.capacity(), actual.capacity());
+        for (int i = 0; i < expected.capacity(); i++) {
+            assertEquals("element " + i, expected.get(i), actual.get(i), 0);
+        }
+    }
+
+    private static void assertBufferEquals(IntBuffer expected, IntBuffer actual) {
+        assertEquals(expected.capacity(), actual.capacity());
+        for (int i = 0; i < expected.capacity(); i++) {
+            assertEquals("element " + i, expected.get(i), actual.get(i));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.MaterialRange;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Grouping of the faces of a Wavefront model by the texture of their material, and the indexed arrays built
+ * from the faces, with the corners that have the same data merged in one vertex
+ * 按材质纹理对Wavefront模型的面进行分组，以及由面构建的索引数组，数据相同的角合并为一个顶点
+ */
+public class Object3DBuilderTest {
+
+    private static final String MTL = "newmtl red\nKd 1 0 0\n"
+            + "newmtl wood\nmap_Kd wood.png\n"
+            + "newmtl stone\nmap_Kd stone.png\n"
+            + "newmtl oak\nKd 0.5 0.5 0.5\nmap_Kd wood.png\n";
+
+    private static final String VERTICES = "mtllib test.mtl\nv 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n";
+
+    private static final String TEXTURES = "vt 0 0\nvt 1 0\nvt 1 1\nvt 0 1\n";
+
+    @Test
+    public void faceGroups_sortedByTexture() {
+        Object3DData obj = load(VERTICES
+                + "f 1 2 3\n"
+                + "usemtl wood\nf 1 3 4\n"
+                + "usemtl stone\nf 1 2 4\n"
+                + "usemtl oak\nf 2 3 4\n"
+                + "usemtl red\nf 1 2 3\n"
+                + "usemtl wood\nf 1 3 4\n");
+
+        Object3DBuilder.FaceGroups groups = new Object3DBuilder.FaceGroups(obj, 6);
+
+        // the faces without texture first, then the textures in the order they are first used. materials sharing
+        // a texture share the group 先是无纹理的面，然后按首次使用顺序排列纹理。共享纹理的材质共享组
+        assertEquals(Arrays.asList(null, "wood.png", "stone.png"), groups.textures);
+        assertArrayEquals(new int[]{0, 4, 1, 3, 5, 2}, groups.faceOrder);
+        assertArrayEquals(new int[]{0, 2, 5, 6}, groups.groupStarts);
+
+        groups.apply(obj, 3);
+        assertEquals("wood.png", obj.getTextureFile());
+        List<MaterialRange> ranges = obj.getMaterialRanges();
+        assertEquals(3, ranges.size());
+        assertRange(ranges.get(0), null, 0, 6, null);
+        assertRange(ranges.get(1), "wood", 6, 9, "wood.png");
+        assertRange(ranges.get(2), "stone", 15, 3, "stone.png");
+    }
+
+    @Test
+    public void faceGroups_singleTexture() {
+        Object3DData obj = load(VERTICES + "usemtl wood\nf 1 2 3\nusemtl oak\nf 1 3 4\n");
+
+        Object3DBuilder.FaceGroups groups = new Object3DBuilder.FaceGroups(obj, 2);
+        groups.apply(obj, 3);
+
+        assertEquals("wood.png", obj.getTextureFile());
+        assertNull(obj.getMaterialRanges());
+    }
+
+    @Test
+    public void faceGroups_withoutUsemtl() {
+        // the first texture of the file is applied to the whole model 文件的第一个纹理应用于整个模型
+        Object3DData obj = load(VERTICES + "f 1 2 3\nf 1 3 4\n");
+
+        Object3DBuilder.FaceGroups groups = new Object3DBuilder.FaceGroups(obj, 2);
+        assertEquals(1, groups.getGroupCount());
+        groups.apply(obj, 3);
+
+        assertEquals("wood.png", obj.getTextureFile());
+        assertNull(obj.getMaterialRanges());
+    }
+
+    @Test
+    public void indexedArrays_cornersWithTheSameDataShareTheVertex() {
+        Object3DData obj = Object3DBuilder.generateIndexedArrays(load(VERTICES + TEXTURES
+                + "vn 0 0 1\nf 1/1/1 2/2/1 3/3/1\nf 1/1/1 3/3/1 4/4/1\n"));
+
+        assertEquals(4, obj.getVertexArrayBuffer().capacity() / 3);
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3}, drawOrder(obj));
+        assertArrayEquals(new float[]{0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0}, floats(obj.getVertexArrayBuffer()), 0);
+        assertArrayEquals(new float[]{0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1},
+                floats(obj.getVertexNormalsArrayBuffer()), 0);
+        assertEquals(GLES20.GL_UNSIGNED_SHORT, obj.getDrawOrderBufferType());
+    }
+
+    @Test
+    public void indexedArrays_otherTextureCoordinateSplitsTheVertex() {
+        // the corner 1 of the second face is on a texture seam 第二个面的角1在纹理接缝上
+        Object3DData obj = Object3DBuilder.generateIndexedArrays(load(VERTICES + TEXTURES + "vt 1 0.5\n"
+                + "f 1/1 2/2 3/3\nf 1/5 3/3 4/4\n"));
+
+        assertEquals(5, obj.getVertexArrayBuffer().capacity() / 3);
+        assertArrayEquals(new int[]{0, 1, 2, 3, 2, 4}, drawOrder(obj));
+        float[] positions = floats(obj.getVertexArrayBuffer());
+        assertArrayEquals(Arrays.copyOfRange(positions, 0, 3), Arrays.copyOfRange(positions, 9, 12), 0);
+        float[] texCoords = floats(obj.getTextureCoordsArrayBuffer());
+        assertEquals(0, texCoords[0], 0);
+        assertEquals(1, texCoords[6], 0);
+    }
+
+    @Test
+    public void indexedArrays_otherColorSplitsTheVertex() {
+        Object3DData obj = Object3DBuilder.generateIndexedArrays(load(VERTICES
+                + "usemtl red\nf 1 2 3\nusemtl oak\nf 1 3 4\n"));
+
+        // the faces are not in the same group either, so 1 and 3 are not shared 两个面也不在同一组，所以1和3不共享
+        assertEquals(6, obj.getVertexArrayBuffer().capacity() / 3);
+        float[] colors = floats(obj.getVertexColorsArrayBuffer());
+        assertArrayEquals(new float[]{1, 0, 0}, Arrays.copyOfRange(colors, 0, 3), 0);
+        assertArrayEquals(new float[]{0.5f, 0.5f, 0.5f}, Arrays.copyOfRange(colors, 20, 23), 0);
+    }
+
+    @Test
+    public void indexedArrays_polygonsAreFans() {
+        Object3DData obj = Object3DBuilder.generateIndexedArrays(load(VERTICES + "v 0.5 2 0\nf 1 2 3 5 4\n"));
+
+        assertEquals(5, obj.getVertexArrayBuffer().capacity() / 3);
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3, 0, 3, 4}, drawOrder(obj));
+        assertArrayEquals(new float[]{0.5f, 2, 0}, Arrays.copyOfRange(floats(obj.getVertexArrayBuffer()), 9, 12), 0);
+    }
+
+    private static Object3DData load(String model) {
+        WavefrontLoader wfl = new WavefrontLoader("test.obj");
+        wfl.loadModel(new ByteArrayInputStream(model.getBytes(Charset.forName("US-ASCII"))));
+        wfl.getMaterials().readMaterials(new BufferedReader(new StringReader(MTL)));
+        return new Object3DData(wfl.getVerts(), wfl.getNormals(), wfl.getTexCoords(), wfl.getFaces(),
+                wfl.getFaceMats(), wfl.getMaterials());
+    }
+
+    private static int[] drawOrder(Object3DData obj) {
+        IntBuffer buffer = obj.getDrawOrder();
+        int[] ret = new int[buffer.capacity()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = buffer.get(i);
+        }
+        return ret;
+    }
+
+    private static float[] floats(FloatBuffer buffer) {
+        float[] ret = new float[buffer.capacity()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = buffer.get(i);
+        }
+        return ret;
+    }
+
+    private static void assertRange(MaterialRange range, String material, int first, int count, String texture) {
+        assertEquals(material, range.getMaterial());
+        assertEquals(first, range.getFirst());
+        assertEquals(count, range.getCount());
+        assertEquals(texture, range.getTextureFile());
+    }
+}
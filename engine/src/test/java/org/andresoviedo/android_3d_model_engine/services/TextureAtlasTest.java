@@ -0,0 +1,182 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import org.andresoviedo.android_3d_model_engine.model.MaterialRange;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Shelf packing, texture coordinates remapping and range reordering of the {@link TextureAtlas}. The pages are
+ * composed with Bitmaps, so only the steps that don't need them are tested here
+ * {@link TextureAtlas}的货架打包、纹理坐标重新映射和范围重新排序。页面需要Bitmap合成，因此这里只测试不需要它的步骤
+ */
+public class TextureAtlasTest {
+
+    private static final int P = TextureAtlas.PADDING;
+
+    @Test
+    public void pack_shelves() {
+        List<TextureAtlas.Tile> tiles = new ArrayList<>();
+        tiles.add(new TextureAtlas.Tile(0, false, 12, 12));
+        tiles.add(new TextureAtlas.Tile(1, false, 28, 20));
+        tiles.add(new TextureAtlas.Tile(2, false, 60, 8));
+        tiles.add(new TextureAtlas.Tile(3, false, 28, 28));
+        // doesn't fit below the last shelf 最后一个货架下放不下
+        tiles.add(new TextureAtlas.Tile(4, false, 60, 8));
+
+        List<TextureAtlas.Tile> packed = new ArrayList<>();
+        int pageHeight = TextureAtlas.pack(tiles, 64, packed);
+
+        assertEquals(64, pageHeight);
+        assertEquals(4, packed.size());
+        // first shelf: the two highest 第一个货架：最高的两个
+        assertTile(packed.get(0), 3, P, P);
+        assertTile(packed.get(1), 1, 32 + P, P);
+        // second shelf starts below the highest 第二个货架从最高的下方开始
+        assertTile(packed.get(2), 0, P, 32 + P);
+        // too wide for the second shelf 对第二个货架太宽
+        assertTile(packed.get(3), 2, P, 48 + P);
+    }
+
+    @Test
+    public void pack_pageHeightIsPowerOfTwo() {
+        List<TextureAtlas.Tile> tiles = new ArrayList<>();
+        tiles.add(new TextureAtlas.Tile(0, false, 10, 10));
+        tiles.add(new TextureAtlas.Tile(1, true, 4, 4));
+        List<TextureAtlas.Tile> packed = new ArrayList<>();
+        assertEquals(16, TextureAtlas.pack(tiles, 64, packed));
+        assertEquals(2, packed.size());
+    }
+
+    @Test
+    public void pack_randomTilesDontOverlap() {
+        Random random = new Random(7);
+        int pageSize = 256;
+        for (int run = 0; run < 20; run++) {
+            List<TextureAtlas.Tile> tiles = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                tiles.add(new TextureAtlas.Tile(i, false, 1 + random.nextInt(pageSize / 2),
+                        1 + random.nextInt(pageSize / 2)));
+            }
+            List<TextureAtlas.Tile> packed = new ArrayList<>();
+            int pageHeight = TextureAtlas.pack(tiles, pageSize, packed);
+            assertTrue(pageHeight <= pageSize);
+            assertFalse(packed.isEmpty());
+            for (int i = 0; i < packed.size(); i++) {
+                TextureAtlas.Tile a = packed.get(i);
+                assertTrue(a.x - P >= 0 && a.y - P >= 0);
+                assertTrue(a.x + a.width + P <= pageSize && a.y + a.height + P <= pageHeight);
+                for (int j = i + 1; j < packed.size(); j++) {
+                    TextureAtlas.Tile b = packed.get(j);
+                    boolean apart = a.x + a.width + P <= b.x - P || b.x + b.width + P <= a.x - P
+                            || a.y + a.height + P <= b.y - P || b.y + b.height + P <= a.y - P;
+                    assertTrue("tiles " + a.range + " and " + b.range + " overlap", apart);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void remap_arrays() {
+        List<MaterialRange> ranges = Arrays.asList(
+                new MaterialRange("a", 0, 3, "a.png"),
+                new MaterialRange("b", 3, 3, null));
+        FloatBuffer texCoords = FloatBuffer.wrap(new float[]{0, 0, 1, 0, 1, 1, 0.3f, 0.3f, 0.3f, 0.3f, 0.3f, 0.3f});
+        TextureAtlas.Tile texture = tile(0, false, 8, 8, 2, 2);
+        TextureAtlas.Tile blank = tile(1, true, 4, 4, 14, 2);
+
+        TextureAtlas.remap(Arrays.asList(texture, blank), ranges, texCoords, null, 32, 16);
+
+        float[] expected = {2 / 32f, 2 / 16f, 10 / 32f, 2 / 16f, 10 / 32f, 10 / 16f,
+                16 / 32f, 4 / 16f, 16 / 32f, 4 / 16f, 16 / 32f, 4 / 16f};
+        assertArrayEquals(expected, texCoords);
+    }
+
+    @Test
+    public void remap_sharedVerticesOnce() {
+        // two triangles sharing an edge 共享一条边的两个三角形
+        List<MaterialRange> ranges = Arrays.asList(
+                new MaterialRange("a", 0, 6, "a.png"),
+                new MaterialRange("b", 6, 3, "b.png"));
+        FloatBuffer texCoords = FloatBuffer.wrap(new float[]{0, 0, 1, 0, 1, 1, 0, 1, 0.5f, 0.5f});
+        ShortBuffer indices = ShortBuffer.wrap(new short[]{0, 1, 2, 0, 2, 3, 4, 4, 4});
+        TextureAtlas.Tile a = tile(0, false, 4, 4, 2, 2);
+        TextureAtlas.Tile b = tile(1, false, 4, 4, 10, 2);
+
+        TextureAtlas.remap(Arrays.asList(a, b), ranges, texCoords, indices, 16, 8);
+
+        float[] expected = {2 / 16f, 2 / 8f, 6 / 16f, 2 / 8f, 6 / 16f, 6 / 8f, 2 / 16f, 6 / 8f, 12 / 16f, 4 / 8f};
+        assertArrayEquals(expected, texCoords);
+    }
+
+    @Test
+    public void reorder_packedRangesFirst() {
+        MaterialRange r0 = new MaterialRange("0", 0, 3, "repeated.png");
+        MaterialRange r1 = new MaterialRange("1", 3, 6, "a.png");
+        MaterialRange r2 = new MaterialRange("2", 9, 3, "big.png");
+        MaterialRange r3 = new MaterialRange("3", 12, 3, null);
+        List<MaterialRange> ranges = Arrays.asList(r0, r1, r2, r3);
+        List<TextureAtlas.Tile> packed = Arrays.asList(tile(3, true, 4, 4, 0, 0), tile(1, false, 8, 8, 0, 0));
+
+        List<MaterialRange> order = TextureAtlas.getOrder(ranges, packed);
+        assertEquals(4, order.size());
+        assertSame(r1, order.get(0));
+        assertSame(r3, order.get(1));
+        assertSame(r0, order.get(2));
+        assertSame(r2, order.get(3));
+
+        int[] drawOrder = new int[15];
+        for (int i = 0; i < drawOrder.length; i++) {
+            drawOrder[i] = 100 + i;
+        }
+        IntBuffer indices = IntBuffer.wrap(drawOrder.clone());
+        TextureAtlas.reorderIndices(indices, order);
+        int[] expected = {103, 104, 105, 106, 107, 108, 112, 113, 114, 100, 101, 102, 109, 110, 111};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], indices.get(i));
+        }
+
+        // 2 floats per vertex 每个顶点2个浮点数
+        float[] array = new float[30];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = i / 2;
+        }
+        FloatBuffer floats = FloatBuffer.wrap(array);
+        TextureAtlas.reorderFloats(floats, 2, order);
+        assertEquals(0, floats.position());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i] - 100, floats.get(i * 2), 0);
+            assertEquals(expected[i] - 100, floats.get(i * 2 + 1), 0);
+        }
+    }
+
+    private static TextureAtlas.Tile tile(int range, boolean blank, int width, int height, int x, int y) {
+        TextureAtlas.Tile tile = new TextureAtlas.Tile(range, blank, width, height);
+        tile.x = x;
+        tile.y = y;
+        return tile;
+    }
+
+    private static void assertTile(TextureAtlas.Tile tile, int range, int x, int y) {
+        assertEquals(range, tile.range);
+        assertEquals("x of " + range, x, tile.x);
+        assertEquals("y of " + range, y, tile.y);
+    }
+
+    private static void assertArrayEquals(float[] expected, FloatBuffer actual) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("coordinate " + i, expected[i], actual.get(i), 1e-6f);
+        }
+    }
+}
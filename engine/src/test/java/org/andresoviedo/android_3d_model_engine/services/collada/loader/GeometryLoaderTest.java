@@ -0,0 +1,157 @@
+package org.andresoviedo.android_3d_model_engine.services.collada.loader;
+
+import org.andresoviedo.android_3d_model_engine.services.collada.entities.MeshData;
+import org.andresoviedo.util.xml.XmlNode;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Vertices and triangles assembled by the {@link GeometryLoader} from the COLLADA primitives: corners with the
+ * same data are merged, even when the exporter wrote the same value several times, and polygons are split in
+ * triangle fans
+ * {@link GeometryLoader}从COLLADA图元组装的顶点和三角形：数据相同的角被合并，即使导出器多次写入相同的值；多边形被分割为三角扇
+ */
+public class GeometryLoaderTest {
+
+    private static final float[] POSITIONS = {0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0, 2, 0.5f, 0};
+    // the same normal for every corner 每个角相同的法线
+    private static final float[] NORMALS = {0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1};
+    private static final float[] TEXTURES = {0, 0, 1, 0, 1, 1, 0, 1, 1, 0.5f, 0.5f, 0.5f};
+
+    @Test
+    public void polylist_duplicatedNormalsShareTheVertex() {
+        // a quad and a triangle sharing the edge 1-2. corners: position, normal, texture
+        // 一个四边形和一个共享边1-2的三角形。角：位置、法线、纹理
+        MeshData mesh = load(polylist(new int[]{4, 3},
+                0, 0, 0, 1, 1, 1, 2, 2, 2, 3, 3, 3,
+                1, 4, 1, 4, 5, 4, 2, 6, 2));
+
+        assertEquals(5, mesh.getVertexCount());
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3, 1, 4, 2}, mesh.getIndices());
+        assertArrayEquals(POSITIONS, mesh.getVertices(), 0);
+        assertArrayEquals(new float[]{0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1}, mesh.getNormals(), 0);
+        // v is flipped v被翻转
+        assertArrayEquals(new float[]{0, 1, 1, 1, 1, 0, 0, 0, 1, 0.5f}, mesh.getTextureCoords(), 0);
+    }
+
+    @Test
+    public void polylist_otherTextureCoordinateSplitsTheVertex() {
+        // corner 1 of the triangle is on a texture seam 三角形的角1在纹理接缝上
+        MeshData mesh = load(polylist(new int[]{4, 3},
+                0, 0, 0, 1, 1, 1, 2, 2, 2, 3, 3, 3,
+                1, 4, 5, 4, 5, 4, 2, 6, 2));
+
+        assertEquals(6, mesh.getVertexCount());
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3, 4, 5, 2}, mesh.getIndices());
+        float[] vertices = mesh.getVertices();
+        assertArrayEquals(new float[]{1, 0, 0}, new float[]{vertices[12], vertices[13], vertices[14]}, 0);
+    }
+
+    @Test
+    public void polylist_polygonsAreFans() {
+        MeshData mesh = load(polylist(new int[]{5},
+                0, 0, 0, 1, 1, 1, 4, 2, 4, 2, 3, 2, 3, 4, 3));
+
+        assertEquals(5, mesh.getVertexCount());
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3, 0, 3, 4}, mesh.getIndices());
+    }
+
+    @Test
+    public void triangles_withoutVcount() {
+        Node triangles = new Node("triangles", "count", "2")
+                .add(new Node("input", "semantic", "VERTEX", "source", "#vertices", "offset", "0"))
+                .add(new Node("p").ints(0, 1, 2, 0, 2, 3));
+        MeshData mesh = load(triangles);
+
+        assertEquals(4, mesh.getVertexCount());
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3}, mesh.getIndices());
+        // no normals in the file 文件中没有法线
+        assertArrayEquals(new float[12], mesh.getNormals(), 0);
+    }
+
+    @Test
+    public void normalsOfTheVertices() {
+        // normals declared in <vertices> are indexed by position <vertices>中声明的法线按位置索引
+        Node mesh = new Node("mesh")
+                .add(source("positions", 3, POSITIONS))
+                .add(source("normals", 3, new float[]{0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 1, 0, 0}))
+                .add(new Node("vertices", "id", "vertices")
+                        .add(new Node("input", "semantic", "POSITION", "source", "#positions"))
+                        .add(new Node("input", "semantic", "NORMAL", "source", "#normals")))
+                .add(new Node("triangles", "count", "1")
+                        .add(new Node("input", "semantic", "VERTEX", "source", "#vertices", "offset", "0"))
+                        .add(new Node("p").ints(1, 4, 2)));
+        MeshData data = load("mesh", mesh);
+
+        assertArrayEquals(new float[]{0, 0, 1, 1, 0, 0, 0, 0, 1}, data.getNormals(), 0);
+    }
+
+    private static Node polylist(int[] vcount, int... p) {
+        return new Node("polylist", "count", String.valueOf(vcount.length))
+                .add(new Node("input", "semantic", "VERTEX", "source", "#vertices", "offset", "0"))
+                .add(new Node("input", "semantic", "NORMAL", "source", "#normals", "offset", "1"))
+                .add(new Node("input", "semantic", "TEXCOORD", "source", "#textures", "offset", "2", "set", "0"))
+                .add(new Node("vcount").ints(vcount))
+                .add(new Node("p").ints(p));
+    }
+
+    private static MeshData load(Node primitive) {
+        Node mesh = new Node("mesh")
+                .add(source("positions", 3, POSITIONS))
+                .add(source("normals", 3, NORMALS))
+                .add(source("textures", 2, TEXTURES))
+                .add(new Node("vertices", "id", "vertices")
+                        .add(new Node("input", "semantic", "POSITION", "source", "#positions")))
+                .add(primitive);
+        return load("geometry", mesh);
+    }
+
+    private static MeshData load(String id, Node mesh) {
+        Node geometries = new Node("library_geometries").add(new Node("geometry", "id", id).add(mesh));
+        List<MeshData> meshes = new GeometryLoader(geometries, new Node("library_materials"),
+                new Node("library_effects"), new Node("library_images"), null, null).extractModelData();
+        assertEquals(1, meshes.size());
+        assertEquals(id, meshes.get(0).getId());
+        return meshes.get(0);
+    }
+
+    private static Node source(String id, int stride, float[] data) {
+        return new Node("source", "id", id)
+                .add(new Node("float_array", "count", String.valueOf(data.length)).floats(data))
+                .add(new Node("technique_common")
+                        .add(new Node("accessor", "count", String.valueOf(data.length / stride),
+                                "stride", String.valueOf(stride))));
+    }
+
+    /**
+     * Node of the parsed file 已解析文件的节点
+     */
+    private static final class Node extends XmlNode {
+
+        private Node(String name, String... attributes) {
+            super(name);
+            for (int i = 0; i < attributes.length; i += 2) {
+                addAttribute(attributes[i], attributes[i + 1]);
+            }
+        }
+
+        private Node add(XmlNode child) {
+            addChild(child);
+            return this;
+        }
+
+        private Node floats(float... data) {
+            setFloatData(data);
+            return this;
+        }
+
+        private Node ints(int... data) {
+            setIntData(data);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.andresoviedo.android_3d_model_engine.services.ktx;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Blocks encoded by hand following the ETC1 and ETC2 specifications, and the colors they must decode to
+ * 按照ETC1和ETC2规范手工编码的块，以及它们必须解码得到的颜色
+ */
+public class EtcDecoderTest {
+
+    /**
+     * ETC1 individual mode, not flipped: base colors (8,4,2) and (1,2,3) in 4 bits, extended to (136,68,34) and
+     * (17,34,51), with the modifier tables 1 (5,17) and 7 (47,183). All the pixels use the index 0 (+a) except:
+     * (1,2) index 2 (-a), (2,0) index 1 (+b) and (3,3) index 3 (-b).
+     */
+    private static final long ETC1_INDIVIDUAL = 0x8142233C_80408100L;
+
+    /**
+     * ETC2 planar mode: origin (32,64,26) in 6/7/6 bits, horizontal (0,0,63) and vertical (63,127,0)
+     */
+    private static final long ETC2_PLANAR = 0x4100F902_01FFFFC0L;
+
+    /**
+     * EAC alpha: base 128, multiplier 2, table 0 (-3,-6,-9,-15,2,5,8,14). All the pixels use the index 0 except:
+     * (0,0) index 3, (1,1) index 4 and (3,3) index 7.
+     */
+    private static final long EAC_ALPHA = 0x80206001_00000007L;
+
+    @Test
+    public void decode_etc1Individual() {
+        int[] rgba = decode(KtxTexture.GL_ETC1_RGB8_OES, ETC1_INDIVIDUAL);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                int expected;
+                if (x == 1 && y == 2) {
+                    expected = rgba(136 - 5, 68 - 5, 34 - 5, 255);
+                } else if (x == 2 && y == 0) {
+                    expected = rgba(17 + 183, 34 + 183, 51 + 183, 255);
+                } else if (x == 3 && y == 3) {
+                    expected = rgba(0, 0, 0, 255);
+                } else if (x < 2) {
+                    expected = rgba(136 + 5, 68 + 5, 34 + 5, 255);
+                } else {
+                    expected = rgba(17 + 47, 34 + 47, 51 + 47, 255);
+                }
+                assertPixel(expected, rgba, 4, x, y);
+            }
+        }
+    }
+
+    @Test
+    public void decode_etc2Planar() {
+        int[] rgba = decode(KtxTexture.GL_COMPRESSED_RGB8_ETC2, ETC2_PLANAR);
+        // origin (130,129,105), horizontal (0,0,255), vertical (255,255,0) extended to 8 bits
+        // c(x,y) = (x * (h - o) + y * (v - o) + 4 * o + 2) >> 2
+        assertPixel(rgba(130, 129, 105, 255), rgba, 4, 0, 0);
+        assertPixel(rgba(33, 32, 218, 255), rgba, 4, 3, 0);
+        assertPixel(rgba(224, 224, 26, 255), rgba, 4, 0, 3);
+        assertPixel(rgba(126, 127, 139, 255), rgba, 4, 3, 3);
+        assertPixel(rgba(129, 128, 116, 255), rgba, 4, 1, 1);
+    }
+
+    @Test
+    public void decode_eacAlpha() {
+        int[] rgba = decode(KtxTexture.GL_COMPRESSED_RGBA8_ETC2_EAC, EAC_ALPHA, ETC1_INDIVIDUAL);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                int alpha = rgba[y * 4 + x] & 0xFF;
+                if (x == 0 && y == 0) {
+                    assertEquals(128 - 15 * 2, alpha);
+                } else if (x == 1 && y == 1) {
+                    assertEquals(128 + 2 * 2, alpha);
+                } else if (x == 3 && y == 3) {
+                    assertEquals(128 + 14 * 2, alpha);
+                } else {
+                    assertEquals(128 - 3 * 2, alpha);
+                }
+            }
+        }
+        // the color block is the same as in ETC1 颜色块与ETC1相同
+        assertPixel(rgba(136 + 5, 68 + 5, 34 + 5, 128 + 2 * 2), rgba, 4, 1, 1);
+    }
+
+    @Test
+    public void decode_partialBlocks() {
+        // a 6x2 level has 2 blocks, and only part of the second one is written 6x2级别有2个块
+        ByteBuffer blocks = ByteBuffer.allocate(16).order(ByteOrder.BIG_ENDIAN);
+        blocks.putLong(ETC1_INDIVIDUAL).putLong(ETC2_PLANAR);
+        ByteBuffer pixels = ByteBuffer.allocate(6 * 2 * 4);
+        EtcDecoder.decode(KtxTexture.GL_COMPRESSED_RGB8_ETC2, blocks, 6, 2, pixels);
+        int[] rgba = toInts(pixels);
+        assertPixel(rgba(136 + 5, 68 + 5, 34 + 5, 255), rgba, 6, 0, 0);
+        assertPixel(rgba(130, 129, 105, 255), rgba, 6, 4, 0);
+        assertPixel(rgba(129, 128, 116, 255), rgba, 6, 5, 1);
+    }
+
+    @Test
+    public void canDecode() {
+        assertTrue(EtcDecoder.canDecode(KtxTexture.GL_ETC1_RGB8_OES));
+        assertTrue(EtcDecoder.canDecode(KtxTexture.GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC));
+        assertFalse(EtcDecoder.canDecode(KtxTexture.GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2));
+        assertFalse(EtcDecoder.canDecode(KtxTexture.GL_COMPRESSED_RGBA_ASTC_4x4_KHR));
+    }
+
+    private static int[] decode(int format, long... blocks) {
+        ByteBuffer data = ByteBuffer.allocate(blocks.length * 8).order(ByteOrder.BIG_ENDIAN);
+        for (long block : blocks) {
+            data.putLong(block);
+        }
+        ByteBuffer pixels = ByteBuffer.allocate(4 * 4 * 4);
+        EtcDecoder.decode(format, data, 4, 4, pixels);
+        return toInts(pixels);
+    }
+
+    private static int[] toInts(ByteBuffer pixels) {
+        int[] ret = new int[pixels.capacity() / 4];
+        pixels.order(ByteOrder.BIG_ENDIAN).asIntBuffer().get(ret);
+        return ret;
+    }
+
+    private static int rgba(int r, int g, int b, int a) {
+        return r << 24 | g << 16 | b << 8 | a;
+    }
+
+    private static void assertPixel(int expected, int[] rgba, int width, int x, int y) {
+        assertEquals("pixel " + x + "," + y, Integer.toHexString(expected), Integer.toHexString(rgba[y * width + x]));
+    }
+}
@@ -0,0 +1,290 @@
+package org.andresoviedo.android_3d_model_engine.services.ktx;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Container parsing and mip level selection of KTX and KTX2 files, built in memory
+ * 在内存中构建的KTX和KTX2文件的容器解析和mip级别选择
+ */
+public class KtxTextureTest {
+
+    private static final byte[] KTX1_IDENTIFIER = {(byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r',
+            '\n', 0x1A, '\n'};
+    private static final byte[] KTX2_IDENTIFIER = {(byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r',
+            '\n', 0x1A, '\n'};
+    private static final int VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK = 147;
+    private static final int VK_FORMAT_ASTC_4x4_UNORM_BLOCK = 157;
+    private static final int SUPERCOMPRESSION_NONE = 0;
+    private static final int SUPERCOMPRESSION_ZLIB = 3;
+
+    @Test
+    public void parse_ktx1LittleEndian() throws IOException {
+        assertKtx1(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void parse_ktx1BigEndian() throws IOException {
+        assertKtx1(ByteOrder.BIG_ENDIAN);
+    }
+
+    private static void assertKtx1(ByteOrder order) throws IOException {
+        byte[] file = ktx1(order, KtxTexture.GL_ETC1_RGB8_OES, 8, 4, 4, new byte[]{1, 2, 3, 4, 5});
+        assertTrue(KtxTexture.isKtx(file));
+        assertEquals(KtxTexture.GL_ETC1_RGB8_OES, KtxTexture.readFormat(file));
+
+        KtxTexture texture = KtxTexture.parse(file);
+        assertEquals(KtxTexture.GL_ETC1_RGB8_OES, texture.getFormat());
+        assertEquals(8, texture.getWidth());
+        assertEquals(4, texture.getHeight());
+        assertEquals(4, texture.getLevelCount());
+        // 8x4, 4x2, 2x1 and 1x1 pixels, a block of 8 bytes for every 4x4 pixels
+        int[] sizes = {16, 8, 8, 8};
+        for (int i = 0; i < sizes.length; i++) {
+            assertLevel(texture, i, sizes[i]);
+        }
+        assertEquals(1, texture.getLevelWidth(3));
+        assertEquals(1, texture.getLevelHeight(3));
+        assertEquals(40, texture.getSize(0));
+        assertEquals(24, texture.getSize(1));
+    }
+
+    @Test
+    public void parse_ktx2() throws IOException {
+        byte[] file = ktx2(VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK, 16, 16, 5, SUPERCOMPRESSION_NONE);
+        assertEquals(KtxTexture.GL_COMPRESSED_RGB8_ETC2, KtxTexture.readFormat(file));
+        KtxTexture texture = KtxTexture.parse(file);
+        assertEquals(KtxTexture.GL_COMPRESSED_RGB8_ETC2, texture.getFormat());
+        assertEquals(5, texture.getLevelCount());
+        int[] sizes = {128, 32, 8, 8, 8};
+        for (int i = 0; i < sizes.length; i++) {
+            assertLevel(texture, i, sizes[i]);
+        }
+    }
+
+    @Test
+    public void parse_ktx2Zlib() throws IOException {
+        byte[] file = ktx2(VK_FORMAT_ASTC_4x4_UNORM_BLOCK, 16, 8, 3, SUPERCOMPRESSION_ZLIB);
+        assertEquals(KtxTexture.GL_COMPRESSED_RGBA_ASTC_4x4_KHR, KtxTexture.readFormat(file));
+        KtxTexture texture = KtxTexture.parse(file);
+        assertEquals(KtxTexture.GL_COMPRESSED_RGBA_ASTC_4x4_KHR, texture.getFormat());
+        // 16x8, 8x4 and 4x2 pixels, a block of 16 bytes for every 4x4 pixels
+        int[] sizes = {128, 32, 16};
+        for (int i = 0; i < sizes.length; i++) {
+            assertLevel(texture, i, sizes[i]);
+        }
+    }
+
+    @Test
+    public void parse_rejectsMalformedFiles() throws IOException {
+        byte[] ktx1 = ktx1(ByteOrder.LITTLE_ENDIAN, KtxTexture.GL_ETC1_RGB8_OES, 8, 8, 4, new byte[0]);
+        assertRejected("truncated header", Arrays.copyOf(ktx1, 40));
+        assertRejected("truncated level", Arrays.copyOf(ktx1, ktx1.length - 1));
+        assertRejected("not a ktx file", new byte[100]);
+
+        byte[] badEndianness = ktx1.clone();
+        ByteBuffer.wrap(badEndianness).order(ByteOrder.LITTLE_ENDIAN).putInt(12, 0x11223344);
+        assertRejected("bad endianness", badEndianness);
+
+        byte[] badWidth = ktx1.clone();
+        ByteBuffer.wrap(badWidth).order(ByteOrder.LITTLE_ENDIAN).putInt(36, 0);
+        assertRejected("bad width", badWidth);
+
+        byte[] bigWidth = ktx1.clone();
+        ByteBuffer.wrap(bigWidth).order(ByteOrder.LITTLE_ENDIAN).putInt(36, 1 << 17);
+        assertRejected("big width", bigWidth);
+
+        // the levels are for 8x8 pixels, not 16x8 各级别是8x8像素的
+        byte[] badLevelSize = ktx1.clone();
+        ByteBuffer.wrap(badLevelSize).order(ByteOrder.LITTLE_ENDIAN).putInt(36, 16);
+        assertRejected("bad level size", badLevelSize);
+
+        byte[] uncompressed = ktx1.clone();
+        ByteBuffer.wrap(uncompressed).order(ByteOrder.LITTLE_ENDIAN).putInt(16, 0x1401);
+        assertRejected("not compressed", uncompressed);
+        assertEquals(0, KtxTexture.readFormat(uncompressed));
+
+        byte[] ktx2 = ktx2(VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK, 16, 16, 5, SUPERCOMPRESSION_NONE);
+        assertRejected("truncated ktx2 header", Arrays.copyOf(ktx2, 70));
+        assertRejected("truncated ktx2 level index", Arrays.copyOf(ktx2, 100));
+        assertRejected("truncated ktx2 level", Arrays.copyOf(ktx2, ktx2.length - 1));
+
+        byte[] basis = ktx2.clone();
+        ByteBuffer.wrap(basis).order(ByteOrder.LITTLE_ENDIAN).putInt(12, 0);
+        assertRejected("basis universal", basis);
+        assertEquals(0, KtxTexture.readFormat(basis));
+
+        byte[] zstd = ktx2.clone();
+        ByteBuffer.wrap(zstd).order(ByteOrder.LITTLE_ENDIAN).putInt(44, 2);
+        assertRejected("zstandard", zstd);
+        assertEquals(0, KtxTexture.readFormat(zstd));
+
+        byte[] tooManyLevels = ktx2.clone();
+        ByteBuffer.wrap(tooManyLevels).order(ByteOrder.LITTLE_ENDIAN).putInt(40, 18);
+        assertRejected("too many levels", tooManyLevels);
+    }
+
+    @Test
+    public void parse_rejectsBadZlibLength() throws IOException {
+        byte[] file = ktx2(VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK, 16, 16, 1, SUPERCOMPRESSION_ZLIB);
+        ByteBuffer buffer = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+
+        // the length is rejected before allocating the level 在分配级别之前拒绝该长度
+        buffer.putLong(96, Integer.MAX_VALUE - 8);
+        assertRejected("huge uncompressed length", file);
+        buffer.putLong(96, -1);
+        assertRejected("negative uncompressed length", file);
+        buffer.putLong(96, 64);
+        assertRejected("short uncompressed length", file);
+
+        buffer.putLong(96, 128);
+        KtxTexture.parse(file);
+        // corrupt the zlib stream 损坏zlib流
+        long offset = buffer.getLong(80);
+        file[(int) offset + 2] ^= 0x55;
+        file[(int) offset + 3] ^= 0x55;
+        assertRejected("bad zlib data", file);
+    }
+
+    @Test
+    public void selectBaseLevel() throws IOException {
+        KtxTexture texture = KtxTexture.parse(ktx1(ByteOrder.LITTLE_ENDIAN, KtxTexture.GL_ETC1_RGB8_OES, 1024,
+                256, 11, new byte[0]));
+        assertEquals(0, texture.selectBaseLevel(0));
+        assertEquals(0, texture.selectBaseLevel(4096));
+        assertEquals(0, texture.selectBaseLevel(1024));
+        assertEquals(1, texture.selectBaseLevel(1023));
+        assertEquals(2, texture.selectBaseLevel(256));
+        assertEquals(2, texture.selectBaseLevel(300));
+        assertEquals(10, texture.selectBaseLevel(1));
+        assertEquals(texture.getSize(2), texture.getSize(0) - texture.getLevel(0).remaining()
+                - texture.getLevel(1).remaining());
+
+        // without the smaller levels, the smallest one is chosen 没有更小的级别时，选择最小的级别
+        KtxTexture twoLevels = KtxTexture.parse(ktx1(ByteOrder.LITTLE_ENDIAN, KtxTexture.GL_ETC1_RGB8_OES, 64,
+                64, 2, new byte[0]));
+        assertEquals(1, twoLevels.selectBaseLevel(16));
+    }
+
+    @Test
+    public void blockSizes() {
+        assertEquals(8, KtxTexture.getBlockBytes(KtxTexture.GL_ETC1_RGB8_OES));
+        assertEquals(16, KtxTexture.getBlockBytes(KtxTexture.GL_COMPRESSED_RGBA8_ETC2_EAC));
+        assertEquals(8, KtxTexture.getBlockBytes(KtxTexture.GL_COMPRESSED_R11_EAC));
+        assertEquals(16, KtxTexture.getBlockBytes(KtxTexture.GL_COMPRESSED_RG11_EAC));
+        // 12x12 blocks 12x12的块
+        int astc12x12 = KtxTexture.GL_COMPRESSED_RGBA_ASTC_4x4_KHR + 13;
+        assertEquals(12, KtxTexture.getBlockWidth(astc12x12));
+        assertEquals(12, KtxTexture.getBlockHeight(astc12x12));
+        assertEquals(3 * 2 * 16, KtxTexture.getLevelSize(astc12x12, 25, 13));
+        assertEquals(0, KtxTexture.getBlockBytes(0x1908));
+        assertFalse(KtxTexture.isKtx(new byte[]{1, 2, 3}));
+    }
+
+    private static void assertLevel(KtxTexture texture, int level, int size) {
+        ByteBuffer data = texture.getLevel(level);
+        assertEquals("level " + level, 0, data.position());
+        assertEquals("level " + level, size, data.remaining());
+        for (int j = 0; j < size; j++) {
+            assertEquals("level " + level, levelByte(level, j), data.get(j));
+        }
+    }
+
+    private static byte levelByte(int level, int index) {
+        return (byte) (level * 31 + index);
+    }
+
+    private static byte[] levelData(int format, int width, int height, int level) {
+        byte[] ret = new byte[KtxTexture.getLevelSize(format, Math.max(1, width >> level),
+                Math.max(1, height >> level))];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = levelByte(level, i);
+        }
+        return ret;
+    }
+
+    /**
+     * @return a KTX 1.1 file with the levels filled with {@link #levelByte(int, int)}
+     */
+    private static byte[] ktx1(ByteOrder order, int format, int width, int height, int levels, byte[] keyValues) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(64).order(order);
+        header.put(KTX1_IDENTIFIER);
+        header.putInt(0x04030201);
+        // type, type size, format, internal format, base internal format
+        header.putInt(0).putInt(1).putInt(0).putInt(format).putInt(0x1907);
+        header.putInt(width).putInt(height).putInt(0).putInt(0).putInt(1).putInt(levels);
+        header.putInt(keyValues.length);
+        out.write(header.array(), 0, 64);
+        out.write(keyValues, 0, keyValues.length);
+        for (int i = 0; i < levels; i++) {
+            byte[] level = levelData(format, width, height, i);
+            out.write(ByteBuffer.allocate(4).order(order).putInt(level.length).array(), 0, 4);
+            out.write(level, 0, level.length);
+            // padding to 4 bytes 填充到4字节
+            for (int j = level.length; j % 4 != 0; j++) {
+                out.write(0);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return a KTX2 file with the levels filled with {@link #levelByte(int, int)}, stored smallest first as
+     * recommended by the specification
+     */
+    private static byte[] ktx2(int vkFormat, int width, int height, int levels, int supercompression) {
+        int format = KtxTexture.toGLFormat(vkFormat);
+        byte[][] stored = new byte[levels][];
+        int dataStart = 80 + levels * 24;
+        int size = dataStart;
+        for (int i = 0; i < levels; i++) {
+            byte[] level = levelData(format, width, height, i);
+            stored[i] = supercompression == SUPERCOMPRESSION_ZLIB ? deflate(level) : level;
+            size += stored[i].length;
+        }
+        ByteBuffer file = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        file.put(KTX2_IDENTIFIER);
+        file.putInt(vkFormat).putInt(1).putInt(width).putInt(height).putInt(0).putInt(0).putInt(1).putInt(levels);
+        file.putInt(supercompression);
+        int offset = size;
+        for (int i = 0; i < levels; i++) {
+            offset -= stored[i].length;
+            file.putLong(80 + i * 24, offset);
+            file.putLong(88 + i * 24, stored[i].length);
+            file.putLong(96 + i * 24, levelData(format, width, height, i).length);
+            System.arraycopy(stored[i], 0, file.array(), offset, stored[i].length);
+        }
+        return file.array();
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[data.length + 64];
+        int length = deflater.deflate(buffer);
+        deflater.end();
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private static void assertRejected(String message, byte[] file) {
+        try {
+            KtxTexture.parse(file);
+            fail(message + " was accepted");
+        } catch (IOException expected) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.andresoviedo.android_3d_model_engine.services.wavefront;
+
+import org.andresoviedo.util.collections.IntArrayList;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The parallel parser must give the same result as the sequential one, wherever the chunks are split.
+ * 并行解析器的结果必须与顺序解析器相同，无论在哪里分块
+ */
+public class WavefrontLexerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void parseParallel_sameAsSequential() throws IOException {
+        byte[] data = buildObj("\n");
+        WavefrontLexer expected = parseSequential(data);
+        assertTrue(expected.getFaceCount() > 0);
+        assertEquals(0, expected.errors);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunks = 2; chunks <= 64; chunks++) {
+                assertSameData("chunks " + chunks, expected,
+                        WavefrontLexer.parseParallel(data, 0, data.length, pool, chunks));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parseParallel_crlf() throws IOException {
+        byte[] data = buildObj("\r\n");
+        WavefrontLexer expected = parseSequential(data);
+        assertSameData("lf", expected, parseSequential(buildObj("\n")));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunks = 2; chunks <= 64; chunks++) {
+                assertSameData("chunks " + chunks, expected,
+                        WavefrontLexer.parseParallel(data, 0, data.length, pool, chunks));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void merge_splitAtEveryLine() throws IOException {
+        byte[] data = buildObj("\r\n");
+        WavefrontLexer expected = parseSequential(data);
+        for (int split = 0; split < data.length; split++) {
+            if (split > 0 && data[split - 1] != '\n') {
+                continue;
+            }
+            WavefrontLexer first = new WavefrontLexer();
+            first.parse(data, 0, split);
+            WavefrontLexer second = new WavefrontLexer();
+            second.parse(data, split, data.length);
+            assertSameData("split " + split, expected, WavefrontLexer.merge(Arrays.asList(first, second)));
+        }
+    }
+
+    @Test
+    public void parse_faceFormats() throws IOException {
+        String obj = "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n"
+                + "vt 0 0\nvt 1 0\nvt 1 1\nvn 0 0 1\n"
+                + "f 1 2 3\n"
+                + "f 1/1 2/2 3/3\n"
+                + "f 1//1 3//1 4//1\n"
+                + "f -4/-3/-1 -3/-2/-1 -2/-1/-1 -1/-1/-1\n";
+        WavefrontLexer lexer = parseSequential(obj.getBytes(UTF_8));
+        assertEquals(0, lexer.errors);
+        assertEquals(3, lexer.numTriangles);
+        assertEquals(1, lexer.numPolygons);
+        assertArrayEquals(new int[]{0, 1, 2, 0, 1, 2, 0, 2, 3, 0, 1, 2, 0, 2, 3}, lexer.vertIdxs.toArray());
+        assertArrayEquals(new int[]{-1, -1, -1, 0, 1, 2, -1, -1, -1, 0, 1, 2, 0, 2, 2}, lexer.texIdxs.toArray());
+        assertArrayEquals(new int[]{-1, -1, -1, -1, -1, -1, 0, 0, 0, 0, 0, 0, 0, 0, 0}, lexer.normIdxs.toArray());
+    }
+
+    /**
+     * Grid of quads mixing all the face formats, absolute and negative indices, materials and groups. The
+     * vertices are interleaved with the faces, so the negative indices depend on what was read before them.
+     */
+    private static byte[] buildObj(String eol) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# test").append(eol);
+        sb.append("mtllib test.mtl").append(eol);
+        int size = 8;
+        int vertices = 0, texCoords = 0, normals = 0;
+        for (int y = 0; y < size; y++) {
+            sb.append("g row").append(y).append(eol);
+            for (int x = 0; x < size; x++) {
+                sb.append("v ").append(x).append(' ').append(y).append(" 0.5").append(eol);
+                sb.append("v ").append(x + 1).append(' ').append(y).append(" -1.25e-1").append(eol);
+                sb.append("v ").append(x + 1).append(' ').append(y + 1).append(" 0").append(eol);
+                sb.append("v ").append(x).append(' ').append(y + 1).append(" 0").append(eol);
+                vertices += 4;
+                sb.append("vt ").append(x * 0.125f).append(' ').append(y * 0.125f).append(eol);
+                texCoords++;
+                sb.append("vn 0 0 1").append(eol);
+                normals++;
+                if ((x + y) % 3 == 0) {
+                    sb.append("usemtl mat").append(x % 4).append(eol);
+                }
+                int v = vertices - 3;
+                switch ((x + y * size) % 6) {
+                    case 0:
+                        // v only
+                        sb.append("f ").append(v).append(' ').append(v + 1).append(' ').append(v + 2).append(' ')
+                                .append(v + 3).append(eol);
+                        break;
+                    case 1:
+                        // v/vt
+                        sb.append("f ").append(v).append('/').append(texCoords).append(' ').append(v + 1).append('/')
+                                .append(texCoords).append(' ').append(v + 2).append('/').append(texCoords).append(eol);
+                        break;
+                    case 2:
+                        // v//vn
+                        sb.append("f ").append(v).append("//").append(normals).append(' ').append(v + 2).append("//")
+                                .append(normals).append(' ').append(v + 3).append("//").append(normals).append(eol);
+                        break;
+                    case 3:
+                        // relative v/vt/vn
+                        sb.append("f -4/-1/-1 -3/-1/-1 -2/-1/-1 -1/-1/-1").append(eol);
+                        break;
+                    case 4:
+                        // relative v only
+                        sb.append("f -4 -2 -1").append(eol);
+                        break;
+                    default:
+                        // mixed absolute and relative
+                        sb.append("f ").append(v).append("/-1/").append(normals).append(" -3/").append(texCoords)
+                                .append("/-1 -2//-1").append(eol);
+                }
+            }
+        }
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    private static WavefrontLexer parseSequential(byte[] data) throws IOException {
+        WavefrontLexer lexer = new WavefrontLexer();
+        lexer.parse(new ByteArrayInputStream(data));
+        return lexer;
+    }
+
+    private static void assertSameData(String message, WavefrontLexer expected, WavefrontLexer actual) {
+        assertArrayEquals(message, expected.vertices.toArray(), actual.vertices.toArray(), 0);
+        assertArrayEquals(message, expected.normals.toArray(), actual.normals.toArray(), 0);
+        assertArrayEquals(message, expected.texCoords.toArray(), actual.texCoords.toArray(), 0);
+        assertArrayEquals(message, expected.vertIdxs.toArray(), actual.vertIdxs.toArray());
+        assertArrayEquals(message, toArray(expected.texIdxs), toArray(actual.texIdxs));
+        assertArrayEquals(message, toArray(expected.normIdxs), toArray(actual.normIdxs));
+        assertEquals(message, expected.materialLib, actual.materialLib);
+        assertEquals(message, expected.materialNames, actual.materialNames);
+        assertArrayEquals(message, expected.materialFaces.toArray(), actual.materialFaces.toArray());
+        assertEquals(message, expected.numTriangles, actual.numTriangles);
+        assertEquals(message, expected.numPolygons, actual.numPolygons);
+        assertEquals(message, expected.errors, actual.errors);
+        assertEquals(message, dimensions(expected), dimensions(actual));
+    }
+
+    private static int[] toArray(IntArrayList list) {
+        return list != null ? list.toArray() : null;
+    }
+
+    private static List<Float> dimensions(WavefrontLexer lexer) {
+        WavefrontLoader.ModelDimensions d = lexer.getDimensions();
+        return new ArrayList<>(Arrays.asList(d.leftPt, d.rightPt, d.bottomPt, d.topPt, d.farPt, d.nearPt));
+    }
+}
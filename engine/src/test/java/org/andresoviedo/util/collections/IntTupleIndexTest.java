@@ -0,0 +1,59 @@
+package org.andresoviedo.util.collections;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Ids given by the {@link IntTupleIndex}, compared to a hash map
+ * {@link IntTupleIndex}分配的id，与哈希映射比较
+ */
+public class IntTupleIndexTest {
+
+    @Test
+    public void add_sameTupleSameId() {
+        IntTupleIndex index = new IntTupleIndex(4);
+        assertEquals(0, index.add(1, 2, 3, 4));
+        assertEquals(1, index.add(4, 3, 2, 1));
+        assertEquals(0, index.add(1, 2, 3, 4));
+        // -1 is a valid component (no index) -1是有效的分量（无索引）
+        assertEquals(2, index.add(1, -1, -1, 0));
+        assertEquals(3, index.add(1, -1, -1, 1));
+        assertEquals(2, index.add(1, -1, -1, 0));
+        assertEquals(4, index.size());
+
+        assertEquals(4, index.get(1, 0));
+        assertEquals(1, index.get(1, 3));
+        assertEquals(-1, index.get(3, 2));
+    }
+
+    @Test
+    public void add_growsPastTheExpectedSize() {
+        IntTupleIndex index = new IntTupleIndex(1);
+        Map<List<Integer>, Integer> expected = new HashMap<>();
+        Random random = new Random(1234);
+        for (int i = 0; i < 200000; i++) {
+            // few different values, so many tuples are repeated 不同的值很少，所以很多元组重复
+            int a = random.nextInt(64), b = random.nextInt(64) - 1, c = random.nextInt(16) - 1, d = random.nextInt(4);
+            List<Integer> tuple = Arrays.asList(a, b, c, d);
+            Integer id = expected.get(tuple);
+            if (id == null) {
+                id = expected.size();
+                expected.put(tuple, id);
+            }
+            assertEquals(tuple.toString(), (int) id, index.add(a, b, c, d));
+        }
+        assertEquals(expected.size(), index.size());
+        for (Map.Entry<List<Integer>, Integer> entry : expected.entrySet()) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals((int) entry.getKey().get(j), index.get(entry.getValue(), j));
+            }
+        }
+    }
+}
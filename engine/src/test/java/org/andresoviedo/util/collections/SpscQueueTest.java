@@ -0,0 +1,78 @@
+package org.andresoviedo.util.collections;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Order and capacity of the {@link SpscQueue}, with one producer and one consumer thread
+ * {@link SpscQueue}的顺序和容量，一个生产者线程和一个消费者线程
+ */
+public class SpscQueueTest {
+
+    private static final int ITEMS = 1_000_000;
+
+    @Test
+    public void offer_untilFull() {
+        // rounded up to 4 向上取整为4
+        SpscQueue<Integer> queue = new SpscQueue<>(3);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertFalse(queue.isEmpty());
+
+        assertEquals(0, (int) queue.poll());
+        assertTrue(queue.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, (int) queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test(timeout = 60000)
+    public void poll_everyItemOnceInOrder() throws Exception {
+        final SpscQueue<Integer> queue = new SpscQueue<>(64);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ITEMS; i++) {
+                    while (!queue.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        final AtomicReference<String> failure = new AtomicReference<>();
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int expected = 0;
+                while (expected < ITEMS) {
+                    Integer item = queue.poll();
+                    if (item == null) {
+                        Thread.yield();
+                    } else if (item != expected++) {
+                        failure.set("expected " + (expected - 1) + " but was " + item);
+                        return;
+                    }
+                }
+            }
+        });
+        consumer.start();
+        producer.start();
+        producer.join();
+        consumer.join();
+
+        assertNull(failure.get());
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,78 @@
+package org.andresoviedo.util.io;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Numbers parsed by the {@link NumberParser} compared to the JDK
+ * {@link NumberParser}解析的数字与JDK的比较
+ */
+public class NumberParserTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @Test
+    public void parseFloat_signsAndExponents() {
+        assertParsed("0", "-0", "+0", "1", "-1", "+1", "42", "0.5", ".5", "-.5", "7.", "-7.", "3.14159",
+                "000123.4500", "1e3", "1E3", "1e+3", "-1e-3", "+2.5E-7", "6.02214076e23", "1.17549435E-38",
+                "3.4028235e38", "1.4e-45", "1e-50", "1e400", "-1e400", "0e99", "123456789012345678901234567890",
+                "0.000000000000000000001234", "9007199254740993");
+    }
+
+    @Test
+    public void parseFloat_sameAsTheJdk() {
+        Random random = new Random(1234);
+        for (int i = 0; i < 100000; i++) {
+            float expected = Float.intBitsToFloat(random.nextInt());
+            if (Float.isNaN(expected) || Float.isInfinite(expected)) {
+                continue;
+            }
+            String text = i % 2 == 0 ? Float.toString(expected) : String.format(Locale.ROOT, "%.6f", expected);
+            assertClose(text);
+        }
+    }
+
+    @Test
+    public void parseFloat_unusualNumbersAreLeftToTheCaller() {
+        for (String text : new String[]{"", "-", "+", ".", "-.", "e5", "1e", "1e-", "1.2.3", "1,5", "1f", "nan",
+                "NaN", "inf", "INF", "-Infinity", "1.#QNAN", "0x10"}) {
+            assertTrue(text, Float.isNaN(parse(text)));
+        }
+    }
+
+    @Test
+    public void parseFloat_partOfTheText() {
+        byte[] text = "v 1.5 -2e2 3".getBytes(ASCII);
+        assertEquals(1.5f, NumberParser.parseFloat(text, 2, 5), 0);
+        assertEquals(-200f, NumberParser.parseFloat(text, 6, 10), 0);
+        assertEquals(3f, NumberParser.parseFloat(text, 11, 12), 0);
+        // the whole range must be the number 整个范围必须是数字
+        assertTrue(Float.isNaN(NumberParser.parseFloat(text, 2, 6)));
+    }
+
+    private static float parse(String text) {
+        byte[] bytes = text.getBytes(ASCII);
+        return NumberParser.parseFloat(bytes, 0, bytes.length);
+    }
+
+    private static void assertParsed(String... texts) {
+        for (String text : texts) {
+            assertEquals(text, Float.parseFloat(text), parse(text), 0);
+        }
+    }
+
+    /**
+     * Same as the JDK, or the next float
+     * 与JDK相同，或相邻的浮点数
+     */
+    private static void assertClose(String text) {
+        float expected = Float.parseFloat(text);
+        assertEquals(text, expected, parse(text), Math.ulp(expected));
+    }
+}
@@ -0,0 +1,84 @@
+package org.andresoviedo.util.xml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Values of COLLADA arrays parsed by the {@link ArrayTextParser}, with the text split in chunks anywhere, as the
+ * XML pull parser may deliver it
+ * {@link ArrayTextParser}解析的COLLADA数组值，文本可能在任意位置被分块，就像XML拉取解析器那样
+ */
+public class ArrayTextParserTest {
+
+    private static final String FLOATS = "1 -2.5\n+3.25e2 -4E-3\t.5 7. 0.000001 1.5e-40 NaN INF -INF +INF 1e40";
+    private static final float[] EXPECTED_FLOATS = {1, -2.5f, 325, -0.004f, 0.5f, 7, 0.000001f, 1.5e-40f,
+            Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY,
+            Float.POSITIVE_INFINITY};
+
+    @Test
+    public void floats_splitAnywhere() {
+        for (int split = 0; split <= FLOATS.length(); split++) {
+            ArrayTextParser parser = new ArrayTextParser(ArrayTextParser.FLOATS, 0);
+            feed(parser, FLOATS, split);
+            assertArrayEquals("split at " + split, EXPECTED_FLOATS, parser.getFloats(), 0);
+        }
+    }
+
+    @Test
+    public void floats_oneCharacterPerChunk() {
+        ArrayTextParser parser = new ArrayTextParser(ArrayTextParser.FLOATS, 4);
+        char[] text = ("  " + FLOATS + "  ").toCharArray();
+        for (int i = 0; i < text.length; i++) {
+            parser.parse(text, i, 1);
+        }
+        assertArrayEquals(EXPECTED_FLOATS, parser.getFloats(), 0);
+    }
+
+    @Test
+    public void floats_longTokens() {
+        String digits = "1234567890123456789012345678901234567890.5";
+        ArrayTextParser parser = new ArrayTextParser(ArrayTextParser.FLOATS, 0);
+        feed(parser, digits + " -" + digits, 20);
+        assertArrayEquals(new float[]{Float.parseFloat(digits), -Float.parseFloat(digits)}, parser.getFloats(), 0);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void floats_notANumber() {
+        ArrayTextParser parser = new ArrayTextParser(ArrayTextParser.FLOATS, 0);
+        feed(parser, "1 2,5", 2);
+        parser.getFloats();
+    }
+
+    @Test
+    public void ints_splitAnywhere() {
+        String text = "0 -1 +2 345 2147483647 -2147483648\n10";
+        int[] expected = {0, -1, 2, 345, Integer.MAX_VALUE, Integer.MIN_VALUE, 10};
+        for (int split = 0; split <= text.length(); split++) {
+            ArrayTextParser parser = new ArrayTextParser(ArrayTextParser.INTS, 0);
+            feed(parser, text, split);
+            assertArrayEquals("split at " + split, expected, parser.getInts());
+        }
+    }
+
+    @Test
+    public void names_splitAnywhere() {
+        String text = "Armature_Bone Armature_Bone_001\tHead";
+        String[] expected = {"Armature_Bone", "Armature_Bone_001", "Head"};
+        for (int split = 0; split <= text.length(); split++) {
+            ArrayTextParser parser = new ArrayTextParser(ArrayTextParser.NAMES, 0);
+            feed(parser, text, split);
+            assertArrayEquals("split at " + split, expected, parser.getNames());
+        }
+    }
+
+    /**
+     * Feed the text in two chunks of a buffer with other characters around, like the buffer of the pull parser
+     * 分两块输入文本，缓冲区周围有其他字符，就像拉取解析器的缓冲区
+     */
+    private static void feed(ArrayTextParser parser, String text, int split) {
+        char[] buffer = ("<p>" + text + "</p>").toCharArray();
+        parser.parse(buffer, 3, split);
+        parser.parse(buffer, 3 + split, text.length() - split);
+    }
+}